@@ -180,6 +180,8 @@ public class PCConnection extends Service
                     try
                     {
                         fClient = new PCRemoteClient(fPc.getHost(), fPc.getPort());
+                        fClient.setOrdered(true);
+                        fClient.setTimed(true);
                         fClient.init();
 
                         if (!Thread.interrupted())
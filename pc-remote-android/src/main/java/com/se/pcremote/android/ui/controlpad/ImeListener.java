@@ -77,8 +77,20 @@ public class ImeListener implements OnKeyListener
         // If the Control Pad is currently connected to the PC Connection service.
         if (fControlPad.getConnection() != null && fControlPad.getConnection().checkConnection())
         {
+            // If the IME has committed some text in one go (e.g. a pasted sentence), type it all with a single command.
+            if (event.getAction() == KeyEvent.ACTION_MULTIPLE && keyCode == KeyEvent.KEYCODE_UNKNOWN && event.getCharacters() != null)
+            {
+                try
+                {
+                    fControlPad.getConnection().getClient().typeText(event.getCharacters());
+                }
+                catch (IOException e)
+                {
+                    fLogger.error("Failed to send the command to PC '" + fControlPad.getPc().getName() + "'.", e);
+                }
+            }
             // If the Key has been pressed.
-            if (event.getAction() == KeyEvent.ACTION_DOWN)
+            else if (event.getAction() == KeyEvent.ACTION_DOWN)
             {
                 try
                 {
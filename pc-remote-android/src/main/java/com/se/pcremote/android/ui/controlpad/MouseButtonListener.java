@@ -56,12 +56,12 @@ public class MouseButtonListener implements OnClickListener
             {
                 if (view.getId() == ControlPadView.MOUSE_BUTTON_LEFT)
                 {
-                    fControlPad.getConnection().getClient().sendCommandViaTcp("mousePress(1);mouseRelease(1);");
+                    fControlPad.getConnection().getClient().sendCommandViaTcp("click(1);");
                     view.performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY);
                 }
                 else if (view.getId() == ControlPadView.MOUSE_BUTTON_RIGHT)
                 {
-                    fControlPad.getConnection().getClient().sendCommandViaTcp("mousePress(3);mouseRelease(3);");
+                    fControlPad.getConnection().getClient().sendCommandViaTcp("click(3);");
                     view.performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY);
                 }
             }
@@ -73,7 +73,7 @@ public class MousePadListener extends SimpleOnGestureListener
         {
             try
             {
-                fControlPad.getConnection().getClient().sendCommandViaTcp("mousePress(1);mouseRelease(1);mousePress(1);mouseRelease(1);");
+                fControlPad.getConnection().getClient().sendCommandViaTcp("click(1,2);");
             }
             catch (IOException e)
             {
@@ -132,7 +132,7 @@ public class MousePadListener extends SimpleOnGestureListener
         {
             try
             {
-                fControlPad.getConnection().getClient().sendCommandViaTcp("mousePress(1);mouseRelease(1);");
+                fControlPad.getConnection().getClient().sendCommandViaTcp("click(1);");
             }
             catch (IOException e)
             {
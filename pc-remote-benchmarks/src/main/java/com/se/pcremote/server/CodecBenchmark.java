@@ -0,0 +1,172 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.se.pcremote.InputSnapshot;
+import com.se.pcremote.client.InputState;
+
+/**
+ * <p>
+ * Benchmarks the encoding and decoding of messages: the decoding of commands by the {@link com.se.pcremote.server.CommandDecoder CommandDecoder}
+ * (with and without its cache) and the encoding of input snapshots by the {@link com.se.pcremote.client.InputState InputState}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(2)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class CodecBenchmark
+{
+    /**
+     * <p>
+     * The way the client is being used. This is a JMH parameter so it is named as it appears on the command line.
+     * </p>
+     */
+    @Param({CommandMix.MIXED, CommandMix.POINTER, CommandMix.TYPING})
+    public String mix;
+
+    /**
+     * <p>
+     * Decodes the messages, with a cache.
+     * </p>
+     */
+    private CommandDecoder fCachingDecoder;
+
+    /**
+     * <p>
+     * The buffer the commands are decoded into.
+     * </p>
+     */
+    private CommandBuffer fCommands;
+
+    /**
+     * <p>
+     * Decodes the messages, with a cache that holds a single command so that nearly every command is parsed.
+     * </p>
+     */
+    private CommandDecoder fDecoder;
+
+    /**
+     * <p>
+     * The input state of a client.
+     * </p>
+     */
+    private InputState fInputState;
+
+    /**
+     * <p>
+     * The encoded messages of the command mix.
+     * </p>
+     */
+    private byte[][] fMessages;
+
+    /**
+     * <p>
+     * The index of the next message to decode.
+     * </p>
+     */
+    private int fNext;
+
+    /**
+     * <p>
+     * The buffer the snapshots are encoded into.
+     * </p>
+     */
+    private ByteBuffer fSnapshot;
+
+    /**
+     * <p>
+     * Decodes the next message, taking the commands from the cache where possible.
+     * </p>
+     * 
+     * @return The decoded commands.
+     */
+    @Benchmark
+    public CommandBuffer decode()
+    {
+        fCommands.clear();
+        fCachingDecoder.decode(fMessages[fNext], 0, fMessages[fNext].length, fCommands);
+        fNext = (fNext + 1) % fMessages.length;
+
+        return (fCommands);
+    }
+
+    /**
+     * <p>
+     * Decodes the next message, parsing every command.
+     * </p>
+     * 
+     * @return The decoded commands.
+     */
+    @Benchmark
+    public CommandBuffer decodeUncached()
+    {
+        fCommands.clear();
+        fDecoder.decode(fMessages[fNext], 0, fMessages[fNext].length, fCommands);
+        fNext = (fNext + 1) % fMessages.length;
+
+        return (fCommands);
+    }
+
+    /**
+     * <p>
+     * Sets up the decoders and the messages.
+     * </p>
+     */
+    @Setup
+    public void setUp()
+    {
+        fCachingDecoder = new CommandDecoder();
+        fCommands = new CommandBuffer();
+        fDecoder = new CommandDecoder(new CommandCache(1));
+        fInputState = new InputState();
+        fMessages = CommandMix.getEncodedMessages(mix);
+        fNext = 0;
+        fSnapshot = ByteBuffer.allocate(InputSnapshot.MAX_LENGTH);
+    }
+
+    /**
+     * <p>
+     * Moves the mouse and then encodes a snapshot of the input state, as a client does each time it sends one.
+     * </p>
+     * 
+     * @return The encoded snapshot.
+     */
+    @Benchmark
+    public ByteBuffer writeSnapshot()
+    {
+        fInputState.moveMouse(3, -2);
+        fSnapshot.clear();
+        fInputState.writeSnapshot(fSnapshot);
+
+        return (fSnapshot);
+    }
+}
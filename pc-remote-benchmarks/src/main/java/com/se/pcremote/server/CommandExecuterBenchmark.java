@@ -0,0 +1,132 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Benchmarks the execution of commands by the {@link com.se.pcremote.server.CommandExecuter CommandExecuter}, with a backend that discards the
+ * input.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(2)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class CommandExecuterBenchmark
+{
+    /**
+     * <p>
+     * The way the client is being used. This is a JMH parameter so it is named as it appears on the command line.
+     * </p>
+     */
+    @Param({CommandMix.MIXED, CommandMix.POINTER, CommandMix.TYPING})
+    public String mix;
+
+    /**
+     * <p>
+     * Executes the commands.
+     * </p>
+     */
+    private CommandExecuter fCommandExecuter;
+
+    /**
+     * <p>
+     * The decoded messages of the command mix.
+     * </p>
+     */
+    private CommandBuffer[] fCommands;
+
+    /**
+     * <p>
+     * The commands of the command mix, one per element.
+     * </p>
+     */
+    private String[] fCommandStrings;
+
+    /**
+     * <p>
+     * The index of the next message to execute.
+     * </p>
+     */
+    private int fNext;
+
+    /**
+     * <p>
+     * Executes the next command as a <code>String</code>, which decodes it first.
+     * </p>
+     */
+    @Benchmark
+    public void executeCommand()
+    {
+        fCommandExecuter.executeCommand(fCommandStrings[fNext]);
+        fNext = (fNext + 1) % fCommandStrings.length;
+    }
+
+    /**
+     * <p>
+     * Executes the next decoded message.
+     * </p>
+     */
+    @Benchmark
+    public void executeCommands()
+    {
+        fCommandExecuter.executeCommands(fCommands[fNext]);
+        fNext = (fNext + 1) % fCommands.length;
+    }
+
+    /**
+     * <p>
+     * Decodes the command mix.
+     * </p>
+     */
+    @Setup
+    public void setUp()
+    {
+        fCommandExecuter = new CommandExecuter(new NullInputBackend());
+        fNext = 0;
+
+        CommandDecoder decoder = new CommandDecoder();
+        byte[][] messages = CommandMix.getEncodedMessages(mix);
+        fCommands = new CommandBuffer[messages.length];
+        for (int index = 0; index < messages.length; index++)
+        {
+            fCommands[index] = new CommandBuffer();
+            decoder.decode(messages[index], 0, messages[index].length, fCommands[index]);
+        }
+
+        // A String is executed as a single command (without the trailing ';'), so split the messages up.
+        StringBuilder commands = new StringBuilder();
+        for (String message : CommandMix.getMessages(mix))
+        {
+            commands.append(message);
+        }
+        fCommandStrings = commands.toString().split(";");
+    }
+}
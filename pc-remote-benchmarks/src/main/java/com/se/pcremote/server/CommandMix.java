@@ -0,0 +1,131 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.nio.charset.Charset;
+
+/**
+ * <p>
+ * The messages a client sends while it is being used in a particular way, for benchmarks to feed to the server. Each message is what a client
+ * sends in a single TCP write or UDP datagram.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public final class CommandMix
+{
+    /**
+     * <p>
+     * Moving the mouse around, clicking now and then and occasionally typing a word or scrolling.
+     * </p>
+     */
+    public static final String MIXED = "mixed";
+
+    /**
+     * <p>
+     * Moving the mouse around without clicking.
+     * </p>
+     */
+    public static final String POINTER = "pointer";
+
+    /**
+     * <p>
+     * Typing text.
+     * </p>
+     */
+    public static final String TYPING = "typing";
+
+    /**
+     * <p>
+     * The messages sent while moving the mouse around, clicking and occasionally typing or scrolling.
+     * </p>
+     */
+    private static final String[] MIXED_MESSAGES = new String[] {"mouseMoveRelative(3,-2);", "mouseMoveRelative(4,-1);", "mouseMoveRelative(2,0);",
+            "mouseMoveRelative(5,1);", "mousePress(1);", "mouseRelease(1);", "mouseMoveRelative(-1,3);", "mouseWheel(1);", "mouseMoveRelative(0,2);",
+            "keyPress(16);keyPress(72);keyRelease(72);keyRelease(16);", "typeText(ello);", "mouseMoveRelative(-6,4);", "mouseMoveRelative(-3,2);",
+            "mousePress(3);mouseRelease(3);", "mouseMoveRelative(1,1);", "mouseMoveRelative(2,-4);"};
+
+    /**
+     * <p>
+     * The messages sent while moving the mouse around.
+     * </p>
+     */
+    private static final String[] POINTER_MESSAGES = new String[] {"mouseMoveRelative(3,-2);", "mouseMoveRelative(4,-1);", "mouseMoveRelative(2,0);",
+            "mouseMoveRelative(5,1);", "mouseMoveRelative(-1,3);", "mouseMoveRelative(0,2);", "mouseMoveRelative(-6,4);", "mouseMoveRelative(-3,2);",
+            "mouseMoveRelative(1,1);", "mouseMoveRelative(2,-4);", "mouseMoveRelative(12,-7);", "mouseMoveRelative(-10,9);"};
+
+    /**
+     * <p>
+     * The messages sent while typing text.
+     * </p>
+     */
+    private static final String[] TYPING_MESSAGES = new String[] {"keyPress(72);keyRelease(72);", "keyPress(69);keyRelease(69);",
+            "keyPress(76);keyRelease(76);", "keyPress(76);keyRelease(76);", "keyPress(79);keyRelease(79);", "keyPress(32);keyRelease(32);",
+            "typeText(world);", "keyPress(8);keyRelease(8);", "keyPress(16);keyPress(49);keyRelease(49);keyRelease(16);",
+            "keyPress(10);keyRelease(10);"};
+
+    /**
+     * <p>
+     * Retrieves the encoded messages a client sends while it is being used in the given way.
+     * </p>
+     * 
+     * @param mix The way the client is being used, one of {@link #MIXED}, {@link #POINTER} or {@link #TYPING}.
+     * 
+     * @return The encoded messages, in the order they are sent.
+     */
+    public static byte[][] getEncodedMessages(final String mix)
+    {
+        String[] messages = getMessages(mix);
+        byte[][] encoded = new byte[messages.length][];
+        for (int index = 0; index < messages.length; index++)
+        {
+            encoded[index] = messages[index].getBytes(Charset.forName("US-ASCII"));
+        }
+
+        return (encoded);
+    }
+
+    /**
+     * <p>
+     * Retrieves the messages a client sends while it is being used in the given way.
+     * </p>
+     * 
+     * @param mix The way the client is being used, one of {@link #MIXED}, {@link #POINTER} or {@link #TYPING}.
+     * 
+     * @return The messages, in the order they are sent.
+     */
+    public static String[] getMessages(final String mix)
+    {
+        if (MIXED.equals(mix))
+        {
+            return (MIXED_MESSAGES.clone());
+        }
+        if (POINTER.equals(mix))
+        {
+            return (POINTER_MESSAGES.clone());
+        }
+        if (TYPING.equals(mix))
+        {
+            return (TYPING_MESSAGES.clone());
+        }
+
+        throw new IllegalArgumentException("Unknown command mix: " + mix);
+    }
+
+    /**
+     * <p>
+     * Hidden constructor, this class only holds constants.
+     * </p>
+     */
+    private CommandMix()
+    {}
+}
@@ -0,0 +1,58 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+/**
+ * <p>
+ * Discards the input rather than injecting it, so that benchmarks measure the cost of getting the input to the backend and nothing else.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class NullInputBackend implements InputBackend
+{
+    @Override
+    public void dispose()
+    {}
+
+    @Override
+    public void flush()
+    {}
+
+    @Override
+    public void keyPress(final int keyCode)
+    {}
+
+    @Override
+    public void keyRelease(final int keyCode)
+    {}
+
+    @Override
+    public void mouseMove(final int x, final int y)
+    {}
+
+    @Override
+    public void mouseMoveRelative(final int x, final int y)
+    {}
+
+    @Override
+    public void mousePress(final int mouseButton)
+    {}
+
+    @Override
+    public void mouseRelease(final int mouseButton)
+    {}
+
+    @Override
+    public void mouseWheel(final int notches)
+    {}
+}
@@ -0,0 +1,300 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Benchmarks the receipt of messages by the server's {@link com.se.pcremote.server.TcpClient TcpClient} and
+ * {@link com.se.pcremote.server.UdpClient UdpClient}, from the data arriving to the commands reaching a backend that discards the input. The
+ * sockets are not connected, the data is handed straight to the clients.
+ * </p>
+ * 
+ * <p>
+ * The limits on the rate at which the clients can inject input are lifted, otherwise most of the input would be dropped before it got to the
+ * backend.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(2)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class ReceiveBenchmark
+{
+    /**
+     * <p>
+     * A socket that reads the same messages over and over again, in turn.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    private static class ReplayingSocket extends Socket
+    {
+        /**
+         * <p>
+         * Reads the messages.
+         * </p>
+         */
+        private InputStream fInputStream;
+
+        /**
+         * <p>
+         * Creates an instance of <code>ReplayingSocket</code>.
+         * </p>
+         * 
+         * @param messages The messages to read.
+         */
+        public ReplayingSocket(final byte[][] messages)
+        {
+            fInputStream = new InputStream()
+            {
+                private int fNext = 0;
+
+                @Override
+                public int read()
+                {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read(final byte[] data)
+                {
+                    byte[] message = messages[fNext];
+                    fNext = (fNext + 1) % messages.length;
+                    System.arraycopy(message, 0, data, 0, message.length);
+
+                    return (message.length);
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInputStream()
+        {
+            return (fInputStream);
+        }
+    }
+
+    /**
+     * <p>
+     * The number of datagrams received at once by the batched {@link com.se.pcremote.server.UdpClient UdpClient}.
+     * </p>
+     */
+    private static final int BATCH_SIZE = 8;
+
+    /**
+     * <p>
+     * The way the client is being used. This is a JMH parameter so it is named as it appears on the command line.
+     * </p>
+     */
+    @Param({CommandMix.MIXED, CommandMix.POINTER, CommandMix.TYPING})
+    public String mix;
+
+    /**
+     * <p>
+     * The datagrams received at once by the batched {@link com.se.pcremote.server.UdpClient UdpClient}.
+     * </p>
+     */
+    private ByteBuffer[] fBatch;
+
+    /**
+     * <p>
+     * The sender of each of the datagrams received at once by the batched {@link com.se.pcremote.server.UdpClient UdpClient}.
+     * </p>
+     */
+    private SocketAddress[] fBatchSenders;
+
+    /**
+     * <p>
+     * Receives heartbeats via TCP.
+     * </p>
+     */
+    private TcpClient fHeartbeatTcpClient;
+
+    /**
+     * <p>
+     * The encoded messages of the command mix.
+     * </p>
+     */
+    private byte[][] fMessages;
+
+    /**
+     * <p>
+     * The index of the next message to receive.
+     * </p>
+     */
+    private int fNext;
+
+    /**
+     * <p>
+     * The encoded messages of the command mix, as datagrams.
+     * </p>
+     */
+    private DatagramPacket[] fPackets;
+
+    /**
+     * <p>
+     * Receives the messages via TCP.
+     * </p>
+     */
+    private TcpClient fTcpClient;
+
+    /**
+     * <p>
+     * Receives the messages via UDP.
+     * </p>
+     */
+    private UdpClient fUdpClient;
+
+    /**
+     * <p>
+     * Releases anything the clients held down.
+     * </p>
+     * 
+     * @throws IOException Thrown if the clients fail to be disposed of.
+     */
+    @TearDown
+    public void dispose() throws IOException
+    {
+        fHeartbeatTcpClient.dispose();
+        fTcpClient.dispose();
+        fUdpClient.dispose();
+    }
+
+    /**
+     * <p>
+     * Sets up the clients and the messages.
+     * </p>
+     * 
+     * @throws IOException Thrown if a socket fails to be created.
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        SessionTable sessionTable = new SessionTable(new CommandExecuter(new NullInputBackend()));
+        sessionTable.setRates(0, 0, 0);
+
+        fMessages = CommandMix.getEncodedMessages(mix);
+        fNext = 0;
+
+        fHeartbeatTcpClient = new TcpClient(new ReplayingSocket(new byte[][] {new byte[] {-1}}), sessionTable);
+        fTcpClient = new TcpClient(new ReplayingSocket(fMessages), sessionTable);
+        fUdpClient = new UdpClient(new DatagramSocket(null), sessionTable);
+
+        SocketAddress sender = new InetSocketAddress("localhost", 10999);
+        fPackets = new DatagramPacket[fMessages.length];
+        for (int index = 0; index < fMessages.length; index++)
+        {
+            fPackets[index] = new DatagramPacket(fMessages[index], fMessages[index].length, sender);
+        }
+
+        fBatch = new ByteBuffer[BATCH_SIZE];
+        fBatchSenders = new SocketAddress[BATCH_SIZE];
+        for (int index = 0; index < BATCH_SIZE; index++)
+        {
+            fBatch[index] = ByteBuffer.wrap(fMessages[index % fMessages.length]);
+            fBatchSenders[index] = sender;
+        }
+    }
+
+    /**
+     * <p>
+     * Hands the next message to the {@link com.se.pcremote.server.TcpClient TcpClient} as though it had just been read.
+     * </p>
+     */
+    @Benchmark
+    public void tcpOnReceiveData()
+    {
+        fTcpClient.onReceiveData(fMessages[fNext], fMessages[fNext].length);
+        fNext = (fNext + 1) % fMessages.length;
+    }
+
+    /**
+     * <p>
+     * Has the {@link com.se.pcremote.server.TcpClient TcpClient} read the next message from its socket, which checks whether it is a heartbeat
+     * first.
+     * </p>
+     * 
+     * @throws IOException Thrown if the message fails to be read.
+     */
+    @Benchmark
+    public void tcpReceiveData() throws IOException
+    {
+        fTcpClient.receiveData();
+    }
+
+    /**
+     * <p>
+     * Has the {@link com.se.pcremote.server.TcpClient TcpClient} read a heartbeat from its socket.
+     * </p>
+     * 
+     * @throws IOException Thrown if the heartbeat fails to be read.
+     */
+    @Benchmark
+    public void tcpReceiveHeartbeat() throws IOException
+    {
+        fHeartbeatTcpClient.receiveData();
+    }
+
+    /**
+     * <p>
+     * Hands a batch of datagrams to the {@link com.se.pcremote.server.UdpClient UdpClient} as though they had just been received at once.
+     * </p>
+     */
+    @Benchmark
+    public void udpOnReceiveBatch()
+    {
+        for (int index = 0; index < BATCH_SIZE; index++)
+        {
+            fBatch[index].rewind();
+        }
+        fUdpClient.onReceiveData(fBatch, fBatchSenders, BATCH_SIZE);
+    }
+
+    /**
+     * <p>
+     * Hands the next datagram to the {@link com.se.pcremote.server.UdpClient UdpClient} as though it had just been received.
+     * </p>
+     */
+    @Benchmark
+    public void udpOnReceiveData()
+    {
+        fUdpClient.onReceiveData(fPackets[fNext]);
+        fNext = (fNext + 1) % fPackets.length;
+    }
+}
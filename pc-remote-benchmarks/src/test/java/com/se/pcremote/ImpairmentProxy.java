@@ -0,0 +1,850 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * A proxy that sits between {@link com.se.pcremote.client.PCRemoteClient PCRemoteClient}s and a {@link com.se.pcremote.server.PCRemoteServer
+ * PCRemoteServer} and subjects the traffic through it to the {@link com.se.pcremote.NetworkImpairment NetworkImpairment}s of a poor network (e.g.
+ * a congested Wi-Fi network), so that the behaviour of the client and server under those conditions can be tested and measured on a single
+ * machine. Like the server, it listens for TCP connections on its port and for UDP datagrams on the port below it, and it forwards them to the
+ * same ports of the server. Traffic in both directions is impaired.
+ * </p>
+ * 
+ * <p>
+ * Each flow of traffic (a direction of a TCP connection or of a UDP client's datagrams) makes its random decisions from its own source, seeded
+ * from the seed of the impairments and the order in which the flows were created. So a run in which the clients connect in the same order and
+ * send the same traffic is subjected to the same impairments.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ImpairmentProxy
+{
+    /**
+     * <p>
+     * Delivers the datagrams and segments when their delays are up.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class Delivery implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            fLogger.debug("Impairment proxy delivery started.");
+
+            try
+            {
+                while (!Thread.currentThread().isInterrupted())
+                {
+                    fScheduled.take().deliver();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            fLogger.debug("Impairment proxy delivery stopped.");
+        }
+    }
+
+    /**
+     * <p>
+     * Accepts TCP connections from clients, connecting each to the server.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class TcpAccepter implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            fLogger.debug("Impairment proxy accepting TCP connections.");
+
+            try
+            {
+                while (!Thread.currentThread().isInterrupted())
+                {
+                    Socket client = fServerSocket.accept();
+                    Socket server = new Socket(fTargetAddress, fTargetPort);
+                    synchronized (fTcpSockets)
+                    {
+                        fTcpSockets.add(client);
+                        fTcpSockets.add(server);
+                    }
+
+                    startThread(new TcpPump(client, server, fImpairment.createRandom(fFlowCount.getAndIncrement())));
+                    startThread(new TcpPump(server, client, fImpairment.createRandom(fFlowCount.getAndIncrement())));
+                }
+            }
+            catch (IOException e)
+            {
+                if (!fServerSocket.isClosed())
+                {
+                    fLogger.error("Failed to accept a TCP connection.", e);
+                }
+            }
+
+            fLogger.debug("Impairment proxy stopped accepting TCP connections.");
+        }
+    }
+
+    /**
+     * <p>
+     * Reads the data sent in one direction of a TCP connection and schedules it for delivery. Segments are delayed but never overtake each other,
+     * as TCP delivers data in order.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class TcpPump implements Runnable
+    {
+        /**
+         * <p>
+         * The socket the data is written to.
+         * </p>
+         */
+        private Socket fDestination;
+
+        /**
+         * <p>
+         * The time at which the last segment is delivered (in nanoseconds, as per {@link System#nanoTime()}).
+         * </p>
+         */
+        private long fLastDeliveryTime;
+
+        /**
+         * <p>
+         * The source of the random decisions for this flow.
+         * </p>
+         */
+        private Random fRandom;
+
+        /**
+         * <p>
+         * The socket the data is read from.
+         * </p>
+         */
+        private Socket fSource;
+
+        /**
+         * <p>
+         * Creates an instance of <code>TcpPump</code>.
+         * </p>
+         * 
+         * @param source The socket the data is read from.
+         * @param destination The socket the data is written to.
+         * @param random The source of the random decisions for this flow.
+         */
+        public TcpPump(final Socket source, final Socket destination, final Random random)
+        {
+            fSource = source;
+            fDestination = destination;
+            fRandom = random;
+
+            fLastDeliveryTime = 0;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                InputStream input = fSource.getInputStream();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int length;
+                while ((length = input.read(buffer)) != -1)
+                {
+                    byte[] segment = new byte[length];
+                    System.arraycopy(buffer, 0, segment, 0, length);
+                    schedule(segment);
+                }
+            }
+            catch (IOException e)
+            {
+                fLogger.debug("TCP connection closed: " + e.getMessage());
+            }
+
+            // Close the other side once everything before the end of the stream has been delivered.
+            schedule(null);
+        }
+
+        /**
+         * <p>
+         * Schedules a segment for delivery, no sooner than the segment before it.
+         * </p>
+         * 
+         * @param segment The segment, or null to close the socket the data is written to.
+         */
+        private void schedule(final byte[] segment)
+        {
+            fLastDeliveryTime = Math.max(System.nanoTime() + fImpairment.decideSegmentDelay(fRandom), fLastDeliveryTime);
+            fScheduled.add(new Scheduled(fLastDeliveryTime, fSequence.getAndIncrement(), segment, fDestination, null, null));
+            if (segment != null)
+            {
+                fForwardedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Receives the datagrams the server sends to a UDP client and schedules them for delivery to the client.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class UdpDownstream implements Runnable
+    {
+        /**
+         * <p>
+         * The UDP client.
+         * </p>
+         */
+        private UdpFlow fFlow;
+
+        /**
+         * <p>
+         * The source of the random decisions for this flow.
+         * </p>
+         */
+        private Random fRandom;
+
+        /**
+         * <p>
+         * Creates an instance of <code>UdpDownstream</code>.
+         * </p>
+         * 
+         * @param flow The UDP client.
+         * @param random The source of the random decisions for this flow.
+         */
+        public UdpDownstream(final UdpFlow flow, final Random random)
+        {
+            fFlow = flow;
+            fRandom = random;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                DatagramPacket packet = new DatagramPacket(new byte[BUFFER_SIZE], BUFFER_SIZE);
+                while (!Thread.currentThread().isInterrupted())
+                {
+                    fFlow.fSocket.receive(packet);
+                    impair(packet, fUdpSocket, fFlow.fClientAddress, fRandom);
+                }
+            }
+            catch (IOException e)
+            {
+                if (!fFlow.fSocket.isClosed())
+                {
+                    fLogger.error("Failed to receive a datagram from the server.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Receives the datagrams the UDP clients send and schedules them for delivery to the server, each client via its own socket so that the
+     * server's replies can be told apart.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class UdpUpstream implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            fLogger.debug("Impairment proxy receiving UDP datagrams.");
+
+            try
+            {
+                DatagramPacket packet = new DatagramPacket(new byte[BUFFER_SIZE], BUFFER_SIZE);
+                while (!Thread.currentThread().isInterrupted())
+                {
+                    fUdpSocket.receive(packet);
+
+                    UdpFlow flow = getUdpFlow(packet.getSocketAddress());
+                    impair(packet, flow.fSocket, new InetSocketAddress(fTargetAddress, fTargetPort - 1), flow.fRandom);
+                }
+            }
+            catch (IOException e)
+            {
+                if (!fUdpSocket.isClosed())
+                {
+                    fLogger.error("Failed to receive a datagram from a client.", e);
+                }
+            }
+
+            fLogger.debug("Impairment proxy stopped receiving UDP datagrams.");
+        }
+    }
+
+    /**
+     * <p>
+     * A datagram or segment that is scheduled for delivery.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    private static class Scheduled implements Delayed
+    {
+        /**
+         * <p>
+         * The datagram or segment, or null to close the TCP socket.
+         * </p>
+         */
+        private byte[] fData;
+
+        /**
+         * <p>
+         * The socket the datagram is sent from, or null if this is a segment.
+         * </p>
+         */
+        private DatagramSocket fDatagramSocket;
+
+        /**
+         * <p>
+         * The time at which it is delivered (in nanoseconds, as per {@link System#nanoTime()}).
+         * </p>
+         */
+        private long fDeliveryTime;
+
+        /**
+         * <p>
+         * The order in which it was scheduled, so that those delivered at the same time are delivered in that order.
+         * </p>
+         */
+        private long fSequence;
+
+        /**
+         * <p>
+         * The address the datagram is sent to, or null if this is a segment.
+         * </p>
+         */
+        private SocketAddress fTarget;
+
+        /**
+         * <p>
+         * The socket the segment is written to, or null if this is a datagram.
+         * </p>
+         */
+        private Socket fTcpSocket;
+
+        /**
+         * <p>
+         * Creates an instance of <code>Scheduled</code>.
+         * </p>
+         * 
+         * @param deliveryTime The time at which it is delivered (in nanoseconds, as per {@link System#nanoTime()}).
+         * @param sequence The order in which it was scheduled.
+         * @param data The datagram or segment, or null to close the TCP socket.
+         * @param tcpSocket The socket the segment is written to, or null if this is a datagram.
+         * @param datagramSocket The socket the datagram is sent from, or null if this is a segment.
+         * @param target The address the datagram is sent to, or null if this is a segment.
+         */
+        public Scheduled(final long deliveryTime, final long sequence, final byte[] data, final Socket tcpSocket,
+                final DatagramSocket datagramSocket, final SocketAddress target)
+        {
+            fDeliveryTime = deliveryTime;
+            fSequence = sequence;
+            fData = data;
+            fTcpSocket = tcpSocket;
+            fDatagramSocket = datagramSocket;
+            fTarget = target;
+        }
+
+        @Override
+        public int compareTo(final Delayed other)
+        {
+            Scheduled scheduled = (Scheduled) other;
+            if (fDeliveryTime != scheduled.fDeliveryTime)
+            {
+                return (fDeliveryTime < scheduled.fDeliveryTime ? -1 : 1);
+            }
+
+            return (fSequence < scheduled.fSequence ? -1 : (fSequence == scheduled.fSequence ? 0 : 1));
+        }
+
+        /**
+         * <p>
+         * Delivers the datagram or segment. Failures are not reported, the network just loses what it failed to deliver.
+         * </p>
+         */
+        public void deliver()
+        {
+            try
+            {
+                if (fTcpSocket == null)
+                {
+                    fDatagramSocket.send(new DatagramPacket(fData, fData.length, fTarget));
+                }
+                else if (fData == null)
+                {
+                    fTcpSocket.close();
+                }
+                else
+                {
+                    fTcpSocket.getOutputStream().write(fData);
+                }
+            }
+            catch (IOException e)
+            {
+                Logger.getLogger(ImpairmentProxy.class).debug("Failed to deliver: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public long getDelay(final TimeUnit unit)
+        {
+            return (unit.convert(fDeliveryTime - System.nanoTime(), TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /**
+     * <p>
+     * A UDP client of the proxy.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    private static class UdpFlow
+    {
+        /**
+         * <p>
+         * The address of the client.
+         * </p>
+         */
+        private SocketAddress fClientAddress;
+
+        /**
+         * <p>
+         * The source of the random decisions for the datagrams the client sends.
+         * </p>
+         */
+        private Random fRandom;
+
+        /**
+         * <p>
+         * The socket the datagrams of the client are sent to the server from.
+         * </p>
+         */
+        private DatagramSocket fSocket;
+
+        /**
+         * <p>
+         * Creates an instance of <code>UdpFlow</code>.
+         * </p>
+         * 
+         * @param clientAddress The address of the client.
+         * @param socket The socket the datagrams of the client are sent to the server from.
+         * @param random The source of the random decisions for the datagrams the client sends.
+         */
+        public UdpFlow(final SocketAddress clientAddress, final DatagramSocket socket, final Random random)
+        {
+            fClientAddress = clientAddress;
+            fSocket = socket;
+            fRandom = random;
+        }
+    }
+
+    /**
+     * <p>
+     * The size of the buffers the datagrams and segments are read into.
+     * </p>
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * <p>
+     * The number of datagrams delivered twice.
+     * </p>
+     */
+    private AtomicLong fDuplicatedCount;
+
+    /**
+     * <p>
+     * The number of flows of traffic created, used to seed the source of the random decisions for each.
+     * </p>
+     */
+    private AtomicInteger fFlowCount;
+
+    /**
+     * <p>
+     * The number of datagrams and segments forwarded (including duplicates).
+     * </p>
+     */
+    private AtomicLong fForwardedCount;
+
+    /**
+     * <p>
+     * The impairments the traffic is subjected to.
+     * </p>
+     */
+    private NetworkImpairment fImpairment;
+
+    /**
+     * <p>
+     * Logs messages associated with this class.
+     * </p>
+     */
+    private Logger fLogger;
+
+    /**
+     * <p>
+     * The number of datagrams lost.
+     * </p>
+     */
+    private AtomicLong fLostCount;
+
+    /**
+     * <p>
+     * The port on which this <code>ImpairmentProxy</code> listens for TCP connections (and below which it listens for UDP datagrams).
+     * </p>
+     */
+    private int fPort;
+
+    /**
+     * <p>
+     * The datagrams and segments that are scheduled for delivery, in the order they are delivered.
+     * </p>
+     */
+    private DelayQueue<Scheduled> fScheduled;
+
+    /**
+     * <p>
+     * The order in which the next datagram or segment is scheduled.
+     * </p>
+     */
+    private AtomicLong fSequence;
+
+    /**
+     * <p>
+     * Listens for TCP connections.
+     * </p>
+     */
+    private ServerSocket fServerSocket;
+
+    /**
+     * <p>
+     * The address of the server.
+     * </p>
+     */
+    private InetAddress fTargetAddress;
+
+    /**
+     * <p>
+     * The port on which the server listens.
+     * </p>
+     */
+    private int fTargetPort;
+
+    /**
+     * <p>
+     * The sockets of the TCP connections, to both the clients and the server.
+     * </p>
+     */
+    private List<Socket> fTcpSockets;
+
+    /**
+     * <p>
+     * The threads this <code>ImpairmentProxy</code> has started.
+     * </p>
+     */
+    private List<Thread> fThreads;
+
+    /**
+     * <p>
+     * The UDP clients, indexed by their addresses.
+     * </p>
+     */
+    private Map<SocketAddress, UdpFlow> fUdpFlows;
+
+    /**
+     * <p>
+     * Listens for UDP datagrams.
+     * </p>
+     */
+    private DatagramSocket fUdpSocket;
+
+    /**
+     * <p>
+     * Creates an instance of <code>ImpairmentProxy</code>.
+     * </p>
+     * 
+     * @param port The port on which this <code>ImpairmentProxy</code> listens for TCP connections (and below which it listens for UDP
+     * datagrams).
+     * @param targetHost The host on which the server runs.
+     * @param targetPort The port on which the server listens.
+     * @param impairment The impairments the traffic is subjected to.
+     * 
+     * @throws IOException Thrown if the host of the server cannot be resolved.
+     */
+    public ImpairmentProxy(final int port, final String targetHost, final int targetPort, final NetworkImpairment impairment) throws IOException
+    {
+        fPort = port;
+        fTargetAddress = InetAddress.getByName(targetHost);
+        fTargetPort = targetPort;
+        fImpairment = impairment;
+
+        fDuplicatedCount = new AtomicLong();
+        fFlowCount = new AtomicInteger();
+        fForwardedCount = new AtomicLong();
+        fLogger = Logger.getLogger(getClass());
+        fLostCount = new AtomicLong();
+        fScheduled = new DelayQueue<Scheduled>();
+        fSequence = new AtomicLong();
+        fServerSocket = null;
+        fTcpSockets = new ArrayList<Socket>();
+        fThreads = new ArrayList<Thread>();
+        fUdpFlows = new HashMap<SocketAddress, UdpFlow>();
+        fUdpSocket = null;
+    }
+
+    /**
+     * <p>
+     * Stops this <code>ImpairmentProxy</code>, closing all of the connections through it. Anything still scheduled for delivery is lost.
+     * </p>
+     * 
+     * @throws IOException Thrown if the sockets fail to be closed.
+     */
+    public void dispose() throws IOException
+    {
+        if (fServerSocket != null)
+        {
+            fServerSocket.close();
+        }
+        if (fUdpSocket != null)
+        {
+            fUdpSocket.close();
+        }
+
+        synchronized (fTcpSockets)
+        {
+            for (Socket socket : fTcpSockets)
+            {
+                socket.close();
+            }
+            fTcpSockets.clear();
+        }
+        synchronized (fUdpFlows)
+        {
+            for (UdpFlow flow : fUdpFlows.values())
+            {
+                flow.fSocket.close();
+            }
+            fUdpFlows.clear();
+        }
+
+        synchronized (fThreads)
+        {
+            for (Thread thread : fThreads)
+            {
+                thread.interrupt();
+            }
+            fThreads.clear();
+        }
+        fScheduled.clear();
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of datagrams delivered twice.
+     * </p>
+     * 
+     * @return The number of datagrams delivered twice.
+     */
+    public long getDuplicatedCount()
+    {
+        return (fDuplicatedCount.get());
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of datagrams and segments forwarded (including duplicates).
+     * </p>
+     * 
+     * @return The number of datagrams and segments forwarded.
+     */
+    public long getForwardedCount()
+    {
+        return (fForwardedCount.get());
+    }
+
+    /**
+     * <p>
+     * Retrieves the impairments the traffic is subjected to.
+     * </p>
+     * 
+     * @return The impairments the traffic is subjected to.
+     */
+    public NetworkImpairment getImpairment()
+    {
+        return (fImpairment);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of datagrams lost.
+     * </p>
+     * 
+     * @return The number of datagrams lost.
+     */
+    public long getLostCount()
+    {
+        return (fLostCount.get());
+    }
+
+    /**
+     * <p>
+     * Retrieves the port on which this <code>ImpairmentProxy</code> listens for TCP connections (and below which it listens for UDP datagrams).
+     * </p>
+     * 
+     * @return The port on which this <code>ImpairmentProxy</code> listens.
+     */
+    public int getPort()
+    {
+        return (fPort);
+    }
+
+    /**
+     * <p>
+     * Retrieves the UDP client with the given address, creating it (and starting to forward the server's replies to it) if it is new.
+     * </p>
+     * 
+     * @param clientAddress The address of the client.
+     * 
+     * @return The UDP client with the given address.
+     * 
+     * @throws IOException Thrown if the socket for the client fails to be created.
+     */
+    private UdpFlow getUdpFlow(final SocketAddress clientAddress) throws IOException
+    {
+        UdpFlow flow;
+        synchronized (fUdpFlows)
+        {
+            flow = fUdpFlows.get(clientAddress);
+            if (flow != null)
+            {
+                return (flow);
+            }
+
+            flow = new UdpFlow(clientAddress, new DatagramSocket(), fImpairment.createRandom(fFlowCount.getAndIncrement()));
+            fUdpFlows.put(clientAddress, flow);
+        }
+
+        startThread(new UdpDownstream(flow, fImpairment.createRandom(fFlowCount.getAndIncrement())));
+
+        return (flow);
+    }
+
+    /**
+     * <p>
+     * Subjects a datagram to the impairments, scheduling it (or not) for delivery.
+     * </p>
+     * 
+     * @param packet The datagram.
+     * @param socket The socket the datagram is sent from.
+     * @param target The address the datagram is sent to.
+     * @param random The source of the random decisions for the flow of the datagram.
+     */
+    private void impair(final DatagramPacket packet, final DatagramSocket socket, final SocketAddress target, final Random random)
+    {
+        if (fImpairment.decideLost(random))
+        {
+            fLostCount.incrementAndGet();
+            return;
+        }
+
+        byte[] data = new byte[packet.getLength()];
+        System.arraycopy(packet.getData(), packet.getOffset(), data, 0, data.length);
+
+        int copies = 1;
+        if (fImpairment.decideDuplicated(random))
+        {
+            fDuplicatedCount.incrementAndGet();
+            copies++;
+        }
+
+        for (int copy = 0; copy < copies; copy++)
+        {
+            long deliveryTime = System.nanoTime() + fImpairment.decideDatagramDelay(random);
+            fScheduled.add(new Scheduled(deliveryTime, fSequence.getAndIncrement(), data, null, socket, target));
+            fForwardedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * <p>
+     * Starts this <code>ImpairmentProxy</code> listening for TCP connections and UDP datagrams, each in a separate thread.
+     * </p>
+     * 
+     * @throws IOException Thrown if the sockets fail to be bound.
+     */
+    public void start() throws IOException
+    {
+        fServerSocket = new ServerSocket(fPort);
+        fUdpSocket = new DatagramSocket(fPort - 1);
+
+        startThread(new Delivery());
+        startThread(new TcpAccepter());
+        startThread(new UdpUpstream());
+    }
+
+    /**
+     * <p>
+     * Starts a daemon thread.
+     * </p>
+     * 
+     * @param runnable What the thread runs.
+     */
+    private void startThread(final Runnable runnable)
+    {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        synchronized (fThreads)
+        {
+            fThreads.add(thread);
+        }
+        thread.start();
+    }
+}
@@ -0,0 +1,419 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote;
+
+import java.util.Random;
+
+/**
+ * <p>
+ * The impairments of a network (e.g. a congested Wi-Fi network) that an {@link com.se.pcremote.ImpairmentProxy ImpairmentProxy} subjects the
+ * traffic through it to:
+ * </p>
+ * 
+ * <ul>
+ * <li><code>loss</code> The probability that a datagram is lost.</li>
+ * <li><code>duplicate</code> The probability that a datagram is delivered twice.</li>
+ * <li><code>delay</code> The time each datagram or segment is delayed by (in milliseconds).</li>
+ * <li><code>jitter</code> The most the delay varies by either way (in milliseconds), uniformly at random.</li>
+ * <li><code>reorder</code> The probability that a datagram is not delayed at all, so that it overtakes the datagrams delayed before it (as with
+ * netem, there is no reordering without a delay).</li>
+ * <li><code>seed</code> The seed of the random decisions, so that a run can be repeated exactly.</li>
+ * </ul>
+ * 
+ * <p>
+ * TCP cannot lose, duplicate or reorder data, so for TCP a loss is a retransmission instead: the segment (and everything sent after it) is held
+ * up for a retransmission timeout. Duplication and reordering do not apply to TCP.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class NetworkImpairment
+{
+    /**
+     * <p>
+     * The time a TCP segment that is lost is held up for while it is retransmitted (in milliseconds), the minimum retransmission timeout of most
+     * TCP stacks.
+     * </p>
+     */
+    public static final int RETRANSMISSION_TIMEOUT = 200;
+
+    /**
+     * <p>
+     * Parses impairments from a specification of the form <code>name=value[,name=value]*</code> e.g.
+     * "loss=0.03,delay=100,jitter=50,duplicate=0.01,reorder=0.05,seed=1". The impairments that are not specified are not applied.
+     * </p>
+     * 
+     * @param specification The specification.
+     * 
+     * @return The impairments.
+     */
+    public static NetworkImpairment parse(final String specification)
+    {
+        NetworkImpairment impairment = new NetworkImpairment();
+        if (specification.trim().length() == 0)
+        {
+            return (impairment);
+        }
+
+        for (String setting : specification.split(","))
+        {
+            String[] nameAndValue = setting.split("=");
+            if (nameAndValue.length != 2)
+            {
+                throw new IllegalArgumentException("Invalid impairment: " + setting);
+            }
+
+            String name = nameAndValue[0].trim();
+            String value = nameAndValue[1].trim();
+            if (name.equals("delay"))
+            {
+                impairment.setDelay(Integer.parseInt(value));
+            }
+            else if (name.equals("duplicate"))
+            {
+                impairment.setDuplicateRate(Double.parseDouble(value));
+            }
+            else if (name.equals("jitter"))
+            {
+                impairment.setJitter(Integer.parseInt(value));
+            }
+            else if (name.equals("loss"))
+            {
+                impairment.setLossRate(Double.parseDouble(value));
+            }
+            else if (name.equals("reorder"))
+            {
+                impairment.setReorderRate(Double.parseDouble(value));
+            }
+            else if (name.equals("seed"))
+            {
+                impairment.setSeed(Long.parseLong(value));
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown impairment: " + name);
+            }
+        }
+
+        return (impairment);
+    }
+
+    /**
+     * <p>
+     * The time each datagram or segment is delayed by (in milliseconds).
+     * </p>
+     */
+    private int fDelay;
+
+    /**
+     * <p>
+     * The probability that a datagram is delivered twice.
+     * </p>
+     */
+    private double fDuplicateRate;
+
+    /**
+     * <p>
+     * The most the delay varies by either way (in milliseconds).
+     * </p>
+     */
+    private int fJitter;
+
+    /**
+     * <p>
+     * The probability that a datagram is lost.
+     * </p>
+     */
+    private double fLossRate;
+
+    /**
+     * <p>
+     * The probability that a datagram is not delayed at all.
+     * </p>
+     */
+    private double fReorderRate;
+
+    /**
+     * <p>
+     * The seed of the random decisions.
+     * </p>
+     */
+    private long fSeed;
+
+    /**
+     * <p>
+     * Creates an instance of <code>NetworkImpairment</code> that does not impair the network at all.
+     * </p>
+     */
+    public NetworkImpairment()
+    {
+        fDelay = 0;
+        fDuplicateRate = 0;
+        fJitter = 0;
+        fLossRate = 0;
+        fReorderRate = 0;
+        fSeed = 0;
+    }
+
+    /**
+     * <p>
+     * Creates the source of the random decisions for a single flow of traffic. Each flow has its own so that the decisions made for it do not
+     * depend on how its traffic is interleaved with that of the other flows.
+     * </p>
+     * 
+     * @param flow The index of the flow.
+     * 
+     * @return The source of the random decisions for the flow.
+     */
+    public Random createRandom(final int flow)
+    {
+        return (new Random(fSeed * 31 + flow));
+    }
+
+    /**
+     * <p>
+     * Decides how long a datagram is delayed for.
+     * </p>
+     * 
+     * @param random The source of the random decisions for the flow of the datagram.
+     * 
+     * @return How long the datagram is delayed for (in nanoseconds).
+     */
+    public long decideDatagramDelay(final Random random)
+    {
+        if (fReorderRate > 0 && random.nextDouble() < fReorderRate)
+        {
+            return (0);
+        }
+
+        return (decideDelay(random));
+    }
+
+    /**
+     * <p>
+     * Decides how long a datagram or segment is delayed for, before any reordering or retransmission.
+     * </p>
+     * 
+     * @param random The source of the random decisions for the flow of the datagram or segment.
+     * 
+     * @return How long the datagram or segment is delayed for (in nanoseconds).
+     */
+    private long decideDelay(final Random random)
+    {
+        long delay = fDelay * 1000000L;
+        if (fJitter > 0)
+        {
+            delay += (long) ((random.nextDouble() * 2 - 1) * fJitter * 1000000L);
+        }
+
+        return (Math.max(delay, 0));
+    }
+
+    /**
+     * <p>
+     * Decides whether a datagram is delivered twice.
+     * </p>
+     * 
+     * @param random The source of the random decisions for the flow of the datagram.
+     * 
+     * @return True if the datagram is delivered twice, false otherwise.
+     */
+    public boolean decideDuplicated(final Random random)
+    {
+        return (fDuplicateRate > 0 && random.nextDouble() < fDuplicateRate);
+    }
+
+    /**
+     * <p>
+     * Decides whether a datagram is lost.
+     * </p>
+     * 
+     * @param random The source of the random decisions for the flow of the datagram.
+     * 
+     * @return True if the datagram is lost, false otherwise.
+     */
+    public boolean decideLost(final Random random)
+    {
+        return (fLossRate > 0 && random.nextDouble() < fLossRate);
+    }
+
+    /**
+     * <p>
+     * Decides how long a TCP segment is delayed for, including the time it takes to be retransmitted if it is lost.
+     * </p>
+     * 
+     * @param random The source of the random decisions for the flow of the segment.
+     * 
+     * @return How long the segment is delayed for (in nanoseconds).
+     */
+    public long decideSegmentDelay(final Random random)
+    {
+        long delay = decideDelay(random);
+        if (decideLost(random))
+        {
+            delay += RETRANSMISSION_TIMEOUT * 1000000L;
+        }
+
+        return (delay);
+    }
+
+    /**
+     * <p>
+     * Retrieves the time each datagram or segment is delayed by.
+     * </p>
+     * 
+     * @return The time each datagram or segment is delayed by (in milliseconds).
+     */
+    public int getDelay()
+    {
+        return (fDelay);
+    }
+
+    /**
+     * <p>
+     * Retrieves the probability that a datagram is delivered twice.
+     * </p>
+     * 
+     * @return The probability that a datagram is delivered twice.
+     */
+    public double getDuplicateRate()
+    {
+        return (fDuplicateRate);
+    }
+
+    /**
+     * <p>
+     * Retrieves the most the delay varies by either way.
+     * </p>
+     * 
+     * @return The most the delay varies by either way (in milliseconds).
+     */
+    public int getJitter()
+    {
+        return (fJitter);
+    }
+
+    /**
+     * <p>
+     * Retrieves the probability that a datagram is lost.
+     * </p>
+     * 
+     * @return The probability that a datagram is lost.
+     */
+    public double getLossRate()
+    {
+        return (fLossRate);
+    }
+
+    /**
+     * <p>
+     * Retrieves the probability that a datagram is not delayed at all, so that it overtakes the datagrams delayed before it.
+     * </p>
+     * 
+     * @return The probability that a datagram is not delayed at all.
+     */
+    public double getReorderRate()
+    {
+        return (fReorderRate);
+    }
+
+    /**
+     * <p>
+     * Retrieves the seed of the random decisions.
+     * </p>
+     * 
+     * @return The seed of the random decisions.
+     */
+    public long getSeed()
+    {
+        return (fSeed);
+    }
+
+    /**
+     * <p>
+     * Sets the time each datagram or segment is delayed by.
+     * </p>
+     * 
+     * @param delay The time each datagram or segment is delayed by (in milliseconds).
+     */
+    public void setDelay(final int delay)
+    {
+        fDelay = delay;
+    }
+
+    /**
+     * <p>
+     * Sets the probability that a datagram is delivered twice.
+     * </p>
+     * 
+     * @param duplicateRate The probability that a datagram is delivered twice.
+     */
+    public void setDuplicateRate(final double duplicateRate)
+    {
+        fDuplicateRate = duplicateRate;
+    }
+
+    /**
+     * <p>
+     * Sets the most the delay varies by either way.
+     * </p>
+     * 
+     * @param jitter The most the delay varies by either way (in milliseconds).
+     */
+    public void setJitter(final int jitter)
+    {
+        fJitter = jitter;
+    }
+
+    /**
+     * <p>
+     * Sets the probability that a datagram is lost.
+     * </p>
+     * 
+     * @param lossRate The probability that a datagram is lost.
+     */
+    public void setLossRate(final double lossRate)
+    {
+        fLossRate = lossRate;
+    }
+
+    /**
+     * <p>
+     * Sets the probability that a datagram is not delayed at all, so that it overtakes the datagrams delayed before it.
+     * </p>
+     * 
+     * @param reorderRate The probability that a datagram is not delayed at all.
+     */
+    public void setReorderRate(final double reorderRate)
+    {
+        fReorderRate = reorderRate;
+    }
+
+    /**
+     * <p>
+     * Sets the seed of the random decisions.
+     * </p>
+     * 
+     * @param seed The seed of the random decisions.
+     */
+    public void setSeed(final long seed)
+    {
+        fSeed = seed;
+    }
+
+    @Override
+    public String toString()
+    {
+        return ("loss=" + fLossRate + ",delay=" + fDelay + ",jitter=" + fJitter + ",duplicate=" + fDuplicateRate + ",reorder=" + fReorderRate
+                + ",seed=" + fSeed);
+    }
+}
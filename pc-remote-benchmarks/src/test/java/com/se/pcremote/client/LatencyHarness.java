@@ -0,0 +1,732 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.client;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+import com.se.pcremote.ImpairmentProxy;
+import com.se.pcremote.NetworkImpairment;
+import com.se.pcremote.server.LatencyHistogram;
+import com.se.pcremote.server.PCRemoteServer;
+import com.se.pcremote.server.ProbeInputBackend;
+
+/**
+ * <p>
+ * Measures the end-to-end latency of input, from the moment a {@link com.se.pcremote.client.PCRemoteClient PCRemoteClient} sends a command to
+ * the moment it reaches the backend of a {@link com.se.pcremote.server.PCRemoteServer PCRemoteServer}, both in this JVM over the loopback
+ * interface so that both ends share a clock. A probe client per transport (TCP and UDP) sends mouse movements at a steady rate and a
+ * {@link com.se.pcremote.server.ProbeInputBackend ProbeInputBackend} records the latency of each in a high dynamic range
+ * {@link com.se.pcremote.server.LatencyHistogram LatencyHistogram}.
+ * </p>
+ * 
+ * <p>
+ * The latencies are measured at each of a number of load levels, a load level being the number of other clients using the server at the same
+ * time (each moving the mouse via UDP and typing via TCP). The probe clients are ordered and timed, as the Android app is, so probes that arrive
+ * too late are dropped by the server; they are reported as lost. The results are reported as a table and, if a file is given, written to it as
+ * CSV with one line per transport and load level so that they can be kept and compared by a CI build.
+ * </p>
+ * 
+ * <p>
+ * If {@link com.se.pcremote.NetworkImpairment NetworkImpairment}s are given, all of the clients connect through an
+ * {@link com.se.pcremote.ImpairmentProxy ImpairmentProxy} that subjects their traffic to them, so that the latencies can be measured under the
+ * conditions of a poor Wi-Fi network. As the impairments are seeded, runs with the same arguments can be compared with each other.
+ * </p>
+ * 
+ * <p>
+ * The harness is kept with the tests of this module so that it is not packaged with the benchmarks. Run it against the packaged benchmarks
+ * e.g. <code>java -cp target/benchmarks.jar:target/test-classes com.se.pcremote.client.LatencyHarness 10 0,8</code>.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class LatencyHarness
+{
+    /**
+     * <p>
+     * A client that loads the server, moving the mouse via UDP and typing via TCP until the load level is over.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class Background implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            PCRemoteClient client = null;
+            try
+            {
+                client = new PCRemoteClient(SERVER_HOST, fPort);
+                client.setOrdered(true);
+                client.setTimed(true);
+                client.init();
+
+                int tick = 0;
+                while (fLoading && !Thread.currentThread().isInterrupted())
+                {
+                    client.sendCommandViaUdp(BACKGROUND_POINTER_COMMAND);
+                    if (tick % BACKGROUND_TYPING_PERIOD == 0)
+                    {
+                        client.typeText(BACKGROUND_TYPED_WORD);
+                    }
+                    tick++;
+
+                    Thread.sleep(1000 / BACKGROUND_POINTER_RATE);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (IOException e)
+            {
+                fLogger.error("Background client failed.", e);
+            }
+            finally
+            {
+                disconnect(client);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Sends probes over a single transport at a steady rate until the load level is over.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class Probe implements Runnable
+    {
+        /**
+         * <p>
+         * The transport the probes are sent over.
+         * </p>
+         */
+        private int fTransport;
+
+        /**
+         * <p>
+         * Creates an instance of <code>Probe</code>.
+         * </p>
+         * 
+         * @param transport The transport the probes are sent over, {@link LatencyHarness#TRANSPORT_TCP TRANSPORT_TCP} or
+         * {@link LatencyHarness#TRANSPORT_UDP TRANSPORT_UDP}.
+         */
+        public Probe(final int transport)
+        {
+            fTransport = transport;
+        }
+
+        @Override
+        public void run()
+        {
+            PCRemoteClient client = null;
+            try
+            {
+                client = new PCRemoteClient(SERVER_HOST, fPort);
+                client.setOrdered(true);
+                client.setTimed(true);
+                client.init();
+
+                long next = System.nanoTime();
+                while (fProbing && !Thread.currentThread().isInterrupted())
+                {
+                    // Probes sent while warming up are not measured, probe 0 is never given a sent time.
+                    int id = 0;
+                    if (fMeasuring)
+                    {
+                        id = fNextIds[fTransport]++;
+                        fSentCounts[fTransport]++;
+                        fBackend.setSentTime(fTransport, id, System.nanoTime());
+                    }
+
+                    String probe = "mouseMove(" + id + "," + fTransport + ");";
+                    if (fTransport == TRANSPORT_TCP)
+                    {
+                        client.sendCommandViaTcp(probe);
+                    }
+                    else
+                    {
+                        client.sendCommandViaUdp(probe);
+                    }
+
+                    next += 1000000000L / PROBE_RATE;
+                    long wait = next - System.nanoTime();
+                    if (wait > 0)
+                    {
+                        Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (IOException e)
+            {
+                fLogger.error("Probe client failed.", e);
+            }
+            finally
+            {
+                disconnect(client);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * The transport of the probes sent via TCP.
+     * </p>
+     */
+    public static final int TRANSPORT_TCP = 0;
+
+    /**
+     * <p>
+     * The transport of the probes sent via UDP.
+     * </p>
+     */
+    public static final int TRANSPORT_UDP = 1;
+
+    /**
+     * <p>
+     * The command the background clients send to move the mouse.
+     * </p>
+     */
+    private static final String BACKGROUND_POINTER_COMMAND = "mouseMoveRelative(3,-2);";
+
+    /**
+     * <p>
+     * The number of mouse movements each background client sends per second.
+     * </p>
+     */
+    private static final int BACKGROUND_POINTER_RATE = 100;
+
+    /**
+     * <p>
+     * The word the background clients type, without capitals so that each character is a single key press.
+     * </p>
+     */
+    private static final String BACKGROUND_TYPED_WORD = "hello ";
+
+    /**
+     * <p>
+     * The number of mouse movements each background client sends between each word it types.
+     * </p>
+     */
+    private static final int BACKGROUND_TYPING_PERIOD = 50;
+
+    /**
+     * <p>
+     * The default time the latencies are measured for at each load level (in seconds).
+     * </p>
+     */
+    private static final int DEFAULT_DURATION = 10;
+
+    /**
+     * <p>
+     * The default load levels, as the number of other clients using the server at the same time.
+     * </p>
+     */
+    private static final String DEFAULT_LOADS = "0,10,50";
+
+    /**
+     * <p>
+     * The number of probes each probe client sends per second.
+     * </p>
+     */
+    private static final int PROBE_RATE = 100;
+
+    /**
+     * <p>
+     * The host on which the server runs.
+     * </p>
+     */
+    private static final String SERVER_HOST = "127.0.0.1";
+
+    /**
+     * <p>
+     * The time allowed for the probes in flight to reach the backend after the probe clients stop sending (in milliseconds).
+     * </p>
+     */
+    private static final int SETTLE_TIME = 500;
+
+    /**
+     * <p>
+     * The names of the transports, indexed by their constants.
+     * </p>
+     */
+    private static final String[] TRANSPORT_NAMES = new String[] {"tcp", "udp"};
+
+    /**
+     * <p>
+     * The time the clients are given to connect and the server to warm up at each load level before the latencies are measured (in
+     * milliseconds).
+     * </p>
+     */
+    private static final int WARMUP_TIME = 2000;
+
+    /**
+     * <p>
+     * Logs messages associated with this class.
+     * </p>
+     */
+    private static Logger fLogger = Logger.getLogger(LatencyHarness.class);
+
+    /**
+     * <p>
+     * Checks the validity of the arguments provided to the command line utility.
+     * </p>
+     * 
+     * @param args The arguments provided to the command line utility when it was started.
+     */
+    public static void checkArgs(final String[] args)
+    {
+        if (args.length > 4)
+        {
+            throw new IllegalArgumentException("The wrong number of arguments were specified (the duration, the load levels, the report file and "
+                    + "the impairments can be optionally specified).");
+        }
+
+        try
+        {
+            if (args.length > 0 && Integer.parseInt(args[0]) < 1)
+            {
+                throw new IllegalArgumentException("An invalid duration was specified (must be at least 1).");
+            }
+            if (args.length > 1)
+            {
+                for (int load : parseLoads(args[1]))
+                {
+                    if (load < 0)
+                    {
+                        throw new IllegalArgumentException("An invalid load level was specified (must not be negative).");
+                    }
+                }
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("An invalid argument was specified (must be an integer).");
+        }
+
+        if (args.length > 3)
+        {
+            try
+            {
+                NetworkImpairment.parse(args[3]);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("An invalid impairment was specified (must be a number).");
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Measures the latencies and reports them.
+     * </p>
+     * 
+     * @param args The arguments provided to the command line utility when it was started.
+     */
+    public static void main(final String[] args)
+    {
+        try
+        {
+            checkArgs(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            fLogger.fatal(e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        int duration = DEFAULT_DURATION;
+        if (args.length > 0)
+        {
+            duration = Integer.parseInt(args[0]);
+        }
+        int[] loads = parseLoads(DEFAULT_LOADS);
+        if (args.length > 1)
+        {
+            loads = parseLoads(args[1]);
+        }
+
+        try
+        {
+            Writer report = null;
+            if (args.length > 2 && args[2].length() > 0)
+            {
+                report = new FileWriter(args[2]);
+            }
+
+            LatencyHarness harness = new LatencyHarness(LoadGenerator.DEFAULT_PORT, duration, loads);
+            if (args.length > 3)
+            {
+                harness.setImpairment(NetworkImpairment.parse(args[3]));
+            }
+            harness.run(report);
+
+            if (report != null)
+            {
+                report.close();
+            }
+        }
+        catch (Exception e)
+        {
+            fLogger.fatal("Epic fail!", e);
+            System.exit(1);
+        }
+
+        System.exit(0);
+    }
+
+    /**
+     * <p>
+     * Parses a list of load levels.
+     * </p>
+     * 
+     * @param loads The load levels, separated by commas.
+     * 
+     * @return The load levels.
+     */
+    private static int[] parseLoads(final String loads)
+    {
+        String[] values = loads.split(",");
+        int[] parsed = new int[values.length];
+        for (int index = 0; index < values.length; index++)
+        {
+            parsed[index] = Integer.parseInt(values[index].trim());
+        }
+
+        return (parsed);
+    }
+
+    /**
+     * <p>
+     * Prints usage instructions for the command line utility.
+     * </p>
+     */
+    public static void printUsage()
+    {
+        fLogger.info("Usage:");
+        fLogger.info("\tLatencyHarness [seconds [loads [report [impairments]]]]");
+        fLogger.info("Where:");
+        fLogger.info("\t seconds = The time to measure the latencies for at each load level (default is " + DEFAULT_DURATION + ").");
+        fLogger.info("\t loads = The numbers of other clients using the server, separated by commas (default is " + DEFAULT_LOADS + ").");
+        fLogger.info("\t report = The file to write the results to as CSV (by default, or if it is empty, they are not written).");
+        fLogger.info("\t impairments = The impairments of the network between the clients and the server e.g. "
+                + "\"loss=0.03,delay=100,jitter=50,duplicate=0.01,reorder=0.05,seed=1\" (by default it is not impaired).");
+    }
+
+    /**
+     * <p>
+     * Records the latencies of the probes.
+     * </p>
+     */
+    private ProbeInputBackend fBackend;
+
+    /**
+     * <p>
+     * The time the latencies are measured for at each load level (in seconds).
+     * </p>
+     */
+    private int fDuration;
+
+    /**
+     * <p>
+     * The impairments of the network between the clients and the server, or null if it is not impaired.
+     * </p>
+     */
+    private NetworkImpairment fImpairment;
+
+    /**
+     * <p>
+     * Determines whether the background clients are loading the server.
+     * </p>
+     */
+    private volatile boolean fLoading;
+
+    /**
+     * <p>
+     * The load levels, as the number of other clients using the server at the same time.
+     * </p>
+     */
+    private int[] fLoads;
+
+    /**
+     * <p>
+     * Determines whether the probes being sent are measured.
+     * </p>
+     */
+    private volatile boolean fMeasuring;
+
+    /**
+     * <p>
+     * The identifier of the next probe measured over each transport, from 1 since probe 0 is never measured.
+     * </p>
+     */
+    private int[] fNextIds;
+
+    /**
+     * <p>
+     * Subjects the traffic of the clients to the impairments, or null if the network is not impaired.
+     * </p>
+     */
+    private ImpairmentProxy fProxy;
+
+    /**
+     * <p>
+     * The port on which the clients connect, which is that of the proxy if the network is impaired.
+     * </p>
+     */
+    private int fPort;
+
+    /**
+     * <p>
+     * Determines whether the probe clients are sending probes.
+     * </p>
+     */
+    private volatile boolean fProbing;
+
+    /**
+     * <p>
+     * The number of probes measured over each transport at the current load level.
+     * </p>
+     */
+    private int[] fSentCounts;
+
+    /**
+     * <p>
+     * The server being measured.
+     * </p>
+     */
+    private PCRemoteServer fServer;
+
+    /**
+     * <p>
+     * The port on which the server listens.
+     * </p>
+     */
+    private int fServerPort;
+
+    /**
+     * <p>
+     * Creates an instance of <code>LatencyHarness</code>.
+     * </p>
+     * 
+     * @param port The port on which the server listens.
+     * @param duration The time the latencies are measured for at each load level (in seconds).
+     * @param loads The load levels, as the number of other clients using the server at the same time.
+     */
+    public LatencyHarness(final int port, final int duration, final int[] loads)
+    {
+        fServerPort = port;
+        fDuration = duration;
+        fLoads = loads;
+
+        // One more than the probes measured so that probe 0 is never measured, with some to spare in case the probe clients run over.
+        fBackend = new ProbeInputBackend(TRANSPORT_NAMES.length, (duration + 1) * PROBE_RATE * loads.length + 1);
+        fImpairment = null;
+        fLoading = false;
+        fMeasuring = false;
+        fNextIds = new int[TRANSPORT_NAMES.length];
+        Arrays.fill(fNextIds, 1);
+        fPort = port;
+        fProbing = false;
+        fProxy = null;
+        fSentCounts = new int[TRANSPORT_NAMES.length];
+        fServer = new PCRemoteServer(port, fBackend);
+    }
+
+    /**
+     * <p>
+     * Disconnects a client.
+     * </p>
+     * 
+     * @param client The client to disconnect, or null if it never connected.
+     */
+    private void disconnect(final PCRemoteClient client)
+    {
+        if (client != null)
+        {
+            try
+            {
+                client.dispose();
+            }
+            catch (IOException e)
+            {
+                fLogger.error("Failed to disconnect client.", e);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Measures the latencies at a single load level.
+     * </p>
+     * 
+     * @param load The number of other clients using the server at the same time.
+     * @param report The writer to write the results to as CSV, or null if they are not written.
+     * 
+     * @throws InterruptedException Thrown if the calling thread is interrupted.
+     */
+    private void measure(final int load, final PrintWriter report) throws InterruptedException
+    {
+        fLoading = true;
+        Thread[] background = new Thread[load];
+        for (int index = 0; index < load; index++)
+        {
+            background[index] = new Thread(new Background());
+            background[index].setDaemon(true);
+            background[index].start();
+        }
+
+        fProbing = true;
+        Thread[] probes = new Thread[TRANSPORT_NAMES.length];
+        for (int transport = 0; transport < TRANSPORT_NAMES.length; transport++)
+        {
+            probes[transport] = new Thread(new Probe(transport));
+            probes[transport].setDaemon(true);
+            probes[transport].start();
+        }
+
+        Thread.sleep(WARMUP_TIME);
+        for (int transport = 0; transport < TRANSPORT_NAMES.length; transport++)
+        {
+            fBackend.getHistogram(transport).reset();
+            fSentCounts[transport] = 0;
+        }
+        fMeasuring = true;
+        Thread.sleep(fDuration * 1000L);
+        fMeasuring = false;
+
+        fProbing = false;
+        for (Thread probe : probes)
+        {
+            probe.join();
+        }
+        Thread.sleep(SETTLE_TIME);
+
+        for (int transport = 0; transport < TRANSPORT_NAMES.length; transport++)
+        {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.add(fBackend.getHistogram(transport));
+            report(TRANSPORT_NAMES[transport], load, fSentCounts[transport], histogram, report);
+        }
+
+        fLoading = false;
+        for (Thread client : background)
+        {
+            client.join();
+        }
+    }
+
+    /**
+     * <p>
+     * Reports the latencies measured over a single transport at a single load level.
+     * </p>
+     * 
+     * @param transport The name of the transport.
+     * @param load The number of other clients using the server at the same time.
+     * @param sentCount The number of probes measured.
+     * @param histogram The latencies of the probes that reached the backend.
+     * @param report The writer to write the results to as CSV, or null if they are not written.
+     */
+    private void report(final String transport, final int load, final int sentCount, final LatencyHistogram histogram, final PrintWriter report)
+    {
+        long lost = sentCount - histogram.getCount();
+        long p50 = histogram.getLatencyAtPercentile(50) / 1000;
+        long p90 = histogram.getLatencyAtPercentile(90) / 1000;
+        long p99 = histogram.getLatencyAtPercentile(99) / 1000;
+        long p999 = histogram.getLatencyAtPercentile(99.9) / 1000;
+        long max = histogram.getMax() / 1000;
+
+        fLogger.info(transport + "\t" + load + "\t" + sentCount + "\t" + lost + "\t" + p50 + "\t" + p90 + "\t" + p99 + "\t" + p999 + "\t" + max);
+        if (report != null)
+        {
+            report.println(transport + "," + load + "," + sentCount + "," + lost + "," + p50 + "," + p90 + "," + p99 + "," + p999 + "," + max);
+            report.flush();
+        }
+    }
+
+    /**
+     * <p>
+     * Starts the server, measures the latencies at each load level and then stops the server.
+     * </p>
+     * 
+     * @param report The writer to write the results to as CSV, or null if they are not written.
+     * 
+     * @throws InterruptedException Thrown if the calling thread is interrupted.
+     * @throws IOException Thrown if the server fails to be started or stopped.
+     */
+    public void run(final Writer report) throws InterruptedException, IOException
+    {
+        fServer.start();
+        if (fImpairment != null)
+        {
+            // The proxy listens on the two ports above those of the server.
+            fProxy = new ImpairmentProxy(fServerPort + 2, SERVER_HOST, fServerPort, fImpairment);
+            fProxy.start();
+            fPort = fProxy.getPort();
+
+            fLogger.info("Impairing the network: " + fImpairment);
+        }
+
+        PrintWriter csv = null;
+        if (report != null)
+        {
+            csv = new PrintWriter(report);
+            csv.println("transport,load,probes,lost,p50_us,p90_us,p99_us,p999_us,max_us");
+        }
+
+        fLogger.info("Measuring for " + fDuration + " seconds at each load level...");
+        fLogger.info("transport\tload\tprobes\tlost\tp50 (us)\tp90 (us)\tp99 (us)\tp99.9 (us)\tmax (us)");
+        for (int load : fLoads)
+        {
+            measure(load, csv);
+        }
+
+        if (csv != null)
+        {
+            csv.flush();
+        }
+        if (fProxy != null)
+        {
+            fLogger.info("Datagrams lost: " + fProxy.getLostCount() + ", duplicated: " + fProxy.getDuplicatedCount());
+            fProxy.dispose();
+            fProxy = null;
+            fPort = fServerPort;
+        }
+        fServer.stop();
+    }
+
+    /**
+     * <p>
+     * Sets the impairments of the network between the clients and the server. By default it is not impaired.
+     * </p>
+     * 
+     * @param impairment The impairments of the network between the clients and the server, or null if it is not impaired.
+     */
+    public void setImpairment(final NetworkImpairment impairment)
+    {
+        fImpairment = impairment;
+    }
+}
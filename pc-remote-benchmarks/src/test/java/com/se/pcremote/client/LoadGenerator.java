@@ -0,0 +1,638 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.client;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.se.pcremote.server.ClientSession;
+import com.se.pcremote.server.CountingInputBackend;
+import com.se.pcremote.server.InputScheduler;
+import com.se.pcremote.server.PCRemoteServer;
+
+/**
+ * <p>
+ * Simulates a number of {@link com.se.pcremote.client.PCRemoteClient PCRemoteClient}s using a {@link com.se.pcremote.server.PCRemoteServer
+ * PCRemoteServer} at once, both in this JVM over the loopback interface, to find out how many clients a server can handle. Each client sends a
+ * mix of:
+ * </p>
+ * 
+ * <ul>
+ * <li>Mouse movements via UDP, at a steady rate (as a phone's touchpad does while a finger is on it).</li>
+ * <li>Bursts of typing via TCP, a word at a time.</li>
+ * <li>Mouse clicks via TCP.</li>
+ * </ul>
+ * 
+ * <p>
+ * The clients are ordered and timed, as the Android app is. The server injects the input into a
+ * {@link com.se.pcremote.server.CountingInputBackend CountingInputBackend}, so what was sent can be compared with what got through. Once a
+ * second the rates at which input was sent and injected are reported, along with the number of threads the server is running and the heap in use
+ * (by the whole JVM, clients included). At the end the totals are reported, along with the input the server coalesced or dropped.
+ * </p>
+ * 
+ * <p>
+ * The server listens on port 11999 (and 11998 for UDP) by default, so that it does not clash with a server already running on this machine.
+ * </p>
+ * 
+ * <p>
+ * The generator is kept with the tests of this module so that it is not packaged with the benchmarks. Run it against the packaged benchmarks
+ * e.g. <code>java -cp target/benchmarks.jar:target/test-classes com.se.pcremote.client.LoadGenerator 50 30</code>.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class LoadGenerator
+{
+    /**
+     * <p>
+     * Starts the server, so that the threads it starts belong to the server's thread group.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class ServerStart implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            try
+            {
+                fServer.start();
+            }
+            catch (IOException e)
+            {
+                fLogger.error("Failed to start the server.", e);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Connects a single client to the server and sends its traffic until the load generator is stopped.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class Traffic implements Runnable
+    {
+        /**
+         * <p>
+         * Determines when each kind of traffic starts, so that the clients do not all send at the same moment.
+         * </p>
+         */
+        private Random fRandom;
+
+        /**
+         * <p>
+         * Creates an instance of <code>Traffic</code>.
+         * </p>
+         * 
+         * @param index The index of the client, which seeds the times at which it starts sending each kind of traffic.
+         */
+        public Traffic(final int index)
+        {
+            fRandom = new Random(index);
+        }
+
+        /**
+         * <p>
+         * Determines the time at which a kind of traffic is first sent, at random within its first period.
+         * </p>
+         * 
+         * @param now The current time (in nanoseconds).
+         * @param rate The number of times per second it is sent, or 0 if it is not sent.
+         * 
+         * @return The time at which it is first sent (in nanoseconds).
+         */
+        private long first(final long now, final int rate)
+        {
+            if (rate == 0)
+            {
+                return (Long.MAX_VALUE);
+            }
+
+            return (now + (long) (fRandom.nextDouble() * 1000000000L / rate));
+        }
+
+        /**
+         * <p>
+         * Determines the time at which a kind of traffic is next sent.
+         * </p>
+         * 
+         * @param last The time at which it was last sent (in nanoseconds).
+         * @param rate The number of times per second it is sent, or 0 if it is not sent.
+         * 
+         * @return The time at which it is next sent (in nanoseconds).
+         */
+        private long next(final long last, final int rate)
+        {
+            if (rate == 0)
+            {
+                return (Long.MAX_VALUE);
+            }
+
+            return (last + 1000000000L / rate);
+        }
+
+        @Override
+        public void run()
+        {
+            PCRemoteClient client = null;
+            try
+            {
+                client = new PCRemoteClient(SERVER_HOST, fPort);
+                client.setOrdered(true);
+                client.setTimed(true);
+                client.init();
+                fConnectedCount.incrementAndGet();
+
+                long now = System.nanoTime();
+                long nextClick = first(now, fClickRate);
+                long nextPointer = first(now, fPointerRate);
+                long nextTyping = first(now, fTypingRate);
+
+                while (fRunning && !Thread.currentThread().isInterrupted())
+                {
+                    long due = Math.min(nextClick, Math.min(nextPointer, nextTyping));
+                    long wait = due - System.nanoTime();
+                    if (wait > 0)
+                    {
+                        Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                    }
+
+                    if (nextPointer == due)
+                    {
+                        client.sendCommandViaUdp(POINTER_COMMAND);
+                        fSentPointerCount.incrementAndGet();
+                        nextPointer = next(nextPointer, fPointerRate);
+                    }
+                    else if (nextTyping == due)
+                    {
+                        client.typeText(TYPED_WORD);
+                        fSentKeyCount.addAndGet(TYPED_WORD.length());
+                        nextTyping = next(nextTyping, fTypingRate);
+                    }
+                    else
+                    {
+                        client.sendCommandViaTcp(CLICK_COMMAND);
+                        fSentClickCount.incrementAndGet();
+                        nextClick = next(nextClick, fClickRate);
+                    }
+                }
+
+                // Stay connected until the server has been reported on, disconnecting removes the client's session.
+                fDisconnect.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (IOException e)
+            {
+                fLogger.error("Client failed.", e);
+                fFailedCount.incrementAndGet();
+            }
+            finally
+            {
+                if (client != null)
+                {
+                    try
+                    {
+                        client.dispose();
+                    }
+                    catch (IOException e)
+                    {
+                        fLogger.error("Failed to disconnect client.", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * The default port on which the server listens.
+     * </p>
+     */
+    public static final int DEFAULT_PORT = 11999;
+
+    /**
+     * <p>
+     * The command sent for a mouse click.
+     * </p>
+     */
+    private static final String CLICK_COMMAND = "mousePress(1);mouseRelease(1);";
+
+    /**
+     * <p>
+     * The default number of mouse clicks each client sends per second.
+     * </p>
+     */
+    private static final int DEFAULT_CLICK_RATE = 1;
+
+    /**
+     * <p>
+     * The default time the load is generated for (in seconds).
+     * </p>
+     */
+    private static final int DEFAULT_DURATION = 30;
+
+    /**
+     * <p>
+     * The default number of mouse movements each client sends per second.
+     * </p>
+     */
+    private static final int DEFAULT_POINTER_RATE = 100;
+
+    /**
+     * <p>
+     * The default number of words each client types per second.
+     * </p>
+     */
+    private static final int DEFAULT_TYPING_RATE = 2;
+
+    /**
+     * <p>
+     * The command sent for a mouse movement.
+     * </p>
+     */
+    private static final String POINTER_COMMAND = "mouseMoveRelative(3,-2);";
+
+    /**
+     * <p>
+     * The time interval between reports (in milliseconds).
+     * </p>
+     */
+    private static final int REPORT_INTERVAL = 1000;
+
+    /**
+     * <p>
+     * The host on which the server runs.
+     * </p>
+     */
+    private static final String SERVER_HOST = "127.0.0.1";
+
+    /**
+     * <p>
+     * The time allowed for the input in flight to be injected after the clients stop sending (in milliseconds).
+     * </p>
+     */
+    private static final int SETTLE_TIME = 500;
+
+    /**
+     * <p>
+     * The word typed in each burst of typing, without capitals so that each character is a single key press.
+     * </p>
+     */
+    private static final String TYPED_WORD = "hello ";
+
+    /**
+     * <p>
+     * Logs messages associated with this class.
+     * </p>
+     */
+    private static Logger fLogger = Logger.getLogger(LoadGenerator.class);
+
+    /**
+     * <p>
+     * Checks the validity of the arguments provided to the command line utility.
+     * </p>
+     * 
+     * @param args The arguments provided to the command line utility when it was started.
+     */
+    public static void checkArgs(final String[] args)
+    {
+        if (args.length < 1 || args.length > 5)
+        {
+            throw new IllegalArgumentException("The wrong number of arguments were specified (the number of clients must be specified and "
+                    + "optionally the duration and the rates).");
+        }
+
+        for (String arg : args)
+        {
+            try
+            {
+                if (Integer.parseInt(arg) < 0)
+                {
+                    throw new IllegalArgumentException("An invalid argument was specified (must not be negative).");
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("An invalid argument was specified (must be an integer).");
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Generates load on a server until the duration has elapsed and reports on how the server coped.
+     * </p>
+     * 
+     * @param args The arguments provided to the command line utility when it was started.
+     */
+    public static void main(final String[] args)
+    {
+        try
+        {
+            checkArgs(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            fLogger.fatal(e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        int[] values = new int[] {0, DEFAULT_DURATION, DEFAULT_POINTER_RATE, DEFAULT_TYPING_RATE, DEFAULT_CLICK_RATE};
+        for (int index = 0; index < args.length; index++)
+        {
+            values[index] = Integer.parseInt(args[index]);
+        }
+
+        try
+        {
+            LoadGenerator generator = new LoadGenerator(DEFAULT_PORT, values[0], values[2], values[3], values[4]);
+            generator.run(values[1]);
+        }
+        catch (Exception e)
+        {
+            fLogger.fatal("Epic fail!", e);
+        }
+
+        System.exit(0);
+    }
+
+    /**
+     * <p>
+     * Prints usage instructions for the command line utility.
+     * </p>
+     */
+    public static void printUsage()
+    {
+        fLogger.info("Usage:");
+        fLogger.info("\tLoadGenerator clients [seconds [pointerRate [typingRate [clickRate]]]]");
+        fLogger.info("Where:");
+        fLogger.info("\t clients = The number of clients to simulate.");
+        fLogger.info("\t seconds = The time to generate load for (default is " + DEFAULT_DURATION + ").");
+        fLogger.info("\t pointerRate = The mouse movements each client sends per second via UDP (default is " + DEFAULT_POINTER_RATE + ").");
+        fLogger.info("\t typingRate = The words each client types per second via TCP (default is " + DEFAULT_TYPING_RATE + ").");
+        fLogger.info("\t clickRate = The mouse clicks each client sends per second via TCP (default is " + DEFAULT_CLICK_RATE + ").");
+    }
+
+    /**
+     * <p>
+     * Counts the input the server injects.
+     * </p>
+     */
+    private CountingInputBackend fBackend;
+
+    /**
+     * <p>
+     * The number of mouse clicks each client sends per second, or 0 if it sends none.
+     * </p>
+     */
+    private int fClickRate;
+
+    /**
+     * <p>
+     * The number of clients to simulate.
+     * </p>
+     */
+    private int fClientCount;
+
+    /**
+     * <p>
+     * The thread group the clients (and the threads they start) belong to.
+     * </p>
+     */
+    private ThreadGroup fClientGroup;
+
+    /**
+     * <p>
+     * The number of clients that connected to the server.
+     * </p>
+     */
+    private AtomicInteger fConnectedCount;
+
+    /**
+     * <p>
+     * Signals the clients to disconnect.
+     * </p>
+     */
+    private CountDownLatch fDisconnect;
+
+    /**
+     * <p>
+     * The number of clients that failed.
+     * </p>
+     */
+    private AtomicInteger fFailedCount;
+
+    /**
+     * <p>
+     * The number of mouse movements each client sends per second, or 0 if it sends none.
+     * </p>
+     */
+    private int fPointerRate;
+
+    /**
+     * <p>
+     * The port on which the server listens.
+     * </p>
+     */
+    private int fPort;
+
+    /**
+     * <p>
+     * Determines whether the clients are sending their traffic.
+     * </p>
+     */
+    private volatile boolean fRunning;
+
+    /**
+     * <p>
+     * The number of mouse clicks sent.
+     * </p>
+     */
+    private AtomicLong fSentClickCount;
+
+    /**
+     * <p>
+     * The number of key presses sent (as typed text).
+     * </p>
+     */
+    private AtomicLong fSentKeyCount;
+
+    /**
+     * <p>
+     * The number of mouse movements sent.
+     * </p>
+     */
+    private AtomicLong fSentPointerCount;
+
+    /**
+     * <p>
+     * The server under load.
+     * </p>
+     */
+    private PCRemoteServer fServer;
+
+    /**
+     * <p>
+     * The thread group the server's threads belong to.
+     * </p>
+     */
+    private ThreadGroup fServerGroup;
+
+    /**
+     * <p>
+     * The number of words each client types per second, or 0 if it types none.
+     * </p>
+     */
+    private int fTypingRate;
+
+    /**
+     * <p>
+     * Creates an instance of <code>LoadGenerator</code>.
+     * </p>
+     * 
+     * @param port The port on which the server listens.
+     * @param clientCount The number of clients to simulate.
+     * @param pointerRate The number of mouse movements each client sends per second via UDP, or 0 if it sends none.
+     * @param typingRate The number of words each client types per second via TCP, or 0 if it types none.
+     * @param clickRate The number of mouse clicks each client sends per second via TCP, or 0 if it sends none.
+     */
+    public LoadGenerator(final int port, final int clientCount, final int pointerRate, final int typingRate, final int clickRate)
+    {
+        fPort = port;
+        fClientCount = clientCount;
+        fPointerRate = pointerRate;
+        fTypingRate = typingRate;
+        fClickRate = clickRate;
+
+        fBackend = new CountingInputBackend();
+        fClientGroup = new ThreadGroup("clients");
+        fConnectedCount = new AtomicInteger();
+        fDisconnect = new CountDownLatch(1);
+        fFailedCount = new AtomicInteger();
+        fRunning = false;
+        fSentClickCount = new AtomicLong();
+        fSentKeyCount = new AtomicLong();
+        fSentPointerCount = new AtomicLong();
+        fServer = new PCRemoteServer(port, fBackend);
+        fServerGroup = new ThreadGroup("server");
+    }
+
+    /**
+     * <p>
+     * Reports the input sent and injected, and the input the server coalesced or dropped.
+     * </p>
+     * 
+     * @param elapsed The time the load was generated for (in nanoseconds).
+     */
+    private void reportTotals(final long elapsed)
+    {
+        long coalesced = 0;
+        long dropped = 0;
+        for (ClientSession session : fServer.getSessionTable().getSessions())
+        {
+            coalesced += session.getRateLimiter().getCoalescedCount();
+            dropped += session.getRateLimiter().getDroppedCount();
+        }
+        InputScheduler scheduler = fServer.getInputScheduler();
+        coalesced += scheduler.getMergedCount();
+        dropped += scheduler.getDeniedCount() + scheduler.getExpiredCount();
+
+        double seconds = elapsed / 1000000000.0;
+        long injected = fBackend.getMouseMoveCount() + fBackend.getKeyPressCount() + fBackend.getMousePressCount();
+        fLogger.info("Clients connected: " + fConnectedCount.get() + " of " + fClientCount + " (" + fFailedCount.get() + " failed)");
+        fLogger.info("Sent: " + fSentPointerCount.get() + " movements, " + fSentKeyCount.get() + " key presses, " + fSentClickCount.get()
+                + " clicks");
+        fLogger.info("Injected: " + fBackend.getMouseMoveCount() + " movements, " + fBackend.getKeyPressCount() + " key presses, "
+                + fBackend.getMousePressCount() + " clicks in " + fBackend.getFlushCount() + " batches");
+        fLogger.info("Throughput: " + Math.round(injected / seconds) + " events injected per second");
+        fLogger.info("Coalesced by the server: " + coalesced + " events");
+        fLogger.info("Dropped by the server: " + dropped + " events");
+
+        // Datagrams lost by the socket and movements merged on receipt are not counted by the server.
+        long sent = fSentPointerCount.get() + fSentKeyCount.get() + fSentClickCount.get();
+        fLogger.info("Not accounted for (lost in transit or merged on receipt): " + (sent - injected - coalesced - dropped) + " events");
+    }
+
+    /**
+     * <p>
+     * Starts the server, connects the clients and has them send their traffic for the given time while reporting on how the server copes, then
+     * disconnects them and stops the server.
+     * </p>
+     * 
+     * @param duration The time to generate load for (in seconds).
+     * 
+     * @throws InterruptedException Thrown if the calling thread is interrupted.
+     * @throws IOException Thrown if the server fails to be stopped.
+     */
+    public void run(final int duration) throws InterruptedException, IOException
+    {
+        Thread serverStart = new Thread(fServerGroup, new ServerStart());
+        serverStart.start();
+        serverStart.join();
+
+        fLogger.info("Simulating " + fClientCount + " clients for " + duration + " seconds...");
+        fRunning = true;
+        Thread[] clients = new Thread[fClientCount];
+        for (int index = 0; index < fClientCount; index++)
+        {
+            clients[index] = new Thread(fClientGroup, new Traffic(index));
+            clients[index].setDaemon(true);
+            clients[index].start();
+        }
+
+        fLogger.info("seconds\tclients\tsent/s (move key click)\tinjected/s (move key click)\tqueued\tserver threads\theap (MB)");
+        long start = System.nanoTime();
+        long[] last = new long[6];
+        for (int second = 1; second <= duration; second++)
+        {
+            long wait = start + second * REPORT_INTERVAL * 1000000L - System.nanoTime();
+            if (wait > 0)
+            {
+                Thread.sleep(wait / 1000000L);
+            }
+
+            long[] current = new long[] {fSentPointerCount.get(), fSentKeyCount.get(), fSentClickCount.get(), fBackend.getMouseMoveCount(),
+                    fBackend.getKeyPressCount(), fBackend.getMousePressCount()};
+            fLogger.info(second + "\t" + fConnectedCount.get() + "\t" + (current[0] - last[0]) + " " + (current[1] - last[1]) + " "
+                    + (current[2] - last[2]) + "\t" + (current[3] - last[3]) + " " + (current[4] - last[4]) + " " + (current[5] - last[5]) + "\t"
+                    + fServer.getInputScheduler().getQueuedCount() + "\t" + fServerGroup.activeCount() + "\t"
+                    + ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024));
+            last = current;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // Stop sending and let the input in flight be injected before the sessions are removed.
+        fRunning = false;
+        Thread.sleep(SETTLE_TIME);
+        reportTotals(elapsed);
+
+        fDisconnect.countDown();
+        for (Thread client : clients)
+        {
+            client.join();
+        }
+        fServer.stop();
+    }
+}
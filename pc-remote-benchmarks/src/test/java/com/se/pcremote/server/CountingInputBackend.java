@@ -0,0 +1,226 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Counts the input rather than injecting it, so that the input that makes it through the server can be compared with the input that was sent.
+ * The counts can be read from any thread while the input is being counted.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class CountingInputBackend implements InputBackend
+{
+    /**
+     * <p>
+     * The number of times the input was flushed.
+     * </p>
+     */
+    private AtomicLong fFlushCount;
+
+    /**
+     * <p>
+     * The number of key presses.
+     * </p>
+     */
+    private AtomicLong fKeyPressCount;
+
+    /**
+     * <p>
+     * The number of key releases.
+     * </p>
+     */
+    private AtomicLong fKeyReleaseCount;
+
+    /**
+     * <p>
+     * The number of mouse movements, absolute or relative.
+     * </p>
+     */
+    private AtomicLong fMouseMoveCount;
+
+    /**
+     * <p>
+     * The number of mouse button presses.
+     * </p>
+     */
+    private AtomicLong fMousePressCount;
+
+    /**
+     * <p>
+     * The number of mouse button releases.
+     * </p>
+     */
+    private AtomicLong fMouseReleaseCount;
+
+    /**
+     * <p>
+     * The number of mouse wheel spins.
+     * </p>
+     */
+    private AtomicLong fMouseWheelCount;
+
+    /**
+     * <p>
+     * Creates an instance of <code>CountingInputBackend</code>.
+     * </p>
+     */
+    public CountingInputBackend()
+    {
+        fFlushCount = new AtomicLong();
+        fKeyPressCount = new AtomicLong();
+        fKeyReleaseCount = new AtomicLong();
+        fMouseMoveCount = new AtomicLong();
+        fMousePressCount = new AtomicLong();
+        fMouseReleaseCount = new AtomicLong();
+        fMouseWheelCount = new AtomicLong();
+    }
+
+    @Override
+    public void dispose()
+    {}
+
+    @Override
+    public void flush()
+    {
+        fFlushCount.incrementAndGet();
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of times the input was flushed, which is once per batch of commands executed.
+     * </p>
+     * 
+     * @return The number of times the input was flushed.
+     */
+    public long getFlushCount()
+    {
+        return (fFlushCount.get());
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of key presses.
+     * </p>
+     * 
+     * @return The number of key presses.
+     */
+    public long getKeyPressCount()
+    {
+        return (fKeyPressCount.get());
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of key releases.
+     * </p>
+     * 
+     * @return The number of key releases.
+     */
+    public long getKeyReleaseCount()
+    {
+        return (fKeyReleaseCount.get());
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of mouse movements, absolute or relative.
+     * </p>
+     * 
+     * @return The number of mouse movements.
+     */
+    public long getMouseMoveCount()
+    {
+        return (fMouseMoveCount.get());
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of mouse button presses.
+     * </p>
+     * 
+     * @return The number of mouse button presses.
+     */
+    public long getMousePressCount()
+    {
+        return (fMousePressCount.get());
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of mouse button releases.
+     * </p>
+     * 
+     * @return The number of mouse button releases.
+     */
+    public long getMouseReleaseCount()
+    {
+        return (fMouseReleaseCount.get());
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of mouse wheel spins.
+     * </p>
+     * 
+     * @return The number of mouse wheel spins.
+     */
+    public long getMouseWheelCount()
+    {
+        return (fMouseWheelCount.get());
+    }
+
+    @Override
+    public void keyPress(final int keyCode)
+    {
+        fKeyPressCount.incrementAndGet();
+    }
+
+    @Override
+    public void keyRelease(final int keyCode)
+    {
+        fKeyReleaseCount.incrementAndGet();
+    }
+
+    @Override
+    public void mouseMove(final int x, final int y)
+    {
+        fMouseMoveCount.incrementAndGet();
+    }
+
+    @Override
+    public void mouseMoveRelative(final int x, final int y)
+    {
+        fMouseMoveCount.incrementAndGet();
+    }
+
+    @Override
+    public void mousePress(final int mouseButton)
+    {
+        fMousePressCount.incrementAndGet();
+    }
+
+    @Override
+    public void mouseRelease(final int mouseButton)
+    {
+        fMouseReleaseCount.incrementAndGet();
+    }
+
+    @Override
+    public void mouseWheel(final int notches)
+    {
+        fMouseWheelCount.incrementAndGet();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Measures the time each probe takes to get from a client to the backend. A probe is an absolute mouse movement whose coordinates identify it:
+ * <code>mouseMove(id,channel);</code>. The time at which each probe was sent is set with {@link #setSentTime(int, int, long)} before it is
+ * sent and when it reaches this backend its latency is recorded in the histogram of its channel. Probes that were not given a sent time (e.g.
+ * those sent while warming up) are not recorded, and the rest of the input is discarded.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ProbeInputBackend implements InputBackend
+{
+    /**
+     * <p>
+     * The latencies of the probes of each channel.
+     * </p>
+     */
+    private LatencyHistogram[] fHistograms;
+
+    /**
+     * <p>
+     * The time at which each probe of each channel was sent (in nanoseconds), or 0 if it is not measured.
+     * </p>
+     */
+    private AtomicLongArray[] fSentTimes;
+
+    /**
+     * <p>
+     * Creates an instance of <code>ProbeInputBackend</code>.
+     * </p>
+     * 
+     * @param channelCount The number of channels the probes are sent over.
+     * @param capacity The number of probes that can be sent over each channel.
+     */
+    public ProbeInputBackend(final int channelCount, final int capacity)
+    {
+        fHistograms = new LatencyHistogram[channelCount];
+        fSentTimes = new AtomicLongArray[channelCount];
+        for (int channel = 0; channel < channelCount; channel++)
+        {
+            fHistograms[channel] = new LatencyHistogram();
+            fSentTimes[channel] = new AtomicLongArray(capacity);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {}
+
+    @Override
+    public void flush()
+    {}
+
+    /**
+     * <p>
+     * Retrieves the latencies of the probes of the given channel.
+     * </p>
+     * 
+     * @param channel The channel.
+     * 
+     * @return The latencies of the probes of the given channel.
+     */
+    public LatencyHistogram getHistogram(final int channel)
+    {
+        return (fHistograms[channel]);
+    }
+
+    @Override
+    public void keyPress(final int keyCode)
+    {}
+
+    @Override
+    public void keyRelease(final int keyCode)
+    {}
+
+    @Override
+    public void mouseMove(final int x, final int y)
+    {
+        long now = System.nanoTime();
+        if (y < 0 || y >= fSentTimes.length || x < 0 || x >= fSentTimes[y].length())
+        {
+            return;
+        }
+
+        // Each probe is only measured once, even if it is received more than once.
+        long sentTime = fSentTimes[y].getAndSet(x, 0);
+        if (sentTime != 0)
+        {
+            fHistograms[y].record(now - sentTime);
+        }
+    }
+
+    @Override
+    public void mouseMoveRelative(final int x, final int y)
+    {}
+
+    @Override
+    public void mousePress(final int mouseButton)
+    {}
+
+    @Override
+    public void mouseRelease(final int mouseButton)
+    {}
+
+    @Override
+    public void mouseWheel(final int notches)
+    {}
+
+    /**
+     * <p>
+     * Sets the time at which a probe was sent.
+     * </p>
+     * 
+     * @param channel The channel the probe is sent over.
+     * @param id The identifier of the probe.
+     * @param sentTime The time at which the probe was sent (in nanoseconds).
+     */
+    public void setSentTime(final int channel, final int id, final long sentTime)
+    {
+        fSentTimes[channel].set(id, sentTime);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote;
+
+/**
+ * <p>
+ * The format of the datagrams that carry a snapshot of a client's input state, rather than individual commands. Because every snapshot carries
+ * the whole of the state that matters, a lost snapshot is made up for by the next one: a button does not stick because its release was lost and a
+ * click is not lost because its press was.
+ * </p>
+ * 
+ * <p>
+ * A snapshot is made up of:
+ * </p>
+ * 
+ * <ul>
+ * <li>The {@link #SNAPSHOT_MARKER} (1 byte).</li>
+ * <li>The sequence number of the snapshot (4 bytes).</li>
+ * <li>The number of pointer deltas (1 byte, at most {@link #MAX_DELTAS}) followed by the deltas, oldest first. Each delta is the pointer movement
+ * (x and y) and wheel movement (4 bytes each) that occurred before one of the snapshots, the last delta belongs to this snapshot, the one before it
+ * to the previous snapshot and so on. The deltas of every snapshot that has not been acknowledged are repeated so that the movement in a lost
+ * snapshot is applied when the next one arrives.</li>
+ * <li>The number of inputs (1 byte, at most {@link #MAX_INPUTS}) followed by the inputs. Each input is a key code or mouse button (4 bytes), the
+ * {@link #BUTTON} and {@link #PRESSED} flags (1 byte) and the number of times the input has been pressed, modulo 256 (1 byte). Every input that is
+ * pressed is included, as is every input that has been pressed or released since the last snapshot acknowledged.</li>
+ * </ul>
+ * 
+ * <p>
+ * Each snapshot applied is acknowledged with the {@link #ACK_MARKER} (1 byte) followed by the sequence number of the latest snapshot applied (4
+ * bytes).
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public final class InputSnapshot
+{
+    /**
+     * <p>
+     * The number of bytes in an acknowledgement of a snapshot.
+     * </p>
+     */
+    public static final int ACK_LENGTH = 5;
+
+    /**
+     * <p>
+     * The first byte of an acknowledgement of a snapshot.
+     * </p>
+     */
+    public static final byte ACK_MARKER = -5;
+
+    /**
+     * <p>
+     * The flag that is set if an input is a mouse button rather than a key.
+     * </p>
+     */
+    public static final int BUTTON = 0x1;
+
+    /**
+     * <p>
+     * The number of bytes in a pointer delta.
+     * </p>
+     */
+    public static final int DELTA_LENGTH = 12;
+
+    /**
+     * <p>
+     * The number of bytes in the header of a snapshot.
+     * </p>
+     */
+    public static final int HEADER_LENGTH = 5;
+
+    /**
+     * <p>
+     * The number of bytes in an input.
+     * </p>
+     */
+    public static final int INPUT_LENGTH = 6;
+
+    /**
+     * <p>
+     * The maximum number of pointer deltas in a snapshot.
+     * </p>
+     */
+    public static final int MAX_DELTAS = 16;
+
+    /**
+     * <p>
+     * The maximum number of inputs in a snapshot.
+     * </p>
+     */
+    public static final int MAX_INPUTS = 32;
+
+    /**
+     * <p>
+     * The maximum number of bytes in a snapshot.
+     * </p>
+     */
+    public static final int MAX_LENGTH = HEADER_LENGTH + 1 + MAX_DELTAS * DELTA_LENGTH + 1 + MAX_INPUTS * INPUT_LENGTH;
+
+    /**
+     * <p>
+     * The flag that is set if an input is pressed.
+     * </p>
+     */
+    public static final int PRESSED = 0x2;
+
+    /**
+     * <p>
+     * The first byte of a snapshot.
+     * </p>
+     */
+    public static final byte SNAPSHOT_MARKER = -4;
+
+    /**
+     * <p>
+     * Hidden constructor, this class only holds constants.
+     * </p>
+     */
+    private InputSnapshot()
+    {}
+}
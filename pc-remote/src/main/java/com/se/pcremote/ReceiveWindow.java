@@ -0,0 +1,326 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * The receiving end of a {@link com.se.pcremote.UdpClient UdpClient}'s reliable datagrams from a single sender. It suppresses duplicates (which are
+ * inevitable when the acknowledgement of a datagram is lost and the sender retransmits it) and produces the selective acknowledgements that tell
+ * the sender which datagrams have arrived.
+ * </p>
+ * 
+ * <p>
+ * Reliable datagrams are not held back waiting for earlier ones that have been lost, they are passed on as soon as they arrive. This means that a
+ * lost datagram only delays itself and not every datagram sent after it.
+ * </p>
+ * 
+ * <p>
+ * An acknowledgement is made up of {@link #ACK_LENGTH} bytes: the {@link #ACK_MARKER}, the epoch of the sender's
+ * {@link com.se.pcremote.SendWindow SendWindow}, the sequence number of the next datagram expected (every datagram before it has arrived) and a
+ * bit mask of the datagrams after it that have arrived. Bit <code>i</code> of the mask is set if the datagram with the sequence number
+ * <code>next + 1 + i</code> has arrived.
+ * </p>
+ * 
+ * <p>
+ * A sender that restarts (and so starts numbering its datagrams from 0 again) picks a new epoch. When one of the first datagrams of a new epoch
+ * arrives the window starts afresh, so the datagrams of the new sender are not mistaken for duplicates even if it reuses the address of the old
+ * one. The last few epochs the window has moved on from are remembered and their datagrams are dropped, so a datagram of the old sender that
+ * was delayed in the network cannot move the window back (after which every retransmission of the new sender would be accepted again).
+ * Datagrams of another epoch from further into its sequence are dropped too, they cannot be the start of a new sender.
+ * </p>
+ * 
+ * <p>
+ * A <code>ReceiveWindow</code> is not thread safe, it is only expected to be used by the thread receiving the datagrams.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ReceiveWindow
+{
+    /**
+     * <p>
+     * The number of bytes in an acknowledgement.
+     * </p>
+     */
+    public static final int ACK_LENGTH = 17;
+
+    /**
+     * <p>
+     * The first byte of an acknowledgement.
+     * </p>
+     */
+    public static final byte ACK_MARKER = -3;
+
+    /**
+     * <p>
+     * The number of epochs the window has moved on from that are remembered.
+     * </p>
+     */
+    private static final int RETIRED_EPOCH_COUNT = 4;
+
+    /**
+     * <p>
+     * The number of datagrams after the next datagram expected that can be acknowledged selectively.
+     * </p>
+     */
+    private static final int WINDOW_SIZE = 64;
+
+    /**
+     * <p>
+     * The number of duplicate datagrams that have been suppressed.
+     * </p>
+     */
+    private long fDuplicateCount;
+
+    /**
+     * <p>
+     * The epoch of the sender whose datagrams are being received.
+     * </p>
+     */
+    private int fEpoch;
+
+    /**
+     * <p>
+     * Determines which of the datagrams after the next datagram expected have arrived.
+     * </p>
+     */
+    private long fMask;
+
+    /**
+     * <p>
+     * The sequence number of the next datagram expected, every datagram before it has arrived (or has been given up on).
+     * </p>
+     */
+    private int fNext;
+
+    /**
+     * <p>
+     * The number of epochs the window has moved on from, including those that are no longer remembered.
+     * </p>
+     */
+    private int fRetiredEpochCount;
+
+    /**
+     * <p>
+     * The epochs the window has moved on from, most recent last (in a circular fashion).
+     * </p>
+     */
+    private int[] fRetiredEpochs;
+
+    /**
+     * <p>
+     * The number of datagrams dropped because they were from an epoch the window has moved on from or could not be the start of a new epoch.
+     * </p>
+     */
+    private long fStaleCount;
+
+    /**
+     * <p>
+     * Creates an instance of <code>ReceiveWindow</code>.
+     * </p>
+     * 
+     * @param epoch The epoch of the sender whose datagrams are being received.
+     */
+    public ReceiveWindow(final int epoch)
+    {
+        fEpoch = epoch;
+
+        fDuplicateCount = 0;
+        fMask = 0;
+        fNext = 0;
+        fRetiredEpochCount = 0;
+        fRetiredEpochs = new int[RETIRED_EPOCH_COUNT];
+        fStaleCount = 0;
+    }
+
+    /**
+     * <p>
+     * Moves the next datagram expected on by one, along with any datagrams after it that have already arrived.
+     * </p>
+     */
+    private void advance()
+    {
+        fNext++;
+
+        // Bit 0 now represents the next datagram expected.
+        while ((fMask & 1) != 0)
+        {
+            fMask >>>= 1;
+            fNext++;
+        }
+        fMask >>>= 1;
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of duplicate datagrams that have been suppressed.
+     * </p>
+     * 
+     * @return The number of duplicate datagrams that have been suppressed.
+     */
+    public long getDuplicateCount()
+    {
+        return (fDuplicateCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the epoch of the sender whose datagrams are being received.
+     * </p>
+     * 
+     * @return The epoch of the sender whose datagrams are being received.
+     */
+    public int getEpoch()
+    {
+        return (fEpoch);
+    }
+
+    /**
+     * <p>
+     * Retrieves the bit mask of the datagrams after the next datagram expected that have arrived.
+     * </p>
+     * 
+     * @return The bit mask of the datagrams after the next datagram expected that have arrived.
+     */
+    public long getMask()
+    {
+        return (fMask);
+    }
+
+    /**
+     * <p>
+     * Retrieves the sequence number of the next datagram expected.
+     * </p>
+     * 
+     * @return The sequence number of the next datagram expected.
+     */
+    public int getNext()
+    {
+        return (fNext);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of datagrams dropped because they were from an epoch the window has moved on from or could not be the start of a new
+     * epoch.
+     * </p>
+     * 
+     * @return The number of datagrams dropped because they were from another epoch.
+     */
+    public long getStaleCount()
+    {
+        return (fStaleCount);
+    }
+
+    /**
+     * <p>
+     * Determines whether the window has moved on from the given epoch (as far as it remembers).
+     * </p>
+     * 
+     * @param epoch The epoch.
+     * 
+     * @return True if the window has moved on from the given epoch, false otherwise.
+     */
+    private boolean isRetired(final int epoch)
+    {
+        for (int index = 0; index < Math.min(fRetiredEpochCount, RETIRED_EPOCH_COUNT); index++)
+        {
+            if (fRetiredEpochs[index] == epoch)
+            {
+                return (true);
+            }
+        }
+
+        return (false);
+    }
+
+    /**
+     * <p>
+     * Records the arrival of the datagram with the given sequence number. If the datagram is one of the first of a new epoch of the sender the
+     * window starts afresh, if it is from an epoch the window has moved on from (or from further into the sequence of another epoch) it is dropped.
+     * </p>
+     * 
+     * @param epoch The epoch of the sender of the datagram.
+     * @param sequenceNumber The sequence number of the datagram.
+     * 
+     * @return True if the datagram has not arrived before, false if it is a duplicate or it was dropped.
+     */
+    public boolean receive(final int epoch, final int sequenceNumber)
+    {
+        if (epoch != fEpoch)
+        {
+            if (isRetired(epoch) || sequenceNumber < 0 || sequenceNumber >= WINDOW_SIZE)
+            {
+                fStaleCount++;
+                return (false);
+            }
+
+            fRetiredEpochs[fRetiredEpochCount % RETIRED_EPOCH_COUNT] = fEpoch;
+            fRetiredEpochCount++;
+            fEpoch = epoch;
+            fMask = 0;
+            fNext = 0;
+        }
+
+        int distance = sequenceNumber - fNext;
+
+        if (distance < 0)
+        {
+            fDuplicateCount++;
+            return (false);
+        }
+
+        if (distance == 0)
+        {
+            advance();
+            return (true);
+        }
+
+        // Give up on the oldest datagrams if this one is too far ahead to be acknowledged selectively.
+        if (distance > WINDOW_SIZE * 2)
+        {
+            fNext = sequenceNumber - WINDOW_SIZE;
+            fMask = 0;
+        }
+        while (sequenceNumber - fNext > WINDOW_SIZE)
+        {
+            advance();
+        }
+
+        long bit = 1L << (sequenceNumber - fNext - 1);
+        if ((fMask & bit) != 0)
+        {
+            fDuplicateCount++;
+            return (false);
+        }
+        fMask |= bit;
+
+        return (true);
+    }
+
+    /**
+     * <p>
+     * Writes an acknowledgement of the datagrams that have arrived to the given buffer.
+     * </p>
+     * 
+     * @param buffer The buffer to write the acknowledgement to, at its position.
+     */
+    public void writeAck(final ByteBuffer buffer)
+    {
+        buffer.put(ACK_MARKER);
+        buffer.putInt(fEpoch);
+        buffer.putInt(fNext);
+        buffer.putLong(fMask);
+    }
+}
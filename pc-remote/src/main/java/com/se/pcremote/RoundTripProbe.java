@@ -0,0 +1,368 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Measures the quality of a {@link com.se.pcremote.Client Client}'s connection with echo probes. The client periodically sends a probe request
+ * that carries a sequence number and the time at which it was sent, the client at the other end of the connection sends it straight back as a
+ * probe reply and the time it took to come back is the round trip time. Only the sender interprets the time it carries so the clocks at either end
+ * of the connection do not need to agree.
+ * </p>
+ * 
+ * <p>
+ * From the replies a <code>RoundTripProbe</code> keeps the smoothed round trip time (as TCP does, see RFC 6298), the jitter (the smoothed
+ * difference between consecutive round trip times, as RTP does, see RFC 3550) and the proportion of the most recent probes that were lost. A probe
+ * that has not been replied to by the time the next probe is sent is counted as lost, so the probe interval should be well above the round trip
+ * time.
+ * </p>
+ * 
+ * <p>
+ * A probe request is made up of the {@link #REQUEST_MARKER}, the sequence number and the time at which it was sent (in nanoseconds), a probe reply
+ * is the same but starts with the {@link #REPLY_MARKER}. Both are {@link #LENGTH} bytes long.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class RoundTripProbe
+{
+    /**
+     * <p>
+     * The number of bytes in a probe request or reply.
+     * </p>
+     */
+    public static final int LENGTH = 13;
+
+    /**
+     * <p>
+     * The first byte of a probe reply.
+     * </p>
+     */
+    public static final byte REPLY_MARKER = -7;
+
+    /**
+     * <p>
+     * The first byte of a probe request.
+     * </p>
+     */
+    public static final byte REQUEST_MARKER = -6;
+
+    /**
+     * <p>
+     * The number of the most recent probes the loss rate is calculated over.
+     * </p>
+     */
+    private static final int LOSS_WINDOW = 32;
+
+    /**
+     * <p>
+     * Determines whether the given data is a probe reply.
+     * </p>
+     * 
+     * @param data The data, between its position and limit.
+     * 
+     * @return True if the given data is a probe reply, false otherwise.
+     */
+    public static boolean isReply(final ByteBuffer data)
+    {
+        return (data.remaining() == LENGTH && data.get(data.position()) == REPLY_MARKER);
+    }
+
+    /**
+     * <p>
+     * Determines whether the given data is a probe request.
+     * </p>
+     * 
+     * @param data The data, between its position and limit.
+     * 
+     * @return True if the given data is a probe request, false otherwise.
+     */
+    public static boolean isRequest(final ByteBuffer data)
+    {
+        return (data.remaining() == LENGTH && data.get(data.position()) == REQUEST_MARKER);
+    }
+
+    /**
+     * <p>
+     * Writes the reply to a probe request.
+     * </p>
+     * 
+     * @param request The probe request, between its position and limit. Its position is not changed.
+     * @param reply The buffer to write the reply to.
+     */
+    public static void writeReply(final ByteBuffer request, final ByteBuffer reply)
+    {
+        reply.put(REPLY_MARKER);
+        for (int index = 1; index < LENGTH; index++)
+        {
+            reply.put(request.get(request.position() + index));
+        }
+    }
+
+    /**
+     * <p>
+     * Determines whether the latest probe has been replied to.
+     * </p>
+     */
+    private boolean fAnswered;
+
+    /**
+     * <p>
+     * The smoothed difference between consecutive round trip times (in nanoseconds).
+     * </p>
+     */
+    private long fJitter;
+
+    /**
+     * <p>
+     * The latest round trip time measured (in nanoseconds), or -1 if none has been measured yet.
+     * </p>
+     */
+    private long fLastRoundTripTime;
+
+    /**
+     * <p>
+     * Whether each of the most recent probes was lost, in a ring.
+     * </p>
+     */
+    private boolean[] fLosses;
+
+    /**
+     * <p>
+     * The number of probes that were lost.
+     * </p>
+     */
+    private long fLostCount;
+
+    /**
+     * <p>
+     * The sequence number of the next probe.
+     * </p>
+     */
+    private int fNext;
+
+    /**
+     * <p>
+     * The number of probes that were replied to.
+     * </p>
+     */
+    private long fReplyCount;
+
+    /**
+     * <p>
+     * The number of probes sent.
+     * </p>
+     */
+    private long fSentCount;
+
+    /**
+     * <p>
+     * The smoothed round trip time (in nanoseconds), or -1 if it has not been measured yet.
+     * </p>
+     */
+    private long fSmoothedRoundTripTime;
+
+    /**
+     * <p>
+     * Creates an instance of <code>RoundTripProbe</code>.
+     * </p>
+     */
+    public RoundTripProbe()
+    {
+        fAnswered = true;
+        fJitter = 0;
+        fLastRoundTripTime = -1;
+        fLosses = new boolean[LOSS_WINDOW];
+        fLostCount = 0;
+        fNext = 0;
+        fReplyCount = 0;
+        fSentCount = 0;
+        fSmoothedRoundTripTime = -1;
+    }
+
+    /**
+     * <p>
+     * Retrieves the jitter, the smoothed difference between consecutive round trip times.
+     * </p>
+     * 
+     * @return The jitter (in nanoseconds).
+     */
+    public synchronized long getJitter()
+    {
+        return (fJitter);
+    }
+
+    /**
+     * <p>
+     * Retrieves the latest round trip time measured.
+     * </p>
+     * 
+     * @return The latest round trip time measured (in nanoseconds), or -1 if none has been measured yet.
+     */
+    public synchronized long getLastRoundTripTime()
+    {
+        return (fLastRoundTripTime);
+    }
+
+    /**
+     * <p>
+     * Retrieves the proportion of the most recent probes (up to 32) that were lost. The latest probe is not included until it has been replied
+     * to or the next probe has been sent.
+     * </p>
+     * 
+     * @return The proportion of the most recent probes that were lost, from 0 to 1 (0 if no probes have been sent).
+     */
+    public synchronized double getLossRate()
+    {
+        int settledCount = (int) Math.min(fReplyCount + fLostCount, LOSS_WINDOW);
+        if (settledCount == 0)
+        {
+            return (0);
+        }
+
+        int lossCount = 0;
+        for (int index = 0; index < settledCount; index++)
+        {
+            if (fLosses[index])
+            {
+                lossCount++;
+            }
+        }
+
+        return ((double) lossCount / settledCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of probes that were lost.
+     * </p>
+     * 
+     * @return The number of probes that were lost.
+     */
+    public synchronized long getLostCount()
+    {
+        return (fLostCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of probes that were replied to.
+     * </p>
+     * 
+     * @return The number of probes that were replied to.
+     */
+    public synchronized long getReplyCount()
+    {
+        return (fReplyCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the smoothed round trip time.
+     * </p>
+     * 
+     * @return The smoothed round trip time (in nanoseconds), or -1 if it has not been measured yet.
+     */
+    public synchronized long getRoundTripTime()
+    {
+        return (fSmoothedRoundTripTime);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of probes sent.
+     * </p>
+     * 
+     * @return The number of probes sent.
+     */
+    public synchronized long getSentCount()
+    {
+        return (fSentCount);
+    }
+
+    /**
+     * <p>
+     * Processes a probe reply. Replies to probes other than the latest are ignored, they are too late to be useful and have already been counted as
+     * lost.
+     * </p>
+     * 
+     * @param reply The probe reply, after its marker.
+     * @param now The current time (in nanoseconds).
+     */
+    public synchronized void receiveReply(final ByteBuffer reply, final long now)
+    {
+        int sequenceNumber = reply.getInt();
+        long sentTime = reply.getLong();
+        if (fAnswered || sequenceNumber != fNext - 1)
+        {
+            return;
+        }
+
+        fAnswered = true;
+        settle(false);
+        fReplyCount++;
+
+        long roundTripTime = now - sentTime;
+        if (fLastRoundTripTime != -1)
+        {
+            fJitter += (Math.abs(roundTripTime - fLastRoundTripTime) - fJitter) / 16;
+        }
+        fLastRoundTripTime = roundTripTime;
+
+        if (fSmoothedRoundTripTime == -1)
+        {
+            fSmoothedRoundTripTime = roundTripTime;
+        }
+        else
+        {
+            fSmoothedRoundTripTime = (7 * fSmoothedRoundTripTime + roundTripTime) / 8;
+        }
+    }
+
+    /**
+     * <p>
+     * Records whether a probe was lost.
+     * </p>
+     * 
+     * @param lost Determines whether the probe was lost.
+     */
+    private void settle(final boolean lost)
+    {
+        fLosses[(int) ((fReplyCount + fLostCount) % LOSS_WINDOW)] = lost;
+    }
+
+    /**
+     * <p>
+     * Writes the next probe request, counting the previous probe as lost if it has not been replied to.
+     * </p>
+     * 
+     * @param request The buffer to write the probe request to.
+     * @param now The current time (in nanoseconds).
+     */
+    public synchronized void writeRequest(final ByteBuffer request, final long now)
+    {
+        if (!fAnswered)
+        {
+            settle(true);
+            fLostCount++;
+        }
+
+        request.put(REQUEST_MARKER);
+        request.putInt(fNext++);
+        request.putLong(now);
+
+        fAnswered = false;
+        fSentCount++;
+    }
+}
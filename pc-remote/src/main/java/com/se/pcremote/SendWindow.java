@@ -0,0 +1,401 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * <p>
+ * The sending end of a {@link com.se.pcremote.UdpClient UdpClient}'s reliable datagrams. Each datagram is given the next sequence number and is
+ * held until it is acknowledged by the receiver. A datagram that has not been acknowledged within the retransmission timeout is sent again, the
+ * timeout being derived from the round trip times measured from the acknowledgements (as TCP does, see RFC 6298) so that a lost datagram is
+ * retransmitted soon after it would have been acknowledged.
+ * </p>
+ * 
+ * <p>
+ * A reliable datagram is made up of the {@link #DATA_MARKER}, the epoch of the <code>SendWindow</code>, its sequence number and then the data,
+ * see {@link com.se.pcremote.ReceiveWindow ReceiveWindow} for the format of the acknowledgements. The epoch is chosen at random when the
+ * <code>SendWindow</code> is created so that the receiver can tell the datagrams of a restarted sender from those of its previous incarnation.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class SendWindow
+{
+    /**
+     * <p>
+     * A datagram that has not been acknowledged yet.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    private static class Entry
+    {
+        /**
+         * <p>
+         * The datagram, including the header.
+         * </p>
+         */
+        private byte[] fDatagram;
+
+        /**
+         * <p>
+         * The time at which the datagram was last sent (in nanoseconds).
+         * </p>
+         */
+        private long fSentTime;
+
+        /**
+         * <p>
+         * The number of times the datagram has been sent.
+         * </p>
+         */
+        private int fTransmissions;
+    }
+
+    /**
+     * <p>
+     * The first byte of a reliable datagram.
+     * </p>
+     */
+    public static final byte DATA_MARKER = -2;
+
+    /**
+     * <p>
+     * The number of bytes in the header of a reliable datagram.
+     * </p>
+     */
+    public static final int HEADER_LENGTH = 9;
+
+    /**
+     * <p>
+     * The retransmission timeout used before the round trip time has been measured (in nanoseconds).
+     * </p>
+     */
+    private static final long INITIAL_RETRANSMISSION_TIMEOUT = 100000000L;
+
+    /**
+     * <p>
+     * The maximum number of times a datagram is sent before it is given up on.
+     * </p>
+     */
+    private static final int MAX_TRANSMISSIONS = 8;
+
+    /**
+     * <p>
+     * The maximum retransmission timeout (in nanoseconds).
+     * </p>
+     */
+    private static final long MAX_RETRANSMISSION_TIMEOUT = 1000000000L;
+
+    /**
+     * <p>
+     * The minimum retransmission timeout (in nanoseconds). A remote control is used on a local network so this is much lower than TCP's.
+     * </p>
+     */
+    private static final long MIN_RETRANSMISSION_TIMEOUT = 20000000L;
+
+    /**
+     * <p>
+     * The epoch of this <code>SendWindow</code>, which distinguishes its datagrams from those of a previous incarnation of the sender.
+     * </p>
+     */
+    private int fEpoch;
+
+    /**
+     * <p>
+     * The list the datagrams that need to be retransmitted are returned in, it is reused by every call to {@link #getExpired(long)}.
+     * </p>
+     */
+    private List<byte[]> fExpired;
+
+    /**
+     * <p>
+     * The number of datagrams that were given up on.
+     * </p>
+     */
+    private long fLostCount;
+
+    /**
+     * <p>
+     * The sequence number of the next datagram.
+     * </p>
+     */
+    private int fNext;
+
+    /**
+     * <p>
+     * The number of times a datagram has been retransmitted.
+     * </p>
+     */
+    private long fRetransmissionCount;
+
+    /**
+     * <p>
+     * The retransmission timeout (in nanoseconds).
+     * </p>
+     */
+    private long fRetransmissionTimeout;
+
+    /**
+     * <p>
+     * The variation of the round trip time (in nanoseconds).
+     * </p>
+     */
+    private long fRoundTripTimeVariation;
+
+    /**
+     * <p>
+     * The smoothed round trip time (in nanoseconds), or -1 if it has not been measured yet.
+     * </p>
+     */
+    private long fSmoothedRoundTripTime;
+
+    /**
+     * <p>
+     * The datagrams that have not been acknowledged yet, in the order in which they were sent.
+     * </p>
+     */
+    private Map<Integer, Entry> fUnacknowledged;
+
+    /**
+     * <p>
+     * Creates an instance of <code>SendWindow</code>.
+     * </p>
+     */
+    public SendWindow()
+    {
+        fEpoch = new Random().nextInt();
+        fExpired = new ArrayList<byte[]>();
+        fLostCount = 0;
+        fNext = 0;
+        fRetransmissionCount = 0;
+        fRetransmissionTimeout = INITIAL_RETRANSMISSION_TIMEOUT;
+        fRoundTripTimeVariation = 0;
+        fSmoothedRoundTripTime = -1;
+        fUnacknowledged = new LinkedHashMap<Integer, Entry>();
+    }
+
+    /**
+     * <p>
+     * Processes an acknowledgement, the datagrams it acknowledges are no longer retransmitted.
+     * </p>
+     * 
+     * @param ack The acknowledgement, after its marker.
+     * @param now The current time (in nanoseconds).
+     */
+    public synchronized void acknowledge(final ByteBuffer ack, final long now)
+    {
+        int epoch = ack.getInt();
+        int next = ack.getInt();
+        long mask = ack.getLong();
+
+        // The acknowledgement was meant for a previous incarnation of the sender.
+        if (epoch != fEpoch)
+        {
+            return;
+        }
+
+        long latestSentTime = 0;
+        boolean sampled = false;
+
+        Iterator<Map.Entry<Integer, Entry>> entries = fUnacknowledged.entrySet().iterator();
+        while (entries.hasNext())
+        {
+            Map.Entry<Integer, Entry> entry = entries.next();
+            int distance = entry.getKey() - next;
+
+            if (distance < 0 || (distance > 0 && distance <= Long.SIZE && (mask & (1L << (distance - 1))) != 0))
+            {
+                // Only datagrams that were sent once give an unambiguous round trip time.
+                if (entry.getValue().fTransmissions == 1 && (!sampled || entry.getValue().fSentTime - latestSentTime > 0))
+                {
+                    latestSentTime = entry.getValue().fSentTime;
+                    sampled = true;
+                }
+                entries.remove();
+            }
+        }
+
+        if (sampled)
+        {
+            updateRoundTripTime(now - latestSentTime);
+        }
+    }
+
+    /**
+     * <p>
+     * Creates a reliable datagram containing the given data and holds it until it is acknowledged.
+     * </p>
+     * 
+     * @param data The data.
+     * @param now The current time (in nanoseconds).
+     * 
+     * @return The datagram to send.
+     */
+    public synchronized byte[] add(final byte[] data, final long now)
+    {
+        byte[] datagram = new byte[HEADER_LENGTH + data.length];
+        ByteBuffer.wrap(datagram).put(DATA_MARKER).putInt(fEpoch).putInt(fNext).put(data);
+
+        Entry entry = new Entry();
+        entry.fDatagram = datagram;
+        entry.fSentTime = now;
+        entry.fTransmissions = 1;
+        fUnacknowledged.put(fNext, entry);
+        fNext++;
+
+        return (datagram);
+    }
+
+    /**
+     * <p>
+     * Retrieves the epoch of this <code>SendWindow</code>.
+     * </p>
+     * 
+     * @return The epoch of this <code>SendWindow</code>.
+     */
+    public synchronized int getEpoch()
+    {
+        return (fEpoch);
+    }
+
+    /**
+     * <p>
+     * Retrieves the datagrams that have not been acknowledged within the retransmission timeout, they are considered to have been sent again. The
+     * timeout doubles with each retransmission of a datagram.
+     * </p>
+     * 
+     * @param now The current time (in nanoseconds).
+     * 
+     * @return The datagrams to send again. The list is reused by the next call so its content must not be retained.
+     */
+    public synchronized List<byte[]> getExpired(final long now)
+    {
+        fExpired.clear();
+
+        Iterator<Entry> entries = fUnacknowledged.values().iterator();
+        while (entries.hasNext())
+        {
+            Entry entry = entries.next();
+            long timeout = Math.min(fRetransmissionTimeout << (entry.fTransmissions - 1), MAX_RETRANSMISSION_TIMEOUT);
+
+            if (now - entry.fSentTime >= timeout)
+            {
+                if (entry.fTransmissions >= MAX_TRANSMISSIONS)
+                {
+                    fLostCount++;
+                    entries.remove();
+                }
+                else
+                {
+                    fExpired.add(entry.fDatagram);
+                    entry.fSentTime = now;
+                    entry.fTransmissions++;
+                    fRetransmissionCount++;
+                }
+            }
+        }
+
+        return (fExpired);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of datagrams that were given up on after being sent the maximum number of times.
+     * </p>
+     * 
+     * @return The number of datagrams that were given up on.
+     */
+    public synchronized long getLostCount()
+    {
+        return (fLostCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of times a datagram has been retransmitted.
+     * </p>
+     * 
+     * @return The number of times a datagram has been retransmitted.
+     */
+    public synchronized long getRetransmissionCount()
+    {
+        return (fRetransmissionCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the retransmission timeout.
+     * </p>
+     * 
+     * @return The retransmission timeout (in nanoseconds).
+     */
+    public synchronized long getRetransmissionTimeout()
+    {
+        return (fRetransmissionTimeout);
+    }
+
+    /**
+     * <p>
+     * Retrieves the smoothed round trip time.
+     * </p>
+     * 
+     * @return The smoothed round trip time (in nanoseconds), or -1 if it has not been measured yet.
+     */
+    public synchronized long getRoundTripTime()
+    {
+        return (fSmoothedRoundTripTime);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of datagrams that have not been acknowledged yet.
+     * </p>
+     * 
+     * @return The number of datagrams that have not been acknowledged yet.
+     */
+    public synchronized int getUnacknowledgedCount()
+    {
+        return (fUnacknowledged.size());
+    }
+
+    /**
+     * <p>
+     * Updates the smoothed round trip time, its variation and the retransmission timeout with a new measurement.
+     * </p>
+     * 
+     * @param roundTripTime The round trip time measured (in nanoseconds).
+     */
+    private void updateRoundTripTime(final long roundTripTime)
+    {
+        if (fSmoothedRoundTripTime == -1)
+        {
+            fSmoothedRoundTripTime = roundTripTime;
+            fRoundTripTimeVariation = roundTripTime / 2;
+        }
+        else
+        {
+            fRoundTripTimeVariation = (3 * fRoundTripTimeVariation + Math.abs(fSmoothedRoundTripTime - roundTripTime)) / 4;
+            fSmoothedRoundTripTime = (7 * fSmoothedRoundTripTime + roundTripTime) / 8;
+        }
+
+        fRetransmissionTimeout = Math.max(MIN_RETRANSMISSION_TIMEOUT, Math.min(MAX_RETRANSMISSION_TIMEOUT, fSmoothedRoundTripTime + 4
+                * fRoundTripTimeVariation));
+    }
+}
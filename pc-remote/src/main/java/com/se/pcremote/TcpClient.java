@@ -273,6 +273,22 @@ public abstract class TcpClient implements Client
      */
     protected abstract void onReceiveData(byte[] data, final int dataLength);
 
+    /**
+     * <p>
+     * Override to perform additional actions after a 'heartbeat' is received.
+     * </p>
+     */
+    protected void onReceiveHeartbeat()
+    {}
+
+    /**
+     * <p>
+     * Override to perform additional actions after a 'heartbeat' is sent.
+     * </p>
+     */
+    protected void onSendHeartbeat()
+    {}
+
     @Override
     public void receiveData() throws IOException
     {
@@ -294,7 +310,11 @@ public abstract class TcpClient implements Client
             }
             else if (isHeartbeat(fData, dataLength))
             {
-                fLogger.debug("Heartbeat received.");
+                if (fLogger.isDebugEnabled())
+                {
+                    fLogger.debug("Heartbeat received.");
+                }
+                onReceiveHeartbeat();
             }
             else
             {
@@ -350,6 +370,7 @@ public abstract class TcpClient implements Client
     private void sendHeartbeat() throws IOException
     {
         sendData(fHeartbeatData);
+        onSendHeartbeat();
     }
 
     @Override
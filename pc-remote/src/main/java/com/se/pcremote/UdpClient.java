@@ -4,12 +4,22 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
 /**
  * <p>
- * A client that can receive and send data to and from another <code>UdpClient</code> over an IP network using the UDP protocol.
+ * A client that can receive and send data to and from another <code>UdpClient</code> over an IP network using the UDP protocol. It can send
+ * round trip probes periodically to measure the quality of the connection (see {@link com.se.pcremote.RoundTripProbe RoundTripProbe}).
  * </p>
  * 
  * @author Gary Buyn
@@ -59,6 +69,84 @@ public abstract class UdpClient implements Client
         }
     }
 
+    /**
+     * <p>
+     * Sends round trip probes periodically to measure the quality of the connection.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class Prober implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            fLogger.debug("Prober started.");
+
+            try
+            {
+                while (isConnected() && !Thread.currentThread().isInterrupted())
+                {
+                    Thread.sleep(fProbeInterval);
+
+                    if (isConnected())
+                    {
+                        sendProbe();
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (Exception e)
+            {
+                fLogger.error("Failed to send round trip probes.", e);
+            }
+
+            fLogger.debug("Prober stopped.");
+        }
+    }
+
+    /**
+     * <p>
+     * Periodically retransmits the reliable datagrams that have not been acknowledged within the retransmission timeout.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class Retransmitter implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            fLogger.debug("Retransmitter started.");
+
+            try
+            {
+                while (isConnected() && !Thread.currentThread().isInterrupted())
+                {
+                    Thread.sleep(RETRANSMISSION_CHECK_INTERVAL);
+
+                    for (byte[] datagram : fSendWindow.getExpired(System.nanoTime()))
+                    {
+                        sendData(datagram);
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (Exception e)
+            {
+                fLogger.error("Failed to retransmit reliable datagrams.", e);
+            }
+
+            fLogger.debug("Retransmitter stopped.");
+        }
+    }
+
     /**
      * <p>
      * The default data that is sent periodically to ensure the connection is still 'alive'.
@@ -73,6 +161,14 @@ public abstract class UdpClient implements Client
      */
     private static final int DEFAULT_HEARTBEAT_INTERVAL = 10000;
 
+    /**
+     * <p>
+     * The default maximum number of datagrams that can be received during a single call to {@link #receiveData()} when receiving via a
+     * {@link java.nio.channels.DatagramChannel DatagramChannel}.
+     * </p>
+     */
+    private static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
     /**
      * <p>
      * The default maximum number of bytes that can be received during a single call to {@link #receiveData()}.
@@ -80,6 +176,42 @@ public abstract class UdpClient implements Client
      */
     private static final int DEFAULT_MAX_DATA_RECEIVABLE = 1024;
 
+    /**
+     * <p>
+     * The default time interval between round trip probes (in milliseconds).
+     * </p>
+     */
+    private static final int DEFAULT_PROBE_INTERVAL = 1000;
+
+    /**
+     * <p>
+     * The maximum number of senders of reliable datagrams that are remembered, the least recently heard from are forgotten first.
+     * </p>
+     */
+    private static final int MAX_RELIABLE_SENDERS = 64;
+
+    /**
+     * <p>
+     * The time interval between checks for reliable datagrams that need to be retransmitted (in milliseconds).
+     * </p>
+     */
+    private static final int RETRANSMISSION_CHECK_INTERVAL = 5;
+
+    /**
+     * <p>
+     * The acknowledgement sent in response to a reliable datagram. It is reused for every acknowledgement.
+     * </p>
+     */
+    private ByteBuffer fAck;
+
+    /**
+     * <p>
+     * The (direct) buffers that the datagrams are received into when receiving via a {@link java.nio.channels.DatagramChannel DatagramChannel}.
+     * They are reused for every call to {@link #receiveData()}.
+     * </p>
+     */
+    private ByteBuffer[] fBuffers;
+
     /**
      * <p>
      * The bytes that have been received during the last call to {@link #receiveData()}.
@@ -87,6 +219,14 @@ public abstract class UdpClient implements Client
      */
     private byte[] fData;
 
+    /**
+     * <p>
+     * The channel over which the UDP data is sent and received, or null if it is sent and received via a plain {@link java.net.DatagramSocket
+     * DatagramSocket}.
+     * </p>
+     */
+    private DatagramChannel fDatagramChannel;
+
     /**
      * <p>
      * The socket over which the UDP data is sent and received.
@@ -122,6 +262,14 @@ public abstract class UdpClient implements Client
      */
     private Logger fLogger;
 
+    /**
+     * <p>
+     * The maximum number of datagrams that can be received during a single call to {@link #receiveData()} when receiving via a
+     * {@link java.nio.channels.DatagramChannel DatagramChannel}.
+     * </p>
+     */
+    private int fMaxBatchSize;
+
     /**
      * <p>
      * The maximum number of bytes that can be received during a single call to {@link #receiveData()}.
@@ -129,6 +277,64 @@ public abstract class UdpClient implements Client
      */
     private int fMaxDataReceivable;
 
+    /**
+     * <p>
+     * The packet that the datagrams are received into when receiving via a plain {@link java.net.DatagramSocket DatagramSocket}. It is reused for
+     * every call to {@link #receiveData()}.
+     * </p>
+     */
+    private DatagramPacket fPacket;
+
+    /**
+     * <p>
+     * A buffer wrapping the bytes of {@link #fPacket}. It is reused for every call to {@link #receiveData()}.
+     * </p>
+     */
+    private ByteBuffer fPacketBuffer;
+
+    /**
+     * <p>
+     * The sender of the last datagram received via a plain {@link java.net.DatagramSocket DatagramSocket}. It is reused while datagrams keep
+     * arriving from the same sender.
+     * </p>
+     */
+    private InetSocketAddress fPacketSender;
+
+    /**
+     * <p>
+     * The time interval between round trip probes (in milliseconds).
+     * </p>
+     */
+    private int fProbeInterval;
+
+    /**
+     * <p>
+     * The reply sent to a round trip probe. It is reused for every reply.
+     * </p>
+     */
+    private ByteBuffer fProbeReply;
+
+    /**
+     * <p>
+     * The round trip probe request sent. It is reused for every request.
+     * </p>
+     */
+    private ByteBuffer fProbeRequest;
+
+    /**
+     * <p>
+     * The thread on which the {@link Prober} is running.
+     * </p>
+     */
+    private Thread fProbeThread;
+
+    /**
+     * <p>
+     * The receiving ends of the reliable datagrams, indexed by their senders.
+     * </p>
+     */
+    private Map<SocketAddress, ReceiveWindow> fReceiveWindows;
+
     /**
      * <p>
      * The remote host with which this <code>UdpClient</code> is communicating.
@@ -143,6 +349,42 @@ public abstract class UdpClient implements Client
      */
     private int fRemotePort;
 
+    /**
+     * <p>
+     * Waits for datagrams to arrive on the {@link java.nio.channels.DatagramChannel DatagramChannel}.
+     * </p>
+     */
+    private Selector fSelector;
+
+    /**
+     * <p>
+     * The thread on which the {@link Retransmitter} is running.
+     * </p>
+     */
+    private Thread fRetransmitterThread;
+
+    /**
+     * <p>
+     * Measures the quality of the connection.
+     * </p>
+     */
+    private RoundTripProbe fRoundTripProbe;
+
+    /**
+     * <p>
+     * The sending end of the reliable datagrams.
+     * </p>
+     */
+    private SendWindow fSendWindow;
+
+    /**
+     * <p>
+     * The senders of the datagrams received during the last call to {@link #receiveData()} when receiving via a
+     * {@link java.nio.channels.DatagramChannel DatagramChannel}.
+     * </p>
+     */
+    private SocketAddress[] fSenders;
+
     /**
      * <p>
      * Creates an instance of <code>UdpClient</code>.
@@ -152,15 +394,32 @@ public abstract class UdpClient implements Client
      */
     public UdpClient(final DatagramSocket datagramSocket)
     {
+        fAck = ByteBuffer.allocate(ReceiveWindow.ACK_LENGTH);
+        fBuffers = null;
         fData = null;
+        fDatagramChannel = null;
         fDatagramSocket = datagramSocket;
         fHeartbeatData = DEFAULT_HEARTBEAT_DATA;
         fHeartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
         fHeartbeatThread = null;
         fLogger = Logger.getLogger(getClass());
+        fMaxBatchSize = DEFAULT_MAX_BATCH_SIZE;
         fMaxDataReceivable = DEFAULT_MAX_DATA_RECEIVABLE;
+        fPacket = null;
+        fPacketBuffer = null;
+        fPacketSender = null;
+        fProbeInterval = DEFAULT_PROBE_INTERVAL;
+        fProbeReply = ByteBuffer.allocate(RoundTripProbe.LENGTH);
+        fProbeRequest = ByteBuffer.allocate(RoundTripProbe.LENGTH);
+        fProbeThread = null;
+        fReceiveWindows = createReceiveWindows();
         fRemoteHost = null;
         fRemotePort = -1;
+        fRetransmitterThread = null;
+        fRoundTripProbe = new RoundTripProbe();
+        fSelector = null;
+        fSendWindow = new SendWindow();
+        fSenders = null;
     }
 
     /**
@@ -174,22 +433,139 @@ public abstract class UdpClient implements Client
      */
     public UdpClient(final DatagramSocket datagramSocket, final InetAddress remoteHost, final int remotePort)
     {
+        fAck = ByteBuffer.allocate(ReceiveWindow.ACK_LENGTH);
+        fBuffers = null;
         fData = null;
+        fDatagramChannel = null;
         fDatagramSocket = datagramSocket;
         fHeartbeatData = DEFAULT_HEARTBEAT_DATA;
         fHeartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
         fHeartbeatThread = null;
         fLogger = Logger.getLogger(getClass());
+        fMaxBatchSize = DEFAULT_MAX_BATCH_SIZE;
         fMaxDataReceivable = DEFAULT_MAX_DATA_RECEIVABLE;
+        fPacket = null;
+        fPacketBuffer = null;
+        fPacketSender = null;
+        fProbeInterval = DEFAULT_PROBE_INTERVAL;
+        fProbeReply = ByteBuffer.allocate(RoundTripProbe.LENGTH);
+        fProbeRequest = ByteBuffer.allocate(RoundTripProbe.LENGTH);
+        fProbeThread = null;
+        fReceiveWindows = createReceiveWindows();
         fRemoteHost = remoteHost;
         fRemotePort = remotePort;
+        fRetransmitterThread = null;
+        fRoundTripProbe = new RoundTripProbe();
+        fSelector = null;
+        fSendWindow = new SendWindow();
+        fSenders = null;
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>UdpClient</code> that receives via a {@link java.nio.channels.DatagramChannel DatagramChannel}. Each call to
+     * {@link #receiveData()} waits for datagrams to arrive and then receives every datagram that is pending (up to the
+     * {@link #getMaxBatchSize() maximum batch size}) into reused direct buffers before passing them all to
+     * {@link #onReceiveData(ByteBuffer[], SocketAddress[], int)} at once.
+     * </p>
+     * 
+     * @param datagramChannel The channel over which the UDP data is sent and received.
+     * 
+     * @throws IOException Thrown if the channel fails to be configured for non-blocking receipt.
+     */
+    public UdpClient(final DatagramChannel datagramChannel) throws IOException
+    {
+        this(datagramChannel, null, -1);
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>UdpClient</code> that receives via a {@link java.nio.channels.DatagramChannel DatagramChannel}.
+     * </p>
+     * 
+     * @param datagramChannel The channel over which the UDP data is sent and received.
+     * @param remoteHost The remote host with which this <code>UdpClient</code> is communicating.
+     * @param remotePort The remote port with which this <code>UdpClient</code> is communicating.
+     * 
+     * @throws IOException Thrown if the channel fails to be configured for non-blocking receipt.
+     * 
+     * @see #UdpClient(DatagramChannel)
+     */
+    public UdpClient(final DatagramChannel datagramChannel, final InetAddress remoteHost, final int remotePort) throws IOException
+    {
+        fDatagramChannel = datagramChannel;
+        fRemoteHost = remoteHost;
+        fRemotePort = remotePort;
+
+        fAck = ByteBuffer.allocate(ReceiveWindow.ACK_LENGTH);
+        fBuffers = null;
+        fData = null;
+        fDatagramSocket = datagramChannel.socket();
+        fHeartbeatData = DEFAULT_HEARTBEAT_DATA;
+        fHeartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+        fHeartbeatThread = null;
+        fLogger = Logger.getLogger(getClass());
+        fMaxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        fMaxDataReceivable = DEFAULT_MAX_DATA_RECEIVABLE;
+        fPacket = null;
+        fPacketBuffer = null;
+        fPacketSender = null;
+        fProbeInterval = DEFAULT_PROBE_INTERVAL;
+        fProbeReply = ByteBuffer.allocate(RoundTripProbe.LENGTH);
+        fProbeRequest = ByteBuffer.allocate(RoundTripProbe.LENGTH);
+        fProbeThread = null;
+        fReceiveWindows = createReceiveWindows();
+        fRetransmitterThread = null;
+        fRoundTripProbe = new RoundTripProbe();
+        fSelector = Selector.open();
+        fSendWindow = new SendWindow();
+        fSenders = null;
+
+        fDatagramChannel.configureBlocking(false);
+        fDatagramChannel.register(fSelector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * <p>
+     * Creates the map that holds the receiving ends of the reliable datagrams. It forgets the sender that was least recently heard from when it
+     * is full.
+     * </p>
+     * 
+     * @return The map that holds the receiving ends of the reliable datagrams.
+     */
+    private Map<SocketAddress, ReceiveWindow> createReceiveWindows()
+    {
+        return (new LinkedHashMap<SocketAddress, ReceiveWindow>(16, 0.75f, true)
+        {
+            /**
+             * Serialisation version.
+             */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<SocketAddress, ReceiveWindow> eldest)
+            {
+                return (size() > MAX_RELIABLE_SENDERS);
+            }
+        });
     }
 
     @Override
     public void dispose() throws IOException
     {
+        if (fSelector != null)
+        {
+            // Also wakes up a thread waiting for datagrams to arrive.
+            fSelector.close();
+        }
         fDatagramSocket.close();
         maintainHeartbeat(false);
+        maintainProbe(false);
+
+        if (fRetransmitterThread != null && fRetransmitterThread.isAlive())
+        {
+            fRetransmitterThread.interrupt();
+        }
     }
 
     @Override
@@ -204,12 +580,61 @@ public abstract class UdpClient implements Client
         return (fHeartbeatInterval);
     }
 
+    /**
+     * <p>
+     * The maximum number of datagrams that can be received during a single call to {@link #receiveData()} when receiving via a
+     * {@link java.nio.channels.DatagramChannel DatagramChannel}. The default is 64.
+     * </p>
+     * 
+     * @return The maximum number of datagrams that can be received during a single call to <code>receiveData()</code>.
+     */
+    public int getMaxBatchSize()
+    {
+        return (fMaxBatchSize);
+    }
+
     @Override
     public int getMaxDataReceivable()
     {
         return (fMaxDataReceivable);
     }
 
+    /**
+     * <p>
+     * The time interval between round trip probes (in milliseconds). The default is 1000 (one second).
+     * </p>
+     * 
+     * @return The time interval between round trip probes (in milliseconds).
+     */
+    public int getProbeInterval()
+    {
+        return (fProbeInterval);
+    }
+
+    /**
+     * <p>
+     * Retrieves the round trip probe that measures the quality of the connection (see {@link #maintainProbe(boolean)}).
+     * </p>
+     * 
+     * @return The round trip probe that measures the quality of the connection.
+     */
+    public RoundTripProbe getRoundTripProbe()
+    {
+        return (fRoundTripProbe);
+    }
+
+    /**
+     * <p>
+     * Retrieves the sending end of the reliable datagrams, which holds the statistics about their retransmission (e.g. the round trip time).
+     * </p>
+     * 
+     * @return The sending end of the reliable datagrams.
+     */
+    public SendWindow getSendWindow()
+    {
+        return (fSendWindow);
+    }
+
     @Override
     public boolean isConnected()
     {
@@ -248,6 +673,38 @@ public abstract class UdpClient implements Client
         return (heartbeat);
     }
 
+    /**
+     * <p>
+     * Determines whether the given data represents a 'heartbeat' sent to this <code>UdpClient</code>.
+     * </p>
+     * 
+     * @param buffer The data to compare against the 'heartbeat' data, between its position and limit.
+     * 
+     * @return True if the given data represents a 'heartbeat' sent to this <code>UdpClient</code>, false otherwise.
+     */
+    private boolean isHeartbeat(final ByteBuffer buffer)
+    {
+        boolean heartbeat = true;
+
+        if (buffer.remaining() != fHeartbeatData.length)
+        {
+            heartbeat = false;
+        }
+        else
+        {
+            for (int index = 0; index < fHeartbeatData.length; index++)
+            {
+                if (buffer.get(buffer.position() + index) != fHeartbeatData[index])
+                {
+                    heartbeat = false;
+                    break;
+                }
+            }
+        }
+
+        return (heartbeat);
+    }
+
     @Override
     public void maintainHeartbeat(final boolean maintainHeartbeat)
     {
@@ -270,6 +727,37 @@ public abstract class UdpClient implements Client
         }
     }
 
+    /**
+     * <p>
+     * Determines whether this <code>UdpClient</code> sends round trip probes periodically to measure the quality of the connection. The
+     * <code>UdpClient</code> at the other end of the connection always replies to them, but the replies are only processed while this
+     * <code>UdpClient</code> is receiving data.
+     * </p>
+     * 
+     * @param maintainProbe Determines whether this <code>UdpClient</code> sends round trip probes periodically.
+     */
+    public void maintainProbe(final boolean maintainProbe)
+    {
+        if (maintainProbe)
+        {
+            // Start the prober if it is not running.
+            if (fProbeThread == null || !fProbeThread.isAlive())
+            {
+                fProbeThread = new Thread(new Prober());
+                fProbeThread.setDaemon(true);
+                fProbeThread.start();
+            }
+        }
+        else
+        {
+            // Stop the prober if it is running.
+            if (fProbeThread != null && fProbeThread.isAlive())
+            {
+                fProbeThread.interrupt();
+            }
+        }
+    }
+
     /**
      * <p>
      * A callback that must be implemented by subclasses to process the data received.
@@ -279,28 +767,265 @@ public abstract class UdpClient implements Client
      */
     protected abstract void onReceiveData(final DatagramPacket packet);
 
+    /**
+     * <p>
+     * A callback to process a batch of datagrams received via a {@link java.nio.channels.DatagramChannel DatagramChannel}. The buffers are reused
+     * after this method returns so their content must not be retained. The default implementation copies each datagram into a
+     * {@link java.net.DatagramPacket DatagramPacket} and passes it to {@link #onReceiveData(DatagramPacket)}, subclasses should override it to
+     * process the batch as a whole.
+     * </p>
+     * 
+     * @param packets The datagrams received, each between its position and limit.
+     * @param senders The senders of the datagrams received.
+     * @param packetCount The number of datagrams received.
+     */
+    protected void onReceiveData(final ByteBuffer[] packets, final SocketAddress[] senders, final int packetCount)
+    {
+        for (int index = 0; index < packetCount; index++)
+        {
+            byte[] data = new byte[packets[index].remaining()];
+            packets[index].get(data);
+
+            DatagramPacket packet = new DatagramPacket(data, data.length);
+            packet.setSocketAddress(senders[index]);
+            onReceiveData(packet);
+        }
+    }
+
+    /**
+     * <p>
+     * Override to perform additional actions after a 'heartbeat' is received.
+     * </p>
+     */
+    protected void onReceiveHeartbeat()
+    {}
+
+    /**
+     * <p>
+     * Override to perform additional actions after a 'heartbeat' is sent.
+     * </p>
+     */
+    protected void onSendHeartbeat()
+    {}
+
+    /**
+     * <p>
+     * Processes the given datagram if it is a round trip probe: a request is replied to straight away and a reply is passed to the
+     * {@link RoundTripProbe}. A failure to send the reply only concerns the sender of the request so it is logged rather than thrown.
+     * </p>
+     * 
+     * @param buffer The datagram, between its position and limit.
+     * @param sender The sender of the datagram.
+     * 
+     * @return True if the datagram was a round trip probe, false otherwise.
+     */
+    private boolean processProbe(final ByteBuffer buffer, final SocketAddress sender)
+    {
+        if (RoundTripProbe.isRequest(buffer))
+        {
+            fProbeReply.clear();
+            RoundTripProbe.writeReply(buffer, fProbeReply);
+            fProbeReply.flip();
+            try
+            {
+                sendData(fProbeReply, sender);
+            }
+            catch (IOException e)
+            {
+                fLogger.error("Failed to reply to a round trip probe from " + sender + ".", e);
+            }
+
+            return (true);
+        }
+        if (RoundTripProbe.isReply(buffer))
+        {
+            buffer.get();
+            fRoundTripProbe.receiveReply(buffer, System.nanoTime());
+
+            return (true);
+        }
+
+        return (false);
+    }
+
+    /**
+     * <p>
+     * Processes the reliability header of the given datagram, if it has one. An acknowledgement is passed to the sending end of the reliable
+     * datagrams. A reliable datagram is acknowledged and its header skipped, unless it is a duplicate. A failure to send the acknowledgement only
+     * concerns the sender of the datagram so it is logged rather than thrown.
+     * </p>
+     * 
+     * @param buffer The datagram, between its position and limit.
+     * @param sender The sender of the datagram.
+     * 
+     * @return True if the datagram contains data to be passed on, false otherwise.
+     */
+    private boolean processReliability(final ByteBuffer buffer, final SocketAddress sender)
+    {
+        if (!buffer.hasRemaining())
+        {
+            return (true);
+        }
+
+        byte marker = buffer.get(buffer.position());
+        if (marker == ReceiveWindow.ACK_MARKER && buffer.remaining() == ReceiveWindow.ACK_LENGTH)
+        {
+            buffer.get();
+            fSendWindow.acknowledge(buffer, System.nanoTime());
+
+            return (false);
+        }
+        if (marker == SendWindow.DATA_MARKER && buffer.remaining() >= SendWindow.HEADER_LENGTH)
+        {
+            buffer.get();
+            int epoch = buffer.getInt();
+            int sequenceNumber = buffer.getInt();
+
+            ReceiveWindow receiveWindow = fReceiveWindows.get(sender);
+            if (receiveWindow == null)
+            {
+                receiveWindow = new ReceiveWindow(epoch);
+                fReceiveWindows.put(sender, receiveWindow);
+            }
+            boolean duplicate = !receiveWindow.receive(epoch, sequenceNumber);
+
+            // Duplicates are acknowledged too, the acknowledgement of the original may have been lost.
+            fAck.clear();
+            receiveWindow.writeAck(fAck);
+            fAck.flip();
+            try
+            {
+                sendData(fAck, sender);
+            }
+            catch (IOException e)
+            {
+                fLogger.error("Failed to acknowledge a reliable datagram from " + sender + ".", e);
+            }
+
+            return (!duplicate);
+        }
+
+        return (true);
+    }
+
     @Override
     public void receiveData() throws IOException
     {
+        if (fDatagramChannel != null)
+        {
+            receiveBatch();
+            return;
+        }
+
         // Ensure the correct amount of data can be received.
         if (fData == null || fData.length != fMaxDataReceivable)
         {
             fData = new byte[fMaxDataReceivable];
+            fPacket = new DatagramPacket(fData, fData.length);
+            fPacketBuffer = ByteBuffer.wrap(fData);
         }
 
         try
         {
-            DatagramPacket packet = new DatagramPacket(fData, fData.length);
+            DatagramPacket packet = fPacket;
+            packet.setData(fData, 0, fData.length);
             fDatagramSocket.receive(packet);
 
             if (isHeartbeat(packet))
             {
-                fLogger.debug("Heartbeat received.");
+                if (fLogger.isDebugEnabled())
+                {
+                    fLogger.debug("Heartbeat received.");
+                }
+                onReceiveHeartbeat();
             }
             else
             {
-                onReceiveData(packet);
+                ByteBuffer buffer = fPacketBuffer;
+                buffer.limit(packet.getOffset() + packet.getLength());
+                buffer.position(packet.getOffset());
+
+                // Creating a socket address for every datagram would allocate, so the last one is reused if it has not changed.
+                if (fPacketSender == null || !fPacketSender.getAddress().equals(packet.getAddress()) || fPacketSender.getPort() != packet.getPort())
+                {
+                    fPacketSender = new InetSocketAddress(packet.getAddress(), packet.getPort());
+                }
+
+                if (!processProbe(buffer, fPacketSender) && processReliability(buffer, fPacketSender))
+                {
+                    packet.setData(packet.getData(), buffer.position(), buffer.remaining());
+                    onReceiveData(packet);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            dispose();
+        }
+    }
+
+    /**
+     * <p>
+     * Waits for datagrams to arrive on the {@link java.nio.channels.DatagramChannel DatagramChannel} and then receives every datagram that is
+     * pending (up to the maximum batch size).
+     * </p>
+     * 
+     * @throws IOException Thrown if the underlying channel fails to receive the data.
+     */
+    private void receiveBatch() throws IOException
+    {
+        // Ensure the correct amount of data can be received.
+        if (fBuffers == null || fBuffers.length != fMaxBatchSize || fBuffers[0].capacity() != fMaxDataReceivable)
+        {
+            fBuffers = new ByteBuffer[fMaxBatchSize];
+            for (int index = 0; index < fBuffers.length; index++)
+            {
+                fBuffers[index] = ByteBuffer.allocateDirect(fMaxDataReceivable);
             }
+            fSenders = new SocketAddress[fMaxBatchSize];
+        }
+
+        try
+        {
+            fSelector.select();
+            fSelector.selectedKeys().clear();
+
+            // Drain every datagram that is pending.
+            int packetCount = 0;
+            while (packetCount < fBuffers.length)
+            {
+                ByteBuffer buffer = fBuffers[packetCount];
+                buffer.clear();
+                SocketAddress sender = fDatagramChannel.receive(buffer);
+                if (sender == null)
+                {
+                    break;
+                }
+                buffer.flip();
+
+                if (isHeartbeat(buffer))
+                {
+                    if (fLogger.isDebugEnabled())
+                    {
+                        fLogger.debug("Heartbeat received.");
+                    }
+                    onReceiveHeartbeat();
+                }
+                else if (!processProbe(buffer, sender) && processReliability(buffer, sender))
+                {
+                    fSenders[packetCount] = sender;
+                    packetCount++;
+                }
+            }
+
+            if (packetCount > 0)
+            {
+                onReceiveData(fBuffers, fSenders, packetCount);
+            }
+        }
+        catch (ClosedSelectorException e)
+        {
+            dispose();
         }
         catch (IOException e)
         {
@@ -313,7 +1038,14 @@ public abstract class UdpClient implements Client
     {
         try
         {
-            fDatagramSocket.send(new DatagramPacket(data, data.length, fRemoteHost, fRemotePort));
+            if (fDatagramChannel != null)
+            {
+                fDatagramChannel.send(ByteBuffer.wrap(data), new InetSocketAddress(fRemoteHost, fRemotePort));
+            }
+            else
+            {
+                fDatagramSocket.send(new DatagramPacket(data, data.length, fRemoteHost, fRemotePort));
+            }
         }
         catch (IOException e)
         {
@@ -321,6 +1053,29 @@ public abstract class UdpClient implements Client
         }
     }
 
+    /**
+     * <p>
+     * Sends data to the given address rather than the remote host with which this <code>UdpClient</code> is communicating, e.g. to reply to the
+     * sender of a datagram received by a server.
+     * </p>
+     * 
+     * @param data The data to send, between its position and limit. It must be backed by an accessible array.
+     * @param address The address to send the data to.
+     * 
+     * @throws IOException Thrown if the underlying datagram socket fails to send the data.
+     */
+    protected void sendData(final ByteBuffer data, final SocketAddress address) throws IOException
+    {
+        if (fDatagramChannel != null)
+        {
+            fDatagramChannel.send(data, address);
+        }
+        else
+        {
+            fDatagramSocket.send(new DatagramPacket(data.array(), data.arrayOffset() + data.position(), data.remaining(), address));
+        }
+    }
+
     /**
      * <p>
      * Sends a 'heartbeat'.
@@ -331,6 +1086,52 @@ public abstract class UdpClient implements Client
     private void sendHeartbeat() throws IOException
     {
         sendData(fHeartbeatData);
+        onSendHeartbeat();
+    }
+
+    /**
+     * <p>
+     * Sends a round trip probe request.
+     * </p>
+     * 
+     * @throws IOException Thrown if the underlying datagram socket fails to send the probe request.
+     */
+    private void sendProbe() throws IOException
+    {
+        fProbeRequest.clear();
+        fRoundTripProbe.writeRequest(fProbeRequest, System.nanoTime());
+        sendData(fProbeRequest.array());
+    }
+
+    /**
+     * <p>
+     * Sends data that is retransmitted until it is acknowledged by the receiver (also a <code>UdpClient</code>), which passes it on exactly once.
+     * Unlike TCP, a lost datagram does not hold back the data sent after it so reliable data sent this way never waits behind unrelated lost data.
+     * The receiver does not put reliable data back into the order in which it was sent.
+     * </p>
+     * 
+     * <p>
+     * The acknowledgements are processed by {@link #receiveData()}, so a thread must be receiving data for the retransmissions to stop.
+     * </p>
+     * 
+     * @param data The data to send.
+     * 
+     * @throws IOException Thrown if the underlying datagram socket fails to send the data.
+     */
+    public void sendReliableData(final byte[] data) throws IOException
+    {
+        // Start the retransmitter if it is not running.
+        synchronized (fSendWindow)
+        {
+            if (fRetransmitterThread == null || !fRetransmitterThread.isAlive())
+            {
+                fRetransmitterThread = new Thread(new Retransmitter());
+                fRetransmitterThread.setDaemon(true);
+                fRetransmitterThread.start();
+            }
+        }
+
+        sendData(fSendWindow.add(data, System.nanoTime()));
     }
 
     @Override
@@ -345,10 +1146,35 @@ public abstract class UdpClient implements Client
         fHeartbeatInterval = heartbeatInterval;
     }
 
+    /**
+     * <p>
+     * The maximum number of datagrams that can be received during a single call to {@link #receiveData()} when receiving via a
+     * {@link java.nio.channels.DatagramChannel DatagramChannel}. The default is 64.
+     * </p>
+     * 
+     * @param maxBatchSize The maximum number of datagrams that can be received during a single call to <code>receiveData()</code>.
+     */
+    public void setMaxBatchSize(final int maxBatchSize)
+    {
+        fMaxBatchSize = maxBatchSize;
+    }
+
     @Override
     public void setMaxDataReceivable(final int maxDataReceivable)
     {
         fMaxDataReceivable = maxDataReceivable;
     }
 
+    /**
+     * <p>
+     * The time interval between round trip probes (in milliseconds). The default is 1000 (one second).
+     * </p>
+     * 
+     * @param probeInterval The time interval between round trip probes (in milliseconds).
+     */
+    public void setProbeInterval(final int probeInterval)
+    {
+        fProbeInterval = probeInterval;
+    }
+
 }
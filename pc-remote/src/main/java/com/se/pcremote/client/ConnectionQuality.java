@@ -0,0 +1,155 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.client;
+
+import com.se.pcremote.RoundTripProbe;
+
+/**
+ * <p>
+ * A snapshot of the quality of a connection to a {@link com.se.pcremote.server.PCRemoteServer PCRemoteServer}, as measured by a
+ * {@link com.se.pcremote.RoundTripProbe RoundTripProbe}. Besides the raw measurements it rates the connection from 0 to {@link #MAX_LEVEL}, like
+ * the bars of a signal strength indicator, so that a GUI can show it to the user. A client can also use it to adapt the rate at which it sends,
+ * e.g. coalescing more pointer motion into each command when the round trip time or loss rate goes up.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ConnectionQuality
+{
+    /**
+     * <p>
+     * The level of the best connections.
+     * </p>
+     */
+    public static final int MAX_LEVEL = 4;
+
+    /**
+     * <p>
+     * The maximum loss rates of the connections at each level, indexed by level.
+     * </p>
+     */
+    private static final double[] MAX_LOSS_RATES = new double[] {1, 1, 0.1, 0.05, 0.01};
+
+    /**
+     * <p>
+     * The maximum delays (the round trip time plus twice the jitter) of the connections at each level (in milliseconds), indexed by level.
+     * </p>
+     */
+    private static final long[] MAX_DELAYS = new long[] {Long.MAX_VALUE, Long.MAX_VALUE, 100, 50, 20};
+
+    /**
+     * <p>
+     * The jitter (in nanoseconds).
+     * </p>
+     */
+    private long fJitter;
+
+    /**
+     * <p>
+     * The proportion of the most recent probes that were lost.
+     * </p>
+     */
+    private double fLossRate;
+
+    /**
+     * <p>
+     * The smoothed round trip time (in nanoseconds), or -1 if it has not been measured yet.
+     * </p>
+     */
+    private long fRoundTripTime;
+
+    /**
+     * <p>
+     * Creates an instance of <code>ConnectionQuality</code>.
+     * </p>
+     * 
+     * @param roundTripProbe The probe that measures the quality of the connection.
+     */
+    public ConnectionQuality(final RoundTripProbe roundTripProbe)
+    {
+        synchronized (roundTripProbe)
+        {
+            fJitter = roundTripProbe.getJitter();
+            fLossRate = roundTripProbe.getLossRate();
+            fRoundTripTime = roundTripProbe.getRoundTripTime();
+        }
+    }
+
+    /**
+     * <p>
+     * Retrieves the jitter, the smoothed difference between consecutive round trip times.
+     * </p>
+     * 
+     * @return The jitter (in nanoseconds).
+     */
+    public long getJitter()
+    {
+        return (fJitter);
+    }
+
+    /**
+     * <p>
+     * Rates the connection from 0 to {@link #MAX_LEVEL}. A connection whose quality has not been measured yet, or that lost every recent probe,
+     * is rated 0. The better levels require both a low delay (the round trip time plus twice the jitter) and a low loss rate: under 100, 50 and 20
+     * milliseconds and under 10%, 5% and 1% for levels 2, 3 and 4 respectively.
+     * </p>
+     * 
+     * @return The level of the connection, from 0 to {@link #MAX_LEVEL}.
+     */
+    public int getLevel()
+    {
+        if (fRoundTripTime == -1 || fLossRate >= 1)
+        {
+            return (0);
+        }
+
+        long delay = (fRoundTripTime + 2 * fJitter) / 1000000L;
+        int level = MAX_LEVEL;
+        while (level > 1 && (delay >= MAX_DELAYS[level] || fLossRate >= MAX_LOSS_RATES[level]))
+        {
+            level--;
+        }
+
+        return (level);
+    }
+
+    /**
+     * <p>
+     * Retrieves the proportion of the most recent probes that were lost.
+     * </p>
+     * 
+     * @return The proportion of the most recent probes that were lost, from 0 to 1.
+     */
+    public double getLossRate()
+    {
+        return (fLossRate);
+    }
+
+    /**
+     * <p>
+     * Retrieves the smoothed round trip time.
+     * </p>
+     * 
+     * @return The smoothed round trip time (in nanoseconds), or -1 if it has not been measured yet.
+     */
+    public long getRoundTripTime()
+    {
+        return (fRoundTripTime);
+    }
+
+    @Override
+    public String toString()
+    {
+        return ("level " + getLevel() + "/" + MAX_LEVEL + ", round trip " + fRoundTripTime / 1000 + "us, jitter " + fJitter / 1000 + "us, loss "
+                + Math.round(fLossRate * 100) + "%");
+    }
+}
@@ -0,0 +1,375 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.client;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.se.pcremote.InputSnapshot;
+
+/**
+ * <p>
+ * The current input state of a PC Remote Client (the keys and mouse buttons pressed and the pointer movement), from which the snapshots described
+ * by {@link com.se.pcremote.InputSnapshot InputSnapshot} are written. The state is updated as the user interacts with the client and a snapshot is
+ * sent whenever it suits the client, e.g. once per frame rather than once per event.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class InputState
+{
+    /**
+     * <p>
+     * A key or mouse button.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    private static class Input
+    {
+        /**
+         * <p>
+         * Determines whether the input is a mouse button rather than a key.
+         * </p>
+         */
+        private boolean fButton;
+
+        /**
+         * <p>
+         * The sequence number of the first snapshot written after the input was last pressed or released.
+         * </p>
+         */
+        private int fChangedSequence;
+
+        /**
+         * <p>
+         * The key code or mouse button.
+         * </p>
+         */
+        private int fCode;
+
+        /**
+         * <p>
+         * Determines whether the input is pressed.
+         * </p>
+         */
+        private boolean fPressed;
+
+        /**
+         * <p>
+         * The number of times the input has been pressed, modulo 256.
+         * </p>
+         */
+        private byte fPressCount;
+    }
+
+    /**
+     * <p>
+     * The sequence number of the latest snapshot acknowledged, or one less than the first snapshot if none have been acknowledged.
+     * </p>
+     */
+    private int fAcknowledged;
+
+    /**
+     * <p>
+     * The pointer movement along the x axis that occurred before each of the recent snapshots, indexed by sequence number modulo
+     * {@link com.se.pcremote.InputSnapshot#MAX_DELTAS MAX_DELTAS}.
+     * </p>
+     */
+    private int[] fDeltaXs;
+
+    /**
+     * <p>
+     * The pointer movement along the y axis that occurred before each of the recent snapshots, indexed by sequence number modulo
+     * {@link com.se.pcremote.InputSnapshot#MAX_DELTAS MAX_DELTAS}.
+     * </p>
+     */
+    private int[] fDeltaYs;
+
+    /**
+     * <p>
+     * The keys and mouse buttons that are pressed or have been pressed or released since the latest snapshot acknowledged.
+     * </p>
+     */
+    private List<Input> fInputs;
+
+    /**
+     * <p>
+     * The sequence number of the next snapshot.
+     * </p>
+     */
+    private int fNext;
+
+    /**
+     * <p>
+     * The wheel movement since the last snapshot was written.
+     * </p>
+     */
+    private int fPendingWheel;
+
+    /**
+     * <p>
+     * The pointer movement along the x axis since the last snapshot was written.
+     * </p>
+     */
+    private int fPendingX;
+
+    /**
+     * <p>
+     * The pointer movement along the y axis since the last snapshot was written.
+     * </p>
+     */
+    private int fPendingY;
+
+    /**
+     * <p>
+     * The wheel movement that occurred before each of the recent snapshots, indexed by sequence number modulo
+     * {@link com.se.pcremote.InputSnapshot#MAX_DELTAS MAX_DELTAS}.
+     * </p>
+     */
+    private int[] fWheels;
+
+    /**
+     * <p>
+     * Creates an instance of <code>InputState</code>.
+     * </p>
+     */
+    public InputState()
+    {
+        fAcknowledged = -1;
+        fDeltaXs = new int[InputSnapshot.MAX_DELTAS];
+        fDeltaYs = new int[InputSnapshot.MAX_DELTAS];
+        fInputs = new ArrayList<Input>();
+        fNext = 0;
+        fPendingWheel = 0;
+        fPendingX = 0;
+        fPendingY = 0;
+        fWheels = new int[InputSnapshot.MAX_DELTAS];
+    }
+
+    /**
+     * <p>
+     * Processes an acknowledgement of a snapshot. The movement and changes acknowledged are no longer repeated in the snapshots that follow.
+     * </p>
+     * 
+     * @param ack The acknowledgement, after its marker.
+     */
+    public synchronized void acknowledge(final ByteBuffer ack)
+    {
+        int sequence = ack.getInt();
+        if (sequence - fAcknowledged <= 0 || sequence - fNext >= 0)
+        {
+            return;
+        }
+        fAcknowledged = sequence;
+
+        Iterator<Input> inputs = fInputs.iterator();
+        while (inputs.hasNext())
+        {
+            Input input = inputs.next();
+            if (!input.fPressed && input.fChangedSequence - fAcknowledged <= 0)
+            {
+                inputs.remove();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Retrieves the key or mouse button with the given code, adding it if it is not already tracked.
+     * </p>
+     * 
+     * @param code The key code or mouse button.
+     * @param button Determines whether the input is a mouse button rather than a key.
+     * 
+     * @return The key or mouse button, or null if too many inputs are already tracked.
+     */
+    private Input getInput(final int code, final boolean button)
+    {
+        for (Input input : fInputs)
+        {
+            if (input.fCode == code && input.fButton == button)
+            {
+                return (input);
+            }
+        }
+
+        if (fInputs.size() == InputSnapshot.MAX_INPUTS)
+        {
+            return (null);
+        }
+
+        Input input = new Input();
+        input.fButton = button;
+        input.fCode = code;
+        input.fPressCount = 0;
+        input.fPressed = false;
+        fInputs.add(input);
+
+        return (input);
+    }
+
+    /**
+     * <p>
+     * Records the movement of the pointer.
+     * </p>
+     * 
+     * @param x The distance moved along the x axis, as per the <code>mouseMoveRelative(x,y);</code> command.
+     * @param y The distance moved along the y axis, as per the <code>mouseMoveRelative(x,y);</code> command.
+     */
+    public synchronized void moveMouse(final int x, final int y)
+    {
+        fPendingX += x;
+        fPendingY += y;
+    }
+
+    /**
+     * <p>
+     * Records the movement of the mouse wheel.
+     * </p>
+     * 
+     * @param notches The number of notches moved, as per the <code>mouseWheel(notches);</code> command.
+     */
+    public synchronized void moveMouseWheel(final int notches)
+    {
+        fPendingWheel += notches;
+    }
+
+    /**
+     * <p>
+     * Records the press of a key.
+     * </p>
+     * 
+     * @param key The key code, as per the <code>keyPress(key);</code> command.
+     */
+    public synchronized void pressKey(final int key)
+    {
+        setPressed(key, false, true);
+    }
+
+    /**
+     * <p>
+     * Records the press of a mouse button.
+     * </p>
+     * 
+     * @param button The mouse button, as per the <code>mousePress(mouseButton);</code> command.
+     */
+    public synchronized void pressMouseButton(final int button)
+    {
+        setPressed(button, true, true);
+    }
+
+    /**
+     * <p>
+     * Records the release of a key.
+     * </p>
+     * 
+     * @param key The key code, as per the <code>keyRelease(key);</code> command.
+     */
+    public synchronized void releaseKey(final int key)
+    {
+        setPressed(key, false, false);
+    }
+
+    /**
+     * <p>
+     * Records the release of a mouse button.
+     * </p>
+     * 
+     * @param button The mouse button, as per the <code>mouseRelease(mouseButton);</code> command.
+     */
+    public synchronized void releaseMouseButton(final int button)
+    {
+        setPressed(button, true, false);
+    }
+
+    /**
+     * <p>
+     * Records the press or release of a key or mouse button.
+     * </p>
+     * 
+     * @param code The key code or mouse button.
+     * @param button Determines whether the input is a mouse button rather than a key.
+     * @param pressed Determines whether the input was pressed rather than released.
+     */
+    private void setPressed(final int code, final boolean button, final boolean pressed)
+    {
+        Input input = getInput(code, button);
+        if (input == null || input.fPressed == pressed)
+        {
+            return;
+        }
+
+        if (pressed)
+        {
+            input.fPressCount++;
+        }
+        input.fChangedSequence = fNext;
+        input.fPressed = pressed;
+    }
+
+    /**
+     * <p>
+     * Writes a snapshot of the current input state to the given buffer.
+     * </p>
+     * 
+     * @param buffer The buffer to write the snapshot to, at its position. It must have at least
+     * {@link com.se.pcremote.InputSnapshot#MAX_LENGTH MAX_LENGTH} bytes remaining.
+     */
+    public synchronized void writeSnapshot(final ByteBuffer buffer)
+    {
+        int sequence = fNext;
+        fNext++;
+
+        int slot = sequence & (InputSnapshot.MAX_DELTAS - 1);
+        fDeltaXs[slot] = fPendingX;
+        fDeltaYs[slot] = fPendingY;
+        fWheels[slot] = fPendingWheel;
+        fPendingX = 0;
+        fPendingY = 0;
+        fPendingWheel = 0;
+
+        buffer.put(InputSnapshot.SNAPSHOT_MARKER);
+        buffer.putInt(sequence);
+
+        // Repeat the movement of every snapshot that has not been acknowledged (or as many as fit).
+        int deltaCount = Math.min(sequence - fAcknowledged, InputSnapshot.MAX_DELTAS);
+        buffer.put((byte) deltaCount);
+        for (int index = sequence - deltaCount + 1; index - sequence <= 0; index++)
+        {
+            int deltaSlot = index & (InputSnapshot.MAX_DELTAS - 1);
+            buffer.putInt(fDeltaXs[deltaSlot]);
+            buffer.putInt(fDeltaYs[deltaSlot]);
+            buffer.putInt(fWheels[deltaSlot]);
+        }
+
+        buffer.put((byte) fInputs.size());
+        for (Input input : fInputs)
+        {
+            int flags = 0;
+            if (input.fButton)
+            {
+                flags |= InputSnapshot.BUTTON;
+            }
+            if (input.fPressed)
+            {
+                flags |= InputSnapshot.PRESSED;
+            }
+
+            buffer.putInt(input.fCode);
+            buffer.put((byte) flags);
+            buffer.put(input.fPressCount);
+        }
+    }
+}
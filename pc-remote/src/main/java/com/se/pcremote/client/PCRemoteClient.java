@@ -19,10 +19,13 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
 import com.se.pcremote.Client;
+import com.se.pcremote.UdpServer;
 import com.se.pcremote.server.PCRemoteServer;
 
 /**
@@ -44,6 +47,13 @@ import com.se.pcremote.server.PCRemoteServer;
  * </ul>
  * 
  * <p>
+ * A {@link #setProbing(boolean) probing} client continuously measures the quality of its UDP connection to the server with round trip probes (see
+ * {@link #getUdpConnectionQuality()}), so that a GUI can show the user the quality of the connection and adapt the rate at which it sends
+ * commands. Only servers that understand round trip probes reply to them. Only the UDP connection is probed, the TCP stream does not frame a
+ * probe apart from the commands around it.
+ * </p>
+ * 
+ * <p>
  * This class also provides a basic client that can be run from the terminal.
  * </p>
  * 
@@ -51,6 +61,21 @@ import com.se.pcremote.server.PCRemoteServer;
  */
 public class PCRemoteClient
 {
+    /**
+     * <p>
+     * The hexadecimal digits, indexed by their values.
+     * </p>
+     */
+    private static final String HEX_DIGITS = "0123456789ABCDEF";
+
+    /**
+     * <p>
+     * The maximum number of characters sent in a single <code>typeText(text);</code> command, longer texts are split over several commands so that
+     * each one fits comfortably within the data the server receives at once.
+     * </p>
+     */
+    private static final int MAX_TEXT_LENGTH = 64;
+
     /**
      * <p>
      * The command to enter into the command line utility to cause the client to quit.
@@ -96,6 +121,37 @@ public class PCRemoteClient
         }
     }
 
+    /**
+     * <p>
+     * Escapes text so that it can be sent as the argument of a <code>typeText(text);</code> command. The text is encoded as UTF-8 and every byte
+     * that is not a printable ASCII character, or that has a meaning in the command syntax, is escaped as '%' followed by two hexadecimal digits.
+     * </p>
+     * 
+     * @param text The text to escape.
+     * 
+     * @return The escaped text.
+     * 
+     * @throws IOException Thrown if the text cannot be encoded as UTF-8.
+     */
+    private static String escapeText(final String text) throws IOException
+    {
+        StringBuilder escaped = new StringBuilder();
+
+        for (byte value : text.getBytes("UTF-8"))
+        {
+            if (value < ' ' || value == 0x7F || value == '%' || value == '(' || value == ')' || value == ',' || value == ';')
+            {
+                escaped.append('%').append(HEX_DIGITS.charAt(value >> 4 & 0x0F)).append(HEX_DIGITS.charAt(value & 0x0F));
+            }
+            else
+            {
+                escaped.append((char) value);
+            }
+        }
+
+        return (escaped.toString());
+    }
+
     /**
      * <p>
      * Provides a basic command line utility in which the user can enter commands manually.
@@ -204,6 +260,28 @@ public class PCRemoteClient
         }
     }
 
+    /**
+     * <p>
+     * The logical clock shared by the TCP and UDP connections, it ticks once per message sent while this client is ordered.
+     * </p>
+     */
+    private AtomicInteger fClock;
+
+    /**
+     * <p>
+     * Determines whether the messages sent are stamped with the logical clock so that the server executes them in the order in which they were sent,
+     * regardless of the protocol they were sent with.
+     * </p>
+     */
+    private boolean fOrdered;
+
+    /**
+     * <p>
+     * Determines whether the quality of the UDP connection to the server is measured with round trip probes.
+     * </p>
+     */
+    private boolean fProbing;
+
     /**
      * <p>
      * The host on which the {@link com.se.pcremote.server.PCRemoteServer PCRemoteServer} resides.
@@ -218,6 +296,13 @@ public class PCRemoteClient
      */
     private int fServerPort;
 
+    /**
+     * <p>
+     * The identifier the messages sent are stamped with, it identifies this client to the server across its TCP and UDP connections.
+     * </p>
+     */
+    private int fSessionId;
+
     /**
      * <p>
      * The {@link com.se.pcremote.Client Client} used to communicate with the {@link com.se.pcremote.server.PCRemoteServer PCRemoteServer} using
@@ -226,6 +311,29 @@ public class PCRemoteClient
      */
     private Client fTcpClient;
 
+    /**
+     * <p>
+     * Determines whether the messages sent are stamped with the time at which they were sent, so that the server can drop pointer events that
+     * arrive too late to be useful.
+     * </p>
+     */
+    private boolean fTimed;
+
+    /**
+     * <p>
+     * The {@link com.se.pcremote.UdpClient UdpClient} used to send commands reliably to the {@link com.se.pcremote.server.PCRemoteServer
+     * PCRemoteServer} using the UDP protocol.
+     * </p>
+     */
+    private UdpClient fUdpClient;
+
+    /**
+     * <p>
+     * Receives the acknowledgements of the commands sent reliably using the UDP protocol.
+     * </p>
+     */
+    private Thread fUdpReceiveThread;
+
     /**
      * <p>
      * The socket used to communicate with the {@link com.se.pcremote.server.PCRemoteServer PCRemoteServer} using the UDP protocol.
@@ -246,9 +354,16 @@ public class PCRemoteClient
     {
         fServerHost = serverHost;
 
+        fClock = new AtomicInteger();
         fLogger = Logger.getLogger(PCRemoteClient.class);
+        fOrdered = false;
+        fProbing = false;
         fServerPort = PCRemoteServer.DEFAULT_PORT;
+        fSessionId = new Random().nextInt(Integer.MAX_VALUE - 1) + 1;
         fTcpClient = null;
+        fTimed = false;
+        fUdpClient = null;
+        fUdpReceiveThread = null;
         fUdpSocket = new DatagramSocket();
     }
 
@@ -267,11 +382,37 @@ public class PCRemoteClient
         fServerHost = serverHost;
         fServerPort = serverPort;
 
+        fClock = new AtomicInteger();
         fLogger = Logger.getLogger(PCRemoteClient.class);
+        fOrdered = false;
+        fProbing = false;
+        fSessionId = new Random().nextInt(Integer.MAX_VALUE - 1) + 1;
         fTcpClient = null;
+        fTimed = false;
+        fUdpClient = null;
+        fUdpReceiveThread = null;
         fUdpSocket = null;
     }
 
+    /**
+     * <p>
+     * Registers a macro with the server using the TCP protocol. Once registered, the macro can be executed by sending the command
+     * <code>macro(id);</code>, which costs no more to send than a single key press no matter how many commands the macro consists of. Registering a
+     * macro with the same identifier as an existing one replaces it. Macros are registered for the TCP connection only, unless this client is
+     * {@link #setOrdered(boolean) ordered} in which case they can also be executed via UDP. Only servers that understand the
+     * <code>defineMacro(id,commands);</code> command support this.
+     * </p>
+     * 
+     * @param id The identifier of the macro, from 0 to 255.
+     * @param commands The commands the macro consists of e.g. "keyPress(17);keyPress(67);keyRelease(67);keyRelease(17);".
+     * 
+     * @throws IOException Thrown if the macro fails to be sent.
+     */
+    public void defineMacro(final int id, final String commands) throws IOException
+    {
+        sendCommandViaTcp("defineMacro(" + id + "," + escapeText(commands) + ");");
+    }
+
     /**
      * <p>
      * Closes the connection to the server.
@@ -285,12 +426,29 @@ public class PCRemoteClient
         {
             fTcpClient.dispose();
         }
+        if (fUdpClient != null)
+        {
+            fUdpClient.dispose();
+        }
         if (fUdpSocket != null)
         {
             fUdpSocket.disconnect();
         }
     }
 
+    /**
+     * <p>
+     * Retrieves the input state of this client, of which snapshots are sent by {@link #sendInputSnapshot()}. Only available once this client has
+     * been initialised.
+     * </p>
+     * 
+     * @return The input state of this client.
+     */
+    public InputState getInputState()
+    {
+        return (fUdpClient.getInputState());
+    }
+
     /**
      * <p>
      * Retrieves the host on which the {@link com.se.pcremote.server.PCRemoteServer PCRemoteServer} resides.
@@ -315,6 +473,19 @@ public class PCRemoteClient
         return (fServerPort);
     }
 
+    /**
+     * <p>
+     * Retrieves the quality of the UDP connection to the server, as measured so far. Only available once this client has been initialised and only
+     * measured while it is {@link #setProbing(boolean) probing}.
+     * </p>
+     * 
+     * @return The quality of the UDP connection to the server.
+     */
+    public ConnectionQuality getUdpConnectionQuality()
+    {
+        return (new ConnectionQuality(fUdpClient.getRoundTripProbe()));
+    }
+
     /**
      * <p>
      * Opens the connection to the server.
@@ -326,6 +497,12 @@ public class PCRemoteClient
     {
         fTcpClient = new TcpClient(new Socket(fServerHost, fServerPort));
         fUdpSocket = new DatagramSocket();
+
+        fUdpClient = new UdpClient(fUdpSocket, InetAddress.getByName(fServerHost), fServerPort - 1);
+        fUdpReceiveThread = new Thread(new UdpServer(fUdpClient));
+        fUdpReceiveThread.setDaemon(true);
+        fUdpReceiveThread.start();
+        fUdpClient.maintainProbe(fProbing);
     }
 
     /**
@@ -340,6 +517,44 @@ public class PCRemoteClient
         return (fTcpClient != null && fTcpClient.isConnected());
     }
 
+    /**
+     * <p>
+     * Determines whether the messages sent are stamped with a logical clock so that the server executes them in the order in which they were sent,
+     * regardless of the protocol they were sent with.
+     * </p>
+     * 
+     * @return True if the messages sent are stamped, false otherwise.
+     */
+    public boolean isOrdered()
+    {
+        return (fOrdered);
+    }
+
+    /**
+     * <p>
+     * Determines whether the quality of the UDP connection to the server is measured with round trip probes.
+     * </p>
+     * 
+     * @return True if the quality of the UDP connection to the server is measured, false otherwise.
+     */
+    public boolean isProbing()
+    {
+        return (fProbing);
+    }
+
+    /**
+     * <p>
+     * Determines whether the messages sent are stamped with the time at which they were sent, so that the server can drop pointer events that
+     * arrive too late to be useful.
+     * </p>
+     * 
+     * @return True if the messages sent are stamped with the time at which they were sent, false otherwise.
+     */
+    public boolean isTimed()
+    {
+        return (fTimed);
+    }
+
     /**
      * <p>
      * Sends a command to the server using the TCP protocol.
@@ -353,7 +568,25 @@ public class PCRemoteClient
     {
         fLogger.debug("Sending command via TCP: " + command);
 
-        fTcpClient.sendData(command.getBytes());
+        fTcpClient.sendData(stamp(command).getBytes());
+    }
+
+    /**
+     * <p>
+     * Sends a command to the server reliably using the UDP protocol. The command is retransmitted until the server acknowledges it and is executed
+     * exactly once, but unlike a command sent using the TCP protocol it is not held up by the loss of any other command. This makes it suitable
+     * for key and button events. Only servers that understand reliable datagrams support this.
+     * </p>
+     * 
+     * @param command The command to be sent to the server.
+     * 
+     * @throws IOException Thrown if the command fails to be sent.
+     */
+    public void sendCommandViaReliableUdp(final String command) throws IOException
+    {
+        fLogger.debug("Sending command via reliable UDP: " + command);
+
+        fUdpClient.sendReliableData(stamp(command).getBytes());
     }
 
     /**
@@ -369,6 +602,121 @@ public class PCRemoteClient
     {
         fLogger.debug("Sending command via UDP: " + command);
 
-        fUdpSocket.send(new DatagramPacket(command.getBytes(), command.getBytes().length, InetAddress.getByName(fServerHost), fServerPort - 1));
+        byte[] data = stamp(command).getBytes();
+        fUdpSocket.send(new DatagramPacket(data, data.length, InetAddress.getByName(fServerHost), fServerPort - 1));
+    }
+
+    /**
+     * <p>
+     * Sends a snapshot of the {@link #getInputState() input state} of this client to the server using the UDP protocol. Rather than sending every
+     * key press, button press and pointer movement in a datagram of its own, a client can record them in its input state and send a snapshot at a
+     * steady rate (e.g. every 20 milliseconds). Fewer, larger datagrams suit a phone's radio better than many tiny ones and a lost snapshot is made
+     * up for by the next one. Only servers that understand input snapshots support this.
+     * </p>
+     * 
+     * @throws IOException Thrown if the snapshot fails to be sent.
+     */
+    public void sendInputSnapshot() throws IOException
+    {
+        fUdpClient.sendInputSnapshot();
+    }
+
+    /**
+     * <p>
+     * Determines whether the messages sent are stamped with a logical clock so that the server executes them in the order in which they were sent,
+     * regardless of the protocol they were sent with. Without this a mouse movement sent via UDP can overtake the mouse button press sent via TCP
+     * just before it. Only servers that understand the <code>clock(session,tick);</code> command support ordered clients.
+     * </p>
+     * 
+     * @param ordered Determines whether the messages sent are stamped with a logical clock.
+     */
+    public void setOrdered(final boolean ordered)
+    {
+        fOrdered = ordered;
+    }
+
+    /**
+     * <p>
+     * Determines whether the quality of the UDP connection to the server is measured with round trip probes (see
+     * {@link #getUdpConnectionQuality()}). This can be changed while this client is connected. Only servers that understand round trip probes
+     * reply to them, older servers log an error for every probe they receive so probing is off by default.
+     * </p>
+     * 
+     * @param probing Determines whether the quality of the UDP connection to the server is measured.
+     */
+    public void setProbing(final boolean probing)
+    {
+        fProbing = probing;
+
+        if (fUdpClient != null)
+        {
+            fUdpClient.maintainProbe(probing);
+        }
+    }
+
+    /**
+     * <p>
+     * Determines whether the messages sent are stamped with the time at which they were sent (as per this client's clock, the server estimates the
+     * offset to its own). The server drops the pointer events that are older than its deadline by the time it gets to inject them, a movement that
+     * arrives late only yanks the pointer after the user has moved on. Key and button events are never dropped. Only servers that understand the
+     * <code>time(millis);</code> command support timed clients.
+     * </p>
+     * 
+     * @param timed Determines whether the messages sent are stamped with the time at which they were sent.
+     */
+    public void setTimed(final boolean timed)
+    {
+        fTimed = timed;
+    }
+
+    /**
+     * <p>
+     * Stamps the given command with the next tick of the logical clock if this client is ordered and with the current time if this client is timed.
+     * </p>
+     * 
+     * @param command The command to stamp.
+     * 
+     * @return The stamped command.
+     */
+    private String stamp(final String command)
+    {
+        String stamped = command;
+        if (fTimed)
+        {
+            stamped = "time(" + (int) (System.nanoTime() / 1000000L) + ");" + stamped;
+        }
+        if (fOrdered)
+        {
+            stamped = "clock(" + fSessionId + "," + fClock.getAndIncrement() + ");" + stamped;
+        }
+
+        return (stamped);
+    }
+
+    /**
+     * <p>
+     * Types some text on the server using the TCP protocol. The whole text is sent in as few <code>typeText(text);</code> commands as possible
+     * rather than as a key press and release (and Shift key press and release) per character. Only servers that understand the
+     * <code>typeText(text);</code> command support this.
+     * </p>
+     * 
+     * @param text The text to type.
+     * 
+     * @throws IOException Thrown if the text fails to be sent.
+     */
+    public void typeText(final String text) throws IOException
+    {
+        int start = 0;
+        while (start < text.length())
+        {
+            int end = start;
+            for (int count = 0; count < MAX_TEXT_LENGTH && end < text.length(); count++)
+            {
+                end = text.offsetByCodePoints(end, 1);
+            }
+
+            sendCommandViaTcp("typeText(" + escapeText(text.substring(start, end)) + ");");
+            start = end;
+        }
     }
 }
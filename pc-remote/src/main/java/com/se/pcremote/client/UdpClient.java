@@ -0,0 +1,106 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.client;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import com.se.pcremote.InputSnapshot;
+
+/**
+ * <p>
+ * Sends commands and input snapshots to a PC Remote Server via UDP and receives the acknowledgements of those sent reliably and of the snapshots.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class UdpClient extends com.se.pcremote.UdpClient
+{
+    /**
+     * <p>
+     * The input state of which snapshots are sent.
+     * </p>
+     */
+    private InputState fInputState;
+
+    /**
+     * <p>
+     * The address of the PC Remote Server.
+     * </p>
+     */
+    private InetSocketAddress fRemoteAddress;
+
+    /**
+     * <p>
+     * The snapshot sent by {@link #sendInputSnapshot()}. It is reused for every snapshot.
+     * </p>
+     */
+    private ByteBuffer fSnapshot;
+
+    /**
+     * <p>
+     * Creates an instance of <code>UdpClient</code>.
+     * </p>
+     * 
+     * @param datagramSocket The socket over which the UDP data is sent and received.
+     * @param remoteHost The host on which the PC Remote Server resides.
+     * @param remotePort The port on which the PC Remote Server is listening for UDP data.
+     */
+    public UdpClient(final DatagramSocket datagramSocket, final InetAddress remoteHost, final int remotePort)
+    {
+        super(datagramSocket, remoteHost, remotePort);
+
+        fInputState = new InputState();
+        fRemoteAddress = new InetSocketAddress(remoteHost, remotePort);
+        fSnapshot = ByteBuffer.allocate(InputSnapshot.MAX_LENGTH);
+    }
+
+    /**
+     * <p>
+     * Retrieves the input state of which snapshots are sent.
+     * </p>
+     * 
+     * @return The input state of which snapshots are sent.
+     */
+    public InputState getInputState()
+    {
+        return (fInputState);
+    }
+
+    @Override
+    protected void onReceiveData(final DatagramPacket packet)
+    {
+        if (packet.getLength() == InputSnapshot.ACK_LENGTH && packet.getData()[packet.getOffset()] == InputSnapshot.ACK_MARKER)
+        {
+            fInputState.acknowledge(ByteBuffer.wrap(packet.getData(), packet.getOffset() + 1, InputSnapshot.ACK_LENGTH - 1));
+        }
+    }
+
+    /**
+     * <p>
+     * Sends a snapshot of the current input state.
+     * </p>
+     * 
+     * @throws IOException Thrown if the underlying datagram socket fails to send the snapshot.
+     */
+    public void sendInputSnapshot() throws IOException
+    {
+        fSnapshot.clear();
+        fInputState.writeSnapshot(fSnapshot);
+        fSnapshot.flip();
+        sendData(fSnapshot, fRemoteAddress);
+    }
+}
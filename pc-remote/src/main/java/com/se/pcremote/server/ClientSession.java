@@ -0,0 +1,639 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.awt.event.KeyEvent;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * The server side state of a single PC Remote Client, shared by all of the connections (TCP and UDP) the client sends commands over.
+ * </p>
+ * 
+ * <p>
+ * This includes the macros the client has registered. A macro is compiled into the commands it consists of when it is registered (with any
+ * macros it invokes expanded in place) so invoking it with a <code>macro(id);</code> command costs no more than a single key press to send and
+ * decode.
+ * </p>
+ * 
+ * <p>
+ * The rate at which the client can inject input is limited by a {@link com.se.pcremote.server.RateLimiter RateLimiter}, before the redundant
+ * presses and releases are dropped. Pointer events held back by the limits are released with the next message from the client or by
+ * {@link #releaseThrottled()}.
+ * </p>
+ * 
+ * <p>
+ * Commands that follow a <code>time(millis);</code> command are submitted to the {@link com.se.pcremote.server.InputScheduler InputScheduler}
+ * with the time at which the client sent them, converted to the server's time by a {@link com.se.pcremote.server.ClockOffsetEstimator
+ * ClockOffsetEstimator}. Commands that are not stamped are taken to have been sent when they arrived.
+ * </p>
+ * 
+ * <p>
+ * A message (including the macros it invokes) can pause for the gesture delay of the {@link com.se.pcremote.server.CommandExecuter
+ * CommandExecuter} at most {@link #MAX_PAUSE_COUNT} times, the pauses after that are dropped. If there is no <code>InputScheduler</code> the
+ * stages of a gesture are executed separately and the gesture delay is waited out between them without holding the lock of the
+ * <code>CommandExecuter</code>, other clients can be executed in the meantime.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ClientSession
+{
+    /**
+     * <p>
+     * The number of macros a client can register, they are identified by the numbers from 0 up to (but not including) this number.
+     * </p>
+     */
+    public static final int MACRO_COUNT = 256;
+
+    /**
+     * <p>
+     * The maximum number of commands in a macro, longer macros are not registered.
+     * </p>
+     */
+    public static final int MAX_MACRO_LENGTH = 256;
+
+    /**
+     * <p>
+     * The maximum number of times a message (including the macros it invokes) can pause for the gesture delay, the pauses after that are dropped.
+     * </p>
+     */
+    public static final int MAX_PAUSE_COUNT = 16;
+
+    /**
+     * <p>
+     * The commands admitted by the {@link RateLimiter} for a single command.
+     * </p>
+     */
+    private CommandBuffer fAdmitted;
+
+    /**
+     * <p>
+     * Estimates the offset between the client's clock and the server's.
+     * </p>
+     */
+    private ClockOffsetEstimator fClockOffsetEstimator;
+
+    /**
+     * <p>
+     * The number of commands the client has sent that have been executed (or were dropped as they were executed), control commands included.
+     * </p>
+     */
+    private volatile long fCommandCount;
+
+    /**
+     * <p>
+     * Executes the commands.
+     * </p>
+     */
+    private CommandExecuter fCommandExecuter;
+
+    /**
+     * <p>
+     * The commands that are not redundant, they are the ones actually executed.
+     * </p>
+     */
+    private CommandBuffer fExecuted;
+
+    /**
+     * <p>
+     * The identifier the client stamps its messages with, or the (negative) identifier of its connection if the client does not stamp
+     * its messages.
+     * </p>
+     */
+    private int fId;
+
+    /**
+     * <p>
+     * Tracks the keys and mouse buttons the client holds down.
+     * </p>
+     */
+    private InputTracker fInputTracker;
+
+    /**
+     * <p>
+     * Queues the commands for injection, or null if they are executed straight away.
+     * </p>
+     */
+    private InputScheduler fInputScheduler;
+
+    /**
+     * <p>
+     * The time at which a message was last received from the client (in nanoseconds).
+     * </p>
+     */
+    private volatile long fLastActiveTime;
+
+    /**
+     * <p>
+     * Logs messages associated with this class.
+     * </p>
+     */
+    private Logger fLogger;
+
+    /**
+     * <p>
+     * The commands of the macros the client has registered, indexed by their identifiers.
+     * </p>
+     */
+    private CommandBuffer[] fMacros;
+
+    /**
+     * <p>
+     * The number of times the message being executed has paused for the gesture delay.
+     * </p>
+     */
+    private int fPauseCount;
+
+    /**
+     * <p>
+     * Limits the rate at which the client can inject input.
+     * </p>
+     */
+    private RateLimiter fRateLimiter;
+
+    /**
+     * <p>
+     * Puts the stamped messages back into the order in which the client sent them.
+     * </p>
+     */
+    private ReorderBuffer fReorderBuffer;
+
+    /**
+     * <p>
+     * The time at which the client sent the commands being executed (in nanoseconds).
+     * </p>
+     */
+    private long fSentTime;
+
+    /**
+     * <p>
+     * The commands of a single stage of a gesture, when they are executed straight away.
+     * </p>
+     */
+    private CommandBuffer fStage;
+
+    /**
+     * <p>
+     * Creates an instance of <code>ClientSession</code>.
+     * </p>
+     * 
+     * @param id The identifier the client stamps its messages with, or the (negative) identifier of its connection if the client does not stamp
+     * its messages.
+     * @param commandExecuter Executes the commands.
+     */
+    public ClientSession(final int id, final CommandExecuter commandExecuter)
+    {
+        this(id, commandExecuter, null);
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>ClientSession</code> that queues its commands for injection.
+     * </p>
+     * 
+     * @param id The identifier the client stamps its messages with, or the (negative) identifier of its connection if the client does not stamp
+     * its messages.
+     * @param commandExecuter Executes the commands.
+     * @param inputScheduler Queues the commands for injection, or null if they are executed straight away.
+     */
+    public ClientSession(final int id, final CommandExecuter commandExecuter, final InputScheduler inputScheduler)
+    {
+        fCommandExecuter = commandExecuter;
+        fId = id;
+        fInputScheduler = inputScheduler;
+
+        fAdmitted = new CommandBuffer();
+        fClockOffsetEstimator = new ClockOffsetEstimator();
+        fCommandCount = 0;
+        fExecuted = new CommandBuffer();
+        fInputTracker = new InputTracker();
+        fLastActiveTime = System.nanoTime();
+        fLogger = Logger.getLogger(getClass());
+        fMacros = new CommandBuffer[MACRO_COUNT];
+        fPauseCount = 0;
+        fRateLimiter = new RateLimiter();
+        fReorderBuffer = new ReorderBuffer()
+        {
+            @Override
+            protected void onRelease(final CommandBuffer commands)
+            {
+                execute(commands);
+            }
+        };
+        fSentTime = fLastActiveTime;
+        fStage = new CommandBuffer();
+    }
+
+    /**
+     * <p>
+     * Registers the commands between a <code>defineMacro(id);</code> command and the <code>endMacro(id);</code> command that follows it as a macro,
+     * replacing any macro already registered with the same identifier. Macros invoked within the macro are expanded in place. The macro is not
+     * registered if it is not ended, its identifier is out of range or it is too long.
+     * </p>
+     * 
+     * @param commands The commands containing the macro.
+     * @param start The index of the <code>defineMacro(id);</code> command.
+     * 
+     * @return The index of the <code>endMacro(id);</code> command, or the index of the last command if the macro is not ended.
+     */
+    private int defineMacro(final CommandBuffer commands, final int start)
+    {
+        int id = commands.getArgument0(start);
+
+        int end = start + 1;
+        while (end < commands.size() && commands.getOpcode(end) != Opcode.END_MACRO)
+        {
+            end++;
+        }
+        if (end == commands.size() || id < 0 || id >= MACRO_COUNT)
+        {
+            return (Math.min(end, commands.size() - 1));
+        }
+
+        CommandBuffer macro = new CommandBuffer();
+        for (int index = start + 1; index < end; index++)
+        {
+            if (commands.getOpcode(index) == Opcode.MACRO)
+            {
+                CommandBuffer invoked = getMacro(commands.getArgument0(index));
+                if (invoked != null)
+                {
+                    macro.addAll(invoked);
+                }
+            }
+            else if (!Opcode.isControl(commands.getOpcode(index)))
+            {
+                macro.add(commands.getOpcode(index), commands.getArgument0(index), commands.getArgument1(index));
+            }
+        }
+
+        if (macro.size() <= MAX_MACRO_LENGTH)
+        {
+            fMacros[id] = macro;
+        }
+
+        return (end);
+    }
+
+    /**
+     * <p>
+     * Releases everything the client holds down. This should be called when the client goes away (e.g. it disconnects in the middle of a key
+     * press) so that nothing is left stuck down on the desktop.
+     * </p>
+     */
+    public synchronized void dispose()
+    {
+        fExecuted.clear();
+        fInputTracker.releaseAll(fExecuted);
+        fSentTime = System.nanoTime();
+
+        inject();
+    }
+
+    /**
+     * <p>
+     * Executes the given commands straight away. Presses and releases that are redundant given the keys and mouse buttons the client already holds
+     * down (e.g. a retried press that arrives twice) are dropped. Macros are registered and invoked as the commands to do so are reached.
+     * </p>
+     * 
+     * @param commands The commands to execute.
+     */
+    public synchronized void execute(final CommandBuffer commands)
+    {
+        long now = System.nanoTime();
+        fCommandCount += commands.size();
+        fLastActiveTime = now;
+        fPauseCount = 0;
+        fSentTime = now;
+
+        fExecuted.clear();
+        for (int index = 0; index < commands.size(); index++)
+        {
+            if (commands.getOpcode(index) == Opcode.TIME)
+            {
+                // The commands before the stamp were sent at a different time.
+                inject();
+                fExecuted.clear();
+                fSentTime = fClockOffsetEstimator.update(commands.getArgument0(index), now);
+            }
+            else if (commands.getOpcode(index) == Opcode.DEFINE_MACRO)
+            {
+                index = defineMacro(commands, index);
+            }
+            else if (commands.getOpcode(index) == Opcode.MACRO)
+            {
+                CommandBuffer macro = getMacro(commands.getArgument0(index));
+                if (macro != null)
+                {
+                    for (int macroIndex = 0; macroIndex < macro.size(); macroIndex++)
+                    {
+                        track(macro.getOpcode(macroIndex), macro.getArgument0(macroIndex), macro.getArgument1(macroIndex), now);
+                    }
+                }
+                else
+                {
+                    fLogger.warn("Session " + fId + " invoked macro " + commands.getArgument0(index) + " which it has not registered, skipping it.");
+                }
+            }
+            else if (!Opcode.isControl(commands.getOpcode(index)))
+            {
+                track(commands.getOpcode(index), commands.getArgument0(index), commands.getArgument1(index), now);
+            }
+        }
+        release(now);
+
+        inject();
+    }
+
+    /**
+     * <p>
+     * Retrieves the estimator of the offset between the client's clock and the server's.
+     * </p>
+     * 
+     * @return The estimator of the offset between the client's clock and the server's.
+     */
+    public ClockOffsetEstimator getClockOffsetEstimator()
+    {
+        return (fClockOffsetEstimator);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of commands the client has sent that have been executed (or were dropped as they were executed), control commands
+     * included.
+     * </p>
+     * 
+     * @return The number of commands the client has sent that have been executed.
+     */
+    public long getCommandCount()
+    {
+        return (fCommandCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the identifier the client stamps its messages with.
+     * </p>
+     * 
+     * @return The identifier the client stamps its messages with, or the (negative) identifier of its connection if the client does not stamp
+     * its messages.
+     */
+    public int getId()
+    {
+        return (fId);
+    }
+
+    /**
+     * <p>
+     * Retrieves the tracker of the keys and mouse buttons the client holds down.
+     * </p>
+     * 
+     * @return The tracker of the keys and mouse buttons the client holds down.
+     */
+    public InputTracker getInputTracker()
+    {
+        return (fInputTracker);
+    }
+
+    /**
+     * <p>
+     * Retrieves the time at which a message was last received from the client.
+     * </p>
+     * 
+     * @return The time at which a message was last received from the client (in nanoseconds, as per {@link java.lang.System#nanoTime()
+     * System.nanoTime()}).
+     */
+    public long getLastActiveTime()
+    {
+        return (fLastActiveTime);
+    }
+
+    /**
+     * <p>
+     * Retrieves the commands of the macro with the given identifier.
+     * </p>
+     * 
+     * @param id The identifier of the macro.
+     * 
+     * @return The commands of the macro with the given identifier, or null if the client has not registered it.
+     */
+    public synchronized CommandBuffer getMacro(final int id)
+    {
+        if (id < 0 || id >= MACRO_COUNT)
+        {
+            return (null);
+        }
+
+        return (fMacros[id]);
+    }
+
+    /**
+     * <p>
+     * Retrieves the limiter of the rate at which the client can inject input.
+     * </p>
+     * 
+     * @return The limiter of the rate at which the client can inject input.
+     */
+    public RateLimiter getRateLimiter()
+    {
+        return (fRateLimiter);
+    }
+
+    /**
+     * <p>
+     * Retrieves the buffer that puts the stamped messages back into the order in which the client sent them.
+     * </p>
+     * 
+     * @return The buffer that puts the stamped messages back into the order in which the client sent them.
+     */
+    public ReorderBuffer getReorderBuffer()
+    {
+        return (fReorderBuffer);
+    }
+
+    /**
+     * <p>
+     * Registers the macros of the given session with this session, replacing any macros already registered. This is used when a client picks up
+     * where a session that timed out left off, so that the macros it registered are not lost while it was idle.
+     * </p>
+     * 
+     * @param session The session to take the macros from.
+     */
+    public synchronized void inheritMacros(final ClientSession session)
+    {
+        synchronized (session)
+        {
+            System.arraycopy(session.fMacros, 0, fMacros, 0, MACRO_COUNT);
+        }
+    }
+
+    /**
+     * <p>
+     * Executes the commands that are not redundant (if there are any), or queues them for injection if there is an {@link InputScheduler}.
+     * </p>
+     */
+    private void inject()
+    {
+        if (fExecuted.size() > 0)
+        {
+            if (fInputScheduler != null)
+            {
+                fInputScheduler.submit(fExecuted, fId, fSentTime);
+            }
+            else
+            {
+                injectStages();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Executes the commands that are not redundant straight away, one stage of a gesture at a time. The gesture delay is waited out between the
+     * stages without holding the lock of the {@link CommandExecuter}.
+     * </p>
+     */
+    private void injectStages()
+    {
+        int start = 0;
+        while (start < fExecuted.size())
+        {
+            int end = start;
+            while (end < fExecuted.size() && fExecuted.getOpcode(end) != Opcode.PAUSE)
+            {
+                end++;
+            }
+
+            fStage.clear();
+            for (int index = start; index < end; index++)
+            {
+                fStage.add(fExecuted.getOpcode(index), fExecuted.getArgument0(index), fExecuted.getArgument1(index));
+            }
+            if (fStage.size() > 0)
+            {
+                fCommandExecuter.executeCommands(fStage, fId);
+            }
+
+            if (end + 1 < fExecuted.size() && fStage.size() > 0)
+            {
+                int gestureDelay = fCommandExecuter.getGestureDelay();
+                if (gestureDelay > 0)
+                {
+                    try
+                    {
+                        Thread.sleep(gestureDelay);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * <p>
+     * Executes the given commands once all of the messages the client sent before them have been executed (or skipped because they did not arrive
+     * in time).
+     * </p>
+     * 
+     * @param tick The tick of the client's logical clock the commands were stamped with.
+     * @param commands The commands to execute.
+     */
+    public void offer(final int tick, final CommandBuffer commands)
+    {
+        fLastActiveTime = System.nanoTime();
+
+        fReorderBuffer.offer(tick, commands);
+    }
+
+    /**
+     * <p>
+     * Adds the pointer events held back by the {@link RateLimiter} to those to be executed, if there is a token for them.
+     * </p>
+     * 
+     * @param now The current time (in nanoseconds).
+     */
+    private void release(final long now)
+    {
+        fAdmitted.clear();
+        fRateLimiter.release(now, false, fAdmitted);
+        for (int index = 0; index < fAdmitted.size(); index++)
+        {
+            fExecuted.add(fAdmitted.getOpcode(index), fAdmitted.getArgument0(index), fAdmitted.getArgument1(index));
+        }
+    }
+
+    /**
+     * <p>
+     * Executes the pointer events held back by the {@link RateLimiter} if there is now a token for them. This should be called periodically so
+     * that the last movement of a client that exceeded the limits is not left pending until it sends another message.
+     * </p>
+     */
+    public synchronized void releaseThrottled()
+    {
+        if (fRateLimiter.isPending())
+        {
+            fExecuted.clear();
+            fSentTime = System.nanoTime();
+            release(fSentTime);
+
+            inject();
+        }
+    }
+
+    /**
+     * <p>
+     * Adds a command to those to be executed, unless it exceeds the limits on the rate at which the client can inject input or it is redundant
+     * given the keys and mouse buttons the client already holds down, or it is a pause beyond the {@link #MAX_PAUSE_COUNT} of the message. A
+     * character to be typed is marked if the client is holding the Shift key
+     * down at that point, so that typing it does not press or release the Shift key.
+     * </p>
+     * 
+     * @param opcode The {@link com.se.pcremote.server.Opcode Opcode} of the command.
+     * @param argument0 The first argument of the command.
+     * @param argument1 The second argument of the command.
+     * @param now The current time (in nanoseconds).
+     */
+    private void track(final int opcode, final int argument0, final int argument1, final long now)
+    {
+        fAdmitted.clear();
+        fRateLimiter.admit(opcode, argument0, argument1, now, fAdmitted);
+
+        for (int index = 0; index < fAdmitted.size(); index++)
+        {
+            int admittedOpcode = fAdmitted.getOpcode(index);
+            if (admittedOpcode == Opcode.PAUSE)
+            {
+                if (fPauseCount == MAX_PAUSE_COUNT)
+                {
+                    continue;
+                }
+                fPauseCount++;
+            }
+
+            if (fInputTracker.accept(admittedOpcode, fAdmitted.getArgument0(index)))
+            {
+                int admittedArgument1 = fAdmitted.getArgument1(index);
+                if (admittedOpcode == Opcode.TYPE_CHARACTER)
+                {
+                    admittedArgument1 = fInputTracker.isKeyPressed(KeyEvent.VK_SHIFT) ? 1 : 0;
+                }
+                fExecuted.add(admittedOpcode, fAdmitted.getArgument0(index), admittedArgument1);
+            }
+        }
+    }
+}
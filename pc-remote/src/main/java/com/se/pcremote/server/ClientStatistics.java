@@ -0,0 +1,181 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+/**
+ * <p>
+ * The statistics of a single client that stamps its messages, as reported by a {@link com.se.pcremote.server.ServerMonitor ServerMonitor}. A
+ * <code>ClientStatistics</code> is a snapshot, it does not change as the client carries on.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ClientStatistics
+{
+    /**
+     * <p>
+     * The number of pointer events that were merged into others by the client's rate limiter.
+     * </p>
+     */
+    private long fCoalescedCount;
+
+    /**
+     * <p>
+     * The number of commands the client has sent that have been executed.
+     * </p>
+     */
+    private long fCommandCount;
+
+    /**
+     * <p>
+     * The number of events that were dropped by the client's rate limiter.
+     * </p>
+     */
+    private long fDroppedCount;
+
+    /**
+     * <p>
+     * The identifier the client stamps its messages with.
+     * </p>
+     */
+    private int fId;
+
+    /**
+     * <p>
+     * The time since a message was last received from the client (in milliseconds).
+     * </p>
+     */
+    private long fIdleTime;
+
+    /**
+     * <p>
+     * The share of the total injection time that was used by the client.
+     * </p>
+     */
+    private double fInjectionShare;
+
+    /**
+     * <p>
+     * The injection time used by the client (in microseconds).
+     * </p>
+     */
+    private long fInjectionTime;
+
+    /**
+     * <p>
+     * Creates an instance of <code>ClientStatistics</code>.
+     * </p>
+     * 
+     * @param id The identifier the client stamps its messages with.
+     * @param commandCount The number of commands the client has sent that have been executed.
+     * @param coalescedCount The number of pointer events that were merged into others by the client's rate limiter.
+     * @param droppedCount The number of events that were dropped by the client's rate limiter.
+     * @param injectionTime The injection time used by the client (in microseconds).
+     * @param injectionShare The share of the total injection time that was used by the client.
+     * @param idleTime The time since a message was last received from the client (in milliseconds).
+     */
+    public ClientStatistics(final int id, final long commandCount, final long coalescedCount, final long droppedCount, final long injectionTime,
+            final double injectionShare, final long idleTime)
+    {
+        fId = id;
+        fCommandCount = commandCount;
+        fCoalescedCount = coalescedCount;
+        fDroppedCount = droppedCount;
+        fInjectionTime = injectionTime;
+        fInjectionShare = injectionShare;
+        fIdleTime = idleTime;
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of pointer events that were merged into others by the client's rate limiter.
+     * </p>
+     * 
+     * @return The number of pointer events that were merged into others by the client's rate limiter.
+     */
+    public long getCoalescedCount()
+    {
+        return (fCoalescedCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of commands the client has sent that have been executed.
+     * </p>
+     * 
+     * @return The number of commands the client has sent that have been executed.
+     */
+    public long getCommandCount()
+    {
+        return (fCommandCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of events that were dropped by the client's rate limiter.
+     * </p>
+     * 
+     * @return The number of events that were dropped by the client's rate limiter.
+     */
+    public long getDroppedCount()
+    {
+        return (fDroppedCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the identifier the client stamps its messages with.
+     * </p>
+     * 
+     * @return The identifier the client stamps its messages with.
+     */
+    public int getId()
+    {
+        return (fId);
+    }
+
+    /**
+     * <p>
+     * Retrieves the time since a message was last received from the client.
+     * </p>
+     * 
+     * @return The time since a message was last received from the client (in milliseconds).
+     */
+    public long getIdleTime()
+    {
+        return (fIdleTime);
+    }
+
+    /**
+     * <p>
+     * Retrieves the share of the total injection time that was used by the client.
+     * </p>
+     * 
+     * @return The share of the total injection time that was used by the client, between 0 and 1.
+     */
+    public double getInjectionShare()
+    {
+        return (fInjectionShare);
+    }
+
+    /**
+     * <p>
+     * Retrieves the injection time used by the client.
+     * </p>
+     * 
+     * @return The injection time used by the client (in microseconds).
+     */
+    public long getInjectionTime()
+    {
+        return (fInjectionTime);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+/**
+ * <p>
+ * Estimates the offset between a client's clock and the server's so that the time at which the client sent a message can be expressed in the
+ * server's time. The client stamps its messages with its own time in milliseconds (see the <code>time(millis);</code> command) and the
+ * difference between the time each message arrived and its stamp is the offset plus that message's delay in transit. The smallest difference seen
+ * is taken as the offset, i.e. the fastest message is assumed to have taken no time at all. The age of a message is then how much longer it took
+ * to arrive than the fastest message.
+ * </p>
+ * 
+ * <p>
+ * The smallest difference is taken over the last two windows of {@link #WINDOW} milliseconds, so that the estimate follows the clocks as they
+ * drift apart. The stamps are only 32 bits wide, they are unwrapped against the previous stamp so the client's clock may wrap around.
+ * </p>
+ * 
+ * <p>
+ * A <code>ClockOffsetEstimator</code> is not thread safe.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ClockOffsetEstimator
+{
+    /**
+     * <p>
+     * The length of a window over which the smallest difference is taken (in milliseconds).
+     * </p>
+     */
+    public static final int WINDOW = 10000;
+
+    /**
+     * <p>
+     * The client's time of the latest stamp, unwrapped (in milliseconds).
+     * </p>
+     */
+    private long fClientTime;
+
+    /**
+     * <p>
+     * The smallest difference seen in the current window (in nanoseconds).
+     * </p>
+     */
+    private long fMinimum;
+
+    /**
+     * <p>
+     * The smallest difference seen in the previous window (in nanoseconds).
+     * </p>
+     */
+    private long fPreviousMinimum;
+
+    /**
+     * <p>
+     * Determines whether a stamp has been seen yet.
+     * </p>
+     */
+    private boolean fStarted;
+
+    /**
+     * <p>
+     * The time at which the current window started (in nanoseconds).
+     * </p>
+     */
+    private long fWindowStart;
+
+    /**
+     * <p>
+     * Creates an instance of <code>ClockOffsetEstimator</code>.
+     * </p>
+     */
+    public ClockOffsetEstimator()
+    {
+        fClientTime = 0;
+        fMinimum = Long.MAX_VALUE;
+        fPreviousMinimum = Long.MAX_VALUE;
+        fStarted = false;
+        fWindowStart = 0;
+    }
+
+    /**
+     * <p>
+     * Retrieves the estimated offset between the client's clock and the server's.
+     * </p>
+     * 
+     * @return The estimated offset (in nanoseconds, to be added to the client's time in nanoseconds), or {@link java.lang.Long#MAX_VALUE
+     * Long.MAX_VALUE} if no stamp has been seen yet.
+     */
+    public long getOffset()
+    {
+        return (Math.min(fMinimum, fPreviousMinimum));
+    }
+
+    /**
+     * <p>
+     * Updates the estimate with a stamp and converts the stamp to the server's time.
+     * </p>
+     * 
+     * @param clientTime The time the client stamped its message with (in milliseconds, as per its own clock).
+     * @param arrivalTime The time at which the message arrived (in nanoseconds, as per {@link java.lang.System#nanoTime() System.nanoTime()}).
+     * 
+     * @return The estimated time at which the client sent the message (in nanoseconds, as per {@link java.lang.System#nanoTime()
+     * System.nanoTime()}).
+     */
+    public long update(final int clientTime, final long arrivalTime)
+    {
+        if (!fStarted)
+        {
+            fClientTime = clientTime;
+            fStarted = true;
+            fWindowStart = arrivalTime;
+        }
+        else
+        {
+            fClientTime += clientTime - (int) fClientTime;
+        }
+
+        if (arrivalTime - fWindowStart > WINDOW * 1000000L)
+        {
+            fPreviousMinimum = fMinimum;
+            fMinimum = Long.MAX_VALUE;
+            fWindowStart = arrivalTime;
+        }
+
+        long clientNanos = fClientTime * 1000000L;
+        fMinimum = Math.min(fMinimum, arrivalTime - clientNanos);
+
+        return (clientNanos + getOffset());
+    }
+}
@@ -0,0 +1,316 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+/**
+ * <p>
+ * An ordered sequence of decoded commands. The commands are held in parallel arrays of primitives (an {@link com.se.pcremote.server.Opcode Opcode}
+ * and up to two arguments each) so that a single buffer can be cleared and reused for every batch of data received without allocating.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class CommandBuffer
+{
+    /**
+     * <p>
+     * The default number of commands a <code>CommandBuffer</code> can hold before it needs to grow.
+     * </p>
+     */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * <p>
+     * The first argument of each command.
+     * </p>
+     */
+    private int[] fArguments0;
+
+    /**
+     * <p>
+     * The second argument of each command.
+     * </p>
+     */
+    private int[] fArguments1;
+
+    /**
+     * <p>
+     * Determines whether consecutive mergeable commands are merged into a single command as they are added.
+     * </p>
+     */
+    private boolean fMerging;
+
+    /**
+     * <p>
+     * The code of each command.
+     * </p>
+     */
+    private int[] fOpcodes;
+
+    /**
+     * <p>
+     * The number of commands in this <code>CommandBuffer</code>.
+     * </p>
+     */
+    private int fSize;
+
+    /**
+     * <p>
+     * Creates an instance of <code>CommandBuffer</code> that does not merge commands.
+     * </p>
+     */
+    public CommandBuffer()
+    {
+        this(false);
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>CommandBuffer</code>.
+     * </p>
+     * 
+     * @param merging Determines whether consecutive mergeable commands are merged into a single command as they are added.
+     */
+    public CommandBuffer(final boolean merging)
+    {
+        this(merging, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>CommandBuffer</code>.
+     * </p>
+     * 
+     * @param merging Determines whether consecutive mergeable commands are merged into a single command as they are added.
+     * @param capacity The number of commands the buffer can hold before it needs to grow, at least 1.
+     */
+    public CommandBuffer(final boolean merging, final int capacity)
+    {
+        fMerging = merging;
+
+        fArguments0 = new int[capacity];
+        fArguments1 = new int[capacity];
+        fOpcodes = new int[capacity];
+        fSize = 0;
+    }
+
+    /**
+     * <p>
+     * Adds a command to the end of this <code>CommandBuffer</code>. If this buffer is merging and both the command and the last command in this
+     * buffer are the same {@link com.se.pcremote.server.Opcode#isMergeable(int) mergeable} command, the arguments are added to those of the last
+     * command instead.
+     * </p>
+     * 
+     * @param opcode The code of the command.
+     * @param argument0 The first argument of the command.
+     * @param argument1 The second argument of the command.
+     */
+    public void add(final int opcode, final int argument0, final int argument1)
+    {
+        if (fMerging && fSize > 0 && fOpcodes[fSize - 1] == opcode && Opcode.isMergeable(opcode))
+        {
+            fArguments0[fSize - 1] += argument0;
+            fArguments1[fSize - 1] += argument1;
+            return;
+        }
+
+        if (fSize == fOpcodes.length)
+        {
+            grow();
+        }
+
+        fOpcodes[fSize] = opcode;
+        fArguments0[fSize] = argument0;
+        fArguments1[fSize] = argument1;
+        fSize++;
+    }
+
+    /**
+     * <p>
+     * Adds all of the commands in another <code>CommandBuffer</code> to the end of this one, merging them if this buffer is merging.
+     * </p>
+     * 
+     * @param buffer The <code>CommandBuffer</code> to add the commands of.
+     */
+    public void addAll(final CommandBuffer buffer)
+    {
+        for (int index = 0; index < buffer.fSize; index++)
+        {
+            add(buffer.fOpcodes[index], buffer.fArguments0[index], buffer.fArguments1[index]);
+        }
+    }
+
+    /**
+     * <p>
+     * Removes all of the commands from this <code>CommandBuffer</code>.
+     * </p>
+     */
+    public void clear()
+    {
+        fSize = 0;
+    }
+
+    @Override
+    public boolean equals(final Object object)
+    {
+        if (!(object instanceof CommandBuffer))
+        {
+            return (false);
+        }
+
+        CommandBuffer buffer = (CommandBuffer) object;
+        if (buffer.fSize != fSize)
+        {
+            return (false);
+        }
+        for (int index = 0; index < fSize; index++)
+        {
+            if (buffer.fOpcodes[index] != fOpcodes[index] || buffer.fArguments0[index] != fArguments0[index]
+                    || buffer.fArguments1[index] != fArguments1[index])
+            {
+                return (false);
+            }
+        }
+
+        return (true);
+    }
+
+    /**
+     * <p>
+     * Retrieves the first argument of the command at the given index.
+     * </p>
+     * 
+     * @param index The index of the command.
+     * 
+     * @return The first argument of the command at the given index.
+     */
+    public int getArgument0(final int index)
+    {
+        return (fArguments0[index]);
+    }
+
+    /**
+     * <p>
+     * Retrieves the second argument of the command at the given index.
+     * </p>
+     * 
+     * @param index The index of the command.
+     * 
+     * @return The second argument of the command at the given index.
+     */
+    public int getArgument1(final int index)
+    {
+        return (fArguments1[index]);
+    }
+
+    /**
+     * <p>
+     * Retrieves the code of the command at the given index.
+     * </p>
+     * 
+     * @param index The index of the command.
+     * 
+     * @return The code of the command at the given index.
+     */
+    public int getOpcode(final int index)
+    {
+        return (fOpcodes[index]);
+    }
+
+    /**
+     * <p>
+     * Doubles the number of commands this <code>CommandBuffer</code> can hold.
+     * </p>
+     */
+    private void grow()
+    {
+        int[] arguments0 = new int[fOpcodes.length * 2];
+        int[] arguments1 = new int[fOpcodes.length * 2];
+        int[] opcodes = new int[fOpcodes.length * 2];
+
+        System.arraycopy(fArguments0, 0, arguments0, 0, fSize);
+        System.arraycopy(fArguments1, 0, arguments1, 0, fSize);
+        System.arraycopy(fOpcodes, 0, opcodes, 0, fSize);
+
+        fArguments0 = arguments0;
+        fArguments1 = arguments1;
+        fOpcodes = opcodes;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hashCode = fSize;
+        for (int index = 0; index < fSize; index++)
+        {
+            hashCode = 31 * hashCode + fOpcodes[index];
+            hashCode = 31 * hashCode + fArguments0[index];
+            hashCode = 31 * hashCode + fArguments1[index];
+        }
+
+        return (hashCode);
+    }
+
+    /**
+     * <p>
+     * Determines whether consecutive mergeable commands are merged into a single command as they are added.
+     * </p>
+     * 
+     * @return True if consecutive mergeable commands are merged, false otherwise.
+     */
+    public boolean isMerging()
+    {
+        return (fMerging);
+    }
+
+    /**
+     * <p>
+     * Determines whether consecutive mergeable commands are merged into a single command as they are added.
+     * </p>
+     * 
+     * @param merging Determines whether consecutive mergeable commands are merged into a single command as they are added.
+     */
+    public void setMerging(final boolean merging)
+    {
+        fMerging = merging;
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of commands in this <code>CommandBuffer</code>.
+     * </p>
+     * 
+     * @return The number of commands in this <code>CommandBuffer</code>.
+     */
+    public int size()
+    {
+        return (fSize);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+
+        for (int index = 0; index < fSize; index++)
+        {
+            builder.append(Opcode.getName(fOpcodes[index])).append('(').append(fArguments0[index]);
+            if (fOpcodes[index] == Opcode.MOUSE_MOVE || fOpcodes[index] == Opcode.MOUSE_MOVE_RELATIVE || fOpcodes[index] == Opcode.CLOCK)
+            {
+                builder.append(',').append(fArguments1[index]);
+            }
+            builder.append(");");
+        }
+
+        return (builder.toString());
+    }
+}
@@ -0,0 +1,520 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A bounded cache of decoded commands, keyed by the raw bytes of the commands. Clients send the same few commands (e.g. "keyPress(16)" or
+ * "click(1)") over and over, so a {@link com.se.pcremote.server.CommandDecoder CommandDecoder} looks each command up here before decoding it.
+ * Commands are found by a hash of their bytes and the match is confirmed by comparing the bytes themselves, so a command that is found is not
+ * decoded again.
+ * </p>
+ * 
+ * <p>
+ * When the cache is full the least recently used command is evicted. The storage for all of the entries is allocated up front and reused on
+ * eviction so that the cache does not allocate once it has warmed up (unless a command decodes into more commands than the entry it replaces can
+ * hold). Only commands of up to {@link #MAX_KEY_LENGTH} bytes are cached.
+ * </p>
+ * 
+ * <p>
+ * A <code>CommandCache</code> is not thread safe.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class CommandCache
+{
+    /**
+     * <p>
+     * The default number of commands a <code>CommandCache</code> holds.
+     * </p>
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * <p>
+     * The maximum number of bytes in a command that is cached.
+     * </p>
+     */
+    public static final int MAX_KEY_LENGTH = 64;
+
+    /**
+     * <p>
+     * A marker for the absence of an entry.
+     * </p>
+     */
+    private static final int NONE = -1;
+
+    /**
+     * <p>
+     * The first entry in each bucket of the hash table.
+     * </p>
+     */
+    private int[] fBuckets;
+
+    /**
+     * <p>
+     * The next entry in the same bucket of the hash table as each entry.
+     * </p>
+     */
+    private int[] fChain;
+
+    /**
+     * <p>
+     * The number of commands that were evicted to make room for others.
+     * </p>
+     */
+    private long fEvictionCount;
+
+    /**
+     * <p>
+     * The hash of the bytes of each entry.
+     * </p>
+     */
+    private int[] fHashes;
+
+    /**
+     * <p>
+     * The number of lookups that found the command.
+     * </p>
+     */
+    private long fHitCount;
+
+    /**
+     * <p>
+     * The bytes of the entries, {@link #MAX_KEY_LENGTH} bytes per entry.
+     * </p>
+     */
+    private byte[] fKeys;
+
+    /**
+     * <p>
+     * The number of bytes of each entry.
+     * </p>
+     */
+    private int[] fKeyLengths;
+
+    /**
+     * <p>
+     * The number of lookups that did not find the command.
+     * </p>
+     */
+    private long fMissCount;
+
+    /**
+     * <p>
+     * The entry used more recently than each entry, or {@link #NONE} for the most recently used entry.
+     * </p>
+     */
+    private int[] fNewer;
+
+    /**
+     * <p>
+     * The most recently used entry.
+     * </p>
+     */
+    private int fNewest;
+
+    /**
+     * <p>
+     * The entry used less recently than each entry, or {@link #NONE} for the least recently used entry.
+     * </p>
+     */
+    private int[] fOlder;
+
+    /**
+     * <p>
+     * The least recently used entry.
+     * </p>
+     */
+    private int fOldest;
+
+    /**
+     * <p>
+     * The number of entries in use.
+     * </p>
+     */
+    private int fSize;
+
+    /**
+     * <p>
+     * The decoded commands of each entry.
+     * </p>
+     */
+    private CommandBuffer[] fValues;
+
+    /**
+     * <p>
+     * Creates an instance of <code>CommandCache</code> that holds the default number of commands.
+     * </p>
+     */
+    public CommandCache()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>CommandCache</code>.
+     * </p>
+     * 
+     * @param capacity The number of commands the cache holds.
+     */
+    public CommandCache(final int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("The capacity must be at least 1.");
+        }
+
+        int bucketCount = Integer.highestOneBit(capacity) * 2;
+        if (bucketCount < capacity * 2)
+        {
+            bucketCount *= 2;
+        }
+
+        fBuckets = new int[bucketCount];
+        fChain = new int[capacity];
+        fEvictionCount = 0;
+        fHashes = new int[capacity];
+        fHitCount = 0;
+        fKeys = new byte[capacity * MAX_KEY_LENGTH];
+        fKeyLengths = new int[capacity];
+        fMissCount = 0;
+        fNewer = new int[capacity];
+        fNewest = NONE;
+        fOlder = new int[capacity];
+        fOldest = NONE;
+        fSize = 0;
+        fValues = new CommandBuffer[capacity];
+
+        Arrays.fill(fBuckets, NONE);
+    }
+
+    /**
+     * <p>
+     * Finds the entry for the given bytes.
+     * </p>
+     * 
+     * @param data The bytes of the command.
+     * @param offset The index of the first byte of the command.
+     * @param length The number of bytes in the command.
+     * @param hash The hash of the bytes of the command.
+     * 
+     * @return The entry for the given bytes, or {@link #NONE} if there is none.
+     */
+    private int find(final byte[] data, final int offset, final int length, final int hash)
+    {
+        for (int entry = fBuckets[hash & (fBuckets.length - 1)]; entry != NONE; entry = fChain[entry])
+        {
+            if (fHashes[entry] == hash && fKeyLengths[entry] == length && matches(entry, data, offset, length))
+            {
+                return (entry);
+            }
+        }
+
+        return (NONE);
+    }
+
+    /**
+     * <p>
+     * Retrieves the decoded commands cached for the command with the given bytes. The command becomes the most recently used.
+     * </p>
+     * 
+     * @param data The bytes of the command.
+     * @param offset The index of the first byte of the command.
+     * @param length The number of bytes in the command.
+     * 
+     * @return The decoded commands, or null if the command is not cached. The buffer belongs to this cache and must not be modified.
+     */
+    public CommandBuffer get(final byte[] data, final int offset, final int length)
+    {
+        int entry = NONE;
+        if (length <= MAX_KEY_LENGTH)
+        {
+            entry = find(data, offset, length, hash(data, offset, length));
+        }
+
+        if (entry == NONE)
+        {
+            fMissCount++;
+            return (null);
+        }
+
+        fHitCount++;
+        unlink(entry);
+        linkNewest(entry);
+
+        return (fValues[entry]);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of commands this cache holds.
+     * </p>
+     * 
+     * @return The number of commands this cache holds.
+     */
+    public int getCapacity()
+    {
+        return (fChain.length);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of commands that were evicted to make room for others.
+     * </p>
+     * 
+     * @return The number of commands that were evicted to make room for others.
+     */
+    public long getEvictionCount()
+    {
+        return (fEvictionCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of lookups that found the command.
+     * </p>
+     * 
+     * @return The number of lookups that found the command.
+     */
+    public long getHitCount()
+    {
+        return (fHitCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the proportion of lookups that found the command.
+     * </p>
+     * 
+     * @return The proportion of lookups that found the command, from 0 to 1 (0 if there have been no lookups).
+     */
+    public double getHitRate()
+    {
+        long lookups = fHitCount + fMissCount;
+        if (lookups == 0)
+        {
+            return (0);
+        }
+
+        return ((double) fHitCount / lookups);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of lookups that did not find the command.
+     * </p>
+     * 
+     * @return The number of lookups that did not find the command.
+     */
+    public long getMissCount()
+    {
+        return (fMissCount);
+    }
+
+    /**
+     * <p>
+     * Calculates the hash of the given bytes (FNV-1a).
+     * </p>
+     * 
+     * @param data The bytes.
+     * @param offset The index of the first byte.
+     * @param length The number of bytes.
+     * 
+     * @return The hash of the given bytes.
+     */
+    private int hash(final byte[] data, final int offset, final int length)
+    {
+        int hash = 0x811C9DC5;
+        for (int index = offset; index < offset + length; index++)
+        {
+            hash = (hash ^ data[index] & 0xFF) * 0x01000193;
+        }
+
+        return (hash ^ hash >>> 16);
+    }
+
+    /**
+     * <p>
+     * Makes an entry the most recently used.
+     * </p>
+     * 
+     * @param entry The entry, which must not be in the list of entries in order of use.
+     */
+    private void linkNewest(final int entry)
+    {
+        fNewer[entry] = NONE;
+        fOlder[entry] = fNewest;
+        if (fNewest != NONE)
+        {
+            fNewer[fNewest] = entry;
+        }
+        fNewest = entry;
+        if (fOldest == NONE)
+        {
+            fOldest = entry;
+        }
+    }
+
+    /**
+     * <p>
+     * Determines whether the bytes of an entry are the given bytes.
+     * </p>
+     * 
+     * @param entry The entry.
+     * @param data The bytes to compare.
+     * @param offset The index of the first byte to compare.
+     * @param length The number of bytes to compare.
+     * 
+     * @return True if the bytes of the entry are the given bytes, false otherwise.
+     */
+    private boolean matches(final int entry, final byte[] data, final int offset, final int length)
+    {
+        int keyOffset = entry * MAX_KEY_LENGTH;
+        for (int index = 0; index < length; index++)
+        {
+            if (fKeys[keyOffset + index] != data[offset + index])
+            {
+                return (false);
+            }
+        }
+
+        return (true);
+    }
+
+    /**
+     * <p>
+     * Caches the decoded commands for the command with the given bytes, evicting the least recently used command if this cache is full. Commands
+     * longer than {@link #MAX_KEY_LENGTH} bytes are not cached.
+     * </p>
+     * 
+     * @param data The bytes of the command.
+     * @param offset The index of the first byte of the command.
+     * @param length The number of bytes in the command.
+     * @param commands The decoded commands, they are copied.
+     */
+    public void put(final byte[] data, final int offset, final int length, final CommandBuffer commands)
+    {
+        if (length > MAX_KEY_LENGTH)
+        {
+            return;
+        }
+
+        int hash = hash(data, offset, length);
+        int entry = find(data, offset, length, hash);
+        if (entry != NONE)
+        {
+            unlink(entry);
+        }
+        else
+        {
+            if (fSize < fChain.length)
+            {
+                entry = fSize++;
+            }
+            else
+            {
+                entry = fOldest;
+                unlink(entry);
+                removeFromBucket(entry);
+                fEvictionCount++;
+            }
+
+            fHashes[entry] = hash;
+            fKeyLengths[entry] = length;
+            System.arraycopy(data, offset, fKeys, entry * MAX_KEY_LENGTH, length);
+
+            int bucket = hash & (fBuckets.length - 1);
+            fChain[entry] = fBuckets[bucket];
+            fBuckets[bucket] = entry;
+        }
+
+        if (fValues[entry] == null)
+        {
+            fValues[entry] = new CommandBuffer(false, Math.max(commands.size(), 1));
+        }
+        fValues[entry].clear();
+        fValues[entry].addAll(commands);
+
+        linkNewest(entry);
+    }
+
+    /**
+     * <p>
+     * Removes an entry from its bucket of the hash table.
+     * </p>
+     * 
+     * @param entry The entry.
+     */
+    private void removeFromBucket(final int entry)
+    {
+        int bucket = fHashes[entry] & (fBuckets.length - 1);
+        if (fBuckets[bucket] == entry)
+        {
+            fBuckets[bucket] = fChain[entry];
+            return;
+        }
+
+        for (int previous = fBuckets[bucket]; previous != NONE; previous = fChain[previous])
+        {
+            if (fChain[previous] == entry)
+            {
+                fChain[previous] = fChain[entry];
+                return;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of commands currently cached.
+     * </p>
+     * 
+     * @return The number of commands currently cached.
+     */
+    public int size()
+    {
+        return (fSize);
+    }
+
+    /**
+     * <p>
+     * Removes an entry from the list of entries in order of use.
+     * </p>
+     * 
+     * @param entry The entry.
+     */
+    private void unlink(final int entry)
+    {
+        if (fNewer[entry] != NONE)
+        {
+            fOlder[fNewer[entry]] = fOlder[entry];
+        }
+        else
+        {
+            fNewest = fOlder[entry];
+        }
+
+        if (fOlder[entry] != NONE)
+        {
+            fNewer[fOlder[entry]] = fNewer[entry];
+        }
+        else
+        {
+            fOldest = fNewer[entry];
+        }
+    }
+}
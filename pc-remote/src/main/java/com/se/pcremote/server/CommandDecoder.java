@@ -0,0 +1,1023 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * Decodes commands of the form <code>commandName([n[,m]*]);</code> from the raw bytes received from a client into a
+ * {@link com.se.pcremote.server.CommandBuffer CommandBuffer}. The bytes are decoded in place, no <code>String</code>s are created unless a command
+ * is invalid or has an argument in an unusual numeric format. Commands that have been decoded before are not decoded again, they are taken from a
+ * {@link com.se.pcremote.server.CommandCache CommandCache}.
+ * </p>
+ * 
+ * <p>
+ * The exception is the <code>typeText(text);</code> command, whose argument is UTF-8 text rather than a number. The characters '%', '(', ')', ','
+ * and ';' must be escaped within the text as '%' followed by two hexadecimal digits (e.g. "%3B" for ';'), any other byte may be escaped in the
+ * same way. The command is decoded into a <code>typeCharacter(codePoint);</code> command per character of the text. Text that is not well formed
+ * UTF-8 (including overlong encodings, surrogates and code points above U+10FFFF) is rejected.
+ * </p>
+ * 
+ * <p>
+ * Gestures that take several commands are also decoded into those commands so that they can be sent (and executed) as one:
+ * </p>
+ * 
+ * <ul>
+ * <li><code>click(mouseButton[,count]);</code> Presses and releases a mouse button, up to three times (once by default).</li>
+ * <li><code>drag(mouseButton,x,y);</code> Presses a mouse button, moves the mouse as per <code>mouseMoveRelative(x,y);</code> and releases the
+ * button, with a <code>pause();</code> between each stage.</li>
+ * <li><code>chord(key[,key]*);</code> Presses the keys in the order given (e.g. Ctrl, Alt then T) and releases them in the reverse order.</li>
+ * </ul>
+ * 
+ * <p>
+ * The commands of a <code>defineMacro(id,commands);</code> command are escaped in the same way as the text of a <code>typeText(text);</code>
+ * command. They are decoded between a <code>defineMacro(id);</code> and an <code>endMacro(id);</code> command. Macros cannot be defined within
+ * macros.
+ * </p>
+ * 
+ * <p>
+ * The commands that are only produced by decoding (<code>typeCharacter(codePoint);</code>, <code>defineMacro(id);</code>,
+ * <code>endMacro(id);</code> and <code>pause();</code>) cannot be sent by clients themselves.
+ * </p>
+ * 
+ * <p>
+ * A <code>CommandDecoder</code> is not thread safe, each thread that decodes commands should have its own.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class CommandDecoder
+{
+    /**
+     * <p>
+     * The character that ends the arguments of a command.
+     * </p>
+     */
+    public static final byte ARGUMENTS_END = ')';
+
+    /**
+     * <p>
+     * The character that separates commands.
+     * </p>
+     */
+    public static final byte COMMAND_SEPARATOR = ';';
+
+    /**
+     * <p>
+     * The character that separates the arguments of a command.
+     * </p>
+     */
+    private static final byte ARGUMENT_SEPARATOR = ',';
+
+    /**
+     * <p>
+     * The character that starts the arguments of a command.
+     * </p>
+     */
+    private static final byte ARGUMENTS_START = '(';
+
+    /**
+     * <p>
+     * The name of the <code>chord(key[,key]*);</code> command as bytes.
+     * </p>
+     */
+    private static final byte[] CHORD_NAME = "chord".getBytes();
+
+    /**
+     * <p>
+     * The name of the <code>click(mouseButton[,count]);</code> command as bytes.
+     * </p>
+     */
+    private static final byte[] CLICK_NAME = "click".getBytes();
+
+    /**
+     * <p>
+     * The name of the <code>defineMacro(id,commands);</code> command as bytes.
+     * </p>
+     */
+    private static final byte[] DEFINE_MACRO_NAME = Opcode.getName(Opcode.DEFINE_MACRO).getBytes();
+
+    /**
+     * <p>
+     * The name of the <code>drag(mouseButton,x,y);</code> command as bytes.
+     * </p>
+     */
+    private static final byte[] DRAG_NAME = "drag".getBytes();
+
+    /**
+     * <p>
+     * The character that starts an escaped byte within the text of a <code>typeText(text);</code> command.
+     * </p>
+     */
+    private static final byte ESCAPE = '%';
+
+    /**
+     * <p>
+     * The maximum number of arguments a gesture can have.
+     * </p>
+     */
+    private static final int MAX_ARGUMENTS = 16;
+
+    /**
+     * <p>
+     * The maximum number of times a <code>click(mouseButton[,count]);</code> command can click.
+     * </p>
+     */
+    private static final int MAX_CLICK_COUNT = 3;
+
+    /**
+     * <p>
+     * The names of the commands that clients can send as bytes, indexed by their {@link com.se.pcremote.server.Opcode Opcode}s. The commands that
+     * are only produced by decoding have no name here.
+     * </p>
+     */
+    private static final byte[][] NAMES = new byte[][] {null, Opcode.getName(Opcode.KEY_PRESS).getBytes(),
+            Opcode.getName(Opcode.KEY_RELEASE).getBytes(), Opcode.getName(Opcode.MOUSE_MOVE).getBytes(),
+            Opcode.getName(Opcode.MOUSE_MOVE_RELATIVE).getBytes(), Opcode.getName(Opcode.MOUSE_PRESS).getBytes(),
+            Opcode.getName(Opcode.MOUSE_RELEASE).getBytes(), Opcode.getName(Opcode.MOUSE_WHEEL).getBytes(),
+            Opcode.getName(Opcode.CLOCK).getBytes(), null, null, null, Opcode.getName(Opcode.MACRO).getBytes(), Opcode.getName(Opcode.TIME).getBytes(),
+            null};
+
+    /**
+     * <p>
+     * The name of the <code>typeText(text);</code> command as bytes.
+     * </p>
+     */
+    private static final byte[] TYPE_TEXT_NAME = "typeText".getBytes();
+
+    /**
+     * <p>
+     * The index after the last byte of each argument of the gesture being decoded.
+     * </p>
+     */
+    private int[] fArgumentEnds;
+
+    /**
+     * <p>
+     * The value of each argument of the gesture being decoded.
+     * </p>
+     */
+    private int[] fArguments;
+
+    /**
+     * <p>
+     * The index of the first byte of each argument of the gesture being decoded.
+     * </p>
+     */
+    private int[] fArgumentStarts;
+
+    /**
+     * <p>
+     * The commands decoded before, or null if commands are not cached.
+     * </p>
+     */
+    private CommandCache fCommandCache;
+
+    /**
+     * <p>
+     * Determines whether the commands of a macro are being decoded.
+     * </p>
+     */
+    private boolean fDecodingMacro;
+
+    /**
+     * <p>
+     * The number of commands that failed to be decoded.
+     * </p>
+     */
+    private long fErrorCount;
+
+    /**
+     * <p>
+     * Logs messages associated with this class.
+     * </p>
+     */
+    private Logger fLogger;
+
+    /**
+     * <p>
+     * The commands parsed from a single command before they are cached.
+     * </p>
+     */
+    private CommandBuffer fParsed;
+
+    /**
+     * <p>
+     * The unescaped commands of the macro being decoded.
+     * </p>
+     */
+    private byte[] fUnescaped;
+
+    /**
+     * <p>
+     * Creates an instance of <code>CommandDecoder</code> that caches the commands it decodes in a {@link com.se.pcremote.server.CommandCache
+     * CommandCache} of the default capacity.
+     * </p>
+     */
+    public CommandDecoder()
+    {
+        this(new CommandCache());
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>CommandDecoder</code>.
+     * </p>
+     * 
+     * @param commandCache The cache of the commands decoded before, or null if commands are not to be cached.
+     */
+    public CommandDecoder(final CommandCache commandCache)
+    {
+        fCommandCache = commandCache;
+
+        fArgumentEnds = new int[MAX_ARGUMENTS];
+        fArguments = new int[MAX_ARGUMENTS];
+        fArgumentStarts = new int[MAX_ARGUMENTS];
+        fDecodingMacro = false;
+        fErrorCount = 0;
+        fLogger = Logger.getLogger(getClass());
+        fParsed = new CommandBuffer();
+        fUnescaped = new byte[0];
+    }
+
+    /**
+     * <p>
+     * Decodes any number of concatenated commands e.g. "mousePress(1);mouseRelease(1);" and adds them to the given buffer. Invalid commands are
+     * logged and skipped, the commands around them are still decoded.
+     * </p>
+     * 
+     * @param data The bytes to decode.
+     * @param offset The index of the first byte to decode.
+     * @param length The number of bytes to decode.
+     * @param buffer The buffer to add the decoded commands to.
+     */
+    public void decode(final byte[] data, final int offset, final int length, final CommandBuffer buffer)
+    {
+        int end = offset + length;
+        int commandStart = offset;
+
+        for (int index = offset; index <= end; index++)
+        {
+            if (index == end || data[index] == COMMAND_SEPARATOR)
+            {
+                if (!isBlank(data, commandStart, index))
+                {
+                    try
+                    {
+                        decodeCommand(data, commandStart, index - commandStart, buffer);
+                    }
+                    catch (IllegalArgumentException e)
+                    {
+                        fErrorCount++;
+                        fLogger.error("Failed to decode the command '" + new String(data, commandStart, index - commandStart) + "'", e);
+                    }
+                }
+
+                commandStart = index + 1;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Decodes a single command of the form <code>commandName([n[,m]*])</code> and adds it to the given buffer. If the command has been decoded
+     * before it is taken from the {@link com.se.pcremote.server.CommandCache CommandCache} instead.
+     * </p>
+     * 
+     * @param data The bytes to decode.
+     * @param offset The index of the first byte of the command.
+     * @param length The number of bytes in the command.
+     * @param buffer The buffer to add the decoded command to.
+     * 
+     * @throws IllegalArgumentException Thrown if the command is not valid.
+     */
+    public void decodeCommand(final byte[] data, final int offset, final int length, final CommandBuffer buffer)
+    {
+        if (fDecodingMacro || !isCacheable(data, offset, length))
+        {
+            parseCommand(data, offset, length, buffer);
+            return;
+        }
+
+        CommandBuffer cached = fCommandCache.get(data, offset, length);
+        if (cached != null)
+        {
+            buffer.addAll(cached);
+            return;
+        }
+
+        fParsed.clear();
+        parseCommand(data, offset, length, fParsed);
+        fCommandCache.put(data, offset, length, fParsed);
+        buffer.addAll(fParsed);
+    }
+
+    /**
+     * <p>
+     * Decodes a gesture (<code>click</code>, <code>drag</code> or <code>chord</code>) and adds the commands it consists of to the given buffer.
+     * All of the arguments are validated before any commands are added.
+     * </p>
+     * 
+     * @param data The bytes containing the gesture.
+     * @param nameStart The index of the first byte of the name of the gesture.
+     * @param argumentsStart The index of the character that starts the arguments of the gesture.
+     * @param argumentsEnd The index of the character that ends the arguments of the gesture.
+     * @param buffer The buffer to add the decoded commands to.
+     * 
+     * @throws IllegalArgumentException Thrown if the gesture is not valid.
+     */
+    private void decodeGesture(final byte[] data, final int nameStart, final int argumentsStart, final int argumentsEnd, final CommandBuffer buffer)
+    {
+        int count = splitArguments(data, argumentsStart + 1, argumentsEnd);
+
+        if (isName(CLICK_NAME, data, nameStart, argumentsStart))
+        {
+            if (count > 2)
+            {
+                throw new IllegalArgumentException("Invalid command: One or two arguments are required.");
+            }
+            int button = parseInteger(data, fArgumentStarts[0], fArgumentEnds[0]);
+            int clicks = 1;
+            if (count == 2)
+            {
+                clicks = parseInteger(data, fArgumentStarts[1], fArgumentEnds[1]);
+            }
+            if (clicks < 1 || clicks > MAX_CLICK_COUNT)
+            {
+                throw new IllegalArgumentException("Invalid command: The click count must be from 1 to " + MAX_CLICK_COUNT + ".");
+            }
+
+            for (int click = 0; click < clicks; click++)
+            {
+                buffer.add(Opcode.MOUSE_PRESS, button, 0);
+                buffer.add(Opcode.MOUSE_RELEASE, button, 0);
+            }
+        }
+        else if (isName(DRAG_NAME, data, nameStart, argumentsStart))
+        {
+            if (count != 3)
+            {
+                throw new IllegalArgumentException("Invalid command: Three arguments are required.");
+            }
+            int button = parseInteger(data, fArgumentStarts[0], fArgumentEnds[0]);
+            int x = parseTruncatedDecimal(data, fArgumentStarts[1], fArgumentEnds[1]);
+            int y = parseTruncatedDecimal(data, fArgumentStarts[2], fArgumentEnds[2]);
+
+            // Many applications do not recognise a drag whose stages are injected back to back.
+            buffer.add(Opcode.MOUSE_PRESS, button, 0);
+            buffer.add(Opcode.PAUSE, 0, 0);
+            buffer.add(Opcode.MOUSE_MOVE_RELATIVE, x, y);
+            buffer.add(Opcode.PAUSE, 0, 0);
+            buffer.add(Opcode.MOUSE_RELEASE, button, 0);
+        }
+        else
+        {
+            for (int index = 0; index < count; index++)
+            {
+                fArguments[index] = parseInteger(data, fArgumentStarts[index], fArgumentEnds[index]);
+            }
+
+            for (int index = 0; index < count; index++)
+            {
+                buffer.add(Opcode.KEY_PRESS, fArguments[index], 0);
+            }
+            for (int index = count - 1; index >= 0; index--)
+            {
+                buffer.add(Opcode.KEY_RELEASE, fArguments[index], 0);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Decodes the arguments of a <code>defineMacro(id,commands);</code> command and adds the commands of the macro to the given buffer between a
+     * <code>defineMacro(id);</code> and an <code>endMacro(id);</code> command. Invalid commands within the macro are logged and skipped.
+     * </p>
+     * 
+     * @param data The bytes containing the arguments.
+     * @param start The index of the first byte of the arguments.
+     * @param end The index after the character that ends the arguments.
+     * @param buffer The buffer to add the decoded commands to.
+     * 
+     * @throws IllegalArgumentException Thrown if the command is not valid.
+     */
+    private void decodeMacro(final byte[] data, final int start, final int end, final CommandBuffer buffer)
+    {
+        if (fDecodingMacro)
+        {
+            throw new IllegalArgumentException("Invalid command: Macros cannot be defined within macros.");
+        }
+
+        int idEnd = start;
+        while (idEnd < end - 1 && data[idEnd] != ARGUMENT_SEPARATOR)
+        {
+            idEnd++;
+        }
+        if (data[end - 1] != ARGUMENTS_END || idEnd == end - 1)
+        {
+            throw new IllegalArgumentException("Invalid command: Format must be defineMacro(<id>,<commands>).");
+        }
+
+        int id = parseInteger(data, start, idEnd);
+        int length = unescape(data, idEnd + 1, end - 1);
+
+        buffer.add(Opcode.DEFINE_MACRO, id, 0);
+        fDecodingMacro = true;
+        try
+        {
+            decode(fUnescaped, 0, length, buffer);
+        }
+        finally
+        {
+            fDecodingMacro = false;
+        }
+        buffer.add(Opcode.END_MACRO, id, 0);
+    }
+
+    /**
+     * <p>
+     * Decodes the escaped UTF-8 text of a <code>typeText(text);</code> command and adds a <code>typeCharacter(codePoint);</code> command per
+     * character to the given buffer.
+     * </p>
+     * 
+     * @param data The bytes containing the text.
+     * @param start The index of the first byte of the text.
+     * @param end The index after the last byte of the text.
+     * @param buffer The buffer to add the decoded commands to, or null to only validate the text.
+     * 
+     * @throws IllegalArgumentException Thrown if the text is not validly escaped, well formed UTF-8.
+     */
+    private void decodeText(final byte[] data, final int start, final int end, final CommandBuffer buffer)
+    {
+        int codePoint = 0;
+        int minimum = 0;
+        int remaining = 0;
+
+        for (int index = start; index < end; index++)
+        {
+            int value = data[index] & 0xFF;
+            if (value == ESCAPE)
+            {
+                if (index + 2 >= end || parseHexDigit(data[index + 1]) == -1 || parseHexDigit(data[index + 2]) == -1)
+                {
+                    throw new IllegalArgumentException("Invalid command: Invalid escape in text.");
+                }
+                value = parseHexDigit(data[index + 1]) << 4 | parseHexDigit(data[index + 2]);
+                index += 2;
+            }
+
+            if (remaining == 0)
+            {
+                if (value < 0x80)
+                {
+                    codePoint = value;
+                }
+                else if ((value & 0xE0) == 0xC0)
+                {
+                    codePoint = value & 0x1F;
+                    minimum = 0x80;
+                    remaining = 1;
+                }
+                else if ((value & 0xF0) == 0xE0)
+                {
+                    codePoint = value & 0x0F;
+                    minimum = 0x800;
+                    remaining = 2;
+                }
+                else if ((value & 0xF8) == 0xF0)
+                {
+                    codePoint = value & 0x07;
+                    minimum = 0x10000;
+                    remaining = 3;
+                }
+                else
+                {
+                    throw new IllegalArgumentException("Invalid command: Text is not valid UTF-8.");
+                }
+            }
+            else
+            {
+                if ((value & 0xC0) != 0x80)
+                {
+                    throw new IllegalArgumentException("Invalid command: Text is not valid UTF-8.");
+                }
+                codePoint = codePoint << 6 | value & 0x3F;
+                remaining--;
+
+                // Reject overlong encodings, surrogates and code points beyond Unicode.
+                if (remaining == 0 && (codePoint < minimum || codePoint >= 0xD800 && codePoint <= 0xDFFF || codePoint > 0x10FFFF))
+                {
+                    throw new IllegalArgumentException("Invalid command: Text is not valid UTF-8.");
+                }
+            }
+
+            if (remaining == 0 && buffer != null)
+            {
+                buffer.add(Opcode.TYPE_CHARACTER, codePoint, 0);
+            }
+        }
+
+        if (remaining != 0)
+        {
+            throw new IllegalArgumentException("Invalid command: Text is not valid UTF-8.");
+        }
+    }
+
+    /**
+     * <p>
+     * Retrieves the cache of the commands decoded before.
+     * </p>
+     * 
+     * @return The cache of the commands decoded before, or null if commands are not cached.
+     */
+    public CommandCache getCommandCache()
+    {
+        return (fCommandCache);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of commands that failed to be decoded (and were skipped) by {@link #decode(byte[], int, int, CommandBuffer)}.
+     * </p>
+     * 
+     * @return The number of commands that failed to be decoded.
+     */
+    public long getErrorCount()
+    {
+        return (fErrorCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the {@link com.se.pcremote.server.Opcode Opcode} of the command with the given name.
+     * </p>
+     * 
+     * @param data The bytes containing the name of the command.
+     * @param start The index of the first byte of the name.
+     * @param end The index after the last byte of the name.
+     * 
+     * @return The <code>Opcode</code> of the command with the given name.
+     * 
+     * @throws IllegalArgumentException Thrown if there is no command with the given name.
+     */
+    private int getOpcode(final byte[] data, final int start, final int end)
+    {
+        for (int opcode = 1; opcode < NAMES.length; opcode++)
+        {
+            if (NAMES[opcode] != null && NAMES[opcode].length == end - start && matches(NAMES[opcode], data, start))
+            {
+                return (opcode);
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown command: " + new String(data, start, end - start));
+    }
+
+    /**
+     * <p>
+     * Determines whether the given bytes contain nothing but whitespace.
+     * </p>
+     * 
+     * @param data The bytes to check.
+     * @param start The index of the first byte to check.
+     * @param end The index after the last byte to check.
+     * 
+     * @return True if the given bytes contain nothing but whitespace, false otherwise.
+     */
+    private boolean isBlank(final byte[] data, final int start, final int end)
+    {
+        for (int index = start; index < end; index++)
+        {
+            if (data[index] > ' ')
+            {
+                return (false);
+            }
+        }
+
+        return (true);
+    }
+
+    /**
+     * <p>
+     * Determines whether the command with the given bytes is worth caching. Commands with arguments that rarely repeat (the clock and time stamps
+     * and the mouse movements) are not cached, they would only evict the commands that do repeat.
+     * </p>
+     * 
+     * @param data The bytes of the command.
+     * @param offset The index of the first byte of the command.
+     * @param length The number of bytes in the command.
+     * 
+     * @return True if the command with the given bytes is worth caching, false otherwise.
+     */
+    private boolean isCacheable(final byte[] data, final int offset, final int length)
+    {
+        if (fCommandCache == null || length > CommandCache.MAX_KEY_LENGTH)
+        {
+            return (false);
+        }
+
+        byte[] clockName = NAMES[Opcode.CLOCK];
+        byte[] mouseMoveName = NAMES[Opcode.MOUSE_MOVE];
+        byte[] timeName = NAMES[Opcode.TIME];
+
+        return (!(length > clockName.length && matches(clockName, data, offset))
+                && !(length > mouseMoveName.length && matches(mouseMoveName, data, offset))
+                && !(length > timeName.length && matches(timeName, data, offset)));
+    }
+
+    /**
+     * <p>
+     * Determines whether the given bytes are exactly the given name.
+     * </p>
+     * 
+     * @param name The name to compare against.
+     * @param data The bytes to compare.
+     * @param start The index of the first byte to compare.
+     * @param end The index after the last byte to compare.
+     * 
+     * @return True if the given bytes are exactly the given name, false otherwise.
+     */
+    private boolean isName(final byte[] name, final byte[] data, final int start, final int end)
+    {
+        return (name.length == end - start && matches(name, data, start));
+    }
+
+    /**
+     * <p>
+     * Determines whether the given bytes start with the given name.
+     * </p>
+     * 
+     * @param name The name to compare against.
+     * @param data The bytes to compare.
+     * @param start The index of the first byte to compare.
+     * 
+     * @return True if the given bytes start with the given name, false otherwise.
+     */
+    private boolean matches(final byte[] name, final byte[] data, final int start)
+    {
+        for (int index = 0; index < name.length; index++)
+        {
+            if (data[start + index] != name[index])
+            {
+                return (false);
+            }
+        }
+
+        return (true);
+    }
+
+    /**
+     * <p>
+     * Parses a single hexadecimal digit.
+     * </p>
+     * 
+     * @param digit The digit to parse.
+     * 
+     * @return The value of the digit, or -1 if it is not a hexadecimal digit.
+     */
+    private int parseHexDigit(final byte digit)
+    {
+        if (digit >= '0' && digit <= '9')
+        {
+            return (digit - '0');
+        }
+        if (digit >= 'A' && digit <= 'F')
+        {
+            return (digit - 'A' + 10);
+        }
+        if (digit >= 'a' && digit <= 'f')
+        {
+            return (digit - 'a' + 10);
+        }
+
+        return (-1);
+    }
+
+    /**
+     * <p>
+     * Parses a single command of the form <code>commandName([n[,m]*])</code> and adds it to the given buffer.
+     * </p>
+     * 
+     * @param data The bytes to parse.
+     * @param offset The index of the first byte of the command.
+     * @param length The number of bytes in the command.
+     * @param buffer The buffer to add the parsed command to.
+     * 
+     * @throws IllegalArgumentException Thrown if the command is not valid.
+     */
+    private void parseCommand(final byte[] data, final int offset, final int length, final CommandBuffer buffer)
+    {
+        int end = offset + length;
+
+        if (length > TYPE_TEXT_NAME.length && data[offset + TYPE_TEXT_NAME.length] == ARGUMENTS_START && matches(TYPE_TEXT_NAME, data, offset))
+        {
+            int textStart = offset + TYPE_TEXT_NAME.length + 1;
+            if (data[end - 1] != ARGUMENTS_END)
+            {
+                throw new IllegalArgumentException("Invalid command: Format must be typeText(<text>).");
+            }
+
+            // Validate the whole text before adding any of it so that an invalid command is skipped entirely.
+            decodeText(data, textStart, end - 1, null);
+            decodeText(data, textStart, end - 1, buffer);
+            return;
+        }
+
+        if (length > DEFINE_MACRO_NAME.length && data[offset + DEFINE_MACRO_NAME.length] == ARGUMENTS_START
+                && matches(DEFINE_MACRO_NAME, data, offset))
+        {
+            decodeMacro(data, offset + DEFINE_MACRO_NAME.length + 1, end, buffer);
+            return;
+        }
+
+        // Validate command format.
+        int argumentsStart = -1;
+        for (int index = offset; index < end; index++)
+        {
+            if (data[index] == ARGUMENTS_START)
+            {
+                if (argumentsStart != -1)
+                {
+                    argumentsStart = -1;
+                    break;
+                }
+                argumentsStart = index;
+            }
+        }
+        if (argumentsStart == -1 || argumentsStart == end - 1)
+        {
+            throw new IllegalArgumentException("Invalid command: Format must be <commandName>(<arg>[,<arg>]).");
+        }
+
+        int argumentsEnd = argumentsStart + 1;
+        while (argumentsEnd < end && data[argumentsEnd] != ARGUMENTS_END)
+        {
+            argumentsEnd++;
+        }
+
+        if (isName(CLICK_NAME, data, offset, argumentsStart) || isName(DRAG_NAME, data, offset, argumentsStart)
+                || isName(CHORD_NAME, data, offset, argumentsStart))
+        {
+            decodeGesture(data, offset, argumentsStart, argumentsEnd, buffer);
+            return;
+        }
+
+        int opcode = getOpcode(data, offset, argumentsStart);
+
+        // Extract the arguments.
+        int argument0Start = argumentsStart + 1;
+        int argument0End = argument0Start;
+        while (argument0End < argumentsEnd && data[argument0End] != ARGUMENT_SEPARATOR)
+        {
+            argument0End++;
+        }
+
+        if (opcode == Opcode.MOUSE_MOVE || opcode == Opcode.MOUSE_MOVE_RELATIVE || opcode == Opcode.CLOCK)
+        {
+            int argument1Start = argument0End + 1;
+            int argument1End = argument1Start;
+            while (argument1End < argumentsEnd && data[argument1End] != ARGUMENT_SEPARATOR)
+            {
+                argument1End++;
+            }
+            if (argument1Start > argumentsEnd)
+            {
+                throw new IllegalArgumentException("Invalid command: Two arguments are required.");
+            }
+
+            if (opcode == Opcode.CLOCK)
+            {
+                buffer.add(opcode, parseInteger(data, argument0Start, argument0End), parseInteger(data, argument1Start, argument1End));
+            }
+            else
+            {
+                buffer.add(opcode, parseTruncatedDecimal(data, argument0Start, argument0End),
+                        parseTruncatedDecimal(data, argument1Start, argument1End));
+            }
+        }
+        else if (opcode == Opcode.MOUSE_WHEEL)
+        {
+            buffer.add(opcode, parseTruncatedDecimal(data, argument0Start, argument0End), 0);
+        }
+        else
+        {
+            buffer.add(opcode, parseInteger(data, argument0Start, argument0End), 0);
+        }
+    }
+
+    /**
+     * <p>
+     * Parses an integer argument with the same rules as {@link java.lang.Integer#parseInt(String) Integer.parseInt(String)}.
+     * </p>
+     * 
+     * @param data The bytes containing the argument.
+     * @param start The index of the first byte of the argument.
+     * @param end The index after the last byte of the argument.
+     * 
+     * @return The value of the argument.
+     * 
+     * @throws IllegalArgumentException Thrown if the argument is not an integer.
+     */
+    private int parseInteger(final byte[] data, final int start, final int end)
+    {
+        int index = start;
+        boolean negative = false;
+        if (index < end && (data[index] == '-' || data[index] == '+'))
+        {
+            negative = data[index] == '-';
+            index++;
+        }
+        if (index == end)
+        {
+            throw new IllegalArgumentException("Invalid command: Invalid numeric argument given.");
+        }
+
+        long value = 0;
+        for (; index < end; index++)
+        {
+            if (data[index] < '0' || data[index] > '9')
+            {
+                throw new IllegalArgumentException("Invalid command: Invalid numeric argument given.");
+            }
+
+            value = value * 10 + data[index] - '0';
+            if (value > (long) Integer.MAX_VALUE + 1)
+            {
+                throw new IllegalArgumentException("Invalid command: Invalid numeric argument given.");
+            }
+        }
+
+        if (negative)
+        {
+            value = -value;
+        }
+        if (value > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Invalid command: Invalid numeric argument given.");
+        }
+
+        return ((int) value);
+    }
+
+    /**
+     * <p>
+     * Parses a decimal argument and truncates it to an integer, with the same result as <code>(int) Double.parseDouble(argument)</code>. Plain
+     * decimals e.g. "-12.75" are parsed in place, anything else is handed to {@link java.lang.Double#parseDouble(String)
+     * Double.parseDouble(String)}.
+     * </p>
+     * 
+     * @param data The bytes containing the argument.
+     * @param start The index of the first byte of the argument.
+     * @param end The index after the last byte of the argument.
+     * 
+     * @return The truncated value of the argument.
+     * 
+     * @throws IllegalArgumentException Thrown if the argument is not a number.
+     */
+    private int parseTruncatedDecimal(final byte[] data, final int start, final int end)
+    {
+        int index = start;
+        boolean negative = false;
+        if (index < end && (data[index] == '-' || data[index] == '+'))
+        {
+            negative = data[index] == '-';
+            index++;
+        }
+
+        long value = 0;
+        int digits = 0;
+        boolean plain = true;
+        for (; index < end && data[index] != '.'; index++)
+        {
+            if (data[index] < '0' || data[index] > '9')
+            {
+                plain = false;
+                break;
+            }
+
+            // Saturate rather than overflow, as the cast from double does.
+            value = Math.min(value * 10 + data[index] - '0', (long) Integer.MAX_VALUE + 1);
+            digits++;
+        }
+        if (plain && index < end)
+        {
+            // Skip the fraction, it is truncated anyway.
+            for (index++; index < end; index++)
+            {
+                if (data[index] < '0' || data[index] > '9')
+                {
+                    plain = false;
+                    break;
+                }
+                digits++;
+            }
+        }
+
+        if (!plain || digits == 0)
+        {
+            try
+            {
+                return ((int) Double.parseDouble(new String(data, start, end - start)));
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("Invalid command: Invalid numeric argument given.", e);
+            }
+        }
+
+        if (negative)
+        {
+            value = -value;
+        }
+
+        return ((int) Math.max(Math.min(value, Integer.MAX_VALUE), Integer.MIN_VALUE));
+    }
+
+    /**
+     * <p>
+     * Finds the bounds of each of the comma separated arguments of a gesture.
+     * </p>
+     * 
+     * @param data The bytes containing the arguments.
+     * @param start The index of the first byte of the arguments.
+     * @param end The index after the last byte of the arguments.
+     * 
+     * @return The number of arguments.
+     * 
+     * @throws IllegalArgumentException Thrown if there are too many arguments.
+     */
+    private int splitArguments(final byte[] data, final int start, final int end)
+    {
+        int count = 0;
+        int argumentStart = start;
+
+        for (int index = start; index <= end; index++)
+        {
+            if (index == end || data[index] == ARGUMENT_SEPARATOR)
+            {
+                if (count == MAX_ARGUMENTS)
+                {
+                    throw new IllegalArgumentException("Invalid command: No more than " + MAX_ARGUMENTS + " arguments can be given.");
+                }
+
+                fArgumentStarts[count] = argumentStart;
+                fArgumentEnds[count] = index;
+                count++;
+                argumentStart = index + 1;
+            }
+        }
+
+        return (count);
+    }
+
+    /**
+     * <p>
+     * Unescapes the given bytes into the buffer of unescaped bytes.
+     * </p>
+     * 
+     * @param data The bytes to unescape.
+     * @param start The index of the first byte to unescape.
+     * @param end The index after the last byte to unescape.
+     * 
+     * @return The number of unescaped bytes.
+     * 
+     * @throws IllegalArgumentException Thrown if the bytes contain an invalid escape.
+     */
+    private int unescape(final byte[] data, final int start, final int end)
+    {
+        if (fUnescaped.length < end - start)
+        {
+            fUnescaped = new byte[end - start];
+        }
+
+        int length = 0;
+        for (int index = start; index < end; index++)
+        {
+            if (data[index] == ESCAPE)
+            {
+                if (index + 2 >= end || parseHexDigit(data[index + 1]) == -1 || parseHexDigit(data[index + 2]) == -1)
+                {
+                    throw new IllegalArgumentException("Invalid command: Invalid escape in macro.");
+                }
+                fUnescaped[length++] = (byte) (parseHexDigit(data[index + 1]) << 4 | parseHexDigit(data[index + 2]));
+                index += 2;
+            }
+            else
+            {
+                fUnescaped[length++] = data[index];
+            }
+        }
+
+        return (length);
+    }
+}
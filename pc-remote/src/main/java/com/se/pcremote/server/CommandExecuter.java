@@ -12,17 +12,17 @@
 package com.se.pcremote.server;
 
 import java.awt.AWTException;
-import java.awt.MouseInfo;
-import java.awt.Point;
 import java.awt.Robot;
-import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
 
 import org.apache.log4j.Logger;
 
 /**
  * <p>
- * Executes commands related to control of user input e.g. the mouse and keyboard and requests for output e.g. the screen. Uses the
- * {@link java.awt.Robot Robot} class to actuate these commands.
+ * Executes commands related to control of user input e.g. the mouse and keyboard and requests for output e.g. the screen. Uses an
+ * {@link com.se.pcremote.server.InputBackend InputBackend} to actuate these commands, by default a {@link com.se.pcremote.server.RobotBackend
+ * RobotBackend}. The backend is flushed after each batch of commands.
  * </p>
  * 
  * <p>
@@ -39,25 +39,94 @@ import org.apache.log4j.Logger;
  * after this to release the button).</li>
  * <li><code>mouseRelease(mouseButton);</code> Releases a mouse button.</li>
  * <li><code>mouseWheel(notches);</code> Spins the mouse wheel.</li>
+ * <li><code>typeCharacter(codePoint);</code> Types a character, pressing and releasing the Shift key around it if required (unless the client
+ * that sent it is holding the Shift key down, in which case it is left as it is). Clients cannot send this command, it is decoded from
+ * <code>typeText(text);</code>.</li>
+ * <li><code>typeText(text);</code> Types some text (see {@link com.se.pcremote.server.CommandDecoder CommandDecoder} for how it is escaped).
+ * Consecutive characters that require the Shift key are typed while holding it down once.</li>
+ * <li><code>click(mouseButton[,count]);</code> Clicks a mouse button, up to three times.</li>
+ * <li><code>drag(mouseButton,x,y);</code> Drags the mouse with a mouse button held down, relative to its current location. The stages of the
+ * drag are separated by the gesture delay (10 milliseconds by default) because many applications do not recognise a drag whose stages arrive back
+ * to back.</li>
+ * <li><code>chord(key[,key]*);</code> Presses a combination of keys (e.g. Ctrl+Alt+T) and releases them in the reverse order.</li>
  * </ul>
  * 
+ * <p>
+ * The gestures <code>click</code> and <code>chord</code> are executed as a whole, no commands from other clients are executed in the middle of
+ * them. The stages of a <code>drag</code> are executed separately, the {@link com.se.pcremote.server.InputScheduler InputScheduler} (or the
+ * {@link com.se.pcremote.server.ClientSession ClientSession} if there is no <code>InputScheduler</code>) waits out the gesture delay between
+ * them without holding the lock of this <code>CommandExecuter</code>.
+ * </p>
+ * 
+ * <p>
+ * Characters are typed using the keystrokes in a {@link com.se.pcremote.server.KeystrokeTable KeystrokeTable}, characters that have no keystroke
+ * are skipped.
+ * </p>
+ * 
+ * <p>
+ * If an {@link com.se.pcremote.server.InputJournal InputJournal} is set every command executed is appended to it, along with the identifier of the
+ * client that sent it.
+ * </p>
+ * 
  * @author Gary Buyn
  */
 public class CommandExecuter
 {
     /**
      * <p>
-     * Logs messages associated with this class.
+     * The default time to wait between the stages of a gesture (in milliseconds).
      * </p>
      */
-    private Logger fLogger;
+    private static final int DEFAULT_GESTURE_DELAY = 10;
+
+    /**
+     * <p>
+     * Holds the command being executed by {@link #executeCommand(String)}.
+     * </p>
+     */
+    private CommandBuffer fCommandBuffer;
+
+    /**
+     * <p>
+     * Decodes the commands given as <code>String</code>s.
+     * </p>
+     */
+    private CommandDecoder fCommandDecoder;
+
+    /**
+     * <p>
+     * The time to wait between the stages of a gesture (in milliseconds).
+     * </p>
+     */
+    private int fGestureDelay;
 
     /**
      * <p>
      * Actuates the commands.
      * </p>
      */
-    private Robot fRobot;
+    private InputBackend fInputBackend;
+
+    /**
+     * <p>
+     * Records the commands executed, or null if they are not recorded.
+     * </p>
+     */
+    private InputJournal fInputJournal;
+
+    /**
+     * <p>
+     * The keystrokes that type each character.
+     * </p>
+     */
+    private KeystrokeTable fKeystrokeTable;
+
+    /**
+     * <p>
+     * Logs messages associated with this class.
+     * </p>
+     */
+    private Logger fLogger;
 
     /**
      * <p>
@@ -68,8 +137,7 @@ public class CommandExecuter
      */
     public CommandExecuter() throws AWTException
     {
-        fLogger = Logger.getLogger(getClass());
-        fRobot = new Robot();
+        this(new Robot());
     }
 
     /**
@@ -77,15 +145,100 @@ public class CommandExecuter
      * Creates an instance of <code>CommandExecuter</code>.
      * </p>
      * 
+     * @param inputBackend Actuates the commands.
+     */
+    public CommandExecuter(final InputBackend inputBackend)
+    {
+        fInputBackend = inputBackend;
+
+        fCommandBuffer = new CommandBuffer();
+        fCommandDecoder = new CommandDecoder();
+        fGestureDelay = DEFAULT_GESTURE_DELAY;
+        fInputJournal = null;
+        fKeystrokeTable = new KeystrokeTable();
+        fLogger = Logger.getLogger(getClass());
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>CommandExecuter</code> that actuates the commands with a {@link com.se.pcremote.server.RobotBackend
+     * RobotBackend}.
+     * </p>
+     * 
      * @param robot Actuates the commands.
      */
     public CommandExecuter(final Robot robot)
     {
-        fRobot = robot;
+        fInputBackend = new RobotBackend(robot);
 
+        fCommandBuffer = new CommandBuffer();
+        fCommandDecoder = new CommandDecoder();
+        fGestureDelay = DEFAULT_GESTURE_DELAY;
+        fInputJournal = null;
+        fKeystrokeTable = new KeystrokeTable();
         fLogger = Logger.getLogger(getClass());
     }
 
+    /**
+     * <p>
+     * Releases the resources held by the {@link com.se.pcremote.server.InputBackend InputBackend}.
+     * </p>
+     * 
+     * @throws IOException Thrown if the resources fail to be released.
+     */
+    public synchronized void dispose() throws IOException
+    {
+        fInputBackend.dispose();
+    }
+
+    /**
+     * <p>
+     * Executes a single decoded command.
+     * </p>
+     * 
+     * @param opcode The {@link com.se.pcremote.server.Opcode Opcode} of the command.
+     * @param argument0 The first argument of the command.
+     * @param argument1 The second argument of the command.
+     * 
+     * @throws IOException Thrown if the command fails to be injected.
+     */
+    private void execute(final int opcode, final int argument0, final int argument1) throws IOException
+    {
+        if (opcode == Opcode.KEY_PRESS)
+        {
+            fInputBackend.keyPress(argument0);
+        }
+        else if (opcode == Opcode.KEY_RELEASE)
+        {
+            fInputBackend.keyRelease(argument0);
+        }
+        else if (opcode == Opcode.MOUSE_MOVE)
+        {
+            fInputBackend.mouseMove(argument0, argument1);
+        }
+        else if (opcode == Opcode.MOUSE_MOVE_RELATIVE)
+        {
+            fInputBackend.mouseMoveRelative(-1 * argument0, -1 * argument1);
+        }
+        else if (opcode == Opcode.MOUSE_PRESS)
+        {
+            fInputBackend.mousePress(argument0);
+        }
+        else if (opcode == Opcode.MOUSE_RELEASE)
+        {
+            fInputBackend.mouseRelease(argument0);
+        }
+        else if (opcode == Opcode.MOUSE_WHEEL)
+        {
+            fInputBackend.mouseWheel(argument0);
+        }
+        else if (opcode == Opcode.PAUSE)
+        {
+            // The gesture delay is waited out by the caller, so that the lock is not held in the meantime.
+            fInputBackend.flush();
+        }
+    }
+
     /**
      * <p>
      * Executes the given command which must be of the form <code>commandName([n[,m]*])</code>.
@@ -95,85 +248,210 @@ public class CommandExecuter
      */
     public synchronized void executeCommand(final String command)
     {
-        fLogger.debug("Executing command: " + command);
+        if (fLogger.isDebugEnabled())
+        {
+            fLogger.debug("Executing command: " + command);
+        }
+
+        byte[] data = command.getBytes();
+        fCommandBuffer.clear();
+        fCommandDecoder.decodeCommand(data, 0, data.length, fCommandBuffer);
+
+        executeAll(fCommandBuffer, 0);
+    }
 
-        // Validate command format.
-        String[] commandParts = command.split("\\(");
-        if (commandParts.length != 2)
+    /**
+     * <p>
+     * Executes all of the given decoded commands in order, without releasing the lock on this <code>CommandExecuter</code> in between.
+     * </p>
+     * 
+     * @param commands The commands to execute.
+     */
+    public void executeCommands(final CommandBuffer commands)
+    {
+        executeCommands(commands, 0);
+    }
+
+    /**
+     * <p>
+     * Executes all of the given decoded commands in order on behalf of a client, without releasing the lock on this <code>CommandExecuter</code> in
+     * between.
+     * </p>
+     * 
+     * @param commands The commands to execute.
+     * @param clientId The identifier of the client that sent the commands, or 0 if it is not known.
+     */
+    public synchronized void executeCommands(final CommandBuffer commands, final int clientId)
+    {
+        if (fLogger.isDebugEnabled())
         {
-            throw new IllegalArgumentException("Invalid command: Format must be <commandName>(<arg>[,<arg>]).");
+            fLogger.debug("Executing commands: " + commands);
         }
-        String commandParameters = commandParts[1].split("\\)")[0];
 
-        // Extract method parts from command.
-        String methodName = commandParts[0];
-        String[] methodParameters = commandParameters.split(",");
+        StageProfiler profiler = StageProfiler.getInstance();
+        Object profile = profiler.begin(StageProfiler.INJECT);
+        try
+        {
+            executeAll(commands, clientId);
+        }
+        finally
+        {
+            profiler.end(profile, clientId, 0, commands.size());
+        }
+    }
+
+    /**
+     * <p>
+     * Executes all of the given decoded commands in order. The Shift key is held down across consecutive characters that require it rather than
+     * being pressed and released around each of them, and is always released before any other command is executed.
+     * </p>
+     * 
+     * @param commands The commands to execute.
+     * @param clientId The identifier of the client that sent the commands, or 0 if it is not known.
+     */
+    private void executeAll(final CommandBuffer commands, final int clientId)
+    {
+        boolean shiftPressed = false;
+        TraceBuffer trace = TraceBuffer.getInstance();
+
+        if (fInputJournal != null)
+        {
+            fInputJournal.append(clientId, commands);
+        }
 
         try
         {
-            // Execute appropriate command.
-            if (methodName.equals("keyPress"))
+            try
             {
-                fRobot.keyPress(Integer.parseInt(methodParameters[0]));
-            }
-            else if (methodName.equals("keyRelease"))
-            {
-                fRobot.keyRelease(Integer.parseInt(methodParameters[0]));
-            }
-            else if (methodName.equals("mouseMove"))
-            {
-                fRobot.mouseMove((int) Double.parseDouble(methodParameters[0]), (int) Double.parseDouble(methodParameters[1]));
-            }
-            else if (methodName.equals("mouseMoveRelative"))
-            {
-                Point mouseLocation = MouseInfo.getPointerInfo().getLocation();
-                fRobot.mouseMove(mouseLocation.x + -1 * (int) Double.parseDouble(methodParameters[0]),
-                        mouseLocation.y + -1 * (int) Double.parseDouble(methodParameters[1]));
-            }
-            else if (methodName.equals("mousePress"))
-            {
-                int button = Integer.parseInt(methodParameters[0]);
-                if (button == 1)
-                {
-                    fRobot.mousePress(InputEvent.BUTTON1_MASK);
-                }
-                else if (button == 2)
+                for (int index = 0; index < commands.size(); index++)
                 {
-                    fRobot.mousePress(InputEvent.BUTTON2_MASK);
-                }
-                else if (button == 3)
-                {
-                    fRobot.mousePress(InputEvent.BUTTON3_MASK);
+                    int opcode = commands.getOpcode(index);
+                    trace.record(clientId, TraceBuffer.INJECT, opcode, commands.getArgument0(index), commands.getArgument1(index));
+                    if (opcode == Opcode.TYPE_CHARACTER)
+                    {
+                        shiftPressed = type(commands.getArgument0(index), commands.getArgument1(index) != 0, shiftPressed);
+                    }
+                    else
+                    {
+                        if (shiftPressed)
+                        {
+                            fInputBackend.keyRelease(KeyEvent.VK_SHIFT);
+                            shiftPressed = false;
+                        }
+                        execute(opcode, commands.getArgument0(index), commands.getArgument1(index));
+                    }
                 }
             }
-            else if (methodName.equals("mouseRelease"))
+            finally
             {
-                int button = Integer.parseInt(methodParameters[0]);
-                if (button == 1)
-                {
-                    fRobot.mouseRelease(InputEvent.BUTTON1_MASK);
-                }
-                else if (button == 2)
-                {
-                    fRobot.mouseRelease(InputEvent.BUTTON2_MASK);
-                }
-                else if (button == 3)
+                if (shiftPressed)
                 {
-                    fRobot.mouseRelease(InputEvent.BUTTON3_MASK);
+                    fInputBackend.keyRelease(KeyEvent.VK_SHIFT);
                 }
+                fInputBackend.flush();
             }
-            else if (methodName.equals("mouseWheel"))
-            {
-                fRobot.mouseWheel((int) Double.parseDouble(methodParameters[0]));
-            }
-            else
+        }
+        catch (IOException e)
+        {
+            fLogger.error("Failed to inject the commands '" + commands + "'", e);
+        }
+    }
+
+    /**
+     * <p>
+     * Retrieves the time to wait between the stages of a gesture. The default is 10.
+     * </p>
+     * 
+     * @return The time to wait between the stages of a gesture (in milliseconds).
+     */
+    public synchronized int getGestureDelay()
+    {
+        return (fGestureDelay);
+    }
+
+    /**
+     * <p>
+     * Retrieves the journal the commands executed are recorded in.
+     * </p>
+     * 
+     * @return The journal the commands executed are recorded in, or null if they are not recorded.
+     */
+    public synchronized InputJournal getInputJournal()
+    {
+        return (fInputJournal);
+    }
+
+    /**
+     * <p>
+     * Sets the time to wait between the stages of a gesture. The default is 10.
+     * </p>
+     * 
+     * @param gestureDelay The time to wait between the stages of a gesture (in milliseconds), or 0 to not wait.
+     */
+    public synchronized void setGestureDelay(final int gestureDelay)
+    {
+        fGestureDelay = gestureDelay;
+    }
+
+    /**
+     * <p>
+     * Sets the journal to record the commands executed in.
+     * </p>
+     * 
+     * @param inputJournal The journal to record the commands executed in, or null to stop recording them.
+     */
+    public synchronized void setInputJournal(final InputJournal inputJournal)
+    {
+        fInputJournal = inputJournal;
+    }
+
+    /**
+     * <p>
+     * Types a single character, pressing or releasing the Shift key first if the character requires it to be in a different state. If the client is
+     * holding the Shift key down itself it is neither pressed nor released.
+     * </p>
+     * 
+     * @param codePoint The character to type.
+     * @param shiftHeld Determines whether the client that sent the character is holding the Shift key down.
+     * @param shiftPressed Determines whether the Shift key has been pressed by a previous character.
+     * 
+     * @return True if the Shift key is left pressed, false otherwise.
+     * 
+     * @throws IOException Thrown if the keystrokes fail to be injected.
+     */
+    private boolean type(final int codePoint, final boolean shiftHeld, final boolean shiftPressed) throws IOException
+    {
+        if (!fKeystrokeTable.isTypeable(codePoint))
+        {
+            if (fLogger.isDebugEnabled())
             {
-                throw new IllegalArgumentException("Unknown command: " + methodName);
+                fLogger.debug("No keystroke types the character " + codePoint + ", skipping it.");
             }
+            return (shiftPressed);
+        }
+
+        int keyCode = fKeystrokeTable.getKeyCode(codePoint);
+        if (shiftHeld)
+        {
+            fInputBackend.keyPress(keyCode);
+            fInputBackend.keyRelease(keyCode);
+
+            return (shiftPressed);
+        }
+
+        boolean shiftRequired = fKeystrokeTable.isShiftRequired(codePoint);
+        if (shiftRequired && !shiftPressed)
+        {
+            fInputBackend.keyPress(KeyEvent.VK_SHIFT);
         }
-        catch (NumberFormatException e)
+        else if (!shiftRequired && shiftPressed)
         {
-            throw new IllegalArgumentException("Invalid command: Invalid numeric argument given.", e);
+            fInputBackend.keyRelease(KeyEvent.VK_SHIFT);
         }
+
+        fInputBackend.keyPress(keyCode);
+        fInputBackend.keyRelease(keyCode);
+
+        return (shiftRequired);
     }
 }
@@ -0,0 +1,122 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * Injects user input into the desktop on behalf of a {@link com.se.pcremote.server.CommandExecuter CommandExecuter}. The input may be buffered
+ * until {@link #flush()} is called, which the <code>CommandExecuter</code> does at the end of each batch of commands it executes.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public interface InputBackend
+{
+    /**
+     * <p>
+     * Releases any resources held by this <code>InputBackend</code>.
+     * </p>
+     * 
+     * @throws IOException Thrown if the resources fail to be released.
+     */
+    void dispose() throws IOException;
+
+    /**
+     * <p>
+     * Injects any input that has been buffered.
+     * </p>
+     * 
+     * @throws IOException Thrown if the input fails to be injected.
+     */
+    void flush() throws IOException;
+
+    /**
+     * <p>
+     * Presses a key on the keyboard.
+     * </p>
+     * 
+     * @param keyCode The code of the key, as per the <code>VK_</code> constants of {@link java.awt.event.KeyEvent KeyEvent}.
+     * 
+     * @throws IOException Thrown if the input fails to be injected.
+     */
+    void keyPress(int keyCode) throws IOException;
+
+    /**
+     * <p>
+     * Releases a key on the keyboard.
+     * </p>
+     * 
+     * @param keyCode The code of the key, as per the <code>VK_</code> constants of {@link java.awt.event.KeyEvent KeyEvent}.
+     * 
+     * @throws IOException Thrown if the input fails to be injected.
+     */
+    void keyRelease(int keyCode) throws IOException;
+
+    /**
+     * <p>
+     * Moves the mouse to the given location on the screen.
+     * </p>
+     * 
+     * @param x The horizontal location (in pixels).
+     * @param y The vertical location (in pixels).
+     * 
+     * @throws IOException Thrown if the input fails to be injected.
+     */
+    void mouseMove(int x, int y) throws IOException;
+
+    /**
+     * <p>
+     * Moves the mouse relative to its current location.
+     * </p>
+     * 
+     * @param x The horizontal distance to move (in pixels, positive is to the right).
+     * @param y The vertical distance to move (in pixels, positive is down).
+     * 
+     * @throws IOException Thrown if the input fails to be injected.
+     */
+    void mouseMoveRelative(int x, int y) throws IOException;
+
+    /**
+     * <p>
+     * Presses a mouse button.
+     * </p>
+     * 
+     * @param mouseButton The mouse button, 1 for the left button, 2 for the middle button or 3 for the right button. Other buttons are ignored.
+     * 
+     * @throws IOException Thrown if the input fails to be injected.
+     */
+    void mousePress(int mouseButton) throws IOException;
+
+    /**
+     * <p>
+     * Releases a mouse button.
+     * </p>
+     * 
+     * @param mouseButton The mouse button, 1 for the left button, 2 for the middle button or 3 for the right button. Other buttons are ignored.
+     * 
+     * @throws IOException Thrown if the input fails to be injected.
+     */
+    void mouseRelease(int mouseButton) throws IOException;
+
+    /**
+     * <p>
+     * Spins the mouse wheel.
+     * </p>
+     * 
+     * @param notches The number of notches to spin the wheel, positive is down (towards the user).
+     * 
+     * @throws IOException Thrown if the input fails to be injected.
+     */
+    void mouseWheel(int notches) throws IOException;
+}
@@ -0,0 +1,313 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * <p>
+ * A journal of the input injected by a {@link com.se.pcremote.server.CommandExecuter CommandExecuter}, kept in a memory-mapped file of fixed size
+ * records. Each record holds the time the command was executed, the identifier of the client that sent it and the decoded command itself. A
+ * journal can be replayed with an {@link com.se.pcremote.server.InputJournalReplayer InputJournalReplayer} to reproduce a problem or to benchmark the
+ * injection of real traffic.
+ * </p>
+ * 
+ * <p>
+ * The file is mapped in full when the journal is created so appending a record is nothing more than a few writes to memory: it does not allocate,
+ * does not lock and does not make a system call. The records are kept in a ring: once the file is full each record overwrites the oldest one (which
+ * is counted as dropped), so the journal always holds the most recent input. A journal is not thread safe, the <code>CommandExecuter</code> only
+ * appends to it while holding its own lock.
+ * </p>
+ * 
+ * <p>
+ * The file starts with a header of {@link #HEADER_LENGTH} bytes (the magic number, the format version, the record length, the number of records,
+ * the time the journal was created in milliseconds since the epoch, the index at which the next record is written and 1 if the ring has wrapped
+ * around or 0 if it has not) followed by the records, each of {@link #RECORD_LENGTH} bytes (the time since the journal was created in
+ * nanoseconds, the client identifier, the {@link com.se.pcremote.server.Opcode Opcode} and the two arguments). Once the ring has wrapped around
+ * the oldest record is the one at the index of the next record. All values are big endian.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class InputJournal
+{
+    /**
+     * <p>
+     * The position of the number of records in the header.
+     * </p>
+     */
+    public static final int COUNT_POSITION = 12;
+
+    /**
+     * <p>
+     * The position of the time the journal was created in the header.
+     * </p>
+     */
+    public static final int CREATED_POSITION = 16;
+
+    /**
+     * <p>
+     * The default number of records a journal can hold.
+     * </p>
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    /**
+     * <p>
+     * The length of the header of a journal file (in bytes).
+     * </p>
+     */
+    public static final int HEADER_LENGTH = 32;
+
+    /**
+     * <p>
+     * The position of the index at which the next record is written in the header.
+     * </p>
+     */
+    public static final int HEAD_POSITION = 24;
+
+    /**
+     * <p>
+     * The number that identifies a journal file.
+     * </p>
+     */
+    public static final int MAGIC = 0x50434A31;
+
+    /**
+     * <p>
+     * The length of a record (in bytes).
+     * </p>
+     */
+    public static final int RECORD_LENGTH = 24;
+
+    /**
+     * <p>
+     * The position of the record length in the header.
+     * </p>
+     */
+    public static final int RECORD_LENGTH_POSITION = 8;
+
+    /**
+     * <p>
+     * The version of the format of the journal files written.
+     * </p>
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * <p>
+     * The position of the version in the header.
+     * </p>
+     */
+    public static final int VERSION_POSITION = 4;
+
+    /**
+     * <p>
+     * The position of the flag that is set once the ring has wrapped around in the header.
+     * </p>
+     */
+    public static final int WRAPPED_POSITION = 28;
+
+    /**
+     * <p>
+     * The mapped file.
+     * </p>
+     */
+    private MappedByteBuffer fBuffer;
+
+    /**
+     * <p>
+     * The number of records the journal can hold.
+     * </p>
+     */
+    private int fCapacity;
+
+    /**
+     * <p>
+     * The number of records the journal holds.
+     * </p>
+     */
+    private int fCount;
+
+    /**
+     * <p>
+     * The number of records dropped (overwritten by newer records) because the journal was full.
+     * </p>
+     */
+    private long fDroppedCount;
+
+    /**
+     * <p>
+     * The file the journal is kept in.
+     * </p>
+     */
+    private RandomAccessFile fFile;
+
+    /**
+     * <p>
+     * The index at which the next record is written.
+     * </p>
+     */
+    private int fHead;
+
+    /**
+     * <p>
+     * The time at which the journal was created (in nanoseconds).
+     * </p>
+     */
+    private long fStartTime;
+
+    /**
+     * <p>
+     * Creates an instance of <code>InputJournal</code>, creating (or replacing) the journal file and mapping it into memory.
+     * </p>
+     * 
+     * @param file The file to keep the journal in.
+     * @param capacity The number of records the journal can hold.
+     * 
+     * @throws IOException Thrown if the journal file cannot be created or mapped.
+     */
+    public InputJournal(final File file, final int capacity) throws IOException
+    {
+        fCapacity = capacity;
+
+        fCount = 0;
+        fDroppedCount = 0;
+        fFile = new RandomAccessFile(file, "rw");
+        fHead = 0;
+        fStartTime = System.nanoTime();
+
+        long length = HEADER_LENGTH + (long) capacity * RECORD_LENGTH;
+        fFile.setLength(length);
+        fBuffer = fFile.getChannel().map(MapMode.READ_WRITE, 0, length);
+        fBuffer.order(ByteOrder.BIG_ENDIAN);
+
+        fBuffer.putInt(0, MAGIC);
+        fBuffer.putInt(VERSION_POSITION, VERSION);
+        fBuffer.putInt(RECORD_LENGTH_POSITION, RECORD_LENGTH);
+        fBuffer.putInt(COUNT_POSITION, 0);
+        fBuffer.putLong(CREATED_POSITION, System.currentTimeMillis());
+        fBuffer.putInt(HEAD_POSITION, 0);
+        fBuffer.putInt(WRAPPED_POSITION, 0);
+    }
+
+    /**
+     * <p>
+     * Appends a record for each of the given commands, all stamped with the current time.
+     * </p>
+     * 
+     * @param clientId The identifier of the client that sent the commands.
+     * @param commands The commands.
+     */
+    public void append(final int clientId, final CommandBuffer commands)
+    {
+        long time = System.nanoTime() - fStartTime;
+
+        for (int index = 0; index < commands.size(); index++)
+        {
+            append(time, clientId, commands.getOpcode(index), commands.getArgument0(index), commands.getArgument1(index));
+        }
+    }
+
+    /**
+     * <p>
+     * Appends a record, overwriting the oldest record if the journal is full.
+     * </p>
+     * 
+     * @param time The time since the journal was created (in nanoseconds).
+     * @param clientId The identifier of the client that sent the command.
+     * @param opcode The {@link com.se.pcremote.server.Opcode Opcode} of the command.
+     * @param argument0 The first argument of the command.
+     * @param argument1 The second argument of the command.
+     */
+    public void append(final long time, final int clientId, final int opcode, final int argument0, final int argument1)
+    {
+        int position = HEADER_LENGTH + fHead * RECORD_LENGTH;
+        fBuffer.putLong(position, time);
+        fBuffer.putInt(position + 8, clientId);
+        fBuffer.putInt(position + 12, opcode);
+        fBuffer.putInt(position + 16, argument0);
+        fBuffer.putInt(position + 20, argument1);
+
+        fHead++;
+        if (fHead == fCapacity)
+        {
+            fHead = 0;
+            fBuffer.putInt(WRAPPED_POSITION, 1);
+        }
+        fBuffer.putInt(HEAD_POSITION, fHead);
+
+        if (fCount == fCapacity)
+        {
+            fDroppedCount++;
+        }
+        else
+        {
+            fCount++;
+            fBuffer.putInt(COUNT_POSITION, fCount);
+        }
+    }
+
+    /**
+     * <p>
+     * Writes the journal out to its file and closes it.
+     * </p>
+     * 
+     * @throws IOException Thrown if the journal fails to be closed.
+     */
+    public void dispose() throws IOException
+    {
+        fBuffer.force();
+        fFile.close();
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of records the journal can hold.
+     * </p>
+     * 
+     * @return The number of records the journal can hold.
+     */
+    public int getCapacity()
+    {
+        return (fCapacity);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of records the journal holds.
+     * </p>
+     * 
+     * @return The number of records the journal holds.
+     */
+    public int getCount()
+    {
+        return (fCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of records dropped (overwritten by newer records) because the journal was full.
+     * </p>
+     * 
+     * @return The number of records dropped because the journal was full.
+     */
+    public long getDroppedCount()
+    {
+        return (fDroppedCount);
+    }
+}
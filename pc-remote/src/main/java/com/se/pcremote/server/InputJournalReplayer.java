@@ -0,0 +1,341 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * Feeds the commands recorded in an {@link com.se.pcremote.server.InputJournal InputJournal} back through a
+ * {@link com.se.pcremote.server.CommandExecuter CommandExecuter}. The commands can be replayed at the speed they were originally executed (or a
+ * multiple of it) or as fast as possible.
+ * </p>
+ * 
+ * <p>
+ * Consecutive records with the same time and client identifier were executed as a single batch and are replayed as a single batch. The records
+ * are replayed from the oldest to the newest, so if the ring of the journal has wrapped around the replay starts part way through the file (and
+ * the waits are relative to the oldest record rather than to the creation of the journal).
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class InputJournalReplayer
+{
+    /**
+     * <p>
+     * Logs messages associated with this class.
+     * </p>
+     */
+    private static Logger fLogger;
+
+    /**
+     * <p>
+     * Checks the validity of the arguments provided to the command line utility.
+     * </p>
+     * 
+     * @param args The arguments provided to the command line utility when it was started.
+     */
+    public static void checkArgs(final String[] args)
+    {
+        if (args.length == 1)
+        {}
+        else if (args.length == 2)
+        {
+            try
+            {
+                Double.parseDouble(args[1]);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("An invalid speed was specified (must be a number).");
+            }
+        }
+        else
+        {
+            throw new IllegalArgumentException(
+                    "The wrong number of arguments were specified (the journal must be specified, the speed can be optionally specified).");
+        }
+    }
+
+    /**
+     * <p>
+     * Replays a journal on this PC.
+     * </p>
+     * 
+     * @param args The arguments provided to the replayer when it was started.
+     */
+    public static void main(final String[] args)
+    {
+        fLogger = Logger.getLogger(InputJournalReplayer.class);
+
+        try
+        {
+            checkArgs(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            fLogger.fatal(e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        try
+        {
+            double speed = 1.0;
+            if (args.length == 2)
+            {
+                speed = Double.parseDouble(args[1]);
+            }
+
+            InputJournalReplayer replayer = new InputJournalReplayer(new File(args[0]), new CommandExecuter());
+            if (replayer.isWrapped())
+            {
+                fLogger.info("The journal is full, older records were dropped.");
+            }
+            fLogger.info("Replaying " + replayer.getCount() + " records...");
+            replayer.replay(speed);
+            fLogger.info("...Done.");
+        }
+        catch (Exception e)
+        {
+            fLogger.fatal("Failed to replay the journal.", e);
+        }
+    }
+
+    /**
+     * <p>
+     * Prints usage instructions for the command line utility.
+     * </p>
+     */
+    public static void printUsage()
+    {
+        fLogger.info("Usage:");
+        fLogger.info("\tInputJournalReplayer journal [speed]");
+        fLogger.info("Where:");
+        fLogger.info("\t journal = The file the journal is kept in.");
+        fLogger.info("\t speed = The multiple of the original speed to replay at, 0 to replay as fast as possible (default is 1).");
+    }
+
+    /**
+     * <p>
+     * The mapped journal file.
+     * </p>
+     */
+    private MappedByteBuffer fBuffer;
+
+    /**
+     * <p>
+     * Executes the commands.
+     * </p>
+     */
+    private CommandExecuter fCommandExecuter;
+
+    /**
+     * <p>
+     * The batch of commands being replayed.
+     * </p>
+     */
+    private CommandBuffer fCommands;
+
+    /**
+     * <p>
+     * The number of records in the journal.
+     * </p>
+     */
+    private int fCount;
+
+    /**
+     * <p>
+     * The index of the oldest record in the journal.
+     * </p>
+     */
+    private int fOldest;
+
+    /**
+     * <p>
+     * The number of records the journal file can hold.
+     * </p>
+     */
+    private int fRecordCapacity;
+
+    /**
+     * <p>
+     * Determines whether the ring of the journal has wrapped around.
+     * </p>
+     */
+    private boolean fWrapped;
+
+    /**
+     * <p>
+     * Creates an instance of <code>InputJournalReplayer</code>, mapping the journal file into memory.
+     * </p>
+     * 
+     * @param file The file the journal is kept in.
+     * @param commandExecuter Executes the commands.
+     * 
+     * @throws IOException Thrown if the journal file cannot be read or is not a journal.
+     */
+    public InputJournalReplayer(final File file, final CommandExecuter commandExecuter) throws IOException
+    {
+        fCommandExecuter = commandExecuter;
+
+        fCommands = new CommandBuffer();
+
+        RandomAccessFile journal = new RandomAccessFile(file, "r");
+        try
+        {
+            fBuffer = journal.getChannel().map(MapMode.READ_ONLY, 0, journal.length());
+        }
+        finally
+        {
+            journal.close();
+        }
+        fBuffer.order(ByteOrder.BIG_ENDIAN);
+
+        if (fBuffer.capacity() < InputJournal.HEADER_LENGTH || fBuffer.getInt(0) != InputJournal.MAGIC)
+        {
+            throw new IOException("The file '" + file + "' is not a journal.");
+        }
+        // Version 1 journals did not wrap around, their head and wrapped flag are always 0.
+        int version = fBuffer.getInt(InputJournal.VERSION_POSITION);
+        if (version < 1 || version > InputJournal.VERSION || fBuffer.getInt(InputJournal.RECORD_LENGTH_POSITION) != InputJournal.RECORD_LENGTH)
+        {
+            throw new IOException("The journal '" + file + "' is of an unsupported version.");
+        }
+
+        fRecordCapacity = (fBuffer.capacity() - InputJournal.HEADER_LENGTH) / InputJournal.RECORD_LENGTH;
+        fCount = Math.min(fBuffer.getInt(InputJournal.COUNT_POSITION), fRecordCapacity);
+        fWrapped = fBuffer.getInt(InputJournal.WRAPPED_POSITION) != 0;
+        fOldest = 0;
+        if (fWrapped)
+        {
+            fOldest = fBuffer.getInt(InputJournal.HEAD_POSITION);
+            if (fOldest < 0 || fOldest >= fRecordCapacity)
+            {
+                throw new IOException("The journal '" + file + "' is corrupt.");
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of records in the journal.
+     * </p>
+     * 
+     * @return The number of records in the journal.
+     */
+    public int getCount()
+    {
+        return (fCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the time at which the journal was created.
+     * </p>
+     * 
+     * @return The time at which the journal was created (in milliseconds since the epoch).
+     */
+    public long getCreatedTime()
+    {
+        return (fBuffer.getLong(InputJournal.CREATED_POSITION));
+    }
+
+    /**
+     * <p>
+     * Retrieves the position of a record in the journal file.
+     * </p>
+     * 
+     * @param index The index of the record, counting from the oldest record.
+     * 
+     * @return The position of the record in the journal file.
+     */
+    private int getPosition(final int index)
+    {
+        int slot = fOldest + index;
+        if (slot >= fRecordCapacity)
+        {
+            slot -= fRecordCapacity;
+        }
+
+        return (InputJournal.HEADER_LENGTH + slot * InputJournal.RECORD_LENGTH);
+    }
+
+    /**
+     * <p>
+     * Determines whether the ring of the journal has wrapped around, in which case older records were dropped to make room for newer ones.
+     * </p>
+     * 
+     * @return True if the ring of the journal has wrapped around, false otherwise.
+     */
+    public boolean isWrapped()
+    {
+        return (fWrapped);
+    }
+
+    /**
+     * <p>
+     * Replays all of the commands in the journal.
+     * </p>
+     * 
+     * @param speed The multiple of the original speed to replay the commands at, or 0 to replay them as fast as possible.
+     * 
+     * @return The number of commands replayed.
+     * 
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting to replay a command.
+     */
+    public int replay(final double speed) throws InterruptedException
+    {
+        long startTime = System.nanoTime();
+        long firstTime = 0;
+        if (fCount > 0)
+        {
+            firstTime = fBuffer.getLong(getPosition(0));
+        }
+
+        int index = 0;
+        while (index < fCount)
+        {
+            int position = getPosition(index);
+            long time = fBuffer.getLong(position);
+            int clientId = fBuffer.getInt(position + 8);
+
+            fCommands.clear();
+            while (index < fCount && fBuffer.getLong(getPosition(index)) == time && fBuffer.getInt(getPosition(index) + 8) == clientId)
+            {
+                position = getPosition(index);
+                fCommands.add(fBuffer.getInt(position + 12), fBuffer.getInt(position + 16), fBuffer.getInt(position + 20));
+                index++;
+            }
+
+            if (speed > 0)
+            {
+                long wait = startTime + (long) ((time - firstTime) / speed) - System.nanoTime();
+                if (wait > 0)
+                {
+                    Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                }
+            }
+
+            fCommandExecuter.executeCommands(fCommands, clientId);
+        }
+
+        return (index);
+    }
+}
@@ -0,0 +1,1262 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * Queues the commands of all of the clients for injection by a single thread, in two lanes per client. Discrete events (key and mouse button
+ * presses and releases and typed characters) go into a first-in-first-out lane that is always served first. Continuous events (mouse movements
+ * and wheel spins) are coalesced into a {@link com.se.pcremote.server.PendingMotion PendingMotion} while they wait and are served whenever there
+ * are no discrete events waiting. A release therefore never waits behind a backlog of mouse movements.
+ * </p>
+ * 
+ * <p>
+ * The order of each client's events is kept within each lane. When a client's discrete event is queued, any motion of that client still waiting
+ * is moved into the discrete lane ahead of it, so a click always lands where the client moved the mouse to before clicking. All of the discrete
+ * events a client has waiting are injected as a single batch, so gestures (e.g. a <code>click</code>) are never interleaved with the events of
+ * another client.
+ * </p>
+ * 
+ * <p>
+ * The exception is a gesture that pauses between its stages (e.g. a <code>drag</code>). The batch ends at the <code>pause();</code> and the rest
+ * of the client's events are held back until the gesture delay of the {@link com.se.pcremote.server.CommandExecuter CommandExecuter} has passed
+ * since the stage before the pause was injected. The other clients are served in the meantime, nothing waits out the pause while holding the
+ * lock of the <code>CommandExecuter</code>.
+ * </p>
+ * 
+ * <p>
+ * A pointer movement that arrives too late is worse than useless, it yanks the pointer after the user has moved on. So a client's motion is
+ * dropped when it is dequeued if even the latest event coalesced into it was sent longer ago than the deadline. Discrete events (and the motion
+ * moved into the discrete lane ahead of them) are always injected.
+ * </p>
+ * 
+ * <p>
+ * When several clients have events waiting, the one that is served next is chosen by the arbitration policy:
+ * </p>
+ * 
+ * <ul>
+ * <li>{@link #POLICY_FAIR} (the default) The client that has used the least injection time is served first, so a chatty client cannot
+ * monopolise the desktop. A client that has been idle does not bank injection time, it starts level with the clients already being served.</li>
+ * <li>{@link #POLICY_FIFO} The client whose events have been waiting the longest is served first.</li>
+ * <li>{@link #POLICY_MOST_RECENT} The client that submitted events most recently is served first.</li>
+ * <li>{@link #POLICY_EXCLUSIVE} Only the client in control is served, the events of the other clients are dropped (except for releases, so
+ * nothing is left stuck down). Control passes to the first client to submit events and is handed off to the next client to submit events once
+ * the client in control has been idle for the handoff timeout, or explicitly with {@link #setController(int)}.</li>
+ * </ul>
+ * 
+ * <p>
+ * The injection time used by each client is measured.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class InputScheduler
+{
+    /**
+     * <p>
+     * The events waiting for a single client, and its use of injection time.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    private static class ClientQueue
+    {
+        /**
+         * <p>
+         * The identifier of the client.
+         * </p>
+         */
+        private int fClientId;
+
+        /**
+         * <p>
+         * The discrete events waiting.
+         * </p>
+         */
+        private CommandBuffer fDiscrete;
+
+        /**
+         * <p>
+         * The time at which the oldest discrete event waiting was queued (in nanoseconds).
+         * </p>
+         */
+        private long fDiscreteQueuedTime;
+
+        /**
+         * <p>
+         * The sequence number of the oldest discrete event waiting.
+         * </p>
+         */
+        private long fDiscreteSequence;
+
+        /**
+         * <p>
+         * The injection time used by the client (in nanoseconds).
+         * </p>
+         */
+        private long fInjectionTime;
+
+        /**
+         * <p>
+         * The time at which the client last submitted events (in nanoseconds).
+         * </p>
+         */
+        private long fLastActiveTime;
+
+        /**
+         * <p>
+         * The sequence number of the latest event the client submitted.
+         * </p>
+         */
+        private long fLastSequence;
+
+        /**
+         * <p>
+         * The continuous events waiting, coalesced.
+         * </p>
+         */
+        private PendingMotion fMotion;
+
+        /**
+         * <p>
+         * The number of continuous events coalesced into the motion.
+         * </p>
+         */
+        private int fMotionEventCount;
+
+        /**
+         * <p>
+         * The time at which the oldest continuous event coalesced into the motion was queued (in nanoseconds).
+         * </p>
+         */
+        private long fMotionQueuedTime;
+
+        /**
+         * <p>
+         * The sequence number of the oldest continuous event coalesced into the motion.
+         * </p>
+         */
+        private long fMotionSequence;
+
+        /**
+         * <p>
+         * The time at which the latest event coalesced into the motion was sent (in nanoseconds).
+         * </p>
+         */
+        private long fMotionTime;
+
+        /**
+         * <p>
+         * Determines whether the client's events are held back until the pause of a gesture ends.
+         * </p>
+         */
+        private boolean fPaused;
+
+        /**
+         * <p>
+         * The time at which the pause of a gesture ends, if the client's events are being held back (in nanoseconds).
+         * </p>
+         */
+        private long fResumeTime;
+
+        /**
+         * <p>
+         * The injection time used by the client as seen by the {@link InputScheduler#POLICY_FAIR fair} policy (in nanoseconds).
+         * </p>
+         */
+        private long fVirtualTime;
+
+        /**
+         * <p>
+         * Determines whether the client has nothing waiting.
+         * </p>
+         * 
+         * @return True if the client has nothing waiting, false otherwise.
+         */
+        private boolean isIdle()
+        {
+            return (fDiscrete.size() == 0 && !fMotion.isPending());
+        }
+
+        /**
+         * <p>
+         * Determines whether the client's events are held back because the pause of a gesture has not ended yet.
+         * </p>
+         * 
+         * @param now The current time (in nanoseconds).
+         * 
+         * @return True if the client's events are held back, false otherwise.
+         */
+        private boolean isPaused(final long now)
+        {
+            if (fPaused && now - fResumeTime >= 0)
+            {
+                fPaused = false;
+            }
+
+            return (fPaused);
+        }
+    }
+
+    /**
+     * <p>
+     * Injects the queued commands until interrupted.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class Injection implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            fLogger.debug("Input injection started.");
+
+            CommandBuffer batch = new CommandBuffer();
+            try
+            {
+                while (!Thread.currentThread().isInterrupted())
+                {
+                    int clientId = take(batch);
+                    if (batch.size() > 0)
+                    {
+                        inject(batch, clientId);
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            fLogger.debug("Input injection stopped.");
+        }
+    }
+
+    /**
+     * <p>
+     * The arbitration policy that serves only the client in control.
+     * </p>
+     */
+    public static final int POLICY_EXCLUSIVE = 3;
+
+    /**
+     * <p>
+     * The arbitration policy that serves the client that has used the least injection time first.
+     * </p>
+     */
+    public static final int POLICY_FAIR = 1;
+
+    /**
+     * <p>
+     * The arbitration policy that serves the client whose events have been waiting the longest first.
+     * </p>
+     */
+    public static final int POLICY_FIFO = 0;
+
+    /**
+     * <p>
+     * The arbitration policy that serves the client that submitted events most recently first.
+     * </p>
+     */
+    public static final int POLICY_MOST_RECENT = 2;
+
+    /**
+     * <p>
+     * The default age after which a client's motion is dropped rather than injected (in milliseconds).
+     * </p>
+     */
+    private static final int DEFAULT_DEADLINE = 200;
+
+    /**
+     * <p>
+     * The default time the client in control must be idle for before control is handed off to another client (in milliseconds).
+     * </p>
+     */
+    private static final int DEFAULT_HANDOFF_TIMEOUT = 2000;
+
+    /**
+     * <p>
+     * The names of the arbitration policies, indexed by their constants.
+     * </p>
+     */
+    private static final String[] POLICY_NAMES = new String[] {"fifo", "fair", "recent", "exclusive"};
+
+    /**
+     * <p>
+     * The time a client must be idle for before its queue is reused for another client (in milliseconds).
+     * </p>
+     */
+    private static final int QUEUE_EXPIRY = 60000;
+
+    /**
+     * <p>
+     * Retrieves the name of the given arbitration policy.
+     * </p>
+     * 
+     * @param policy The arbitration policy, one of the <code>POLICY_*</code> constants.
+     * 
+     * @return The name of the given arbitration policy.
+     */
+    public static String getPolicyName(final int policy)
+    {
+        if (policy < POLICY_FIFO || policy > POLICY_EXCLUSIVE)
+        {
+            throw new IllegalArgumentException("Unknown arbitration policy: " + policy);
+        }
+
+        return (POLICY_NAMES[policy]);
+    }
+
+    /**
+     * <p>
+     * Parses the name of an arbitration policy.
+     * </p>
+     * 
+     * @param name The name of the arbitration policy, one of "fifo", "fair", "recent" or "exclusive".
+     * 
+     * @return The arbitration policy, one of the <code>POLICY_*</code> constants.
+     */
+    public static int parsePolicy(final String name)
+    {
+        for (int policy = 0; policy < POLICY_NAMES.length; policy++)
+        {
+            if (POLICY_NAMES[policy].equalsIgnoreCase(name))
+            {
+                return (policy);
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown arbitration policy: " + name);
+    }
+
+    /**
+     * <p>
+     * Determines whether the batch last taken ended at the pause of a gesture.
+     * </p>
+     */
+    private boolean fBatchPaused;
+
+    /**
+     * <p>
+     * The time at which the oldest command of the batch last taken was queued (in nanoseconds).
+     * </p>
+     */
+    private long fBatchQueuedTime;
+
+    /**
+     * <p>
+     * Executes the commands.
+     * </p>
+     */
+    private CommandExecuter fCommandExecuter;
+
+    /**
+     * <p>
+     * Determines whether a client is in control, for the {@link #POLICY_EXCLUSIVE exclusive} policy.
+     * </p>
+     */
+    private boolean fControlled;
+
+    /**
+     * <p>
+     * The identifier of the client in control, for the {@link #POLICY_EXCLUSIVE exclusive} policy.
+     * </p>
+     */
+    private int fController;
+
+    /**
+     * <p>
+     * The age after which a client's motion is dropped rather than injected (in nanoseconds), or 0 if motion is never dropped.
+     * </p>
+     */
+    private long fDeadline;
+
+    /**
+     * <p>
+     * The number of events that were dropped because the client that sent them was not in control.
+     * </p>
+     */
+    private long fDeniedCount;
+
+    /**
+     * <p>
+     * The number of continuous events that were dropped because they were older than the deadline when they were dequeued.
+     * </p>
+     */
+    private long fExpiredCount;
+
+    /**
+     * <p>
+     * The time the client in control must be idle for before control is handed off to another client (in nanoseconds).
+     * </p>
+     */
+    private long fHandoffTimeout;
+
+    /**
+     * <p>
+     * The time from the queueing of the oldest command of each batch to the end of its injection.
+     * </p>
+     */
+    private LatencyHistogram fInjectionLatencies;
+
+    /**
+     * <p>
+     * The thread on which the {@link Injection} is running.
+     * </p>
+     */
+    private Thread fInjectionThread;
+
+    /**
+     * <p>
+     * Logs messages associated with this class.
+     * </p>
+     */
+    private Logger fLogger;
+
+    /**
+     * <p>
+     * The number of continuous events that were coalesced with another event of the same client while waiting.
+     * </p>
+     */
+    private long fMergedCount;
+
+    /**
+     * <p>
+     * The arbitration policy.
+     * </p>
+     */
+    private int fPolicy;
+
+    /**
+     * <p>
+     * The events waiting for each client.
+     * </p>
+     */
+    private List<ClientQueue> fQueues;
+
+    /**
+     * <p>
+     * The commands of a motion being moved into a discrete lane.
+     * </p>
+     */
+    private CommandBuffer fReleased;
+
+    /**
+     * <p>
+     * The sequence number of the next event submitted.
+     * </p>
+     */
+    private long fSequence;
+
+    /**
+     * <p>
+     * A spare discrete lane, swapped with the lane of a client whose batch ends at the pause of a gesture to keep the rest of its events.
+     * </p>
+     */
+    private CommandBuffer fSpareLane;
+
+    /**
+     * <p>
+     * The total injection time used by all of the clients (in nanoseconds).
+     * </p>
+     */
+    private long fTotalInjectionTime;
+
+    /**
+     * <p>
+     * The virtual time of the client served most recently, clients that have been idle start from here under the {@link #POLICY_FAIR fair}
+     * policy.
+     * </p>
+     */
+    private long fVirtualClock;
+
+    /**
+     * <p>
+     * Creates an instance of <code>InputScheduler</code>.
+     * </p>
+     * 
+     * @param commandExecuter Executes the commands.
+     */
+    public InputScheduler(final CommandExecuter commandExecuter)
+    {
+        fCommandExecuter = commandExecuter;
+
+        fBatchPaused = false;
+        fBatchQueuedTime = 0;
+        fControlled = false;
+        fController = 0;
+        fDeadline = DEFAULT_DEADLINE * 1000000L;
+        fDeniedCount = 0;
+        fExpiredCount = 0;
+        fHandoffTimeout = DEFAULT_HANDOFF_TIMEOUT * 1000000L;
+        fInjectionLatencies = new LatencyHistogram();
+        fInjectionThread = null;
+        fLogger = Logger.getLogger(getClass());
+        fMergedCount = 0;
+        fPolicy = POLICY_FAIR;
+        fQueues = new ArrayList<ClientQueue>();
+        fReleased = new CommandBuffer();
+        fSequence = 0;
+        fSpareLane = new CommandBuffer();
+        fTotalInjectionTime = 0;
+        fVirtualClock = 0;
+    }
+
+    /**
+     * <p>
+     * Adds the injection time used by a batch of commands to the client that sent them.
+     * </p>
+     * 
+     * @param clientId The identifier of the client.
+     * @param elapsed The injection time used (in nanoseconds).
+     */
+    private synchronized void account(final int clientId, final long elapsed)
+    {
+        ClientQueue queue = findQueue(clientId, false);
+        if (queue != null)
+        {
+            queue.fInjectionTime += elapsed;
+            queue.fVirtualTime += elapsed;
+        }
+        fTotalInjectionTime += elapsed;
+    }
+
+    /**
+     * <p>
+     * Stops the injection thread and then injects whatever is still waiting on the calling thread (waiting out the pauses of gestures).
+     * </p>
+     * 
+     * @throws InterruptedException Thrown if the calling thread is interrupted while waiting for the injection thread to stop.
+     */
+    public void dispose() throws InterruptedException
+    {
+        if (fInjectionThread != null && fInjectionThread.isAlive())
+        {
+            fInjectionThread.interrupt();
+            fInjectionThread.join();
+        }
+
+        CommandBuffer batch = new CommandBuffer();
+        while (isWaiting())
+        {
+            int clientId = take(batch);
+            if (batch.size() > 0)
+            {
+                inject(batch, clientId);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Moves a client's motion to the end of its discrete lane.
+     * </p>
+     * 
+     * @param queue The queue of the client.
+     */
+    private void enqueueMotion(final ClientQueue queue)
+    {
+        fReleased.clear();
+        queue.fMotion.release(fReleased);
+        queue.fMotionEventCount = 0;
+
+        if (queue.fDiscrete.size() == 0)
+        {
+            queue.fDiscreteQueuedTime = queue.fMotionQueuedTime;
+            queue.fDiscreteSequence = queue.fMotionSequence;
+        }
+        queue.fDiscrete.addAll(fReleased);
+    }
+
+    /**
+     * <p>
+     * Retrieves the queue of the given client.
+     * </p>
+     * 
+     * @param clientId The identifier of the client.
+     * @param create Determines whether a queue is assigned to the client if it does not have one.
+     * 
+     * @return The queue of the given client, or null if it does not have one and one was not to be assigned.
+     */
+    private ClientQueue findQueue(final int clientId, final boolean create)
+    {
+        long now = System.nanoTime();
+        ClientQueue expired = null;
+        for (int index = 0; index < fQueues.size(); index++)
+        {
+            ClientQueue queue = fQueues.get(index);
+            if (queue.fClientId == clientId)
+            {
+                return (queue);
+            }
+            if (expired == null && queue.isIdle() && now - queue.fLastActiveTime > QUEUE_EXPIRY * 1000000L)
+            {
+                expired = queue;
+            }
+        }
+
+        if (!create)
+        {
+            return (null);
+        }
+
+        // Reuse the queue of a client that has gone away before assigning a new one.
+        ClientQueue queue = expired;
+        if (queue == null)
+        {
+            queue = new ClientQueue();
+            queue.fDiscrete = new CommandBuffer();
+            queue.fMotion = new PendingMotion();
+            fQueues.add(queue);
+        }
+        queue.fClientId = clientId;
+        queue.fDiscrete.clear();
+        queue.fInjectionTime = 0;
+        queue.fLastActiveTime = now;
+        queue.fMotion.clear();
+        queue.fMotionEventCount = 0;
+        queue.fPaused = false;
+        queue.fVirtualTime = fVirtualClock;
+
+        return (queue);
+    }
+
+    /**
+     * <p>
+     * Retrieves the identifier of the client in control, for the {@link #POLICY_EXCLUSIVE exclusive} policy.
+     * </p>
+     * 
+     * @return The identifier of the client in control, or 0 if no client has taken control yet.
+     */
+    public synchronized int getController()
+    {
+        return (fController);
+    }
+
+    /**
+     * <p>
+     * Retrieves the time at which the client in control last submitted events.
+     * </p>
+     * 
+     * @return The time at which the client in control last submitted events (in nanoseconds).
+     */
+    private long getControllerActiveTime()
+    {
+        ClientQueue queue = findQueue(fController, false);
+        if (queue == null)
+        {
+            return (Long.MIN_VALUE / 2);
+        }
+
+        return (queue.fLastActiveTime);
+    }
+
+    /**
+     * <p>
+     * Retrieves the age after which a client's motion is dropped rather than injected. The default is 200.
+     * </p>
+     * 
+     * @return The age after which a client's motion is dropped rather than injected (in milliseconds), or 0 if motion is never dropped.
+     */
+    public synchronized int getDeadline()
+    {
+        return ((int) (fDeadline / 1000000L));
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of events that were dropped because the client that sent them was not in control.
+     * </p>
+     * 
+     * @return The number of events that were dropped because the client that sent them was not in control.
+     */
+    public synchronized long getDeniedCount()
+    {
+        return (fDeniedCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of continuous events that were dropped because they were older than the deadline when they were dequeued.
+     * </p>
+     * 
+     * @return The number of continuous events that were dropped because they were older than the deadline.
+     */
+    public synchronized long getExpiredCount()
+    {
+        return (fExpiredCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the time the client in control must be idle for before control is handed off to another client. The default is 2000.
+     * </p>
+     * 
+     * @return The time the client in control must be idle for before control is handed off to another client (in milliseconds).
+     */
+    public synchronized int getHandoffTimeout()
+    {
+        return ((int) (fHandoffTimeout / 1000000L));
+    }
+
+    /**
+     * <p>
+     * Retrieves the time from the queueing of the oldest command of each batch injected to the end of its injection. This is the time the
+     * commands spent waiting for the other clients and the time taken to inject them, not the time they took to reach the server.
+     * </p>
+     * 
+     * @return The time from the queueing of the oldest command of each batch injected to the end of its injection.
+     */
+    public LatencyHistogram getInjectionLatencies()
+    {
+        return (fInjectionLatencies);
+    }
+
+    /**
+     * <p>
+     * Retrieves the share of the total injection time that was used by the given client.
+     * </p>
+     * 
+     * @param clientId The identifier of the client.
+     * 
+     * @return The share of the total injection time that was used by the given client, between 0 and 1.
+     */
+    public synchronized double getInjectionShare(final int clientId)
+    {
+        ClientQueue queue = findQueue(clientId, false);
+        if (queue == null || fTotalInjectionTime == 0)
+        {
+            return (0);
+        }
+
+        return ((double) queue.fInjectionTime / fTotalInjectionTime);
+    }
+
+    /**
+     * <p>
+     * Retrieves the injection time used by the given client.
+     * </p>
+     * 
+     * @param clientId The identifier of the client.
+     * 
+     * @return The injection time used by the given client (in nanoseconds).
+     */
+    public synchronized long getInjectionTime(final int clientId)
+    {
+        ClientQueue queue = findQueue(clientId, false);
+        if (queue == null)
+        {
+            return (0);
+        }
+
+        return (queue.fInjectionTime);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of continuous events that were coalesced with another event of the same client while waiting.
+     * </p>
+     * 
+     * @return The number of continuous events that were coalesced with another event of the same client while waiting.
+     */
+    public synchronized long getMergedCount()
+    {
+        return (fMergedCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the arbitration policy. The default is {@link #POLICY_FAIR}.
+     * </p>
+     * 
+     * @return The arbitration policy.
+     */
+    public synchronized int getPolicy()
+    {
+        return (fPolicy);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of discrete events waiting.
+     * </p>
+     * 
+     * @return The number of discrete events waiting.
+     */
+    public synchronized int getQueuedCount()
+    {
+        int count = 0;
+        for (int index = 0; index < fQueues.size(); index++)
+        {
+            count += fQueues.get(index).fDiscrete.size();
+        }
+
+        return (count);
+    }
+
+    /**
+     * <p>
+     * Retrieves the time until a client that has something waiting can be served.
+     * </p>
+     * 
+     * @param now The current time (in nanoseconds).
+     * 
+     * @return 0 if a client that has something waiting can be served now, the time until the pause of a gesture holding back a client that has
+     * something waiting ends (in nanoseconds) or -1 if nothing is waiting.
+     */
+    private long getWaitTime(final long now)
+    {
+        long wait = -1;
+        for (int index = 0; index < fQueues.size(); index++)
+        {
+            ClientQueue queue = fQueues.get(index);
+            if (!queue.isIdle())
+            {
+                if (!queue.isPaused(now))
+                {
+                    return (0);
+                }
+                if (wait < 0 || queue.fResumeTime - now < wait)
+                {
+                    wait = queue.fResumeTime - now;
+                }
+            }
+        }
+
+        return (wait);
+    }
+
+    /**
+     * <p>
+     * Injects a batch of commands and measures the injection time used, logging (rather than propagating) any failure so that the injection
+     * thread keeps running.
+     * </p>
+     * 
+     * @param batch The commands to inject.
+     * @param clientId The identifier of the client that sent the commands.
+     */
+    private void inject(final CommandBuffer batch, final int clientId)
+    {
+        long start = System.nanoTime();
+        StageProfiler.getInstance().queued(clientId, batch.size(), start - fBatchQueuedTime);
+        TraceBuffer.getInstance().record(clientId, TraceBuffer.QUEUE, 0, batch.size(), (int) ((start - fBatchQueuedTime) / 1000));
+        try
+        {
+            fCommandExecuter.executeCommands(batch, clientId);
+        }
+        catch (RuntimeException e)
+        {
+            fLogger.error("Failed to inject the commands '" + batch + "'", e);
+        }
+
+        long end = System.nanoTime();
+        account(clientId, end - start);
+        fInjectionLatencies.record(end - fBatchQueuedTime);
+
+        if (fBatchPaused)
+        {
+            pause(clientId, end + fCommandExecuter.getGestureDelay() * 1000000L);
+        }
+    }
+
+    /**
+     * <p>
+     * Determines whether the command with the given code is a release.
+     * </p>
+     * 
+     * @param opcode The code of the command.
+     * 
+     * @return True if the command with the given code is a release, false otherwise.
+     */
+    private boolean isRelease(final int opcode)
+    {
+        return (opcode == Opcode.KEY_RELEASE || opcode == Opcode.MOUSE_RELEASE);
+    }
+
+    /**
+     * <p>
+     * Determines whether anything is waiting to be injected.
+     * </p>
+     * 
+     * @return True if anything is waiting to be injected, false otherwise.
+     */
+    private synchronized boolean isWaiting()
+    {
+        for (int index = 0; index < fQueues.size(); index++)
+        {
+            if (!fQueues.get(index).isIdle())
+            {
+                return (true);
+            }
+        }
+
+        return (false);
+    }
+
+    /**
+     * <p>
+     * Holds back the events of a client until the pause of a gesture ends.
+     * </p>
+     * 
+     * @param clientId The identifier of the client.
+     * @param resumeTime The time at which the pause ends (in nanoseconds).
+     */
+    private synchronized void pause(final int clientId, final long resumeTime)
+    {
+        ClientQueue queue = findQueue(clientId, false);
+        if (queue != null)
+        {
+            queue.fPaused = true;
+            queue.fResumeTime = resumeTime;
+        }
+    }
+
+    /**
+     * <p>
+     * Takes the next batch of commands to inject: the discrete events of the client chosen by the arbitration policy (up to the first pause of a
+     * gesture) or, if no client has discrete events waiting, the motion of the client chosen by the arbitration policy. Motions older than the
+     * deadline are dropped along the way. The clients whose events are held back by the pause of a gesture are passed over.
+     * </p>
+     * 
+     * @param batch The buffer to put the commands in, it is cleared first and left empty if nothing is waiting.
+     * 
+     * @return The identifier of the client that sent the commands.
+     */
+    private synchronized int poll(final CommandBuffer batch)
+    {
+        batch.clear();
+        fBatchPaused = false;
+
+        long now = System.nanoTime();
+        ClientQueue queue = select(true, now);
+        if (queue != null)
+        {
+            CommandBuffer discrete = queue.fDiscrete;
+            int index = 0;
+            for (; index < discrete.size(); index++)
+            {
+                // A pause with nothing before it to wait after (e.g. the press was redundant) is skipped.
+                if (discrete.getOpcode(index) != Opcode.PAUSE)
+                {
+                    batch.add(discrete.getOpcode(index), discrete.getArgument0(index), discrete.getArgument1(index));
+                }
+                else if (batch.size() > 0)
+                {
+                    break;
+                }
+            }
+
+            if (index < discrete.size())
+            {
+                // Keep the events after the pause, they are held back until it ends (see inject(CommandBuffer, int)).
+                for (index++; index < discrete.size(); index++)
+                {
+                    fSpareLane.add(discrete.getOpcode(index), discrete.getArgument0(index), discrete.getArgument1(index));
+                }
+                queue.fDiscrete = fSpareLane;
+                fSpareLane = discrete;
+                fBatchPaused = true;
+            }
+            discrete.clear();
+            fBatchQueuedTime = queue.fDiscreteQueuedTime;
+            fVirtualClock = queue.fVirtualTime;
+
+            return (queue.fClientId);
+        }
+
+        queue = select(false, now);
+        while (queue != null)
+        {
+            if (fDeadline > 0 && now - queue.fMotionTime > fDeadline)
+            {
+                TraceBuffer.getInstance().record(queue.fClientId, TraceBuffer.DROP, 0, queue.fMotionEventCount,
+                        (int) ((now - queue.fMotionTime) / 1000));
+                fExpiredCount += queue.fMotionEventCount;
+                queue.fMotion.clear();
+                queue.fMotionEventCount = 0;
+            }
+            else
+            {
+                queue.fMotion.release(batch);
+                queue.fMotionEventCount = 0;
+                fBatchQueuedTime = queue.fMotionQueuedTime;
+                fVirtualClock = queue.fVirtualTime;
+
+                return (queue.fClientId);
+            }
+
+            queue = select(false, now);
+        }
+
+        return (0);
+    }
+
+    /**
+     * <p>
+     * Determines whether the client with the given queue is to be served before the client with the other given queue.
+     * </p>
+     * 
+     * @param queue The queue.
+     * @param other The other queue.
+     * @param discrete Determines whether the discrete lanes are being served rather than the continuous lanes.
+     * 
+     * @return True if the client with the given queue is to be served first, false otherwise.
+     */
+    private boolean precedes(final ClientQueue queue, final ClientQueue other, final boolean discrete)
+    {
+        if (fPolicy == POLICY_FAIR && queue.fVirtualTime != other.fVirtualTime)
+        {
+            return (queue.fVirtualTime < other.fVirtualTime);
+        }
+        if (fPolicy == POLICY_MOST_RECENT)
+        {
+            return (queue.fLastSequence > other.fLastSequence);
+        }
+
+        if (discrete)
+        {
+            return (queue.fDiscreteSequence < other.fDiscreteSequence);
+        }
+
+        return (queue.fMotionSequence < other.fMotionSequence);
+    }
+
+    /**
+     * <p>
+     * Chooses the client to serve next, as per the arbitration policy.
+     * </p>
+     * 
+     * @param discrete Determines whether to choose from the clients with discrete events waiting rather than those with motion waiting.
+     * @param now The current time (in nanoseconds).
+     * 
+     * @return The queue of the client to serve next, or null if no client that is not held back by a pause has anything waiting in the given
+     * lane.
+     */
+    private ClientQueue select(final boolean discrete, final long now)
+    {
+        ClientQueue selected = null;
+        for (int index = 0; index < fQueues.size(); index++)
+        {
+            ClientQueue queue = fQueues.get(index);
+            boolean waiting = discrete ? queue.fDiscrete.size() > 0 : queue.fMotion.isPending();
+            if (waiting && !queue.isPaused(now) && (selected == null || precedes(queue, selected, discrete)))
+            {
+                selected = queue;
+            }
+        }
+
+        return (selected);
+    }
+
+    /**
+     * <p>
+     * Hands control to the given client, for the {@link #POLICY_EXCLUSIVE exclusive} policy.
+     * </p>
+     * 
+     * @param clientId The identifier of the client to hand control to.
+     */
+    public synchronized void setController(final int clientId)
+    {
+        fControlled = true;
+        fController = clientId;
+
+        ClientQueue queue = findQueue(clientId, true);
+        queue.fLastActiveTime = System.nanoTime();
+    }
+
+    /**
+     * <p>
+     * Sets the age after which a client's motion is dropped rather than injected. The default is 200.
+     * </p>
+     * 
+     * @param deadline The age after which a client's motion is dropped rather than injected (in milliseconds), or 0 if motion is never dropped.
+     */
+    public synchronized void setDeadline(final int deadline)
+    {
+        fDeadline = deadline * 1000000L;
+    }
+
+    /**
+     * <p>
+     * Sets the time the client in control must be idle for before control is handed off to another client. The default is 2000.
+     * </p>
+     * 
+     * @param handoffTimeout The time the client in control must be idle for before control is handed off to another client (in milliseconds).
+     */
+    public synchronized void setHandoffTimeout(final int handoffTimeout)
+    {
+        fHandoffTimeout = handoffTimeout * 1000000L;
+    }
+
+    /**
+     * <p>
+     * Sets the arbitration policy. The default is {@link #POLICY_FAIR}.
+     * </p>
+     * 
+     * @param policy The arbitration policy, one of the <code>POLICY_*</code> constants.
+     */
+    public synchronized void setPolicy(final int policy)
+    {
+        if (policy < POLICY_FIFO || policy > POLICY_EXCLUSIVE)
+        {
+            throw new IllegalArgumentException("Unknown arbitration policy: " + policy);
+        }
+
+        fPolicy = policy;
+    }
+
+    /**
+     * <p>
+     * Starts injecting the queued commands in a separate thread.
+     * </p>
+     */
+    public void start()
+    {
+        if (fInjectionThread == null || !fInjectionThread.isAlive())
+        {
+            fInjectionThread = new Thread(new Injection());
+            fInjectionThread.setDaemon(true);
+            fInjectionThread.start();
+        }
+    }
+
+    /**
+     * <p>
+     * Queues the given commands for injection, as though they were sent just now. This does not block on the injection of the commands of other
+     * clients.
+     * </p>
+     * 
+     * @param commands The commands to queue.
+     * @param clientId The identifier of the client that sent the commands.
+     */
+    public void submit(final CommandBuffer commands, final int clientId)
+    {
+        submit(commands, clientId, System.nanoTime());
+    }
+
+    /**
+     * <p>
+     * Queues the given commands for injection. This does not block on the injection of the commands of other clients.
+     * </p>
+     * 
+     * @param commands The commands to queue.
+     * @param clientId The identifier of the client that sent the commands.
+     * @param sentTime The time at which the client sent the commands (in nanoseconds, as per {@link java.lang.System#nanoTime()
+     * System.nanoTime()}).
+     */
+    public synchronized void submit(final CommandBuffer commands, final int clientId, final long sentTime)
+    {
+        long now = System.nanoTime();
+        ClientQueue queue = findQueue(clientId, true);
+
+        if (fPolicy == POLICY_EXCLUSIVE && (!fControlled || fController != clientId && now - getControllerActiveTime() > fHandoffTimeout))
+        {
+            if (fLogger.isDebugEnabled())
+            {
+                fLogger.debug("Handing control to client " + clientId);
+            }
+            fControlled = true;
+            fController = clientId;
+        }
+
+        // A client that has been idle starts level with the clients already being served.
+        if (queue.isIdle() && queue.fVirtualTime < fVirtualClock)
+        {
+            queue.fVirtualTime = fVirtualClock;
+        }
+        queue.fLastActiveTime = now;
+
+        for (int index = 0; index < commands.size(); index++)
+        {
+            int opcode = commands.getOpcode(index);
+            if (fPolicy == POLICY_EXCLUSIVE && clientId != fController && !isRelease(opcode))
+            {
+                fDeniedCount++;
+                continue;
+            }
+
+            long sequence = fSequence++;
+            queue.fLastSequence = sequence;
+            if (PendingMotion.isPointer(opcode))
+            {
+                if (queue.fMotion.isPending())
+                {
+                    fMergedCount++;
+                }
+                else
+                {
+                    queue.fMotionQueuedTime = now;
+                    queue.fMotionSequence = sequence;
+                }
+                if (!queue.fMotion.isPending() || sentTime - queue.fMotionTime > 0)
+                {
+                    queue.fMotionTime = sentTime;
+                }
+                queue.fMotionEventCount++;
+                queue.fMotion.add(opcode, commands.getArgument0(index), commands.getArgument1(index));
+            }
+            else
+            {
+                // The client's motion before this event must not be overtaken by it.
+                if (queue.fMotion.isPending())
+                {
+                    enqueueMotion(queue);
+                }
+                if (queue.fDiscrete.size() == 0)
+                {
+                    queue.fDiscreteQueuedTime = now;
+                    queue.fDiscreteSequence = sequence;
+                }
+                queue.fDiscrete.add(opcode, commands.getArgument0(index), commands.getArgument1(index));
+            }
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * <p>
+     * Waits for something to be queued (and for the pause of a gesture to end if that is all that is holding it back) and then takes the next
+     * batch of commands to inject.
+     * </p>
+     * 
+     * @param batch The buffer to put the commands in, it is cleared first.
+     * 
+     * @return The identifier of the client that sent the commands.
+     * 
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting.
+     */
+    private synchronized int take(final CommandBuffer batch) throws InterruptedException
+    {
+        long wait = getWaitTime(System.nanoTime());
+        while (wait != 0)
+        {
+            if (wait < 0)
+            {
+                wait();
+            }
+            else
+            {
+                wait(wait / 1000000L, (int) (wait % 1000000L));
+            }
+            wait = getWaitTime(System.nanoTime());
+        }
+
+        return (poll(batch));
+    }
+}
@@ -0,0 +1,194 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.util.BitSet;
+
+/**
+ * <p>
+ * Tracks the keys and mouse buttons a single client holds down, so that redundant presses and releases (e.g. a retried press that arrives twice)
+ * are dropped before they are executed and so that everything the client holds can be released when it goes away. Without this a client that
+ * disconnects in the middle of a press leaves the key or button stuck down on the desktop.
+ * </p>
+ * 
+ * <p>
+ * An <code>InputTracker</code> is not thread safe, it is expected to be guarded by the {@link com.se.pcremote.server.ClientSession ClientSession}
+ * that owns it.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class InputTracker
+{
+    /**
+     * <p>
+     * The highest key code that is tracked, presses and releases of keys with higher (or negative) codes are always accepted.
+     * </p>
+     */
+    private static final int MAX_KEY_CODE = 0xFFFF;
+
+    /**
+     * <p>
+     * The mouse buttons held down, bit <code>n</code> is set if button <code>n</code> is held down.
+     * </p>
+     */
+    private int fButtons;
+
+    /**
+     * <p>
+     * The keys held down, indexed by key code.
+     * </p>
+     */
+    private BitSet fKeys;
+
+    /**
+     * <p>
+     * The number of presses and releases that were dropped because they were redundant.
+     * </p>
+     */
+    private long fRedundantCount;
+
+    /**
+     * <p>
+     * Creates an instance of <code>InputTracker</code>.
+     * </p>
+     */
+    public InputTracker()
+    {
+        fButtons = 0;
+        fKeys = new BitSet();
+        fRedundantCount = 0;
+    }
+
+    /**
+     * <p>
+     * Determines whether the given command should be executed, updating the state of the keys and mouse buttons held down accordingly. Presses of
+     * keys or buttons that are already held down and releases of keys or buttons that are not held down are redundant, any other command is
+     * accepted.
+     * </p>
+     * 
+     * @param opcode The code of the command.
+     * @param argument0 The first argument of the command.
+     * 
+     * @return True if the command should be executed, false if it is redundant.
+     */
+    public boolean accept(final int opcode, final int argument0)
+    {
+        boolean accepted = true;
+
+        if ((opcode == Opcode.KEY_PRESS || opcode == Opcode.KEY_RELEASE) && argument0 >= 0 && argument0 <= MAX_KEY_CODE)
+        {
+            boolean press = opcode == Opcode.KEY_PRESS;
+            accepted = fKeys.get(argument0) != press;
+            fKeys.set(argument0, press);
+        }
+        else if ((opcode == Opcode.MOUSE_PRESS || opcode == Opcode.MOUSE_RELEASE) && argument0 >= 0 && argument0 < Integer.SIZE)
+        {
+            boolean press = opcode == Opcode.MOUSE_PRESS;
+            int bit = 1 << argument0;
+            accepted = ((fButtons & bit) != 0) != press;
+            if (press)
+            {
+                fButtons |= bit;
+            }
+            else
+            {
+                fButtons &= ~bit;
+            }
+        }
+
+        if (!accepted)
+        {
+            fRedundantCount++;
+        }
+
+        return (accepted);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of presses and releases that were dropped because they were redundant.
+     * </p>
+     * 
+     * @return The number of presses and releases that were dropped because they were redundant.
+     */
+    public long getRedundantCount()
+    {
+        return (fRedundantCount);
+    }
+
+    /**
+     * <p>
+     * Determines whether anything is held down.
+     * </p>
+     * 
+     * @return True if any key or mouse button is held down, false otherwise.
+     */
+    public boolean isAnythingPressed()
+    {
+        return (fButtons != 0 || !fKeys.isEmpty());
+    }
+
+    /**
+     * <p>
+     * Determines whether the given mouse button is held down.
+     * </p>
+     * 
+     * @param button The mouse button.
+     * 
+     * @return True if the given mouse button is held down, false otherwise.
+     */
+    public boolean isButtonPressed(final int button)
+    {
+        return (button >= 0 && button < Integer.SIZE && (fButtons & (1 << button)) != 0);
+    }
+
+    /**
+     * <p>
+     * Determines whether the given key is held down.
+     * </p>
+     * 
+     * @param key The key code.
+     * 
+     * @return True if the given key is held down, false otherwise.
+     */
+    public boolean isKeyPressed(final int key)
+    {
+        return (key >= 0 && fKeys.get(key));
+    }
+
+    /**
+     * <p>
+     * Adds the commands that release everything held down to the given buffer, mouse buttons first. Afterwards nothing is considered to be held
+     * down.
+     * </p>
+     * 
+     * @param commands The buffer to add the commands to.
+     */
+    public void releaseAll(final CommandBuffer commands)
+    {
+        for (int button = 0; fButtons != 0; button++)
+        {
+            if ((fButtons & (1 << button)) != 0)
+            {
+                commands.add(Opcode.MOUSE_RELEASE, button, 0);
+                fButtons &= ~(1 << button);
+            }
+        }
+
+        for (int key = fKeys.nextSetBit(0); key >= 0; key = fKeys.nextSetBit(key + 1))
+        {
+            commands.add(Opcode.KEY_RELEASE, key, 0);
+        }
+        fKeys.clear();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.awt.event.KeyEvent;
+
+/**
+ * <p>
+ * The keystrokes that type each character, looked up by the {@link com.se.pcremote.server.CommandExecuter CommandExecuter} when it executes a
+ * <code>typeCharacter(codePoint);</code> command. The table is built once and then indexed directly by character so that typing a long text costs
+ * nothing more than the keystrokes themselves.
+ * </p>
+ * 
+ * <p>
+ * The key codes given to a {@link java.awt.Robot Robot} identify physical keys and AWT offers no way to ask which character the active keyboard
+ * layout produces for each of them, so the table is built for the US layout. Characters that cannot be typed with that layout (including all
+ * non-ASCII characters) have no keystroke.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class KeystrokeTable
+{
+    /**
+     * <p>
+     * The number of characters in the table, all of ASCII.
+     * </p>
+     */
+    private static final int SIZE = 128;
+
+    /**
+     * <p>
+     * The code of the key that types each character, or {@link java.awt.event.KeyEvent#VK_UNDEFINED VK_UNDEFINED} if it cannot be typed, indexed
+     * by character.
+     * </p>
+     */
+    private int[] fKeyCodes;
+
+    /**
+     * <p>
+     * Determines whether the Shift key must be held down to type each character, indexed by character.
+     * </p>
+     */
+    private boolean[] fShiftRequired;
+
+    /**
+     * <p>
+     * Creates an instance of <code>KeystrokeTable</code>.
+     * </p>
+     */
+    public KeystrokeTable()
+    {
+        fKeyCodes = new int[SIZE];
+        fShiftRequired = new boolean[SIZE];
+
+        for (int index = 0; index < 26; index++)
+        {
+            put((char) ('a' + index), KeyEvent.VK_A + index, false);
+            put((char) ('A' + index), KeyEvent.VK_A + index, true);
+        }
+
+        put(' ', KeyEvent.VK_SPACE, false);
+        put('\b', KeyEvent.VK_BACK_SPACE, false);
+        put('\n', KeyEvent.VK_ENTER, false);
+        put('\t', KeyEvent.VK_TAB, false);
+
+        putPair('`', '~', KeyEvent.VK_BACK_QUOTE);
+        putPair('1', '!', KeyEvent.VK_1);
+        putPair('2', '@', KeyEvent.VK_2);
+        putPair('3', '#', KeyEvent.VK_3);
+        putPair('4', '$', KeyEvent.VK_4);
+        putPair('5', '%', KeyEvent.VK_5);
+        putPair('6', '^', KeyEvent.VK_6);
+        putPair('7', '&', KeyEvent.VK_7);
+        putPair('8', '*', KeyEvent.VK_8);
+        putPair('9', '(', KeyEvent.VK_9);
+        putPair('0', ')', KeyEvent.VK_0);
+        putPair('-', '_', KeyEvent.VK_MINUS);
+        putPair('=', '+', KeyEvent.VK_EQUALS);
+        putPair('[', '{', KeyEvent.VK_OPEN_BRACKET);
+        putPair(']', '}', KeyEvent.VK_CLOSE_BRACKET);
+        putPair('\\', '|', KeyEvent.VK_BACK_SLASH);
+        putPair(';', ':', KeyEvent.VK_SEMICOLON);
+        putPair('\'', '"', KeyEvent.VK_QUOTE);
+        putPair(',', '<', KeyEvent.VK_COMMA);
+        putPair('.', '>', KeyEvent.VK_PERIOD);
+        putPair('/', '?', KeyEvent.VK_SLASH);
+    }
+
+    /**
+     * <p>
+     * Retrieves the code of the key that types the given character.
+     * </p>
+     * 
+     * @param codePoint The character.
+     * 
+     * @return The code of the key that types the given character, or {@link java.awt.event.KeyEvent#VK_UNDEFINED VK_UNDEFINED} if it cannot be
+     * typed.
+     */
+    public int getKeyCode(final int codePoint)
+    {
+        if (codePoint < 0 || codePoint >= SIZE)
+        {
+            return (KeyEvent.VK_UNDEFINED);
+        }
+
+        return (fKeyCodes[codePoint]);
+    }
+
+    /**
+     * <p>
+     * Determines whether the Shift key must be held down to type the given character.
+     * </p>
+     * 
+     * @param codePoint The character.
+     * 
+     * @return True if the Shift key must be held down to type the given character, false otherwise.
+     */
+    public boolean isShiftRequired(final int codePoint)
+    {
+        return (codePoint >= 0 && codePoint < SIZE && fShiftRequired[codePoint]);
+    }
+
+    /**
+     * <p>
+     * Determines whether the given character can be typed.
+     * </p>
+     * 
+     * @param codePoint The character.
+     * 
+     * @return True if the given character can be typed, false otherwise.
+     */
+    public boolean isTypeable(final int codePoint)
+    {
+        return (getKeyCode(codePoint) != KeyEvent.VK_UNDEFINED);
+    }
+
+    /**
+     * <p>
+     * Adds the keystroke that types a character to the table.
+     * </p>
+     * 
+     * @param character The character.
+     * @param keyCode The code of the key that types the character.
+     * @param shiftRequired Determines whether the Shift key must be held down to type the character.
+     */
+    private void put(final char character, final int keyCode, final boolean shiftRequired)
+    {
+        fKeyCodes[character] = keyCode;
+        fShiftRequired[character] = shiftRequired;
+    }
+
+    /**
+     * <p>
+     * Adds the keystrokes that type the two characters on a key to the table.
+     * </p>
+     * 
+     * @param character The character typed by the key on its own.
+     * @param shiftedCharacter The character typed by the key while the Shift key is held down.
+     * @param keyCode The code of the key.
+     */
+    private void putPair(final char character, final char shiftedCharacter, final int keyCode)
+    {
+        put(character, keyCode, false);
+        put(shiftedCharacter, keyCode, true);
+    }
+}
@@ -0,0 +1,373 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+/**
+ * <p>
+ * A high dynamic range histogram of latencies (in nanoseconds). Latencies up to 127 nanoseconds are counted exactly, longer latencies are counted
+ * in buckets that are 1/64th to 1/128th of their value wide. Each power of two is split into 64 buckets, so the relative error of any percentile
+ * is below 1.6% whether it is a few microseconds or several seconds, in a fixed amount of memory.
+ * </p>
+ * 
+ * <p>
+ * Recording a latency takes a few shifts and an increment and never allocates memory. Latencies longer than the highest one the histogram
+ * tracks are counted as that highest latency. A <code>LatencyHistogram</code> is thread safe.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class LatencyHistogram
+{
+    /**
+     * <p>
+     * The default highest latency tracked (in nanoseconds), one minute.
+     * </p>
+     */
+    public static final long DEFAULT_HIGHEST_LATENCY = 60000000000L;
+
+    /**
+     * <p>
+     * The number of buckets each power of two is split into, as a power of two.
+     * </p>
+     */
+    private static final int SUB_BUCKET_BITS = 6;
+
+    /**
+     * <p>
+     * The number of buckets each power of two is split into.
+     * </p>
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * <p>
+     * Determines the highest latency counted in the bucket with the given index.
+     * </p>
+     * 
+     * @param index The index of the bucket.
+     * 
+     * @return The highest latency counted in the bucket with the given index (in nanoseconds).
+     */
+    private static long getHighestLatency(final int index)
+    {
+        if (index < SUB_BUCKET_COUNT * 2)
+        {
+            return (index);
+        }
+
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = index - (shift << SUB_BUCKET_BITS);
+
+        return (((subBucket + 1) << shift) - 1);
+    }
+
+    /**
+     * <p>
+     * Determines the index of the bucket the given latency is counted in.
+     * </p>
+     * 
+     * @param latency The latency (in nanoseconds), not negative.
+     * 
+     * @return The index of the bucket the given latency is counted in.
+     */
+    private static int getIndex(final long latency)
+    {
+        if (latency < SUB_BUCKET_COUNT * 2)
+        {
+            return ((int) latency);
+        }
+
+        // Shift the latency so that its highest bits are between SUB_BUCKET_COUNT and twice that.
+        int shift = 63 - Long.numberOfLeadingZeros(latency) - SUB_BUCKET_BITS;
+
+        return ((shift << SUB_BUCKET_BITS) + (int) (latency >>> shift));
+    }
+
+    /**
+     * <p>
+     * The number of latencies counted in each bucket.
+     * </p>
+     */
+    private long[] fCounts;
+
+    /**
+     * <p>
+     * The highest latency tracked (in nanoseconds).
+     * </p>
+     */
+    private long fHighestTrackable;
+
+    /**
+     * <p>
+     * The longest latency recorded (in nanoseconds).
+     * </p>
+     */
+    private long fMax;
+
+    /**
+     * <p>
+     * The shortest latency recorded (in nanoseconds).
+     * </p>
+     */
+    private long fMin;
+
+    /**
+     * <p>
+     * The sum of the latencies recorded (in nanoseconds).
+     * </p>
+     */
+    private long fSum;
+
+    /**
+     * <p>
+     * The number of latencies recorded.
+     * </p>
+     */
+    private long fTotalCount;
+
+    /**
+     * <p>
+     * Creates an instance of <code>LatencyHistogram</code> that tracks latencies of up to a minute.
+     * </p>
+     */
+    public LatencyHistogram()
+    {
+        this(DEFAULT_HIGHEST_LATENCY);
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>LatencyHistogram</code>.
+     * </p>
+     * 
+     * @param highestTrackable The highest latency tracked (in nanoseconds).
+     */
+    public LatencyHistogram(final long highestTrackable)
+    {
+        if (highestTrackable < 1)
+        {
+            throw new IllegalArgumentException("The highest latency tracked must be at least 1.");
+        }
+
+        fHighestTrackable = highestTrackable;
+
+        fCounts = new long[getIndex(highestTrackable) + 1];
+        reset();
+    }
+
+    /**
+     * <p>
+     * Adds the latencies recorded by the given histogram to this one. The given histogram must not be this one.
+     * </p>
+     * 
+     * @param histogram The histogram to add the latencies of.
+     */
+    public void add(final LatencyHistogram histogram)
+    {
+        long[] counts;
+        long max;
+        long min;
+        long sum;
+        long totalCount;
+        synchronized (histogram)
+        {
+            counts = histogram.fCounts.clone();
+            max = histogram.fMax;
+            min = histogram.fMin;
+            sum = histogram.fSum;
+            totalCount = histogram.fTotalCount;
+        }
+
+        synchronized (this)
+        {
+            for (int index = 0; index < counts.length; index++)
+            {
+                if (counts[index] != 0)
+                {
+                    fCounts[Math.min(index, fCounts.length - 1)] += counts[index];
+                }
+            }
+            fMax = Math.max(fMax, Math.min(max, fHighestTrackable));
+            fMin = Math.min(fMin, min);
+            fSum += sum;
+            fTotalCount += totalCount;
+        }
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of latencies recorded.
+     * </p>
+     * 
+     * @return The number of latencies recorded.
+     */
+    public synchronized long getCount()
+    {
+        return (fTotalCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of latencies recorded that are no longer than the given latency, to within the resolution of this histogram.
+     * </p>
+     * 
+     * @param latency The latency (in nanoseconds).
+     * 
+     * @return The number of latencies recorded that are no longer than the given latency.
+     */
+    public synchronized long getCountAtOrBelow(final long latency)
+    {
+        if (latency < 0)
+        {
+            return (0);
+        }
+
+        int last = getIndex(Math.min(latency, fHighestTrackable));
+        long count = 0;
+        for (int index = 0; index <= last; index++)
+        {
+            count += fCounts[index];
+        }
+
+        return (count);
+    }
+
+    /**
+     * <p>
+     * Retrieves the latency at the given percentile, that is the latency that the given percentage of the latencies recorded are no longer than.
+     * The latency is rounded up to the highest latency counted in the same bucket, but is never longer than the longest latency recorded.
+     * </p>
+     * 
+     * @param percentile The percentile, from 0 to 100.
+     * 
+     * @return The latency at the given percentile (in nanoseconds), or 0 if no latencies have been recorded.
+     */
+    public synchronized long getLatencyAtPercentile(final double percentile)
+    {
+        if (fTotalCount == 0)
+        {
+            return (0);
+        }
+
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * fTotalCount));
+        long count = 0;
+        for (int index = 0; index < fCounts.length; index++)
+        {
+            count += fCounts[index];
+            if (count >= target)
+            {
+                return (Math.min(getHighestLatency(index), fMax));
+            }
+        }
+
+        return (fMax);
+    }
+
+    /**
+     * <p>
+     * Retrieves the longest latency recorded.
+     * </p>
+     * 
+     * @return The longest latency recorded (in nanoseconds), or 0 if no latencies have been recorded.
+     */
+    public synchronized long getMax()
+    {
+        return (fMax);
+    }
+
+    /**
+     * <p>
+     * Retrieves the mean of the latencies recorded.
+     * </p>
+     * 
+     * @return The mean of the latencies recorded (in nanoseconds), or 0 if no latencies have been recorded.
+     */
+    public synchronized double getMean()
+    {
+        if (fTotalCount == 0)
+        {
+            return (0);
+        }
+
+        return ((double) fSum / fTotalCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the shortest latency recorded.
+     * </p>
+     * 
+     * @return The shortest latency recorded (in nanoseconds), or 0 if no latencies have been recorded.
+     */
+    public synchronized long getMin()
+    {
+        if (fTotalCount == 0)
+        {
+            return (0);
+        }
+
+        return (fMin);
+    }
+
+    /**
+     * <p>
+     * Retrieves the sum of the latencies recorded.
+     * </p>
+     * 
+     * @return The sum of the latencies recorded (in nanoseconds).
+     */
+    public synchronized long getSum()
+    {
+        return (fSum);
+    }
+
+    /**
+     * <p>
+     * Records a latency.
+     * </p>
+     * 
+     * @param latency The latency (in nanoseconds), negative latencies (e.g. from clocks that are not quite in step) are recorded as 0.
+     */
+    public synchronized void record(final long latency)
+    {
+        long value = Math.min(Math.max(latency, 0), fHighestTrackable);
+
+        fCounts[getIndex(value)]++;
+        if (value > fMax)
+        {
+            fMax = value;
+        }
+        if (value < fMin)
+        {
+            fMin = value;
+        }
+        fSum += value;
+        fTotalCount++;
+    }
+
+    /**
+     * <p>
+     * Forgets all of the latencies recorded.
+     * </p>
+     */
+    public synchronized void reset()
+    {
+        for (int index = 0; index < fCounts.length; index++)
+        {
+            fCounts[index] = 0;
+        }
+        fMax = 0;
+        fMin = Long.MAX_VALUE;
+        fSum = 0;
+        fTotalCount = 0;
+    }
+}
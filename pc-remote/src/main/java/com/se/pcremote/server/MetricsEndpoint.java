@@ -0,0 +1,403 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <p>
+ * Serves the live metrics of a {@link com.se.pcremote.server.PCRemoteServer PCRemoteServer} over HTTP in the Prometheus text exposition format,
+ * for monitoring systems that scrape HTTP rather than JMX. It serves the same counts as the {@link com.se.pcremote.server.ServerMonitor
+ * ServerMonitor}, the injection latencies as a summary (with quantiles) and the per-client statistics labelled with the clients' identifiers.
+ * </p>
+ * 
+ * <p>
+ * The metrics are rendered at most once per cache time (ideally the scrape interval) and the rendering is served as is to every scrape in
+ * between, so that scraping does not take the locks of the session table and input scheduler more often than that. Requests are handled on a
+ * single thread of their own, never on the threads that handle input.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class MetricsEndpoint
+{
+    /**
+     * <p>
+     * Serves the rendered metrics.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class MetricsHandler implements HttpHandler
+    {
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException
+        {
+            try
+            {
+                byte[] metrics = getRendering();
+
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, metrics.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(metrics);
+                body.close();
+            }
+            finally
+            {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * The default time a rendering of the metrics is served for before they are rendered again (in milliseconds).
+     * </p>
+     */
+    public static final int DEFAULT_CACHE_TIME = 15000;
+
+    /**
+     * <p>
+     * The path the metrics are served at.
+     * </p>
+     */
+    public static final String PATH = "/metrics";
+
+    /**
+     * <p>
+     * The content type of the Prometheus text exposition format.
+     * </p>
+     */
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * <p>
+     * The quantiles of the injection latencies that are served.
+     * </p>
+     */
+    private static final double[] QUANTILES = new double[] {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * <p>
+     * The address this <code>MetricsEndpoint</code> listens on.
+     * </p>
+     */
+    private InetSocketAddress fAddress;
+
+    /**
+     * <p>
+     * The time a rendering of the metrics is served for before they are rendered again (in nanoseconds).
+     * </p>
+     */
+    private long fCacheTime;
+
+    /**
+     * <p>
+     * The HTTP server that serves the metrics, or null if this <code>MetricsEndpoint</code> has not been started.
+     * </p>
+     */
+    private HttpServer fHttpServer;
+
+    /**
+     * <p>
+     * The latencies of the injection of the batches of commands.
+     * </p>
+     */
+    private LatencyHistogram fInjectionLatencies;
+
+    /**
+     * <p>
+     * Logs messages associated with this class.
+     * </p>
+     */
+    private Logger fLogger;
+
+    /**
+     * <p>
+     * The source of the metrics.
+     * </p>
+     */
+    private ServerMonitor fMonitor;
+
+    /**
+     * <p>
+     * The last rendering of the metrics, or null if they have not been rendered yet.
+     * </p>
+     */
+    private byte[] fRendering;
+
+    /**
+     * <p>
+     * The time at which the metrics were last rendered (in nanoseconds).
+     * </p>
+     */
+    private long fRenderTime;
+
+    /**
+     * <p>
+     * Creates an instance of <code>MetricsEndpoint</code>.
+     * </p>
+     * 
+     * @param address The address this <code>MetricsEndpoint</code> listens on.
+     * @param monitor The source of the metrics.
+     * @param injectionLatencies The latencies of the injection of the batches of commands.
+     */
+    public MetricsEndpoint(final InetSocketAddress address, final ServerMonitor monitor, final LatencyHistogram injectionLatencies)
+    {
+        fAddress = address;
+        fMonitor = monitor;
+        fInjectionLatencies = injectionLatencies;
+
+        fCacheTime = DEFAULT_CACHE_TIME * 1000000L;
+        fHttpServer = null;
+        fLogger = Logger.getLogger(getClass());
+        fRendering = null;
+        fRenderTime = 0;
+    }
+
+    /**
+     * <p>
+     * Retrieves the address this <code>MetricsEndpoint</code> listens on. Once it has been started this is the address it is bound to (e.g. with
+     * the port chosen by the system if port 0 was given).
+     * </p>
+     * 
+     * @return The address this <code>MetricsEndpoint</code> listens on.
+     */
+    public InetSocketAddress getAddress()
+    {
+        if (fHttpServer != null)
+        {
+            return (fHttpServer.getAddress());
+        }
+
+        return (fAddress);
+    }
+
+    /**
+     * <p>
+     * Retrieves the time a rendering of the metrics is served for before they are rendered again. The default is 15000.
+     * </p>
+     * 
+     * @return The time a rendering of the metrics is served for before they are rendered again (in milliseconds).
+     */
+    public synchronized int getCacheTime()
+    {
+        return ((int) (fCacheTime / 1000000L));
+    }
+
+    /**
+     * <p>
+     * Retrieves the rendering of the metrics, rendering them again if the last rendering is older than the cache time.
+     * </p>
+     * 
+     * @return The rendering of the metrics, as UTF-8.
+     */
+    public synchronized byte[] getRendering()
+    {
+        long now = System.nanoTime();
+        if (fRendering == null || now - fRenderTime >= fCacheTime)
+        {
+            try
+            {
+                fRendering = render().getBytes("UTF-8");
+            }
+            catch (IOException e)
+            {
+                // UTF-8 is always supported.
+                throw new IllegalStateException(e);
+            }
+            fRenderTime = now;
+        }
+
+        return (fRendering);
+    }
+
+    /**
+     * <p>
+     * Renders the metrics in the Prometheus text exposition format.
+     * </p>
+     * 
+     * @return The rendering of the metrics.
+     */
+    public String render()
+    {
+        StringBuilder metrics = new StringBuilder();
+
+        renderMetric(metrics, "pcremote_connections_accepted_total", "counter", "TCP connections accepted.");
+        renderSample(metrics, "pcremote_connections_accepted_total", null, fMonitor.getConnectionsAccepted());
+        renderMetric(metrics, "pcremote_connections_active", "gauge", "TCP connections currently open.");
+        renderSample(metrics, "pcremote_connections_active", null, fMonitor.getConnectionsActive());
+        renderMetric(metrics, "pcremote_sessions_active", "gauge", "Clients that stamp their messages that currently have a session.");
+        renderSample(metrics, "pcremote_sessions_active", null, fMonitor.getSessionsActive());
+        renderMetric(metrics, "pcremote_sessions_evicted_total", "counter", "Sessions evicted because their clients went silent.");
+        renderSample(metrics, "pcremote_sessions_evicted_total", null, fMonitor.getSessionsEvicted());
+
+        renderMetric(metrics, "pcremote_received_bytes_total", "counter", "Bytes received, per transport.");
+        renderSample(metrics, "pcremote_received_bytes_total", "transport=\"tcp\"", fMonitor.getTcpBytesReceived());
+        renderSample(metrics, "pcremote_received_bytes_total", "transport=\"udp\"", fMonitor.getUdpBytesReceived());
+        renderMetric(metrics, "pcremote_received_commands_total", "counter", "Commands received, per transport.");
+        renderSample(metrics, "pcremote_received_commands_total", "transport=\"tcp\"", fMonitor.getTcpCommandsReceived());
+        renderSample(metrics, "pcremote_received_commands_total", "transport=\"udp\"", fMonitor.getUdpCommandsReceived());
+        renderMetric(metrics, "pcremote_parse_errors_total", "counter", "Commands that failed to be decoded.");
+        renderSample(metrics, "pcremote_parse_errors_total", null, fMonitor.getParseErrors());
+        renderMetric(metrics, "pcremote_command_cache_lookups_total", "counter", "Lookups in the command caches, by whether they found the command.");
+        renderSample(metrics, "pcremote_command_cache_lookups_total", "result=\"hit\"", fMonitor.getCommandCacheHits());
+        renderSample(metrics, "pcremote_command_cache_lookups_total", "result=\"miss\"", fMonitor.getCommandCacheMisses());
+        renderMetric(metrics, "pcremote_command_cache_evictions_total", "counter", "Commands evicted from the command caches to make room for others.");
+        renderSample(metrics, "pcremote_command_cache_evictions_total", null, fMonitor.getCommandCacheEvictions());
+        renderMetric(metrics, "pcremote_heartbeats_received_total", "counter", "Heartbeats received, per transport.");
+        renderSample(metrics, "pcremote_heartbeats_received_total", "transport=\"tcp\"", fMonitor.getTcpHeartbeatsReceived());
+        renderSample(metrics, "pcremote_heartbeats_received_total", "transport=\"udp\"", fMonitor.getUdpHeartbeatsReceived());
+        renderMetric(metrics, "pcremote_heartbeats_sent_total", "counter", "Heartbeats sent, per transport.");
+        renderSample(metrics, "pcremote_heartbeats_sent_total", "transport=\"tcp\"", fMonitor.getTcpHeartbeatsSent());
+
+        renderMetric(metrics, "pcremote_queue_depth", "gauge", "Discrete events waiting to be injected.");
+        renderSample(metrics, "pcremote_queue_depth", null, fMonitor.getQueueDepth());
+        renderMetric(metrics, "pcremote_expired_events_total", "counter", "Continuous events dropped because they were older than the deadline.");
+        renderSample(metrics, "pcremote_expired_events_total", null, fMonitor.getExpiredEvents());
+        renderMetric(metrics, "pcremote_journal_records_dropped_total", "counter", "Input journal records overwritten because the journal was full.");
+        renderSample(metrics, "pcremote_journal_records_dropped_total", null, fMonitor.getJournalRecordsDropped());
+
+        // Take a copy so that the quantiles, sum and count are consistent with each other.
+        LatencyHistogram latencies = new LatencyHistogram();
+        latencies.add(fInjectionLatencies);
+        renderMetric(metrics, "pcremote_injection_latency_seconds", "summary", "Time from the queueing of a batch of commands to its injection.");
+        for (double quantile : QUANTILES)
+        {
+            renderSample(metrics, "pcremote_injection_latency_seconds", "quantile=\"" + quantile + "\"",
+                    latencies.getLatencyAtPercentile(quantile * 100) / 1e9);
+        }
+        renderSample(metrics, "pcremote_injection_latency_seconds_sum", null, latencies.getSum() / 1e9);
+        renderSample(metrics, "pcremote_injection_latency_seconds_count", null, latencies.getCount());
+
+        List<ClientStatistics> clients = fMonitor.getClients();
+        renderMetric(metrics, "pcremote_client_commands_total", "counter", "Commands executed, per client.");
+        for (ClientStatistics client : clients)
+        {
+            renderSample(metrics, "pcremote_client_commands_total", "client=\"" + client.getId() + "\"", client.getCommandCount());
+        }
+        renderMetric(metrics, "pcremote_client_coalesced_total", "counter", "Pointer events merged by the rate limiter, per client.");
+        for (ClientStatistics client : clients)
+        {
+            renderSample(metrics, "pcremote_client_coalesced_total", "client=\"" + client.getId() + "\"", client.getCoalescedCount());
+        }
+        renderMetric(metrics, "pcremote_client_dropped_total", "counter", "Events dropped by the rate limiter, per client.");
+        for (ClientStatistics client : clients)
+        {
+            renderSample(metrics, "pcremote_client_dropped_total", "client=\"" + client.getId() + "\"", client.getDroppedCount());
+        }
+        renderMetric(metrics, "pcremote_client_injection_seconds_total", "counter", "Injection time used, per client.");
+        for (ClientStatistics client : clients)
+        {
+            renderSample(metrics, "pcremote_client_injection_seconds_total", "client=\"" + client.getId() + "\"", client.getInjectionTime() / 1e6);
+        }
+
+        return (metrics.toString());
+    }
+
+    /**
+     * <p>
+     * Renders the help and type lines of a metric.
+     * </p>
+     * 
+     * @param metrics The rendering to append to.
+     * @param name The name of the metric.
+     * @param type The type of the metric.
+     * @param help The description of the metric.
+     */
+    private void renderMetric(final StringBuilder metrics, final String name, final String type, final String help)
+    {
+        metrics.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        metrics.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * <p>
+     * Renders a sample of a metric.
+     * </p>
+     * 
+     * @param metrics The rendering to append to.
+     * @param name The name of the metric.
+     * @param labels The labels of the sample, or null if it has none.
+     * @param value The value of the sample.
+     */
+    private void renderSample(final StringBuilder metrics, final String name, final String labels, final double value)
+    {
+        metrics.append(name);
+        if (labels != null)
+        {
+            metrics.append('{').append(labels).append('}');
+        }
+        metrics.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE)
+        {
+            metrics.append((long) value);
+        }
+        else
+        {
+            metrics.append(value);
+        }
+        metrics.append('\n');
+    }
+
+    /**
+     * <p>
+     * Sets the time a rendering of the metrics is served for before they are rendered again. The default is 15000.
+     * </p>
+     * 
+     * @param cacheTime The time a rendering of the metrics is served for before they are rendered again (in milliseconds).
+     */
+    public synchronized void setCacheTime(final int cacheTime)
+    {
+        fCacheTime = cacheTime * 1000000L;
+    }
+
+    /**
+     * <p>
+     * Starts serving the metrics at {@link #PATH}.
+     * </p>
+     * 
+     * @throws IOException Thrown if the HTTP server fails to be bound to the address.
+     */
+    public void start() throws IOException
+    {
+        fHttpServer = HttpServer.create(fAddress, 0);
+        fHttpServer.createContext(PATH, new MetricsHandler());
+        fHttpServer.start();
+
+        fLogger.debug("Serving metrics at http://" + getAddress().getHostName() + ":" + getAddress().getPort() + PATH);
+    }
+
+    /**
+     * <p>
+     * Stops serving the metrics.
+     * </p>
+     */
+    public void stop()
+    {
+        if (fHttpServer != null)
+        {
+            fHttpServer.stop(0);
+            fHttpServer = null;
+        }
+    }
+}
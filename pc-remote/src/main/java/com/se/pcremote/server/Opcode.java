@@ -0,0 +1,205 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+/**
+ * <p>
+ * The numeric codes of the commands that can be executed by a {@link com.se.pcremote.server.CommandExecuter CommandExecuter}. Decoded commands
+ * are held as these codes (with their numeric arguments) rather than as <code>String</code>s so that they can be passed around without being
+ * parsed again.
+ * </p>
+ * 
+ * <p>
+ * There are also control commands that are consumed by the server itself rather than executed:
+ * </p>
+ * 
+ * <ul>
+ * <li><code>clock(session,tick);</code> Stamps the commands that follow it in the same message with the session of the client that sent them and
+ * the tick of that client's logical clock at the time they were sent (see {@link com.se.pcremote.server.ReorderBuffer ReorderBuffer}).</li>
+ * <li><code>defineMacro(id,commands);</code> Registers the (escaped) commands as the macro with the given identifier for the client that sent it
+ * (see {@link com.se.pcremote.server.CommandDecoder CommandDecoder} and {@link com.se.pcremote.server.ClientSession ClientSession}). It is decoded
+ * into a <code>defineMacro(id);</code> command, the commands of the macro and then an <code>endMacro(id);</code> command.</li>
+ * <li><code>macro(id);</code> Executes the macro with the given identifier that was registered by the client that sent it.</li>
+ * <li><code>time(millis);</code> Stamps the commands that follow it in the same message with the time at which the client sent them (in
+ * milliseconds, as per its own clock) so that pointer events that arrive too late to be useful can be dropped (see
+ * {@link com.se.pcremote.server.InputScheduler InputScheduler}).</li>
+ * </ul>
+ * 
+ * @author Gary Buyn
+ */
+public final class Opcode
+{
+    /**
+     * <p>
+     * The code of the <code>keyPress(key);</code> command.
+     * </p>
+     */
+    public static final int KEY_PRESS = 1;
+
+    /**
+     * <p>
+     * The code of the <code>keyRelease(key);</code> command.
+     * </p>
+     */
+    public static final int KEY_RELEASE = 2;
+
+    /**
+     * <p>
+     * The code of the <code>mouseMove(x,y);</code> command.
+     * </p>
+     */
+    public static final int MOUSE_MOVE = 3;
+
+    /**
+     * <p>
+     * The code of the <code>mouseMoveRelative(x,y);</code> command.
+     * </p>
+     */
+    public static final int MOUSE_MOVE_RELATIVE = 4;
+
+    /**
+     * <p>
+     * The code of the <code>mousePress(mouseButton);</code> command.
+     * </p>
+     */
+    public static final int MOUSE_PRESS = 5;
+
+    /**
+     * <p>
+     * The code of the <code>mouseRelease(mouseButton);</code> command.
+     * </p>
+     */
+    public static final int MOUSE_RELEASE = 6;
+
+    /**
+     * <p>
+     * The code of the <code>mouseWheel(notches);</code> command.
+     * </p>
+     */
+    public static final int MOUSE_WHEEL = 7;
+
+    /**
+     * <p>
+     * The code of the <code>clock(session,tick);</code> control command.
+     * </p>
+     */
+    public static final int CLOCK = 8;
+
+    /**
+     * <p>
+     * The code of the <code>typeCharacter(codePoint);</code> command. A <code>typeText(text);</code> command is decoded into one of these per
+     * character of its text. Its second argument is set to 1 by the {@link com.se.pcremote.server.ClientSession ClientSession} if the client is
+     * holding the Shift key down when the character is typed, so that the Shift key is left as it is.
+     * </p>
+     */
+    public static final int TYPE_CHARACTER = 9;
+
+    /**
+     * <p>
+     * The code of the <code>defineMacro(id);</code> control command.
+     * </p>
+     */
+    public static final int DEFINE_MACRO = 10;
+
+    /**
+     * <p>
+     * The code of the <code>endMacro(id);</code> control command.
+     * </p>
+     */
+    public static final int END_MACRO = 11;
+
+    /**
+     * <p>
+     * The code of the <code>macro(id);</code> control command.
+     * </p>
+     */
+    public static final int MACRO = 12;
+
+    /**
+     * <p>
+     * The code of the <code>time(millis);</code> control command.
+     * </p>
+     */
+    public static final int TIME = 13;
+
+    /**
+     * <p>
+     * The code of the <code>pause();</code> command, which separates the stages of a gesture (e.g. pressing the mouse button and moving the
+     * mouse in a <code>drag</code>) so that the gesture delay of the {@link com.se.pcremote.server.CommandExecuter CommandExecuter} is waited out
+     * between them.
+     * </p>
+     */
+    public static final int PAUSE = 14;
+
+    /**
+     * <p>
+     * The names of the commands, indexed by their codes.
+     * </p>
+     */
+    private static final String[] NAMES = new String[] {null, "keyPress", "keyRelease", "mouseMove", "mouseMoveRelative", "mousePress",
+            "mouseRelease", "mouseWheel", "clock", "typeCharacter", "defineMacro", "endMacro", "macro", "time", "pause"};
+
+    /**
+     * <p>
+     * Retrieves the name of the command with the given code, as it appears in the text protocol.
+     * </p>
+     * 
+     * @param opcode The code of the command.
+     * 
+     * @return The name of the command with the given code.
+     */
+    public static String getName(final int opcode)
+    {
+        if (opcode < 1 || opcode >= NAMES.length)
+        {
+            throw new IllegalArgumentException("Unknown opcode: " + opcode);
+        }
+
+        return (NAMES[opcode]);
+    }
+
+    /**
+     * <p>
+     * Determines whether the command with the given code is a control command, consumed by the server itself rather than executed.
+     * </p>
+     * 
+     * @param opcode The code of the command.
+     * 
+     * @return True if the command with the given code is a control command, false otherwise.
+     */
+    public static boolean isControl(final int opcode)
+    {
+        return (opcode == CLOCK || opcode == DEFINE_MACRO || opcode == END_MACRO || opcode == MACRO || opcode == TIME);
+    }
+
+    /**
+     * <p>
+     * Determines whether consecutive commands with the given code can be merged into a single command by summing their arguments.
+     * </p>
+     * 
+     * @param opcode The code of the command.
+     * 
+     * @return True if consecutive commands with the given code can be merged, false otherwise.
+     */
+    public static boolean isMergeable(final int opcode)
+    {
+        return (opcode == MOUSE_MOVE_RELATIVE || opcode == MOUSE_WHEEL);
+    }
+
+    /**
+     * <p>
+     * Hidden constructor, this class only holds constants.
+     * </p>
+     */
+    private Opcode()
+    {}
+}
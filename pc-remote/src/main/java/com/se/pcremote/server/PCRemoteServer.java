@@ -12,10 +12,12 @@
 package com.se.pcremote.server;
 
 import java.awt.AWTException;
+import java.io.File;
 import java.io.IOException;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.DatagramChannel;
 
 import org.apache.log4j.Logger;
 
@@ -34,10 +36,63 @@ import com.se.pcremote.UdpServer;
  * Multiple commands can be received at once by simply concatenating them together e.g. "mousePress(1);mouseRelease(1);"
  * </p>
  * 
+ * <p>
+ * The commands of all of the clients are injected by a single thread, key and mouse button events first (see
+ * {@link com.se.pcremote.server.InputScheduler InputScheduler}). Pointer events that are older than a deadline by the time they are injected are
+ * dropped, when the server is run from the terminal the deadline (in milliseconds) can be set with the system property
+ * <code>pcremote.deadline</code>. When several clients have input waiting, the one served next is chosen by an arbitration policy, when the server
+ * is run from the terminal the policy can be set with the system property <code>pcremote.policy</code> to one of "fifo", "fair" (the default),
+ * "recent" or "exclusive".
+ * </p>
+ * 
+ * <p>
+ * The stages of a <code>drag</code> gesture are separated by a short delay so that applications recognise it as a drag, when the server is run from
+ * the terminal the delay (in milliseconds) can be set with the system property <code>pcremote.gestureDelay</code>.
+ * </p>
+ * 
+ * <p>
+ * By default the commands are actuated with a {@link com.se.pcremote.server.RobotBackend RobotBackend}. When the server is run from the terminal
+ * with the system property <code>pcremote.inputDevice</code> set to the path of a Linux input device node, they are written straight to that
+ * device with a {@link com.se.pcremote.server.UinputBackend UinputBackend} instead.
+ * </p>
+ * 
+ * <p>
+ * When the server is run from the terminal with the system property <code>pcremote.journal</code> set to the path of a file, every command
+ * executed is recorded in an {@link com.se.pcremote.server.InputJournal InputJournal} kept in that file.
+ * </p>
+ * 
+ * <p>
+ * The rate at which each client can inject input is limited (see {@link com.se.pcremote.server.RateLimiter RateLimiter}). When the server is run
+ * from the terminal the limits can be set with the system property <code>pcremote.rates</code>, as the number of pointer events, key events and
+ * events in total per second separated by commas (e.g. "1000,1000,2000").
+ * </p>
+ * 
+ * <p>
+ * While the server is running its live metrics can be watched via JMX, see {@link com.se.pcremote.server.ServerMonitor ServerMonitor}, through
+ * which the trace of what it has recently done can also be dumped to a file (see {@link com.se.pcremote.server.TraceBuffer TraceBuffer}). They can
+ * also be served over HTTP for Prometheus to scrape (see {@link com.se.pcremote.server.MetricsEndpoint MetricsEndpoint}), when the server is run
+ * from the terminal this is turned on by setting the system property <code>pcremote.metricsPort</code> to the port to serve them on.
+ * </p>
+ * 
+ * <p>
+ * When the server is run from the terminal on a JVM that has the Java Flight Recorder, the stages the commands pass through emit Flight Recorder
+ * events while a recording is running (see {@link com.se.pcremote.server.StageProfiler StageProfiler}). The system property
+ * <code>pcremote.profiling</code> can be set to "off" to turn this off, or to one in how many of the times each stage is passed through is
+ * profiled and the time commands must wait in the queue for before it is profiled (in milliseconds) separated by a comma (e.g. "10,5"). The
+ * default is "1,1".
+ * </p>
+ * 
  * @author Gary Buyn
  */
 public class PCRemoteServer
 {
+    /**
+     * <p>
+     * The system property that holds the age after which pointer events are dropped rather than injected.
+     * </p>
+     */
+    public static final String DEADLINE_PROPERTY = "pcremote.deadline";
+
     /**
      * <p>
      * The default port on which this <code>PCRemoteServer</code> will listen.
@@ -45,6 +100,55 @@ public class PCRemoteServer
      */
     public static final int DEFAULT_PORT = 10999;
 
+    /**
+     * <p>
+     * The system property that holds the time to wait between the stages of a gesture.
+     * </p>
+     */
+    public static final String GESTURE_DELAY_PROPERTY = "pcremote.gestureDelay";
+
+    /**
+     * <p>
+     * The system property that holds the path of the Linux input device node to write the commands to.
+     * </p>
+     */
+    public static final String INPUT_DEVICE_PROPERTY = "pcremote.inputDevice";
+
+    /**
+     * <p>
+     * The system property that holds the path of the file to record the commands executed in.
+     * </p>
+     */
+    public static final String JOURNAL_PROPERTY = "pcremote.journal";
+
+    /**
+     * <p>
+     * The system property that holds the port the metrics are served on over HTTP.
+     * </p>
+     */
+    public static final String METRICS_PORT_PROPERTY = "pcremote.metricsPort";
+
+    /**
+     * <p>
+     * The system property that holds the arbitration policy used when several clients have input waiting.
+     * </p>
+     */
+    public static final String POLICY_PROPERTY = "pcremote.policy";
+
+    /**
+     * <p>
+     * The system property that holds how the stages the commands pass through are profiled with the Java Flight Recorder.
+     * </p>
+     */
+    public static final String PROFILING_PROPERTY = "pcremote.profiling";
+
+    /**
+     * <p>
+     * The system property that holds the limits on the rate at which clients can inject input.
+     * </p>
+     */
+    public static final String RATES_PROPERTY = "pcremote.rates";
+
     /**
      * <p>
      * Logs messages associated with this class.
@@ -119,9 +223,75 @@ public class PCRemoteServer
             fLogger.info("#########################");
             fLogger.info("Starting server...");
 
-            PCRemoteServer server = new PCRemoteServer(port);
+            PCRemoteServer server;
+            String inputDevice = System.getProperty(INPUT_DEVICE_PROPERTY);
+            if (inputDevice != null)
+            {
+                fLogger.info("Writing input to device: " + inputDevice);
+                server = new PCRemoteServer(port, UinputBackend.open(inputDevice));
+            }
+            else
+            {
+                server = new PCRemoteServer(port);
+            }
+
+            String gestureDelay = System.getProperty(GESTURE_DELAY_PROPERTY);
+            if (gestureDelay != null)
+            {
+                fLogger.info("Waiting between the stages of gestures for (milliseconds): " + gestureDelay);
+                server.getCommandExecuter().setGestureDelay(Integer.parseInt(gestureDelay.trim()));
+            }
+
+            String journal = System.getProperty(JOURNAL_PROPERTY);
+            if (journal != null)
+            {
+                fLogger.info("Recording input in journal: " + journal);
+                server.getCommandExecuter().setInputJournal(new InputJournal(new File(journal), InputJournal.DEFAULT_CAPACITY));
+            }
+            String metricsPort = System.getProperty(METRICS_PORT_PROPERTY);
+            if (metricsPort != null)
+            {
+                fLogger.info("Serving metrics over HTTP on port: " + metricsPort);
+                server.setMetricsPort(Integer.parseInt(metricsPort.trim()));
+            }
+
+            String profiling = System.getProperty(PROFILING_PROPERTY, "1,1");
+            if (!profiling.trim().equals("off"))
+            {
+                String[] settings = profiling.split(",");
+                StageProfiler profiler = StageProfiler.createFlightRecorderProfiler(Integer.parseInt(settings[0].trim()),
+                        Long.parseLong(settings[1].trim()) * 1000000L);
+                if (profiler != null)
+                {
+                    fLogger.info("Profiling (one in, queued for milliseconds) with the Flight Recorder: " + profiling);
+                    StageProfiler.setInstance(profiler);
+                }
+            }
             server.start();
 
+            String deadline = System.getProperty(DEADLINE_PROPERTY);
+            if (deadline != null)
+            {
+                fLogger.info("Dropping pointer events older than (milliseconds): " + deadline);
+                server.getInputScheduler().setDeadline(Integer.parseInt(deadline.trim()));
+            }
+
+            String policy = System.getProperty(POLICY_PROPERTY);
+            if (policy != null)
+            {
+                fLogger.info("Arbitrating between clients with the policy: " + policy);
+                server.getInputScheduler().setPolicy(InputScheduler.parsePolicy(policy.trim()));
+            }
+
+            String rates = System.getProperty(RATES_PROPERTY);
+            if (rates != null)
+            {
+                String[] limits = rates.split(",");
+                fLogger.info("Limiting input to (pointer, key, total) events per second: " + rates);
+                server.getSessionTable().setRates(Integer.parseInt(limits[0].trim()), Integer.parseInt(limits[1].trim()),
+                        Integer.parseInt(limits[2].trim()));
+            }
+
             fLogger.info("...Done.");
             fLogger.info("Server running at:");
             fLogger.info("Host: " + InetAddress.getLocalHost().getHostName());
@@ -174,6 +344,34 @@ public class PCRemoteServer
      */
     private CommandExecuter fCommandExecuter;
 
+    /**
+     * <p>
+     * Queues the commands of all of the clients for injection.
+     * </p>
+     */
+    private InputScheduler fInputScheduler;
+
+    /**
+     * <p>
+     * Serves the metrics of this <code>PCRemoteServer</code> over HTTP, or null if they are not served.
+     * </p>
+     */
+    private MetricsEndpoint fMetricsEndpoint;
+
+    /**
+     * <p>
+     * The port the metrics of this <code>PCRemoteServer</code> are served on over HTTP, or -1 if they are not served.
+     * </p>
+     */
+    private int fMetricsPort;
+
+    /**
+     * <p>
+     * Exposes the live metrics of this <code>PCRemoteServer</code> via JMX.
+     * </p>
+     */
+    private ServerMonitor fMonitor;
+
     /**
      * <p>
      * The port on which this <code>PCRemoteServer</code> will listen.
@@ -181,6 +379,13 @@ public class PCRemoteServer
      */
     private int fPort;
 
+    /**
+     * <p>
+     * The sessions of the clients that stamp their messages.
+     * </p>
+     */
+    private SessionTable fSessionTable;
+
     /**
      * <p>
      * The accepter of new connections requested by clients.
@@ -205,8 +410,13 @@ public class PCRemoteServer
     public PCRemoteServer() throws AWTException
     {
         fCommandExecuter = new CommandExecuter();
+        fInputScheduler = null;
         fLogger = Logger.getLogger(PCRemoteServer.class);
+        fMetricsEndpoint = null;
+        fMetricsPort = -1;
+        fMonitor = null;
         fPort = DEFAULT_PORT;
+        fSessionTable = null;
         fTcpServer = null;
         fUdpServer = null;
     }
@@ -223,12 +433,99 @@ public class PCRemoteServer
     public PCRemoteServer(final int port) throws AWTException
     {
         fCommandExecuter = new CommandExecuter();
+        fInputScheduler = null;
+        fLogger = Logger.getLogger(PCRemoteServer.class);
+        fMetricsEndpoint = null;
+        fMetricsPort = -1;
+        fMonitor = null;
+        fPort = port;
+        fSessionTable = null;
+        fTcpServer = null;
+        fUdpServer = null;
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>PCRemoteServer</code>.
+     * </p>
+     * 
+     * @param port The port on which this <code>PCRemoteServer</code> will listen.
+     * @param inputBackend Actuates the commands.
+     */
+    public PCRemoteServer(final int port, final InputBackend inputBackend)
+    {
+        fCommandExecuter = new CommandExecuter(inputBackend);
+        fInputScheduler = null;
         fLogger = Logger.getLogger(PCRemoteServer.class);
+        fMetricsEndpoint = null;
+        fMetricsPort = -1;
+        fMonitor = null;
         fPort = port;
+        fSessionTable = null;
         fTcpServer = null;
         fUdpServer = null;
     }
 
+    /**
+     * <p>
+     * Retrieves the executer of the commands received.
+     * </p>
+     * 
+     * @return The executer of the commands received.
+     */
+    public CommandExecuter getCommandExecuter()
+    {
+        return (fCommandExecuter);
+    }
+
+    /**
+     * <p>
+     * Retrieves the queue of the commands of all of the clients for injection.
+     * </p>
+     * 
+     * @return The queue of the commands of all of the clients for injection, or null if the server has not been started.
+     */
+    public InputScheduler getInputScheduler()
+    {
+        return (fInputScheduler);
+    }
+
+    /**
+     * <p>
+     * Retrieves the server of the metrics of this <code>PCRemoteServer</code> over HTTP.
+     * </p>
+     * 
+     * @return The server of the metrics over HTTP, or null if they are not served or the server has not been started.
+     */
+    public MetricsEndpoint getMetricsEndpoint()
+    {
+        return (fMetricsEndpoint);
+    }
+
+    /**
+     * <p>
+     * Retrieves the exposer of the live metrics of this <code>PCRemoteServer</code> via JMX.
+     * </p>
+     * 
+     * @return The exposer of the live metrics of this <code>PCRemoteServer</code>, or null if the server has not been started.
+     */
+    public ServerMonitor getMonitor()
+    {
+        return (fMonitor);
+    }
+
+    /**
+     * <p>
+     * Retrieves the sessions of the clients that stamp their messages.
+     * </p>
+     * 
+     * @return The sessions of the clients that stamp their messages, or null if the server has not been started.
+     */
+    public SessionTable getSessionTable()
+    {
+        return (fSessionTable);
+    }
+
     /**
      * <p>
      * Retrieves the accepter of new connections requested by clients.
@@ -241,6 +538,19 @@ public class PCRemoteServer
         return (fTcpServer);
     }
 
+    /**
+     * <p>
+     * Sets the port the metrics of this <code>PCRemoteServer</code> are served on over HTTP, from when it is next started. By default they are not
+     * served.
+     * </p>
+     * 
+     * @param metricsPort The port the metrics are served on over HTTP (0 for a port chosen by the system), or -1 if they are not served.
+     */
+    public void setMetricsPort(final int metricsPort)
+    {
+        fMetricsPort = metricsPort;
+    }
+
     /**
      * <p>
      * Binds the server to a port and starts the {@link ConnectionAccepter}. The default port is 10999.
@@ -250,8 +560,25 @@ public class PCRemoteServer
      */
     public void start() throws IOException
     {
-        fTcpServer = new TcpServer(new ServerSocket(fPort), fCommandExecuter);
-        fUdpServer = new UdpServer(new UdpClient(new DatagramSocket(fPort - 1), fCommandExecuter));
+        DatagramChannel datagramChannel = DatagramChannel.open();
+        datagramChannel.socket().bind(new InetSocketAddress(fPort - 1));
+
+        fInputScheduler = new InputScheduler(fCommandExecuter);
+        fInputScheduler.start();
+
+        fSessionTable = new SessionTable(fCommandExecuter, fInputScheduler);
+        fSessionTable.start();
+
+        fTcpServer = new TcpServer(new ServerSocket(fPort), fSessionTable);
+        fUdpServer = new UdpServer(new UdpClient(datagramChannel, fSessionTable));
+
+        fMonitor = new ServerMonitor(fSessionTable, fInputScheduler, fCommandExecuter);
+        fMonitor.register(fPort);
+        if (fMetricsPort >= 0)
+        {
+            fMetricsEndpoint = new MetricsEndpoint(new InetSocketAddress(fMetricsPort), fMonitor, fInputScheduler.getInjectionLatencies());
+            fMetricsEndpoint.start();
+        }
 
         new Thread(fTcpServer).start();
         new Thread(fUdpServer).start();
@@ -259,14 +586,36 @@ public class PCRemoteServer
 
     /**
      * <p>
-     * Closes all client connections and stops the server.
+     * Closes all client connections, stops the server and releases the resources held by the {@link InputBackend}.
      * </p>
      * 
      * @throws IOException Thrown if the server fails to be stopped.
      */
     public void stop() throws IOException
     {
+        fMonitor.unregister();
+        if (fMetricsEndpoint != null)
+        {
+            fMetricsEndpoint.stop();
+            fMetricsEndpoint = null;
+        }
         fTcpServer.dispose();
         fUdpServer.dispose();
+        fSessionTable.dispose();
+        try
+        {
+            fInputScheduler.dispose();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        fCommandExecuter.dispose();
+
+        InputJournal journal = fCommandExecuter.getInputJournal();
+        if (journal != null)
+        {
+            journal.dispose();
+        }
     }
 }
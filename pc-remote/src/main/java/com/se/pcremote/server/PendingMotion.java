@@ -0,0 +1,175 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+/**
+ * <p>
+ * Pointer events (mouse movements and wheel spins) that are being held back, coalesced into at most an absolute movement, a relative movement
+ * after it and a wheel spin. However many pointer events are coalesced, releasing them costs no more than three commands.
+ * </p>
+ * 
+ * <p>
+ * A <code>PendingMotion</code> is not thread safe.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class PendingMotion
+{
+    /**
+     * <p>
+     * Determines whether the command with the given code is a pointer event.
+     * </p>
+     * 
+     * @param opcode The code of the command.
+     * 
+     * @return True if the command with the given code is a pointer event, false otherwise.
+     */
+    public static boolean isPointer(final int opcode)
+    {
+        return (opcode == Opcode.MOUSE_MOVE || opcode == Opcode.MOUSE_MOVE_RELATIVE || opcode == Opcode.MOUSE_WHEEL);
+    }
+
+    /**
+     * <p>
+     * Determines whether an absolute mouse movement is pending.
+     * </p>
+     */
+    private boolean fMovePending;
+
+    /**
+     * <p>
+     * The horizontal location of the pending absolute mouse movement.
+     * </p>
+     */
+    private int fMoveX;
+
+    /**
+     * <p>
+     * The vertical location of the pending absolute mouse movement.
+     * </p>
+     */
+    private int fMoveY;
+
+    /**
+     * <p>
+     * The pending number of notches to spin the mouse wheel.
+     * </p>
+     */
+    private int fPendingWheel;
+
+    /**
+     * <p>
+     * The pending relative horizontal mouse movement, applied after any pending absolute movement.
+     * </p>
+     */
+    private int fPendingX;
+
+    /**
+     * <p>
+     * The pending relative vertical mouse movement, applied after any pending absolute movement.
+     * </p>
+     */
+    private int fPendingY;
+
+    /**
+     * <p>
+     * Creates an instance of <code>PendingMotion</code> with nothing pending.
+     * </p>
+     */
+    public PendingMotion()
+    {
+        clear();
+    }
+
+    /**
+     * <p>
+     * Coalesces a pointer event into the pending pointer events. An absolute movement supersedes any relative movement before it.
+     * </p>
+     * 
+     * @param opcode The {@link com.se.pcremote.server.Opcode Opcode} of the pointer event.
+     * @param argument0 The first argument of the pointer event.
+     * @param argument1 The second argument of the pointer event.
+     */
+    public void add(final int opcode, final int argument0, final int argument1)
+    {
+        if (opcode == Opcode.MOUSE_MOVE)
+        {
+            fMovePending = true;
+            fMoveX = argument0;
+            fMoveY = argument1;
+            fPendingX = 0;
+            fPendingY = 0;
+        }
+        else if (opcode == Opcode.MOUSE_MOVE_RELATIVE)
+        {
+            fPendingX += argument0;
+            fPendingY += argument1;
+        }
+        else if (opcode == Opcode.MOUSE_WHEEL)
+        {
+            fPendingWheel += argument0;
+        }
+    }
+
+    /**
+     * <p>
+     * Discards the pending pointer events.
+     * </p>
+     */
+    public void clear()
+    {
+        fMovePending = false;
+        fMoveX = 0;
+        fMoveY = 0;
+        fPendingWheel = 0;
+        fPendingX = 0;
+        fPendingY = 0;
+    }
+
+    /**
+     * <p>
+     * Determines whether there are pointer events pending.
+     * </p>
+     * 
+     * @return True if there are pointer events pending, false otherwise.
+     */
+    public boolean isPending()
+    {
+        return (fMovePending || fPendingX != 0 || fPendingY != 0 || fPendingWheel != 0);
+    }
+
+    /**
+     * <p>
+     * Adds the pending pointer events to the given buffer and discards them.
+     * </p>
+     * 
+     * @param commands The buffer to add the pending pointer events to.
+     */
+    public void release(final CommandBuffer commands)
+    {
+        if (fMovePending)
+        {
+            commands.add(Opcode.MOUSE_MOVE, fMoveX, fMoveY);
+        }
+        if (fPendingX != 0 || fPendingY != 0)
+        {
+            commands.add(Opcode.MOUSE_MOVE_RELATIVE, fPendingX, fPendingY);
+        }
+        if (fPendingWheel != 0)
+        {
+            commands.add(Opcode.MOUSE_WHEEL, fPendingWheel, 0);
+        }
+
+        clear();
+    }
+}
@@ -0,0 +1,361 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+/**
+ * <p>
+ * Limits the rate at which a single client can inject input, so that a buggy client (or a stuck loop sending datagrams) cannot flood the desktop
+ * and starve the other clients of the {@link com.se.pcremote.server.CommandExecuter CommandExecuter}. There are three
+ * {@link com.se.pcremote.server.TokenBucket TokenBucket}s: one for the pointer events (mouse movements and wheel spins), one for the key events
+ * (key and mouse button presses and releases and typed characters) and one for all events.
+ * </p>
+ * 
+ * <p>
+ * Pointer events that exceed the limits are not lost, they are coalesced into a single pending movement (and a single pending wheel spin) that is
+ * released once there is a token for it. A mouse button press or release always releases the pending movement first, so that the click lands
+ * where the client meant it to. Key and button presses that exceed the limits are dropped, releases are never dropped so nothing can be left
+ * stuck down.
+ * </p>
+ * 
+ * <p>
+ * A gesture whose stages are separated by <code>pause();</code> commands (e.g. a <code>drag</code>) is admitted or dropped as a unit: if its press
+ * is admitted the stages after it are admitted too (they are charged to the buckets, which may go into debt), if it is dropped the stages after
+ * it are dropped with it apart from the release.
+ * </p>
+ * 
+ * <p>
+ * A <code>RateLimiter</code> is not thread safe, it is expected to be guarded by the {@link com.se.pcremote.server.ClientSession ClientSession}
+ * that owns it.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class RateLimiter
+{
+    /**
+     * <p>
+     * The default number of key events a client can send per second.
+     * </p>
+     */
+    public static final int DEFAULT_KEY_RATE = 1000;
+
+    /**
+     * <p>
+     * The default number of pointer events a client can send per second.
+     * </p>
+     */
+    public static final int DEFAULT_POINTER_RATE = 1000;
+
+    /**
+     * <p>
+     * The default number of events a client can send per second.
+     * </p>
+     */
+    public static final int DEFAULT_TOTAL_RATE = 2000;
+
+    /**
+     * <p>
+     * The number of pointer events that were coalesced into a pending movement or wheel spin because they exceeded the limits.
+     * </p>
+     */
+    private long fCoalescedCount;
+
+    /**
+     * <p>
+     * The number of key and button presses that were dropped because they exceeded the limits.
+     * </p>
+     */
+    private long fDroppedCount;
+
+    /**
+     * <p>
+     * Determines whether the press of the gesture being admitted was dropped.
+     * </p>
+     */
+    private boolean fGestureDropped;
+
+    /**
+     * <p>
+     * Limits the rate of the key events.
+     * </p>
+     */
+    private TokenBucket fKeyBucket;
+
+    /**
+     * <p>
+     * Determines whether the last command admitted (or dropped) was a <code>pause();</code> command, i.e. the next command is a stage of a gesture.
+     * </p>
+     */
+    private boolean fPaused;
+
+    /**
+     * <p>
+     * The pointer events held back because they exceeded the limits.
+     * </p>
+     */
+    private PendingMotion fPendingMotion;
+
+    /**
+     * <p>
+     * Limits the rate of the pointer events.
+     * </p>
+     */
+    private TokenBucket fPointerBucket;
+
+    /**
+     * <p>
+     * Limits the rate of all events.
+     * </p>
+     */
+    private TokenBucket fTotalBucket;
+
+    /**
+     * <p>
+     * Creates an instance of <code>RateLimiter</code> with the default limits.
+     * </p>
+     */
+    public RateLimiter()
+    {
+        fCoalescedCount = 0;
+        fDroppedCount = 0;
+        fGestureDropped = false;
+        fKeyBucket = new TokenBucket(DEFAULT_KEY_RATE);
+        fPaused = false;
+        fPendingMotion = new PendingMotion();
+        fPointerBucket = new TokenBucket(DEFAULT_POINTER_RATE);
+        fTotalBucket = new TokenBucket(DEFAULT_TOTAL_RATE);
+    }
+
+    /**
+     * <p>
+     * Applies the limits to a command. The command is added to the given buffer if it can be executed now, preceded by any pending pointer events
+     * that are released with it.
+     * </p>
+     * 
+     * @param opcode The {@link com.se.pcremote.server.Opcode Opcode} of the command.
+     * @param argument0 The first argument of the command.
+     * @param argument1 The second argument of the command.
+     * @param now The current time (in nanoseconds).
+     * @param admitted The buffer to add the commands that can be executed now to.
+     */
+    public void admit(final int opcode, final int argument0, final int argument1, final long now, final CommandBuffer admitted)
+    {
+        boolean stage = fPaused;
+        fPaused = opcode == Opcode.PAUSE;
+        if (fPaused || stage)
+        {
+            admitStage(opcode, argument0, argument1, now, admitted);
+            return;
+        }
+        fGestureDropped = false;
+
+        if (PendingMotion.isPointer(opcode))
+        {
+            // Once a pointer event has been held back the ones after it are coalesced with it so they cannot overtake it.
+            if (!isPending() && take(fPointerBucket, now))
+            {
+                admitted.add(opcode, argument0, argument1);
+            }
+            else
+            {
+                fPendingMotion.add(opcode, argument0, argument1);
+                fCoalescedCount++;
+                release(now, false, admitted);
+            }
+        }
+        else
+        {
+            if (opcode == Opcode.MOUSE_PRESS || opcode == Opcode.MOUSE_RELEASE)
+            {
+                release(now, true, admitted);
+            }
+
+            if (take(fKeyBucket, now) || opcode == Opcode.KEY_RELEASE || opcode == Opcode.MOUSE_RELEASE)
+            {
+                admitted.add(opcode, argument0, argument1);
+            }
+            else
+            {
+                fDroppedCount++;
+                fGestureDropped = true;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Applies the limits to a <code>pause();</code> command or the stage of a gesture that follows it. They are admitted (and charged to the
+     * buckets) if the press of the gesture was admitted, otherwise they are dropped with it apart from a release.
+     * </p>
+     * 
+     * @param opcode The {@link com.se.pcremote.server.Opcode Opcode} of the command.
+     * @param argument0 The first argument of the command.
+     * @param argument1 The second argument of the command.
+     * @param now The current time (in nanoseconds).
+     * @param admitted The buffer to add the commands that can be executed now to.
+     */
+    private void admitStage(final int opcode, final int argument0, final int argument1, final long now, final CommandBuffer admitted)
+    {
+        if (fGestureDropped && opcode != Opcode.KEY_RELEASE && opcode != Opcode.MOUSE_RELEASE)
+        {
+            return;
+        }
+
+        boolean pointer = PendingMotion.isPointer(opcode);
+        if (pointer || opcode == Opcode.MOUSE_PRESS || opcode == Opcode.MOUSE_RELEASE)
+        {
+            // The stage must not overtake the pointer events held back before the gesture.
+            release(now, true, admitted);
+        }
+        if (pointer)
+        {
+            fPointerBucket.charge(now);
+        }
+        else
+        {
+            fKeyBucket.charge(now);
+        }
+        fTotalBucket.charge(now);
+
+        admitted.add(opcode, argument0, argument1);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of pointer events that were coalesced into a pending movement or wheel spin because they exceeded the limits.
+     * </p>
+     * 
+     * @return The number of pointer events that were coalesced.
+     */
+    public long getCoalescedCount()
+    {
+        return (fCoalescedCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of key and button presses that were dropped because they exceeded the limits.
+     * </p>
+     * 
+     * @return The number of key and button presses that were dropped.
+     */
+    public long getDroppedCount()
+    {
+        return (fDroppedCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of key events a client can send per second.
+     * </p>
+     * 
+     * @return The number of key events a client can send per second, or 0 if it is not limited.
+     */
+    public int getKeyRate()
+    {
+        return (fKeyBucket.getRate());
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of pointer events a client can send per second.
+     * </p>
+     * 
+     * @return The number of pointer events a client can send per second, or 0 if it is not limited.
+     */
+    public int getPointerRate()
+    {
+        return (fPointerBucket.getRate());
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of events a client can send per second.
+     * </p>
+     * 
+     * @return The number of events a client can send per second, or 0 if it is not limited.
+     */
+    public int getTotalRate()
+    {
+        return (fTotalBucket.getRate());
+    }
+
+    /**
+     * <p>
+     * Determines whether there are pointer events waiting to be released.
+     * </p>
+     * 
+     * @return True if there are pointer events waiting to be released, false otherwise.
+     */
+    public boolean isPending()
+    {
+        return (fPendingMotion.isPending());
+    }
+
+    /**
+     * <p>
+     * Releases the pending pointer events if there is a token for them.
+     * </p>
+     * 
+     * @param now The current time (in nanoseconds).
+     * @param force Determines whether the pending pointer events are released even if there is no token for them.
+     * @param admitted The buffer to add the released pointer events to.
+     */
+    public void release(final long now, final boolean force, final CommandBuffer admitted)
+    {
+        if (!isPending() || !(take(fPointerBucket, now) || force))
+        {
+            return;
+        }
+
+        fPendingMotion.release(admitted);
+    }
+
+    /**
+     * <p>
+     * Sets the limits. The buckets are filled.
+     * </p>
+     * 
+     * @param pointerRate The number of pointer events a client can send per second, or 0 if it is not limited.
+     * @param keyRate The number of key events a client can send per second, or 0 if it is not limited.
+     * @param totalRate The number of events a client can send per second, or 0 if it is not limited.
+     */
+    public void setRates(final int pointerRate, final int keyRate, final int totalRate)
+    {
+        fKeyBucket.setRate(keyRate);
+        fPointerBucket.setRate(pointerRate);
+        fTotalBucket.setRate(totalRate);
+    }
+
+    /**
+     * <p>
+     * Takes a token from the given bucket and from the bucket for all events, if both of them have one.
+     * </p>
+     * 
+     * @param bucket The bucket for the type of event.
+     * @param now The current time (in nanoseconds).
+     * 
+     * @return True if the tokens were taken, false otherwise.
+     */
+    private boolean take(final TokenBucket bucket, final long now)
+    {
+        if (!bucket.isAvailable(now) || !fTotalBucket.isAvailable(now))
+        {
+            return (false);
+        }
+
+        bucket.take(now);
+        fTotalBucket.take(now);
+
+        return (true);
+    }
+}
@@ -0,0 +1,468 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+/**
+ * <p>
+ * Puts the commands sent by a single client back into the order in which they were sent. Each message sent by the client is stamped with the next
+ * tick of a logical clock that is shared by its TCP and UDP connections, so a message that overtakes an earlier one (e.g. a mouse movement sent via
+ * UDP that arrives before the mouse button press sent via TCP just before it) is held back until the messages before it have arrived.
+ * </p>
+ * 
+ * <p>
+ * A message is never held back for longer than the maximum wait. If the missing messages still have not arrived by then (e.g. because a UDP
+ * datagram was lost) they are skipped and the held messages are released. A message that arrives after it has been skipped is released straight
+ * away. A message that has already been released (e.g. a datagram that was duplicated in transit) is dropped, as long as it is no more than
+ * the window size behind the next message in order.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public abstract class ReorderBuffer
+{
+    /**
+     * <p>
+     * The default maximum amount of time a message is held back while waiting for the messages before it (in milliseconds).
+     * </p>
+     */
+    private static final int DEFAULT_MAX_WAIT = 50;
+
+    /**
+     * <p>
+     * The number of messages that can be held back at once, must be a power of two.
+     * </p>
+     */
+    private static final int WINDOW_SIZE = 64;
+
+    /**
+     * <p>
+     * The times at which the held messages arrived (in nanoseconds), indexed by tick modulo the window size.
+     * </p>
+     */
+    private long[] fArrivalTimes;
+
+    /**
+     * <p>
+     * The number of messages that were dropped because they had already been released.
+     * </p>
+     */
+    private long fDuplicateCount;
+
+    /**
+     * <p>
+     * The commands of the held messages, indexed by tick modulo the window size.
+     * </p>
+     */
+    private CommandBuffer[] fHeld;
+
+    /**
+     * <p>
+     * The number of messages currently held back.
+     * </p>
+     */
+    private int fHeldCount;
+
+    /**
+     * <p>
+     * The number of messages that arrived after they had been skipped.
+     * </p>
+     */
+    private long fLateCount;
+
+    /**
+     * <p>
+     * The maximum amount of time a message is held back while waiting for the messages before it (in nanoseconds).
+     * </p>
+     */
+    private long fMaxWait;
+
+    /**
+     * <p>
+     * The tick of the next message to be released.
+     * </p>
+     */
+    private int fNextTick;
+
+    /**
+     * <p>
+     * The commands released during a single call to {@link #offer(int, CommandBuffer)} or {@link #flushExpired()}, consecutive mouse movements are
+     * merged together.
+     * </p>
+     */
+    private CommandBuffer fReleased;
+
+    /**
+     * <p>
+     * The number of messages that were skipped because they had not arrived within the maximum wait.
+     * </p>
+     */
+    private long fSkippedCount;
+
+    /**
+     * <p>
+     * Determines whether a message has been offered to this <code>ReorderBuffer</code> yet.
+     * </p>
+     */
+    private boolean fStarted;
+
+    /**
+     * <p>
+     * Determines whether the message with each tick (modulo the window size) is being held back.
+     * </p>
+     */
+    private boolean[] fTickHeld;
+
+    /**
+     * <p>
+     * Determines whether the message with each tick (modulo the window size) that is behind the next message in order has been released, as
+     * opposed to skipped.
+     * </p>
+     */
+    private boolean[] fTickReleased;
+
+    /**
+     * <p>
+     * Creates an instance of <code>ReorderBuffer</code>.
+     * </p>
+     */
+    public ReorderBuffer()
+    {
+        fArrivalTimes = new long[WINDOW_SIZE];
+        fDuplicateCount = 0;
+        fHeld = new CommandBuffer[WINDOW_SIZE];
+        fHeldCount = 0;
+        fLateCount = 0;
+        fMaxWait = DEFAULT_MAX_WAIT * 1000000L;
+        fNextTick = 0;
+        fReleased = new CommandBuffer(true);
+        fSkippedCount = 0;
+        fStarted = false;
+        fTickHeld = new boolean[WINDOW_SIZE];
+        fTickReleased = new boolean[WINDOW_SIZE];
+    }
+
+    /**
+     * <p>
+     * Moves on to the next tick, recording whether the message with the current tick was released or skipped.
+     * </p>
+     * 
+     * @param released Determines whether the message with the current tick was released.
+     */
+    private void advance(final boolean released)
+    {
+        fTickReleased[fNextTick & (WINDOW_SIZE - 1)] = released;
+        fNextTick++;
+    }
+
+    /**
+     * <p>
+     * Releases the messages that are being held back in order (skipping any that are missing) until the next tick is the given tick.
+     * </p>
+     * 
+     * @param tick The tick to advance to.
+     */
+    private void advanceTo(final int tick)
+    {
+        while (fNextTick - tick < 0 && fHeldCount > 0)
+        {
+            boolean released = releaseHeld(fNextTick);
+            if (!released)
+            {
+                fSkippedCount++;
+            }
+            advance(released);
+        }
+        if (fNextTick - tick < 0)
+        {
+            fSkippedCount += tick - fNextTick;
+
+            // Only the last window's worth of skipped ticks are remembered.
+            if (tick - fNextTick > WINDOW_SIZE)
+            {
+                fNextTick = tick - WINDOW_SIZE;
+            }
+            while (fNextTick - tick < 0)
+            {
+                advance(false);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Releases the messages that are being held back and are next in order.
+     * </p>
+     */
+    private void drain()
+    {
+        while (fHeldCount > 0 && releaseHeld(fNextTick))
+        {
+            advance(true);
+        }
+    }
+
+    /**
+     * <p>
+     * Skips the missing messages if a message has been held back for longer than the maximum wait.
+     * </p>
+     */
+    public synchronized void flushExpired()
+    {
+        flushExpired(System.nanoTime());
+        releaseCommands();
+    }
+
+    /**
+     * <p>
+     * Skips the missing messages if a message has been held back for longer than the maximum wait.
+     * </p>
+     * 
+     * @param now The current time (in nanoseconds).
+     */
+    private void flushExpired(final long now)
+    {
+        while (fHeldCount > 0 && now - getOldestArrivalTime() > fMaxWait)
+        {
+            // Skip to the first message being held back.
+            while (!fTickHeld[fNextTick & (WINDOW_SIZE - 1)])
+            {
+                fSkippedCount++;
+                advance(false);
+            }
+            drain();
+        }
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of messages that were dropped because they had already been released.
+     * </p>
+     * 
+     * @return The number of messages that were dropped because they had already been released.
+     */
+    public synchronized long getDuplicateCount()
+    {
+        return (fDuplicateCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of messages currently held back.
+     * </p>
+     * 
+     * @return The number of messages currently held back.
+     */
+    public synchronized int getHeldCount()
+    {
+        return (fHeldCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of messages that arrived after they had been skipped.
+     * </p>
+     * 
+     * @return The number of messages that arrived after they had been skipped.
+     */
+    public synchronized long getLateCount()
+    {
+        return (fLateCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the maximum amount of time a message is held back while waiting for the messages before it (in milliseconds). The default is 50.
+     * </p>
+     * 
+     * @return The maximum amount of time a message is held back while waiting for the messages before it (in milliseconds).
+     */
+    public synchronized int getMaxWait()
+    {
+        return ((int) (fMaxWait / 1000000L));
+    }
+
+    /**
+     * <p>
+     * Retrieves the time at which the oldest message being held back arrived.
+     * </p>
+     * 
+     * @return The time at which the oldest message being held back arrived (in nanoseconds).
+     */
+    private long getOldestArrivalTime()
+    {
+        long oldest = Long.MAX_VALUE;
+        boolean found = false;
+
+        for (int index = 0; index < WINDOW_SIZE; index++)
+        {
+            if (fTickHeld[index] && (!found || fArrivalTimes[index] - oldest < 0))
+            {
+                oldest = fArrivalTimes[index];
+                found = true;
+            }
+        }
+
+        return (oldest);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of messages that were skipped because they had not arrived within the maximum wait.
+     * </p>
+     * 
+     * @return The number of messages that were skipped because they had not arrived within the maximum wait.
+     */
+    public synchronized long getSkippedCount()
+    {
+        return (fSkippedCount);
+    }
+
+    /**
+     * <p>
+     * Offers a message to this <code>ReorderBuffer</code>. The commands of the message are released straight away if it is the next message in
+     * order, along with any messages held back waiting for it. Otherwise they are copied and held back, unless the message has already been
+     * released or is already held back, in which case it is dropped.
+     * </p>
+     * 
+     * @param tick The tick the message was stamped with.
+     * @param commands The commands of the message.
+     */
+    public synchronized void offer(final int tick, final CommandBuffer commands)
+    {
+        long now = System.nanoTime();
+
+        if (!fStarted)
+        {
+            fNextTick = tick;
+            fStarted = true;
+        }
+        flushExpired(now);
+
+        if (tick - fNextTick < 0)
+        {
+            if (fNextTick - tick <= WINDOW_SIZE && fTickReleased[tick & (WINDOW_SIZE - 1)])
+            {
+                fDuplicateCount++;
+            }
+            else
+            {
+                // The message has already been skipped, better late than never.
+                fLateCount++;
+                fReleased.addAll(commands);
+                if (fNextTick - tick <= WINDOW_SIZE)
+                {
+                    fTickReleased[tick & (WINDOW_SIZE - 1)] = true;
+                }
+            }
+        }
+        else
+        {
+            // Make room for the message if it is too far ahead.
+            if (tick - fNextTick >= WINDOW_SIZE)
+            {
+                advanceTo(tick - WINDOW_SIZE + 1);
+                drain();
+            }
+
+            if (tick == fNextTick)
+            {
+                fReleased.addAll(commands);
+                advance(true);
+                drain();
+            }
+            else if (fTickHeld[tick & (WINDOW_SIZE - 1)])
+            {
+                fDuplicateCount++;
+            }
+            else
+            {
+                int slot = tick & (WINDOW_SIZE - 1);
+                if (fHeld[slot] == null)
+                {
+                    fHeld[slot] = new CommandBuffer();
+                }
+                fHeld[slot].clear();
+                fHeld[slot].addAll(commands);
+                fArrivalTimes[slot] = now;
+                fTickHeld[slot] = true;
+                fHeldCount++;
+            }
+        }
+
+        releaseCommands();
+    }
+
+    /**
+     * <p>
+     * A callback that must be implemented by subclasses to process the commands released, in the order in which they were sent.
+     * </p>
+     * 
+     * @param commands The commands released. The buffer is reused after this method returns so its content must not be retained.
+     */
+    protected abstract void onRelease(CommandBuffer commands);
+
+    /**
+     * <p>
+     * Passes the commands released to {@link #onRelease(CommandBuffer)}, if there are any.
+     * </p>
+     */
+    private void releaseCommands()
+    {
+        if (fReleased.size() > 0)
+        {
+            try
+            {
+                onRelease(fReleased);
+            }
+            finally
+            {
+                fReleased.clear();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Releases the message with the given tick if it is being held back.
+     * </p>
+     * 
+     * @param tick The tick of the message to release.
+     * 
+     * @return True if the message was being held back, false otherwise.
+     */
+    private boolean releaseHeld(final int tick)
+    {
+        int slot = tick & (WINDOW_SIZE - 1);
+        if (!fTickHeld[slot])
+        {
+            return (false);
+        }
+
+        fReleased.addAll(fHeld[slot]);
+        fTickHeld[slot] = false;
+        fHeldCount--;
+
+        return (true);
+    }
+
+    /**
+     * <p>
+     * Sets the maximum amount of time a message is held back while waiting for the messages before it (in milliseconds). The default is 50.
+     * </p>
+     * 
+     * @param maxWait The maximum amount of time a message is held back while waiting for the messages before it (in milliseconds).
+     */
+    public synchronized void setMaxWait(final int maxWait)
+    {
+        fMaxWait = maxWait * 1000000L;
+    }
+}
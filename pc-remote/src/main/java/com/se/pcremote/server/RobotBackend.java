@@ -0,0 +1,133 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.awt.MouseInfo;
+import java.awt.Point;
+import java.awt.Robot;
+import java.awt.event.InputEvent;
+
+/**
+ * <p>
+ * Injects user input using the {@link java.awt.Robot Robot} class. This works on any platform with a display but each call is injected
+ * individually (on Linux via the XTest extension) so there is nothing to flush.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class RobotBackend implements InputBackend
+{
+    /**
+     * <p>
+     * Injects the input.
+     * </p>
+     */
+    private Robot fRobot;
+
+    /**
+     * <p>
+     * Creates an instance of <code>RobotBackend</code>.
+     * </p>
+     * 
+     * @param robot Injects the input.
+     */
+    public RobotBackend(final Robot robot)
+    {
+        fRobot = robot;
+    }
+
+    @Override
+    public void dispose()
+    {}
+
+    @Override
+    public void flush()
+    {}
+
+    /**
+     * <p>
+     * Retrieves the mask of the given mouse button.
+     * </p>
+     * 
+     * @param mouseButton The mouse button.
+     * 
+     * @return The mask of the given mouse button, or 0 if it is not supported.
+     */
+    private int getButtonMask(final int mouseButton)
+    {
+        if (mouseButton == 1)
+        {
+            return (InputEvent.BUTTON1_MASK);
+        }
+        else if (mouseButton == 2)
+        {
+            return (InputEvent.BUTTON2_MASK);
+        }
+        else if (mouseButton == 3)
+        {
+            return (InputEvent.BUTTON3_MASK);
+        }
+
+        return (0);
+    }
+
+    @Override
+    public void keyPress(final int keyCode)
+    {
+        fRobot.keyPress(keyCode);
+    }
+
+    @Override
+    public void keyRelease(final int keyCode)
+    {
+        fRobot.keyRelease(keyCode);
+    }
+
+    @Override
+    public void mouseMove(final int x, final int y)
+    {
+        fRobot.mouseMove(x, y);
+    }
+
+    @Override
+    public void mouseMoveRelative(final int x, final int y)
+    {
+        Point mouseLocation = MouseInfo.getPointerInfo().getLocation();
+        fRobot.mouseMove(mouseLocation.x + x, mouseLocation.y + y);
+    }
+
+    @Override
+    public void mousePress(final int mouseButton)
+    {
+        int mask = getButtonMask(mouseButton);
+        if (mask != 0)
+        {
+            fRobot.mousePress(mask);
+        }
+    }
+
+    @Override
+    public void mouseRelease(final int mouseButton)
+    {
+        int mask = getButtonMask(mouseButton);
+        if (mask != 0)
+        {
+            fRobot.mouseRelease(mask);
+        }
+    }
+
+    @Override
+    public void mouseWheel(final int notches)
+    {
+        fRobot.mouseWheel(notches);
+    }
+}
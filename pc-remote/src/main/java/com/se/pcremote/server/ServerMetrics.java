@@ -0,0 +1,330 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+/**
+ * <p>
+ * The counts of what a {@link com.se.pcremote.server.PCRemoteServer PCRemoteServer} has received and done, kept by its
+ * {@link com.se.pcremote.server.SessionTable SessionTable} for every client listener to record into. The counts are
+ * {@link com.se.pcremote.server.StripedCounter StripedCounter}s so that the listeners of different clients do not contend with each other when
+ * recording into them.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ServerMetrics
+{
+    /**
+     * <p>
+     * The number of commands evicted from the command caches of the clients to make room for others.
+     * </p>
+     */
+    private StripedCounter fCommandCacheEvictions;
+
+    /**
+     * <p>
+     * The number of lookups in the command caches of the clients that found the command.
+     * </p>
+     */
+    private StripedCounter fCommandCacheHits;
+
+    /**
+     * <p>
+     * The number of lookups in the command caches of the clients that did not find the command.
+     * </p>
+     */
+    private StripedCounter fCommandCacheMisses;
+
+    /**
+     * <p>
+     * The number of TCP connections accepted.
+     * </p>
+     */
+    private StripedCounter fConnectionsAccepted;
+
+    /**
+     * <p>
+     * The number of TCP connections closed.
+     * </p>
+     */
+    private StripedCounter fConnectionsClosed;
+
+    /**
+     * <p>
+     * The number of commands that failed to be decoded.
+     * </p>
+     */
+    private StripedCounter fParseErrors;
+
+    /**
+     * <p>
+     * The number of sessions removed because their clients had not been heard from for longer than the session timeout.
+     * </p>
+     */
+    private StripedCounter fSessionsEvicted;
+
+    /**
+     * <p>
+     * The number of bytes of commands received via TCP.
+     * </p>
+     */
+    private StripedCounter fTcpBytes;
+
+    /**
+     * <p>
+     * The number of commands received via TCP.
+     * </p>
+     */
+    private StripedCounter fTcpCommands;
+
+    /**
+     * <p>
+     * The number of heartbeats received via TCP.
+     * </p>
+     */
+    private StripedCounter fTcpHeartbeatsReceived;
+
+    /**
+     * <p>
+     * The number of heartbeats sent via TCP.
+     * </p>
+     */
+    private StripedCounter fTcpHeartbeatsSent;
+
+    /**
+     * <p>
+     * The number of bytes of commands received via UDP.
+     * </p>
+     */
+    private StripedCounter fUdpBytes;
+
+    /**
+     * <p>
+     * The number of commands received via UDP.
+     * </p>
+     */
+    private StripedCounter fUdpCommands;
+
+    /**
+     * <p>
+     * The number of heartbeats received via UDP.
+     * </p>
+     */
+    private StripedCounter fUdpHeartbeatsReceived;
+
+    /**
+     * <p>
+     * Creates an instance of <code>ServerMetrics</code>.
+     * </p>
+     */
+    public ServerMetrics()
+    {
+        fCommandCacheEvictions = new StripedCounter();
+        fCommandCacheHits = new StripedCounter();
+        fCommandCacheMisses = new StripedCounter();
+        fConnectionsAccepted = new StripedCounter();
+        fConnectionsClosed = new StripedCounter();
+        fParseErrors = new StripedCounter();
+        fSessionsEvicted = new StripedCounter();
+        fTcpBytes = new StripedCounter();
+        fTcpCommands = new StripedCounter();
+        fTcpHeartbeatsReceived = new StripedCounter();
+        fTcpHeartbeatsSent = new StripedCounter();
+        fUdpBytes = new StripedCounter();
+        fUdpCommands = new StripedCounter();
+        fUdpHeartbeatsReceived = new StripedCounter();
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of commands evicted from the command caches of the clients to make room for others.
+     * </p>
+     * 
+     * @return The number of commands evicted from the command caches of the clients.
+     */
+    public StripedCounter getCommandCacheEvictions()
+    {
+        return (fCommandCacheEvictions);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of lookups in the command caches of the clients that found the command.
+     * </p>
+     * 
+     * @return The number of lookups in the command caches of the clients that found the command.
+     */
+    public StripedCounter getCommandCacheHits()
+    {
+        return (fCommandCacheHits);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of lookups in the command caches of the clients that did not find the command.
+     * </p>
+     * 
+     * @return The number of lookups in the command caches of the clients that did not find the command.
+     */
+    public StripedCounter getCommandCacheMisses()
+    {
+        return (fCommandCacheMisses);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of TCP connections accepted.
+     * </p>
+     * 
+     * @return The number of TCP connections accepted.
+     */
+    public StripedCounter getConnectionsAccepted()
+    {
+        return (fConnectionsAccepted);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of TCP connections currently open.
+     * </p>
+     * 
+     * @return The number of TCP connections currently open.
+     */
+    public long getConnectionsActive()
+    {
+        // Read the closed connections first so that a connection accepted and closed in between is not counted as closed but not accepted.
+        long closed = fConnectionsClosed.get();
+
+        return (Math.max(fConnectionsAccepted.get() - closed, 0));
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of TCP connections closed.
+     * </p>
+     * 
+     * @return The number of TCP connections closed.
+     */
+    public StripedCounter getConnectionsClosed()
+    {
+        return (fConnectionsClosed);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of commands that failed to be decoded.
+     * </p>
+     * 
+     * @return The number of commands that failed to be decoded.
+     */
+    public StripedCounter getParseErrors()
+    {
+        return (fParseErrors);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of sessions removed because their clients had not been heard from for longer than the session timeout (e.g. because
+     * they stopped sending heartbeats).
+     * </p>
+     * 
+     * @return The number of sessions removed because their clients had not been heard from.
+     */
+    public StripedCounter getSessionsEvicted()
+    {
+        return (fSessionsEvicted);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of bytes of commands received via TCP.
+     * </p>
+     * 
+     * @return The number of bytes of commands received via TCP.
+     */
+    public StripedCounter getTcpBytes()
+    {
+        return (fTcpBytes);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of commands received via TCP.
+     * </p>
+     * 
+     * @return The number of commands received via TCP.
+     */
+    public StripedCounter getTcpCommands()
+    {
+        return (fTcpCommands);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of heartbeats received via TCP.
+     * </p>
+     * 
+     * @return The number of heartbeats received via TCP.
+     */
+    public StripedCounter getTcpHeartbeatsReceived()
+    {
+        return (fTcpHeartbeatsReceived);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of heartbeats sent via TCP.
+     * </p>
+     * 
+     * @return The number of heartbeats sent via TCP.
+     */
+    public StripedCounter getTcpHeartbeatsSent()
+    {
+        return (fTcpHeartbeatsSent);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of bytes of commands received via UDP.
+     * </p>
+     * 
+     * @return The number of bytes of commands received via UDP.
+     */
+    public StripedCounter getUdpBytes()
+    {
+        return (fUdpBytes);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of commands received via UDP.
+     * </p>
+     * 
+     * @return The number of commands received via UDP.
+     */
+    public StripedCounter getUdpCommands()
+    {
+        return (fUdpCommands);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of heartbeats received via UDP.
+     * </p>
+     * 
+     * @return The number of heartbeats received via UDP.
+     */
+    public StripedCounter getUdpHeartbeatsReceived()
+    {
+        return (fUdpHeartbeatsReceived);
+    }
+}
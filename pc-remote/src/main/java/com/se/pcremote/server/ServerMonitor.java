@@ -0,0 +1,423 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * Exposes the live metrics of a {@link com.se.pcremote.server.PCRemoteServer PCRemoteServer} via JMX. The server registers one with the platform
+ * MBean server when it is started, named after the port it listens on (see {@link #getObjectName(int)}), and unregisters it when it is stopped.
+ * </p>
+ * 
+ * <p>
+ * The counts are read from the {@link com.se.pcremote.server.ServerMetrics ServerMetrics} that the client listeners record into, so reading them
+ * does not hold up the listeners. The rest are read from the {@link com.se.pcremote.server.SessionTable SessionTable} and the
+ * {@link com.se.pcremote.server.InputScheduler InputScheduler}, briefly taking their locks, and from the
+ * {@link com.se.pcremote.server.InputJournal InputJournal} of the {@link com.se.pcremote.server.CommandExecuter CommandExecuter} (if it has one).
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ServerMonitor implements ServerMonitorMXBean
+{
+    /**
+     * <p>
+     * The domain of the names of the <code>ServerMonitor</code>s.
+     * </p>
+     */
+    public static final String DOMAIN = "com.se.pcremote";
+
+    /**
+     * <p>
+     * The minimum time the number of commands received per second is averaged over (in nanoseconds).
+     * </p>
+     */
+    private static final long RATE_INTERVAL = 1000000000L;
+
+    /**
+     * <p>
+     * Creates the name a <code>ServerMonitor</code> is registered with.
+     * </p>
+     * 
+     * @param port The port on which the server listens.
+     * 
+     * @return The name a <code>ServerMonitor</code> is registered with.
+     * 
+     * @throws JMException Thrown if the name is not valid.
+     */
+    public static ObjectName getObjectName(final int port) throws JMException
+    {
+        return (new ObjectName(DOMAIN + ":type=PCRemoteServer,port=" + port));
+    }
+
+    /**
+     * <p>
+     * Executes the commands of all of the clients.
+     * </p>
+     */
+    private CommandExecuter fCommandExecuter;
+
+    /**
+     * <p>
+     * The number of commands received per second, as of the last time it was calculated.
+     * </p>
+     */
+    private double fCommandsPerSecond;
+
+    /**
+     * <p>
+     * Queues the commands of all of the clients for injection.
+     * </p>
+     */
+    private InputScheduler fInputScheduler;
+
+    /**
+     * <p>
+     * Logs messages associated with this class.
+     * </p>
+     */
+    private Logger fLogger;
+
+    /**
+     * <p>
+     * The counts recorded by the client listeners.
+     * </p>
+     */
+    private ServerMetrics fMetrics;
+
+    /**
+     * <p>
+     * The name this <code>ServerMonitor</code> is registered with, or null if it is not registered.
+     * </p>
+     */
+    private ObjectName fObjectName;
+
+    /**
+     * <p>
+     * The number of commands received as of the last time the number received per second was calculated.
+     * </p>
+     */
+    private long fRateCount;
+
+    /**
+     * <p>
+     * The time at which the number of commands received per second was last calculated (in nanoseconds).
+     * </p>
+     */
+    private long fRateTime;
+
+    /**
+     * <p>
+     * The sessions of the clients that stamp their messages.
+     * </p>
+     */
+    private SessionTable fSessionTable;
+
+    /**
+     * <p>
+     * Creates an instance of <code>ServerMonitor</code>.
+     * </p>
+     * 
+     * @param sessionTable The sessions of the clients that stamp their messages.
+     * @param inputScheduler Queues the commands of all of the clients for injection.
+     * @param commandExecuter Executes the commands of all of the clients.
+     */
+    public ServerMonitor(final SessionTable sessionTable, final InputScheduler inputScheduler, final CommandExecuter commandExecuter)
+    {
+        fSessionTable = sessionTable;
+        fInputScheduler = inputScheduler;
+        fCommandExecuter = commandExecuter;
+
+        fCommandsPerSecond = 0;
+        fLogger = Logger.getLogger(getClass());
+        fMetrics = sessionTable.getMetrics();
+        fObjectName = null;
+        fRateCount = getCommandsReceived();
+        fRateTime = System.nanoTime();
+    }
+
+    @Override
+    public int dumpTrace(final String fileName) throws IOException
+    {
+        return (TraceBuffer.getInstance().dump(new File(fileName)));
+    }
+
+    @Override
+    public List<ClientStatistics> getClients()
+    {
+        long now = System.nanoTime();
+        List<ClientStatistics> clients = new ArrayList<ClientStatistics>();
+        for (ClientSession session : fSessionTable.getSessions())
+        {
+            RateLimiter rateLimiter = session.getRateLimiter();
+            clients.add(new ClientStatistics(session.getId(), session.getCommandCount(), rateLimiter.getCoalescedCount(),
+                    rateLimiter.getDroppedCount(), fInputScheduler.getInjectionTime(session.getId()) / 1000,
+                    fInputScheduler.getInjectionShare(session.getId()), (now - session.getLastActiveTime()) / 1000000));
+        }
+
+        return (clients);
+    }
+
+    @Override
+    public long getCommandCacheEvictions()
+    {
+        return (fMetrics.getCommandCacheEvictions().get());
+    }
+
+    @Override
+    public double getCommandCacheHitRate()
+    {
+        // Read the misses first so that a lookup that hits in between is not counted as a hit without its lookup being counted.
+        long misses = fMetrics.getCommandCacheMisses().get();
+        long hits = fMetrics.getCommandCacheHits().get();
+        if (hits + misses == 0)
+        {
+            return (0);
+        }
+
+        return ((double) hits / (hits + misses));
+    }
+
+    @Override
+    public long getCommandCacheHits()
+    {
+        return (fMetrics.getCommandCacheHits().get());
+    }
+
+    @Override
+    public long getCommandCacheMisses()
+    {
+        return (fMetrics.getCommandCacheMisses().get());
+    }
+
+    @Override
+    public synchronized double getCommandsPerSecond()
+    {
+        long now = System.nanoTime();
+        if (now - fRateTime >= RATE_INTERVAL)
+        {
+            long count = getCommandsReceived();
+            fCommandsPerSecond = (count - fRateCount) * 1000000000.0 / (now - fRateTime);
+            fRateCount = count;
+            fRateTime = now;
+        }
+
+        return (fCommandsPerSecond);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of commands received via both TCP and UDP.
+     * </p>
+     * 
+     * @return The number of commands received via both TCP and UDP.
+     */
+    private long getCommandsReceived()
+    {
+        return (fMetrics.getTcpCommands().get() + fMetrics.getUdpCommands().get());
+    }
+
+    @Override
+    public long getConnectionsAccepted()
+    {
+        return (fMetrics.getConnectionsAccepted().get());
+    }
+
+    @Override
+    public long getConnectionsActive()
+    {
+        return (fMetrics.getConnectionsActive());
+    }
+
+    @Override
+    public long getExpiredEvents()
+    {
+        return (fInputScheduler.getExpiredCount());
+    }
+
+    @Override
+    public long getInjectedBatches()
+    {
+        return (fInputScheduler.getInjectionLatencies().getCount());
+    }
+
+    @Override
+    public long getInjectionLatencyMax()
+    {
+        return (fInputScheduler.getInjectionLatencies().getMax() / 1000);
+    }
+
+    @Override
+    public long getInjectionLatencyP50()
+    {
+        return (fInputScheduler.getInjectionLatencies().getLatencyAtPercentile(50) / 1000);
+    }
+
+    @Override
+    public long getInjectionLatencyP90()
+    {
+        return (fInputScheduler.getInjectionLatencies().getLatencyAtPercentile(90) / 1000);
+    }
+
+    @Override
+    public long getInjectionLatencyP99()
+    {
+        return (fInputScheduler.getInjectionLatencies().getLatencyAtPercentile(99) / 1000);
+    }
+
+    @Override
+    public long getInjectionLatencyP999()
+    {
+        return (fInputScheduler.getInjectionLatencies().getLatencyAtPercentile(99.9) / 1000);
+    }
+
+    @Override
+    public long getJournalRecordsDropped()
+    {
+        InputJournal inputJournal = fCommandExecuter.getInputJournal();
+        if (inputJournal == null)
+        {
+            return (0);
+        }
+
+        return (inputJournal.getDroppedCount());
+    }
+
+    @Override
+    public long getParseErrors()
+    {
+        return (fMetrics.getParseErrors().get());
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        return (fInputScheduler.getQueuedCount());
+    }
+
+    @Override
+    public int getSessionsActive()
+    {
+        return (fSessionTable.getSessions().size());
+    }
+
+    @Override
+    public long getSessionsEvicted()
+    {
+        return (fMetrics.getSessionsEvicted().get());
+    }
+
+    @Override
+    public long getTcpBytesReceived()
+    {
+        return (fMetrics.getTcpBytes().get());
+    }
+
+    @Override
+    public long getTcpCommandsReceived()
+    {
+        return (fMetrics.getTcpCommands().get());
+    }
+
+    @Override
+    public long getTcpHeartbeatsReceived()
+    {
+        return (fMetrics.getTcpHeartbeatsReceived().get());
+    }
+
+    @Override
+    public long getTcpHeartbeatsSent()
+    {
+        return (fMetrics.getTcpHeartbeatsSent().get());
+    }
+
+    @Override
+    public long getUdpBytesReceived()
+    {
+        return (fMetrics.getUdpBytes().get());
+    }
+
+    @Override
+    public long getUdpCommandsReceived()
+    {
+        return (fMetrics.getUdpCommands().get());
+    }
+
+    @Override
+    public long getUdpHeartbeatsReceived()
+    {
+        return (fMetrics.getUdpHeartbeatsReceived().get());
+    }
+
+    /**
+     * <p>
+     * Registers this <code>ServerMonitor</code> with the platform MBean server. A failure to register is logged rather than propagated, the
+     * server runs just as well without it.
+     * </p>
+     * 
+     * @param port The port on which the server listens.
+     */
+    public void register(final int port)
+    {
+        try
+        {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName(port);
+            mBeanServer.registerMBean(this, objectName);
+            fObjectName = objectName;
+        }
+        catch (JMException e)
+        {
+            fLogger.warn("Failed to register the server monitor.", e);
+        }
+    }
+
+    @Override
+    public void resetInjectionLatencies()
+    {
+        fInputScheduler.getInjectionLatencies().reset();
+    }
+
+    /**
+     * <p>
+     * Unregisters this <code>ServerMonitor</code> from the platform MBean server, if it is registered.
+     * </p>
+     */
+    public void unregister()
+    {
+        if (fObjectName == null)
+        {
+            return;
+        }
+
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(fObjectName);
+        }
+        catch (JMException e)
+        {
+            fLogger.warn("Failed to unregister the server monitor.", e);
+        }
+        fObjectName = null;
+    }
+}
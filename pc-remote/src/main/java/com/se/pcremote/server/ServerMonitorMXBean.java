@@ -0,0 +1,292 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * <p>
+ * The management interface of a {@link com.se.pcremote.server.PCRemoteServer PCRemoteServer}, through which its live metrics can be watched with
+ * any JMX console (e.g. JConsole or VisualVM). The counts are since the server was started.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public interface ServerMonitorMXBean
+{
+    /**
+     * <p>
+     * Writes the records in the trace of what the server has recently done to a file (see {@link com.se.pcremote.server.TraceBuffer TraceBuffer}).
+     * </p>
+     * 
+     * @param fileName The path of the file to write the records to (on the machine the server is running on), it is replaced if it exists.
+     * 
+     * @return The number of records written.
+     * 
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    int dumpTrace(String fileName) throws IOException;
+
+    /**
+     * <p>
+     * Retrieves the statistics of each client that stamps its messages.
+     * </p>
+     * 
+     * @return The statistics of each client that stamps its messages, in no particular order.
+     */
+    List<ClientStatistics> getClients();
+
+    /**
+     * <p>
+     * Retrieves the number of commands evicted from the command caches of the clients to make room for others.
+     * </p>
+     * 
+     * @return The number of commands evicted from the command caches of the clients.
+     */
+    long getCommandCacheEvictions();
+
+    /**
+     * <p>
+     * Retrieves the proportion of lookups in the command caches of the clients that found the command.
+     * </p>
+     * 
+     * @return The proportion of lookups in the command caches of the clients that found the command, from 0 to 1 (0 if there have been no
+     * lookups).
+     */
+    double getCommandCacheHitRate();
+
+    /**
+     * <p>
+     * Retrieves the number of lookups in the command caches of the clients that found the command.
+     * </p>
+     * 
+     * @return The number of lookups in the command caches of the clients that found the command.
+     */
+    long getCommandCacheHits();
+
+    /**
+     * <p>
+     * Retrieves the number of lookups in the command caches of the clients that did not find the command.
+     * </p>
+     * 
+     * @return The number of lookups in the command caches of the clients that did not find the command.
+     */
+    long getCommandCacheMisses();
+
+    /**
+     * <p>
+     * Retrieves the number of commands received per second (via both TCP and UDP), averaged over at least a second.
+     * </p>
+     * 
+     * @return The number of commands received per second.
+     */
+    double getCommandsPerSecond();
+
+    /**
+     * <p>
+     * Retrieves the number of TCP connections accepted.
+     * </p>
+     * 
+     * @return The number of TCP connections accepted.
+     */
+    long getConnectionsAccepted();
+
+    /**
+     * <p>
+     * Retrieves the number of TCP connections currently open.
+     * </p>
+     * 
+     * @return The number of TCP connections currently open.
+     */
+    long getConnectionsActive();
+
+    /**
+     * <p>
+     * Retrieves the number of continuous events (pointer moves and scrolls) dropped because they were older than the deadline when they were
+     * dequeued.
+     * </p>
+     * 
+     * @return The number of continuous events dropped because they were older than the deadline.
+     */
+    long getExpiredEvents();
+
+    /**
+     * <p>
+     * Retrieves the number of batches of commands injected.
+     * </p>
+     * 
+     * @return The number of batches of commands injected.
+     */
+    long getInjectedBatches();
+
+    /**
+     * <p>
+     * Retrieves the longest time from the queueing of a batch of commands to the end of its injection.
+     * </p>
+     * 
+     * @return The longest time from the queueing of a batch of commands to the end of its injection (in microseconds).
+     */
+    long getInjectionLatencyMax();
+
+    /**
+     * <p>
+     * Retrieves the median time from the queueing of a batch of commands to the end of its injection.
+     * </p>
+     * 
+     * @return The median time from the queueing of a batch of commands to the end of its injection (in microseconds).
+     */
+    long getInjectionLatencyP50();
+
+    /**
+     * <p>
+     * Retrieves the 90th percentile of the time from the queueing of a batch of commands to the end of its injection.
+     * </p>
+     * 
+     * @return The 90th percentile of the time from the queueing of a batch of commands to the end of its injection (in microseconds).
+     */
+    long getInjectionLatencyP90();
+
+    /**
+     * <p>
+     * Retrieves the 99th percentile of the time from the queueing of a batch of commands to the end of its injection.
+     * </p>
+     * 
+     * @return The 99th percentile of the time from the queueing of a batch of commands to the end of its injection (in microseconds).
+     */
+    long getInjectionLatencyP99();
+
+    /**
+     * <p>
+     * Retrieves the 99.9th percentile of the time from the queueing of a batch of commands to the end of its injection.
+     * </p>
+     * 
+     * @return The 99.9th percentile of the time from the queueing of a batch of commands to the end of its injection (in microseconds).
+     */
+    long getInjectionLatencyP999();
+
+    /**
+     * <p>
+     * Retrieves the number of records dropped from the input journal (overwritten by newer records) because it was full.
+     * </p>
+     * 
+     * @return The number of records dropped from the input journal, or 0 if the commands executed are not journalled.
+     */
+    long getJournalRecordsDropped();
+
+    /**
+     * <p>
+     * Retrieves the number of commands that failed to be decoded.
+     * </p>
+     * 
+     * @return The number of commands that failed to be decoded.
+     */
+    long getParseErrors();
+
+    /**
+     * <p>
+     * Retrieves the number of discrete events (key and mouse button events) waiting to be injected.
+     * </p>
+     * 
+     * @return The number of discrete events waiting to be injected.
+     */
+    int getQueueDepth();
+
+    /**
+     * <p>
+     * Retrieves the number of clients that stamp their messages that currently have a session.
+     * </p>
+     * 
+     * @return The number of clients that stamp their messages that currently have a session.
+     */
+    int getSessionsActive();
+
+    /**
+     * <p>
+     * Retrieves the number of sessions evicted because their clients had not been heard from (not even a heartbeat) for longer than the session
+     * timeout.
+     * </p>
+     * 
+     * @return The number of sessions evicted.
+     */
+    long getSessionsEvicted();
+
+    /**
+     * <p>
+     * Retrieves the number of bytes received via TCP.
+     * </p>
+     * 
+     * @return The number of bytes received via TCP.
+     */
+    long getTcpBytesReceived();
+
+    /**
+     * <p>
+     * Retrieves the number of commands received via TCP.
+     * </p>
+     * 
+     * @return The number of commands received via TCP.
+     */
+    long getTcpCommandsReceived();
+
+    /**
+     * <p>
+     * Retrieves the number of heartbeats received via TCP.
+     * </p>
+     * 
+     * @return The number of heartbeats received via TCP.
+     */
+    long getTcpHeartbeatsReceived();
+
+    /**
+     * <p>
+     * Retrieves the number of heartbeats sent via TCP.
+     * </p>
+     * 
+     * @return The number of heartbeats sent via TCP.
+     */
+    long getTcpHeartbeatsSent();
+
+    /**
+     * <p>
+     * Retrieves the number of bytes received via UDP.
+     * </p>
+     * 
+     * @return The number of bytes received via UDP.
+     */
+    long getUdpBytesReceived();
+
+    /**
+     * <p>
+     * Retrieves the number of commands received via UDP.
+     * </p>
+     * 
+     * @return The number of commands received via UDP.
+     */
+    long getUdpCommandsReceived();
+
+    /**
+     * <p>
+     * Retrieves the number of heartbeats received via UDP.
+     * </p>
+     * 
+     * @return The number of heartbeats received via UDP.
+     */
+    long getUdpHeartbeatsReceived();
+
+    /**
+     * <p>
+     * Forgets the injection latencies recorded so far, so that those recorded from now on can be watched on their own.
+     * </p>
+     */
+    void resetInjectionLatencies();
+}
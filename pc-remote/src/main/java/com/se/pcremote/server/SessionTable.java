@@ -0,0 +1,541 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * The {@link com.se.pcremote.server.ClientSession ClientSession}s of the clients that stamp their messages, indexed by the identifier they stamp
+ * them with. This allows the messages a client sends via TCP and UDP to be executed in the order in which they were sent.
+ * </p>
+ * 
+ * <p>
+ * Clients stamp their messages with positive identifiers. The session of each connection whose messages are not stamped is given a negative
+ * identifier of its own, so that the {@link com.se.pcremote.server.InputScheduler InputScheduler} arbitrates between connections as it does
+ * between clients that stamp their messages.
+ * </p>
+ * 
+ * <p>
+ * The limits on the rate at which clients can inject input (see {@link com.se.pcremote.server.RateLimiter RateLimiter}) are set here and apply to
+ * every session.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class SessionTable
+{
+    /**
+     * <p>
+     * Periodically releases the messages that have been held back for too long by the {@link ClientSession}s and removes the sessions of the
+     * clients that have not been heard from for longer than the session timeout.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    public class Maintenance implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            fLogger.debug("Session maintenance started.");
+
+            try
+            {
+                while (!Thread.currentThread().isInterrupted())
+                {
+                    Thread.sleep(MAINTENANCE_INTERVAL);
+
+                    long now = System.nanoTime();
+                    for (ClientSession session : getSessions())
+                    {
+                        // A failure to maintain one session must not stop the maintenance of the others, or of this session next time.
+                        try
+                        {
+                            session.getReorderBuffer().flushExpired();
+                            session.releaseThrottled();
+
+                            // Forget the clients that have gone away, releasing anything they held down.
+                            if (now - session.getLastActiveTime() > fSessionTimeout * 1000000L)
+                            {
+                                if (fLogger.isDebugEnabled())
+                                {
+                                    fLogger.debug("Session " + session.getId() + " timed out.");
+                                }
+                                timeOut(session);
+                                fMetrics.getSessionsEvicted().increment();
+                            }
+                        }
+                        catch (Exception e)
+                        {
+                            fLogger.error("Failed to maintain session " + session.getId() + ".", e);
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            fLogger.debug("Session maintenance stopped.");
+        }
+    }
+
+    /**
+     * <p>
+     * The time interval between maintenance runs (in milliseconds).
+     * </p>
+     */
+    private static final int MAINTENANCE_INTERVAL = 10;
+
+    /**
+     * <p>
+     * The default time after which the session of a client that has not been heard from is removed (in milliseconds).
+     * </p>
+     */
+    private static final int DEFAULT_SESSION_TIMEOUT = 30000;
+
+    /**
+     * <p>
+     * The maximum number of sessions that timed out that are remembered, so that their clients' macros survive a period of idleness.
+     * </p>
+     */
+    private static final int MAX_TIMED_OUT_SESSIONS = 64;
+
+    /**
+     * <p>
+     * Executes the commands.
+     * </p>
+     */
+    private CommandExecuter fCommandExecuter;
+
+    /**
+     * <p>
+     * Queues the commands for injection, or null if they are executed straight away.
+     * </p>
+     */
+    private InputScheduler fInputScheduler;
+
+    /**
+     * <p>
+     * The number of key events a client can send per second, or 0 if it is not limited.
+     * </p>
+     */
+    private volatile int fKeyRate;
+
+    /**
+     * <p>
+     * Logs messages associated with this class.
+     * </p>
+     */
+    private Logger fLogger;
+
+    /**
+     * <p>
+     * The thread on which the {@link Maintenance} is running.
+     * </p>
+     */
+    private Thread fMaintenanceThread;
+
+    /**
+     * <p>
+     * The metrics the clients of the sessions record what they receive in.
+     * </p>
+     */
+    private ServerMetrics fMetrics;
+
+    /**
+     * <p>
+     * The identifier of the next session created for a connection, counting down from -1 so that it does not collide with the identifiers the
+     * clients stamp their messages with.
+     * </p>
+     */
+    private int fNextConnectionId;
+
+    /**
+     * <p>
+     * The number of pointer events a client can send per second, or 0 if it is not limited.
+     * </p>
+     */
+    private volatile int fPointerRate;
+
+    /**
+     * <p>
+     * The sessions of the clients that stamp their messages, indexed by the identifier they stamp them with.
+     * </p>
+     */
+    private Map<Integer, ClientSession> fSessions;
+
+    /**
+     * <p>
+     * The time after which the session of a client that has not been heard from is removed (in milliseconds).
+     * </p>
+     */
+    private volatile int fSessionTimeout;
+
+    /**
+     * <p>
+     * The sessions that timed out (most recent last), indexed by the identifier their clients stamp their messages with. A session that is
+     * created for the same client inherits the macros from them.
+     * </p>
+     */
+    private Map<Integer, ClientSession> fTimedOutSessions;
+
+    /**
+     * <p>
+     * The number of events a client can send per second, or 0 if it is not limited.
+     * </p>
+     */
+    private volatile int fTotalRate;
+
+    /**
+     * <p>
+     * Creates an instance of <code>SessionTable</code>.
+     * </p>
+     * 
+     * @param commandExecuter Executes the commands.
+     */
+    public SessionTable(final CommandExecuter commandExecuter)
+    {
+        this(commandExecuter, null);
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>SessionTable</code> whose sessions queue their commands for injection.
+     * </p>
+     * 
+     * @param commandExecuter Executes the commands.
+     * @param inputScheduler Queues the commands for injection, or null if they are executed straight away.
+     */
+    public SessionTable(final CommandExecuter commandExecuter, final InputScheduler inputScheduler)
+    {
+        fCommandExecuter = commandExecuter;
+        fInputScheduler = inputScheduler;
+
+        fKeyRate = RateLimiter.DEFAULT_KEY_RATE;
+        fLogger = Logger.getLogger(getClass());
+        fMaintenanceThread = null;
+        fMetrics = new ServerMetrics();
+        fNextConnectionId = -1;
+        fPointerRate = RateLimiter.DEFAULT_POINTER_RATE;
+        fSessions = new HashMap<Integer, ClientSession>();
+        fSessionTimeout = DEFAULT_SESSION_TIMEOUT;
+        fTimedOutSessions = new LinkedHashMap<Integer, ClientSession>()
+        {
+            /**
+             * Serialisation version.
+             */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Integer, ClientSession> eldest)
+            {
+                return (size() > MAX_TIMED_OUT_SESSIONS);
+            }
+        };
+        fTotalRate = RateLimiter.DEFAULT_TOTAL_RATE;
+    }
+
+    /**
+     * <p>
+     * Creates a session for a client that is not (yet) known to stamp its messages. The session is not added to this <code>SessionTable</code>.
+     * Each session created is given an identifier of its own (a negative one).
+     * </p>
+     * 
+     * @return The new session.
+     */
+    public ClientSession createSession()
+    {
+        int id;
+        synchronized (this)
+        {
+            id = fNextConnectionId;
+            fNextConnectionId--;
+            if (fNextConnectionId == Integer.MIN_VALUE)
+            {
+                fNextConnectionId = -1;
+            }
+        }
+
+        return (newSession(id));
+    }
+
+    /**
+     * <p>
+     * Executes the given decoded commands on behalf of a client. Commands that follow a <code>clock(session,tick);</code> command are offered to
+     * the session with that identifier to be executed in the order the client sent them, commands that are not stamped are executed straight away
+     * by the given session.
+     * </p>
+     * 
+     * @param commands The commands to execute.
+     * @param session The session that executes the commands that are not stamped.
+     * @param segment A buffer to use while splitting the commands into messages, its content is discarded.
+     * 
+     * @return The session that the last of the commands were dispatched to.
+     */
+    public ClientSession dispatch(final CommandBuffer commands, final ClientSession session, final CommandBuffer segment)
+    {
+        ClientSession target = session;
+        boolean stamped = false;
+        int tick = 0;
+
+        segment.clear();
+        for (int index = 0; index < commands.size(); index++)
+        {
+            if (commands.getOpcode(index) == Opcode.CLOCK)
+            {
+                dispatchSegment(segment, target, stamped, tick);
+
+                target = getSession(commands.getArgument0(index));
+                stamped = true;
+                tick = commands.getArgument1(index);
+            }
+            else
+            {
+                segment.add(commands.getOpcode(index), commands.getArgument0(index), commands.getArgument1(index));
+            }
+        }
+        dispatchSegment(segment, target, stamped, tick);
+
+        return (target);
+    }
+
+    /**
+     * <p>
+     * Executes the commands of a single message.
+     * </p>
+     * 
+     * @param segment The commands of the message, the buffer is cleared afterwards.
+     * @param session The session that executes the commands.
+     * @param stamped Determines whether the message was stamped.
+     * @param tick The tick the message was stamped with.
+     */
+    private void dispatchSegment(final CommandBuffer segment, final ClientSession session, final boolean stamped, final int tick)
+    {
+        if (stamped)
+        {
+            session.offer(tick, segment);
+        }
+        else
+        {
+            session.execute(segment);
+        }
+        segment.clear();
+    }
+
+    /**
+     * <p>
+     * Stops the maintenance of the sessions and removes them all, releasing anything the clients held down.
+     * </p>
+     */
+    public void dispose()
+    {
+        if (fMaintenanceThread != null && fMaintenanceThread.isAlive())
+        {
+            fMaintenanceThread.interrupt();
+        }
+
+        for (ClientSession session : getSessions())
+        {
+            removeSession(session.getId());
+        }
+    }
+
+    /**
+     * <p>
+     * Retrieves the metrics the clients of the sessions record what they receive in.
+     * </p>
+     * 
+     * @return The metrics the clients of the sessions record what they receive in.
+     */
+    public ServerMetrics getMetrics()
+    {
+        return (fMetrics);
+    }
+
+    /**
+     * <p>
+     * Retrieves the session with the given identifier, creating it if it does not exist. A session that is created for a client whose session
+     * timed out inherits the macros the client registered.
+     * </p>
+     * 
+     * @param id The identifier the client stamps its messages with.
+     * 
+     * @return The session with the given identifier.
+     */
+    public synchronized ClientSession getSession(final int id)
+    {
+        ClientSession session = fSessions.get(id);
+        if (session == null)
+        {
+            session = newSession(id);
+            fSessions.put(id, session);
+
+            ClientSession timedOut = fTimedOutSessions.remove(id);
+            if (timedOut != null)
+            {
+                session.inheritMacros(timedOut);
+            }
+
+            if (fLogger.isDebugEnabled())
+            {
+                fLogger.debug("Created session " + id);
+            }
+        }
+
+        return (session);
+    }
+
+    /**
+     * <p>
+     * Retrieves a snapshot of the sessions in this <code>SessionTable</code>.
+     * </p>
+     * 
+     * @return A snapshot of the sessions in this <code>SessionTable</code>.
+     */
+    public synchronized List<ClientSession> getSessions()
+    {
+        return (new ArrayList<ClientSession>(fSessions.values()));
+    }
+
+    /**
+     * <p>
+     * Retrieves the time after which the session of a client that has not been heard from is removed. The default is 30000.
+     * </p>
+     * 
+     * @return The time after which the session of a client that has not been heard from is removed (in milliseconds).
+     */
+    public int getSessionTimeout()
+    {
+        return (fSessionTimeout);
+    }
+
+    /**
+     * <p>
+     * Creates a session, applying the limits on the rate at which clients can inject input to it.
+     * </p>
+     * 
+     * @param id The identifier the client stamps its messages with, or the (negative) identifier of its connection if the client does not stamp
+     * its messages.
+     * 
+     * @return The new session.
+     */
+    private ClientSession newSession(final int id)
+    {
+        ClientSession session = new ClientSession(id, fCommandExecuter, fInputScheduler);
+        session.getRateLimiter().setRates(fPointerRate, fKeyRate, fTotalRate);
+
+        return (session);
+    }
+
+    /**
+     * <p>
+     * Removes the session with the given identifier (if it exists), releasing anything the client held down and forgetting the macros it
+     * registered.
+     * </p>
+     * 
+     * @param id The identifier the client stamps its messages with.
+     */
+    public void removeSession(final int id)
+    {
+        ClientSession session;
+        synchronized (this)
+        {
+            session = fSessions.remove(id);
+            fTimedOutSessions.remove(id);
+        }
+
+        if (session != null)
+        {
+            session.dispose();
+        }
+    }
+
+    /**
+     * <p>
+     * Sets the limits on the rate at which clients can inject input, for the sessions in this <code>SessionTable</code> and those created from now
+     * on. The sessions of clients that do not stamp their messages are not in this <code>SessionTable</code> so they keep the limits they were
+     * created with. The defaults are 1000 pointer events, 1000 key events and 2000 events in total per second.
+     * </p>
+     * 
+     * @param pointerRate The number of pointer events a client can send per second, or 0 if it is not limited.
+     * @param keyRate The number of key events a client can send per second, or 0 if it is not limited.
+     * @param totalRate The number of events a client can send per second, or 0 if it is not limited.
+     */
+    public void setRates(final int pointerRate, final int keyRate, final int totalRate)
+    {
+        fKeyRate = keyRate;
+        fPointerRate = pointerRate;
+        fTotalRate = totalRate;
+
+        for (ClientSession session : getSessions())
+        {
+            synchronized (session)
+            {
+                session.getRateLimiter().setRates(pointerRate, keyRate, totalRate);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Sets the time after which the session of a client that has not been heard from is removed. The default is 30000.
+     * </p>
+     * 
+     * @param sessionTimeout The time after which the session of a client that has not been heard from is removed (in milliseconds).
+     */
+    public void setSessionTimeout(final int sessionTimeout)
+    {
+        fSessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * <p>
+     * Starts the maintenance of the sessions (releasing messages that have been held back for too long) in a separate thread.
+     * </p>
+     */
+    public void start()
+    {
+        if (fMaintenanceThread == null || !fMaintenanceThread.isAlive())
+        {
+            fMaintenanceThread = new Thread(new Maintenance());
+            fMaintenanceThread.setDaemon(true);
+            fMaintenanceThread.start();
+        }
+    }
+
+    /**
+     * <p>
+     * Removes the given session because its client has not been heard from, releasing anything the client held down. The session is remembered
+     * so that the macros the client registered are not lost if it is heard from again.
+     * </p>
+     * 
+     * @param session The session to remove.
+     */
+    private void timeOut(final ClientSession session)
+    {
+        removeSession(session.getId());
+
+        synchronized (this)
+        {
+            fTimedOutSessions.put(session.getId(), session);
+        }
+    }
+}
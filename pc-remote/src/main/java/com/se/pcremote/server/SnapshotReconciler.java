@@ -0,0 +1,316 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.se.pcremote.InputSnapshot;
+
+/**
+ * <p>
+ * Reconciles the snapshots of a single client's input state (see {@link com.se.pcremote.InputSnapshot InputSnapshot}) against the state the
+ * server has already applied on its behalf, producing the commands needed to bring the two into line.
+ * </p>
+ * 
+ * <p>
+ * The pointer movement of every snapshot that has not been applied yet (i.e. the movement of any lost snapshots that is repeated in this one) is
+ * applied first, followed by the presses and releases of the keys and mouse buttons. If an input has been pressed more times than the server has
+ * seen (because the snapshots containing the presses were lost) the missing presses are replayed as complete presses and releases so that no clicks
+ * are lost. An input that is pressed on the server but missing from the snapshot is released so that it does not stick.
+ * </p>
+ * 
+ * <p>
+ * A <code>SnapshotReconciler</code> is not thread safe, it is only expected to be used by the thread receiving the snapshots.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class SnapshotReconciler
+{
+    /**
+     * <p>
+     * A key or mouse button, as the server has applied it.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    private static class Input
+    {
+        /**
+         * <p>
+         * Determines whether the input is a mouse button rather than a key.
+         * </p>
+         */
+        private boolean fButton;
+
+        /**
+         * <p>
+         * The key code or mouse button.
+         * </p>
+         */
+        private int fCode;
+
+        /**
+         * <p>
+         * Determines whether the input is pressed.
+         * </p>
+         */
+        private boolean fPressed;
+
+        /**
+         * <p>
+         * The number of times the input has been pressed, modulo 256.
+         * </p>
+         */
+        private byte fPressCount;
+
+        /**
+         * <p>
+         * Determines whether the input was in the snapshot being reconciled.
+         * </p>
+         */
+        private boolean fSeen;
+    }
+
+    /**
+     * <p>
+     * The maximum number of missing presses of a single input that are replayed, any more are assumed to be the result of the client and server
+     * losing track of each other.
+     * </p>
+     */
+    private static final int MAX_REPLAYED_PRESSES = 4;
+
+    /**
+     * <p>
+     * The keys and mouse buttons that were in the latest snapshot applied.
+     * </p>
+     */
+    private List<Input> fInputs;
+
+    /**
+     * <p>
+     * The sequence number of the latest snapshot applied.
+     * </p>
+     */
+    private int fLastApplied;
+
+    /**
+     * <p>
+     * Determines whether a snapshot has been applied yet.
+     * </p>
+     */
+    private boolean fStarted;
+
+    /**
+     * <p>
+     * Creates an instance of <code>SnapshotReconciler</code>.
+     * </p>
+     */
+    public SnapshotReconciler()
+    {
+        fInputs = new ArrayList<Input>();
+        fLastApplied = 0;
+        fStarted = false;
+    }
+
+    /**
+     * <p>
+     * Adds the commands that press or release the given input.
+     * </p>
+     * 
+     * @param input The input.
+     * @param pressed Determines whether to press the input rather than release it.
+     * @param commands The buffer to add the commands to.
+     */
+    private void addPress(final Input input, final boolean pressed, final CommandBuffer commands)
+    {
+        if (input.fButton)
+        {
+            commands.add(pressed ? Opcode.MOUSE_PRESS : Opcode.MOUSE_RELEASE, input.fCode, 0);
+        }
+        else
+        {
+            commands.add(pressed ? Opcode.KEY_PRESS : Opcode.KEY_RELEASE, input.fCode, 0);
+        }
+        input.fPressed = pressed;
+    }
+
+    /**
+     * <p>
+     * Retrieves the sequence number of the latest snapshot applied.
+     * </p>
+     * 
+     * @return The sequence number of the latest snapshot applied.
+     */
+    public int getLastApplied()
+    {
+        return (fLastApplied);
+    }
+
+    /**
+     * <p>
+     * Retrieves the given input, adding it if it was not in the latest snapshot applied.
+     * </p>
+     * 
+     * @param code The key code or mouse button.
+     * @param button Determines whether the input is a mouse button rather than a key.
+     * @param pressCount The number of times the client has pressed the input, modulo 256.
+     * 
+     * @return The input.
+     */
+    private Input getInput(final int code, final boolean button, final byte pressCount)
+    {
+        for (Input input : fInputs)
+        {
+            if (input.fCode == code && input.fButton == button)
+            {
+                return (input);
+            }
+        }
+
+        Input input = new Input();
+        input.fButton = button;
+        input.fCode = code;
+        input.fPressed = false;
+        fInputs.add(input);
+
+        // Presses made before the first snapshot applied are not replayed, the server may have been restarted.
+        if (fStarted)
+        {
+            input.fPressCount = 0;
+        }
+        else
+        {
+            input.fPressCount = pressCount;
+        }
+
+        return (input);
+    }
+
+    /**
+     * <p>
+     * Reconciles a snapshot against the state already applied, adding the commands needed to bring the two into line to the given buffer.
+     * Snapshots that are older than the latest snapshot applied are ignored.
+     * </p>
+     * 
+     * @param snapshot The snapshot, after its marker.
+     * @param commands The buffer to add the commands to.
+     * 
+     * @return True if the snapshot was applied, false if it was ignored.
+     */
+    public boolean reconcile(final ByteBuffer snapshot, final CommandBuffer commands)
+    {
+        int sequence = snapshot.getInt();
+        if (fStarted && sequence - fLastApplied <= 0)
+        {
+            return (false);
+        }
+
+        int deltaCount = snapshot.get() & 0xFF;
+        for (int index = 0; index < deltaCount; index++)
+        {
+            int deltaSequence = sequence - deltaCount + 1 + index;
+            int x = snapshot.getInt();
+            int y = snapshot.getInt();
+            int wheel = snapshot.getInt();
+
+            // Only the movement of the first snapshot applied is known not to have been applied already.
+            if ((fStarted && deltaSequence - fLastApplied > 0) || deltaSequence == sequence)
+            {
+                if (x != 0 || y != 0)
+                {
+                    commands.add(Opcode.MOUSE_MOVE_RELATIVE, x, y);
+                }
+                if (wheel != 0)
+                {
+                    commands.add(Opcode.MOUSE_WHEEL, wheel, 0);
+                }
+            }
+        }
+
+        int inputCount = snapshot.get() & 0xFF;
+        for (int index = 0; index < inputCount; index++)
+        {
+            int code = snapshot.getInt();
+            int flags = snapshot.get();
+            byte pressCount = snapshot.get();
+
+            Input input = getInput(code, (flags & InputSnapshot.BUTTON) != 0, pressCount);
+            reconcileInput(input, (flags & InputSnapshot.PRESSED) != 0, pressCount, commands);
+            input.fSeen = true;
+        }
+
+        // Release the inputs the client no longer has pressed.
+        Iterator<Input> inputs = fInputs.iterator();
+        while (inputs.hasNext())
+        {
+            Input input = inputs.next();
+            if (input.fSeen)
+            {
+                input.fSeen = false;
+            }
+            else
+            {
+                if (input.fPressed)
+                {
+                    addPress(input, false, commands);
+                }
+                inputs.remove();
+            }
+        }
+
+        fLastApplied = sequence;
+        fStarted = true;
+
+        return (true);
+    }
+
+    /**
+     * <p>
+     * Reconciles a single input against the state already applied.
+     * </p>
+     * 
+     * @param input The input, as already applied.
+     * @param pressed Determines whether the client has the input pressed.
+     * @param pressCount The number of times the client has pressed the input, modulo 256.
+     * @param commands The buffer to add the commands to.
+     */
+    private void reconcileInput(final Input input, final boolean pressed, final byte pressCount, final CommandBuffer commands)
+    {
+        int missingPresses = (pressCount - input.fPressCount) & 0xFF;
+        if (missingPresses > 0)
+        {
+            if (input.fPressed)
+            {
+                addPress(input, false, commands);
+            }
+
+            // Replay the complete presses that were missed.
+            for (int index = 1; index < Math.min(missingPresses, MAX_REPLAYED_PRESSES); index++)
+            {
+                addPress(input, true, commands);
+                addPress(input, false, commands);
+            }
+            addPress(input, true, commands);
+
+            input.fPressCount = pressCount;
+        }
+
+        if (input.fPressed != pressed)
+        {
+            addPress(input, pressed, commands);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * Profiles the stages that the commands pass through on their way from a client to the desktop: receiving them, decoding them, waiting in the
+ * {@link com.se.pcremote.server.InputScheduler InputScheduler} and injecting them. When users report that the pointer is lagging, a profile of
+ * these stages taken alongside the garbage collector and the threads of the JVM shows which of them ate the time.
+ * </p>
+ * 
+ * <p>
+ * This <code>StageProfiler</code> does nothing, so that the stages cost next to nothing when they are not being profiled. A subclass that emits
+ * Java Flight Recorder events can be created with {@link #createFlightRecorderProfiler(int, long)} on JVMs that have the Flight Recorder, it is
+ * kept in a separate package so that the server does not depend on the Flight Recorder being available.
+ * </p>
+ * 
+ * <p>
+ * The stages are profiled by the <code>StageProfiler</code> that is {@link #getInstance() installed}, a stage is begun with {@link #begin(int)}
+ * and ended with {@link #end(Object, int, int, int)} on the same thread.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class StageProfiler
+{
+    /**
+     * <p>
+     * The stage in which commands are injected by the {@link com.se.pcremote.server.InputBackend InputBackend}.
+     * </p>
+     */
+    public static final int INJECT = 0;
+
+    /**
+     * <p>
+     * The stage in which commands are decoded from the data received.
+     * </p>
+     */
+    public static final int PARSE = 1;
+
+    /**
+     * <p>
+     * The stage in which the data received via TCP is handled, including decoding the commands and dispatching them to the sessions.
+     * </p>
+     */
+    public static final int TCP_RECEIVE = 2;
+
+    /**
+     * <p>
+     * The stage in which the data received via UDP is handled, including decoding the commands and dispatching them to the sessions.
+     * </p>
+     */
+    public static final int UDP_RECEIVE = 3;
+
+    /**
+     * <p>
+     * The name of the class of the <code>StageProfiler</code> that emits Java Flight Recorder events.
+     * </p>
+     */
+    private static final String FLIGHT_RECORDER_PROFILER = "com.se.pcremote.server.jfr.FlightRecorderProfiler";
+
+    /**
+     * <p>
+     * The <code>StageProfiler</code> that profiles the stages.
+     * </p>
+     */
+    private static volatile StageProfiler fInstance = new StageProfiler();
+
+    /**
+     * <p>
+     * Creates a <code>StageProfiler</code> that emits Java Flight Recorder events while the Flight Recorder is recording.
+     * </p>
+     * 
+     * @param sampleRate One in how many of the times each stage is passed through is profiled, 1 to profile them all.
+     * @param queueThreshold The time commands must wait in the queue for before it is profiled (in nanoseconds).
+     * 
+     * @return The <code>StageProfiler</code>, or null if this JVM does not have the Flight Recorder.
+     */
+    public static StageProfiler createFlightRecorderProfiler(final int sampleRate, final long queueThreshold)
+    {
+        try
+        {
+            Class.forName("jdk.jfr.FlightRecorder");
+        }
+        catch (ClassNotFoundException e)
+        {
+            return (null);
+        }
+
+        try
+        {
+            return ((StageProfiler) Class.forName(FLIGHT_RECORDER_PROFILER).getConstructor(int.class, long.class).newInstance(sampleRate,
+                    queueThreshold));
+        }
+        catch (Exception e)
+        {
+            Logger.getLogger(StageProfiler.class).warn("Failed to create the Flight Recorder profiler.", e);
+            return (null);
+        }
+    }
+
+    /**
+     * <p>
+     * Retrieves the <code>StageProfiler</code> that profiles the stages. By default it does nothing.
+     * </p>
+     * 
+     * @return The <code>StageProfiler</code> that profiles the stages.
+     */
+    public static StageProfiler getInstance()
+    {
+        return (fInstance);
+    }
+
+    /**
+     * <p>
+     * Sets the <code>StageProfiler</code> that profiles the stages.
+     * </p>
+     * 
+     * @param instance The <code>StageProfiler</code> that profiles the stages.
+     */
+    public static void setInstance(final StageProfiler instance)
+    {
+        fInstance = instance;
+    }
+
+    /**
+     * <p>
+     * Begins a stage on the current thread.
+     * </p>
+     * 
+     * @param stage The stage.
+     * 
+     * @return The profile of the stage to pass to {@link #end(Object, int, int, int)}, or null if it is not being profiled.
+     */
+    public Object begin(final int stage)
+    {
+        return (null);
+    }
+
+    /**
+     * <p>
+     * Ends a stage on the current thread.
+     * </p>
+     * 
+     * @param profile The profile of the stage returned by {@link #begin(int)}, nothing is done if it is null.
+     * @param clientId The identifier of the client the stage was passed through for, or 0 if it is not known.
+     * @param byteCount The number of bytes handled in the stage.
+     * @param commandCount The number of commands handled in the stage.
+     */
+    public void end(final Object profile, final int clientId, final int byteCount, final int commandCount)
+    {}
+
+    /**
+     * <p>
+     * Profiles the time commands waited in the queue before they were taken to be injected.
+     * </p>
+     * 
+     * @param clientId The identifier of the client that sent the commands, or 0 if it is not known.
+     * @param commandCount The number of commands taken.
+     * @param waitTime The time the oldest of the commands waited in the queue (in nanoseconds).
+     */
+    public void queued(final int clientId, final int commandCount, final long waitTime)
+    {}
+}
@@ -0,0 +1,134 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A counter that many threads can add to at once without contending with each other. The count is split over a number of stripes, each thread
+ * adds to the stripe picked by its identifier and the stripes are summed when the count is read. The stripes are spaced a cache line apart so
+ * that threads adding to neighbouring stripes do not invalidate each other's caches.
+ * </p>
+ * 
+ * <p>
+ * Adding to a <code>StripedCounter</code> does not allocate. Reading it is comparatively expensive and the count read is not a snapshot: it may
+ * or may not include the additions made while it is being read.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class StripedCounter
+{
+    /**
+     * <p>
+     * The maximum number of stripes.
+     * </p>
+     */
+    private static final int MAX_STRIPES = 64;
+
+    /**
+     * <p>
+     * The number of <code>long</code>s between stripes (a cache line of 64 bytes).
+     * </p>
+     */
+    private static final int SPACING = 8;
+
+    /**
+     * <p>
+     * The counts of the stripes, {@link #SPACING} apart.
+     * </p>
+     */
+    private AtomicLongArray fCounts;
+
+    /**
+     * <p>
+     * The mask that picks a stripe from the identifier of a thread.
+     * </p>
+     */
+    private int fMask;
+
+    /**
+     * <p>
+     * Creates an instance of <code>StripedCounter</code> with two stripes for every processor available.
+     * </p>
+     */
+    public StripedCounter()
+    {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>StripedCounter</code>.
+     * </p>
+     * 
+     * @param stripes The number of stripes, it is rounded up to a power of two (up to a maximum of 64).
+     */
+    public StripedCounter(final int stripes)
+    {
+        int stripeCount = Integer.highestOneBit(Math.max(Math.min(stripes, MAX_STRIPES), 1));
+        if (stripeCount < Math.min(stripes, MAX_STRIPES))
+        {
+            stripeCount *= 2;
+        }
+
+        fCounts = new AtomicLongArray(stripeCount * SPACING);
+        fMask = stripeCount - 1;
+    }
+
+    /**
+     * <p>
+     * Adds to the count.
+     * </p>
+     * 
+     * @param value The value to add.
+     */
+    public void add(final long value)
+    {
+        fCounts.addAndGet(((int) Thread.currentThread().getId() & fMask) * SPACING, value);
+    }
+
+    /**
+     * <p>
+     * Retrieves the count.
+     * </p>
+     * 
+     * @return The count.
+     */
+    public long get()
+    {
+        long count = 0;
+        for (int stripe = 0; stripe <= fMask; stripe++)
+        {
+            count += fCounts.get(stripe * SPACING);
+        }
+
+        return (count);
+    }
+
+    /**
+     * <p>
+     * Adds one to the count.
+     * </p>
+     */
+    public void increment()
+    {
+        add(1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return (Long.toString(get()));
+    }
+}
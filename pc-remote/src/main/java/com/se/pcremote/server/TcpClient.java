@@ -11,6 +11,7 @@
  */
 package com.se.pcremote.server;
 
+import java.io.IOException;
 import java.net.Socket;
 
 import org.apache.log4j.Logger;
@@ -26,10 +27,60 @@ public class TcpClient extends com.se.pcremote.TcpClient
 {
     /**
      * <p>
-     * Executes the commands.
+     * The maximum number of bytes held back while waiting for the rest of a command, a client that sends more than this without separating its
+     * commands has the bytes held back discarded.
      * </p>
      */
-    private CommandExecuter fCommandExecuter;
+    private static final int MAX_PENDING_LENGTH = 65536;
+
+    /**
+     * <p>
+     * The number of commands evicted from the command cache that have been recorded in the metrics.
+     * </p>
+     */
+    private long fCacheEvictionCount;
+
+    /**
+     * <p>
+     * The number of lookups in the command cache that found the command that have been recorded in the metrics.
+     * </p>
+     */
+    private long fCacheHitCount;
+
+    /**
+     * <p>
+     * The number of lookups in the command cache that did not find the command that have been recorded in the metrics.
+     * </p>
+     */
+    private long fCacheMissCount;
+
+    /**
+     * <p>
+     * Decodes the commands.
+     * </p>
+     */
+    private CommandDecoder fCommandDecoder;
+
+    /**
+     * <p>
+     * The commands decoded from the data received.
+     * </p>
+     */
+    private CommandBuffer fCommands;
+
+    /**
+     * <p>
+     * Determines whether the connection has been closed and recorded as such in the metrics.
+     * </p>
+     */
+    private boolean fDisposed;
+
+    /**
+     * <p>
+     * The number of commands that failed to be decoded that have been recorded in the metrics.
+     * </p>
+     */
+    private long fErrorCount;
 
     /**
      * <p>
@@ -38,6 +89,55 @@ public class TcpClient extends com.se.pcremote.TcpClient
      */
     private Logger fLogger;
 
+    /**
+     * <p>
+     * The metrics the data received is recorded in.
+     * </p>
+     */
+    private ServerMetrics fMetrics;
+
+    /**
+     * <p>
+     * The start of a command that was cut in two because the data received filled the buffer, it is decoded once the rest of the command arrives.
+     * </p>
+     */
+    private byte[] fPending;
+
+    /**
+     * <p>
+     * The number of bytes in {@link #fPending}.
+     * </p>
+     */
+    private int fPendingLength;
+
+    /**
+     * <p>
+     * A buffer used while dispatching the commands.
+     * </p>
+     */
+    private CommandBuffer fSegment;
+
+    /**
+     * <p>
+     * The session that executes the commands that are not stamped.
+     * </p>
+     */
+    private ClientSession fSession;
+
+    /**
+     * <p>
+     * The session of the client if it stamps its messages, or null if it does not (yet).
+     * </p>
+     */
+    private ClientSession fStampedSession;
+
+    /**
+     * <p>
+     * The sessions of the clients that stamp their messages.
+     * </p>
+     */
+    private SessionTable fSessionTable;
+
     /**
      * <p>
      * Creates an instance of <code>TcpClient</code>.
@@ -47,28 +147,258 @@ public class TcpClient extends com.se.pcremote.TcpClient
      * @param commandExecuter Executes the commands.
      */
     public TcpClient(final Socket socket, final CommandExecuter commandExecuter)
+    {
+        this(socket, new SessionTable(commandExecuter));
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>TcpClient</code>.
+     * </p>
+     * 
+     * @param socket The socket over which the TCP connection is made.
+     * @param sessionTable The sessions of the clients that stamp their messages.
+     */
+    public TcpClient(final Socket socket, final SessionTable sessionTable)
     {
         super(socket);
 
-        fCommandExecuter = commandExecuter;
+        fSessionTable = sessionTable;
+
+        fCacheEvictionCount = 0;
+        fCacheHitCount = 0;
+        fCacheMissCount = 0;
+        fCommandDecoder = new CommandDecoder();
+        fCommands = new CommandBuffer();
+        fDisposed = false;
+        fErrorCount = 0;
         fLogger = Logger.getLogger(getClass());
+        fMetrics = sessionTable.getMetrics();
+        fPending = new byte[0];
+        fPendingLength = 0;
+        fSegment = new CommandBuffer();
+        fSession = sessionTable.createSession();
+        fStampedSession = null;
+    }
+
+    /**
+     * <p>
+     * Decodes the commands in the given data, along with any command that was cut in two by the end of the data received before it. TCP does not
+     * preserve the boundaries of the data sent, so everything after the last command separator is held back until the rest of it is received.
+     * The exception is a command that is already complete but not followed by a separator (it ends with the end of its arguments), which older
+     * clients send. It is decoded straight away.
+     * </p>
+     * 
+     * @param data The data received.
+     * @param dataLength The length of the data received.
+     */
+    private void decode(final byte[] data, final int dataLength)
+    {
+        int end = dataLength;
+        while (end > 0 && data[end - 1] != CommandDecoder.COMMAND_SEPARATOR)
+        {
+            end--;
+        }
+
+        int start = 0;
+        if (fPendingLength > 0)
+        {
+            if (end == 0)
+            {
+                // The data continues the command held back, it may or may not finish it.
+                hold(data, 0, dataLength);
+                if (fPendingLength > 0 && isComplete(fPending, 0, fPendingLength))
+                {
+                    fCommandDecoder.decode(fPending, 0, fPendingLength, fCommands);
+                    fPendingLength = 0;
+                }
+                return;
+            }
+
+            while (data[start] != CommandDecoder.COMMAND_SEPARATOR)
+            {
+                start++;
+            }
+            hold(data, 0, start);
+            fCommandDecoder.decode(fPending, 0, fPendingLength, fCommands);
+            fPendingLength = 0;
+        }
+
+        if (isComplete(data, end, dataLength - end))
+        {
+            fCommandDecoder.decode(data, start, dataLength - start, fCommands);
+        }
+        else
+        {
+            fCommandDecoder.decode(data, start, end - start, fCommands);
+            hold(data, end, dataLength - end);
+        }
     }
 
     @Override
-    protected void onReceiveData(final byte[] data, final int dataLength)
+    public void dispose() throws IOException
     {
-        String commands = new String(data, 0, dataLength);
+        super.dispose();
 
-        for (String command : commands.split(";"))
+        synchronized (this)
         {
-            try
+            if (fDisposed)
             {
-                fCommandExecuter.executeCommand(command);
+                return;
             }
-            catch (Exception e)
+            fDisposed = true;
+        }
+        fMetrics.getConnectionsClosed().increment();
+
+        // Release anything the client held down so that it is not left stuck down on the desktop.
+        fSession.dispose();
+        if (fStampedSession != null)
+        {
+            fSessionTable.removeSession(fStampedSession.getId());
+        }
+    }
+
+    /**
+     * <p>
+     * Retrieves the cache of the commands this client has sent, which records how often the commands it sends repeat.
+     * </p>
+     * 
+     * @return The cache of the commands this client has sent.
+     */
+    public CommandCache getCommandCache()
+    {
+        return (fCommandDecoder.getCommandCache());
+    }
+
+    /**
+     * <p>
+     * Holds back the given bytes of a command that has not been received in full, after any bytes of it already held back.
+     * </p>
+     * 
+     * @param data The data containing the bytes.
+     * @param offset The index of the first byte to hold back.
+     * @param length The number of bytes to hold back.
+     */
+    private void hold(final byte[] data, final int offset, final int length)
+    {
+        if (fPendingLength + length > MAX_PENDING_LENGTH)
+        {
+            fLogger.error("Discarding " + (fPendingLength + length) + " bytes received without a command separator.");
+            fPendingLength = 0;
+            return;
+        }
+
+        if (fPending.length < fPendingLength + length)
+        {
+            byte[] pending = new byte[Math.max(fPendingLength + length, fPending.length * 2)];
+            System.arraycopy(fPending, 0, pending, 0, fPendingLength);
+            fPending = pending;
+        }
+        System.arraycopy(data, offset, fPending, fPendingLength, length);
+        fPendingLength += length;
+    }
+
+    /**
+     * <p>
+     * Determines whether the given bytes (that follow the last command separator) are complete, i.e. they are blank or they end with the end of
+     * the arguments of a command.
+     * </p>
+     * 
+     * @param data The data containing the bytes.
+     * @param offset The index of the first byte.
+     * @param length The number of bytes.
+     * 
+     * @return True if the given bytes are complete, false if they may be the start of a command that has not been received in full.
+     */
+    private boolean isComplete(final byte[] data, final int offset, final int length)
+    {
+        int end = offset + length;
+        while (end > offset && Character.isWhitespace(data[end - 1]))
+        {
+            end--;
+        }
+
+        return (end == offset || data[end - 1] == CommandDecoder.ARGUMENTS_END);
+    }
+
+    @Override
+    protected void onReceiveData(final byte[] data, final int dataLength)
+    {
+        StageProfiler profiler = StageProfiler.getInstance();
+        Object receiveProfile = profiler.begin(StageProfiler.TCP_RECEIVE);
+
+        fCommands.clear();
+        Object parseProfile = profiler.begin(StageProfiler.PARSE);
+        decode(data, dataLength);
+        profiler.end(parseProfile, 0, dataLength, fCommands.size());
+        record(dataLength, fCommands.size());
+
+        try
+        {
+            ClientSession target = fSessionTable.dispatch(fCommands, fSession, fSegment);
+            if (target != fSession)
             {
-                fLogger.error("Failed to execute the command '" + command + "'", e);
+                fStampedSession = target;
             }
         }
+        catch (Exception e)
+        {
+            fLogger.error("Failed to execute the commands '" + fCommands + "'", e);
+        }
+
+        TraceBuffer.getInstance().record(fStampedSession != null ? fStampedSession.getId() : 0, TraceBuffer.TCP_RECEIVE, 0, dataLength,
+                fCommands.size());
+        profiler.end(receiveProfile, 0, dataLength, fCommands.size());
+    }
+
+    @Override
+    protected void onReceiveHeartbeat()
+    {
+        fMetrics.getTcpHeartbeatsReceived().increment();
+        TraceBuffer.getInstance().record(0, TraceBuffer.TCP_HEARTBEAT, 0, 0, 0);
+    }
+
+    @Override
+    protected void onSendHeartbeat()
+    {
+        fMetrics.getTcpHeartbeatsSent().increment();
+    }
+
+    /**
+     * <p>
+     * Records the data received, the commands that failed to be decoded from it and the use of the command cache in the metrics.
+     * </p>
+     * 
+     * @param byteCount The number of bytes received.
+     * @param commandCount The number of commands decoded.
+     */
+    private void record(final int byteCount, final int commandCount)
+    {
+        fMetrics.getTcpBytes().add(byteCount);
+        fMetrics.getTcpCommands().add(commandCount);
+
+        long errorCount = fCommandDecoder.getErrorCount();
+        if (errorCount != fErrorCount)
+        {
+            fMetrics.getParseErrors().add(errorCount - fErrorCount);
+            fErrorCount = errorCount;
+        }
+
+        CommandCache commandCache = fCommandDecoder.getCommandCache();
+        if (commandCache.getHitCount() != fCacheHitCount)
+        {
+            fMetrics.getCommandCacheHits().add(commandCache.getHitCount() - fCacheHitCount);
+            fCacheHitCount = commandCache.getHitCount();
+        }
+        if (commandCache.getMissCount() != fCacheMissCount)
+        {
+            fMetrics.getCommandCacheMisses().add(commandCache.getMissCount() - fCacheMissCount);
+            fCacheMissCount = commandCache.getMissCount();
+        }
+        if (commandCache.getEvictionCount() != fCacheEvictionCount)
+        {
+            fMetrics.getCommandCacheEvictions().add(commandCache.getEvictionCount() - fCacheEvictionCount);
+            fCacheEvictionCount = commandCache.getEvictionCount();
+        }
     }
 }
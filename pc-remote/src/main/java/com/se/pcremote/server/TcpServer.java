@@ -27,10 +27,10 @@ public class TcpServer extends com.se.pcremote.TcpServer
 {
     /**
      * <p>
-     * Executes the commands.
+     * The sessions of the clients that stamp their messages.
      * </p>
      */
-    private CommandExecuter fCommandExecuter;
+    private SessionTable fSessionTable;
 
     /**
      * <p>
@@ -41,15 +41,34 @@ public class TcpServer extends com.se.pcremote.TcpServer
      * @param commandExecuter Executes the commands.
      */
     public TcpServer(final ServerSocket serverSocket, final CommandExecuter commandExecuter)
+    {
+        this(serverSocket, new SessionTable(commandExecuter));
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>TcpServer</code>.
+     * </p>
+     * 
+     * @param serverSocket The {@link java.net.Socket Socket} listening for new connections.
+     * @param sessionTable The sessions of the clients that stamp their messages.
+     */
+    public TcpServer(final ServerSocket serverSocket, final SessionTable sessionTable)
     {
         super(serverSocket);
 
-        fCommandExecuter = commandExecuter;
+        fSessionTable = sessionTable;
     }
 
     @Override
     protected Client getClientInstance(final Socket socket)
     {
-        return (new TcpClient(socket, fCommandExecuter));
+        return (new TcpClient(socket, fSessionTable));
+    }
+
+    @Override
+    protected void onAcceptConnection(final Socket socket)
+    {
+        fSessionTable.getMetrics().getConnectionsAccepted().increment();
     }
 }
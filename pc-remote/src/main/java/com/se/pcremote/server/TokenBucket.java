@@ -0,0 +1,190 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+/**
+ * <p>
+ * A token bucket that limits the rate at which events are let through. The bucket is refilled at a constant rate and holds up to a second's worth
+ * of tokens, so an event can be let through whenever there is a token to take and bursts of up to a second's worth of events are let through
+ * straight away.
+ * </p>
+ * 
+ * <p>
+ * Tokens are counted in billionths so that the bucket can be refilled from the elapsed time in nanoseconds without rounding. A
+ * <code>TokenBucket</code> is not thread safe.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class TokenBucket
+{
+    /**
+     * <p>
+     * The number of units a single token is counted in.
+     * </p>
+     */
+    private static final long TOKEN = 1000000000L;
+
+    /**
+     * <p>
+     * The number of units the bucket can hold.
+     * </p>
+     */
+    private long fCapacity;
+
+    /**
+     * <p>
+     * The time at which the bucket was last refilled (in nanoseconds).
+     * </p>
+     */
+    private long fLastRefillTime;
+
+    /**
+     * <p>
+     * The number of tokens added to the bucket per second, or 0 if the rate is not limited.
+     * </p>
+     */
+    private int fRate;
+
+    /**
+     * <p>
+     * The number of units in the bucket.
+     * </p>
+     */
+    private long fTokens;
+
+    /**
+     * <p>
+     * Creates an instance of <code>TokenBucket</code>, initially full.
+     * </p>
+     * 
+     * @param rate The number of tokens added to the bucket per second, or 0 if the rate is not limited.
+     */
+    public TokenBucket(final int rate)
+    {
+        setRate(rate);
+    }
+
+    /**
+     * <p>
+     * Takes a token from the bucket whether or not there is one, so that an event that cannot be refused still counts against the limit. The
+     * bucket can go into debt, the events after it have to wait until it has been paid off.
+     * </p>
+     * 
+     * @param now The current time (in nanoseconds).
+     */
+    public void charge(final long now)
+    {
+        if (fRate > 0)
+        {
+            refill(now);
+            fTokens -= TOKEN;
+        }
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of tokens added to the bucket per second.
+     * </p>
+     * 
+     * @return The number of tokens added to the bucket per second, or 0 if the rate is not limited.
+     */
+    public int getRate()
+    {
+        return (fRate);
+    }
+
+    /**
+     * <p>
+     * Determines whether there is a token in the bucket.
+     * </p>
+     * 
+     * @param now The current time (in nanoseconds).
+     * 
+     * @return True if there is a token in the bucket (or the rate is not limited), false otherwise.
+     */
+    public boolean isAvailable(final long now)
+    {
+        if (fRate <= 0)
+        {
+            return (true);
+        }
+
+        refill(now);
+
+        return (fTokens >= TOKEN);
+    }
+
+    /**
+     * <p>
+     * Adds the tokens accumulated since the bucket was last refilled.
+     * </p>
+     * 
+     * @param now The current time (in nanoseconds).
+     */
+    private void refill(final long now)
+    {
+        long elapsed = now - fLastRefillTime;
+        if (elapsed > 0)
+        {
+            fLastRefillTime = now;
+            if (elapsed >= TOKEN)
+            {
+                fTokens = fCapacity;
+            }
+            else
+            {
+                fTokens = Math.min(fCapacity, fTokens + elapsed * fRate);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Sets the number of tokens added to the bucket per second, filling the bucket.
+     * </p>
+     * 
+     * @param rate The number of tokens added to the bucket per second, or 0 if the rate is not limited.
+     */
+    public void setRate(final int rate)
+    {
+        fRate = rate;
+
+        fCapacity = Math.max(rate, 0) * TOKEN;
+        fLastRefillTime = System.nanoTime();
+        fTokens = fCapacity;
+    }
+
+    /**
+     * <p>
+     * Takes a token from the bucket if there is one.
+     * </p>
+     * 
+     * @param now The current time (in nanoseconds).
+     * 
+     * @return True if a token was taken (or the rate is not limited), false if the bucket is empty.
+     */
+    public boolean take(final long now)
+    {
+        if (!isAvailable(now))
+        {
+            return (false);
+        }
+
+        if (fRate > 0)
+        {
+            fTokens -= TOKEN;
+        }
+
+        return (true);
+    }
+}
@@ -0,0 +1,336 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * An always-on trace of what the server has recently done, kept in memory so that the last few seconds before a glitch can be inspected without
+ * turning on debug logging (which builds strings on the hot path and changes the timing being investigated). The trace is a ring of fixed size
+ * binary records, each of which holds the time, the identifier of the client, the stage, an {@link com.se.pcremote.server.Opcode Opcode} and two
+ * arguments. Once the ring is full the oldest records are overwritten.
+ * </p>
+ * 
+ * <p>
+ * The ring is allocated up front and recording does not lock or allocate, so any number of threads can record at once. A record is claimed by
+ * incrementing a sequence number and is stamped with that number once it has been written, so that {@link #dump(File)} can skip the records that
+ * are being written or overwritten while it reads them.
+ * </p>
+ * 
+ * <p>
+ * The trace is dumped to a text file of one record per line (the time, the stage, the client and the command) on request, for example via the
+ * {@link com.se.pcremote.server.ServerMonitorMXBean#dumpTrace(String) dumpTrace} JMX operation.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class TraceBuffer
+{
+    /**
+     * <p>
+     * The default number of records a <code>TraceBuffer</code> holds.
+     * </p>
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * <p>
+     * The stage in which pointer events older than the deadline are dropped. The arguments are the number of events dropped and their age (in
+     * microseconds).
+     * </p>
+     */
+    public static final int DROP = 1;
+
+    /**
+     * <p>
+     * The stage in which a command is injected. The opcode and arguments are those of the command.
+     * </p>
+     */
+    public static final int INJECT = 2;
+
+    /**
+     * <p>
+     * The stage in which a batch of commands is taken from the queue to be injected. The arguments are the number of commands and the time the
+     * oldest of them waited (in microseconds).
+     * </p>
+     */
+    public static final int QUEUE = 3;
+
+    /**
+     * <p>
+     * The stage in which a heartbeat is received via TCP.
+     * </p>
+     */
+    public static final int TCP_HEARTBEAT = 4;
+
+    /**
+     * <p>
+     * The stage in which data is received via TCP. The arguments are the number of bytes received and the number of commands decoded.
+     * </p>
+     */
+    public static final int TCP_RECEIVE = 5;
+
+    /**
+     * <p>
+     * The stage in which a heartbeat is received via UDP.
+     * </p>
+     */
+    public static final int UDP_HEARTBEAT = 6;
+
+    /**
+     * <p>
+     * The stage in which a datagram is received via UDP. The arguments are the number of bytes received and the number of commands decoded.
+     * </p>
+     */
+    public static final int UDP_RECEIVE = 7;
+
+    /**
+     * <p>
+     * The names of the stages, indexed by their codes.
+     * </p>
+     */
+    private static final String[] STAGE_NAMES = new String[] {null, "drop", "inject", "queue", "tcpHeartbeat", "tcpReceive", "udpHeartbeat",
+            "udpReceive"};
+
+    /**
+     * <p>
+     * The number of values in a record: the sequence number, the time, the client, stage and opcode, and the arguments.
+     * </p>
+     */
+    private static final int RECORD_LENGTH = 4;
+
+    /**
+     * <p>
+     * The <code>TraceBuffer</code> the server records its trace in.
+     * </p>
+     */
+    private static final TraceBuffer fInstance = new TraceBuffer(DEFAULT_CAPACITY);
+
+    /**
+     * <p>
+     * Retrieves the <code>TraceBuffer</code> the server records its trace in.
+     * </p>
+     * 
+     * @return The <code>TraceBuffer</code> the server records its trace in.
+     */
+    public static TraceBuffer getInstance()
+    {
+        return (fInstance);
+    }
+
+    /**
+     * <p>
+     * One less than the number of records in the ring, used to find the slot of a sequence number.
+     * </p>
+     */
+    private int fMask;
+
+    /**
+     * <p>
+     * The sequence number of the next record.
+     * </p>
+     */
+    private AtomicLong fNext;
+
+    /**
+     * <p>
+     * The records.
+     * </p>
+     */
+    private AtomicLongArray fRecords;
+
+    /**
+     * <p>
+     * Creates an instance of <code>TraceBuffer</code>.
+     * </p>
+     * 
+     * @param capacity The number of records the ring holds, rounded up to a power of two.
+     */
+    public TraceBuffer(final int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("The capacity must be at least 1.");
+        }
+
+        int slotCount = Integer.highestOneBit(capacity);
+        if (slotCount < capacity)
+        {
+            slotCount *= 2;
+        }
+
+        fMask = slotCount - 1;
+        fNext = new AtomicLong();
+        fRecords = new AtomicLongArray(slotCount * RECORD_LENGTH);
+
+        // No record has the sequence number -1, so the slots start out empty.
+        for (int slot = 0; slot < slotCount; slot++)
+        {
+            fRecords.set(slot * RECORD_LENGTH, -1);
+        }
+    }
+
+    /**
+     * <p>
+     * Writes the records in this <code>TraceBuffer</code> to a file, oldest first. The records recorded while they are being written may or may not
+     * be included.
+     * </p>
+     * 
+     * @param file The file to write the records to, it is replaced if it exists.
+     * 
+     * @return The number of records written.
+     * 
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    public int dump(final File file) throws IOException
+    {
+        long[] records = snapshot();
+        int recordCount = records.length / RECORD_LENGTH;
+
+        // Line the monotonic times of the records up with the wall clock (in microseconds).
+        long nowMillis = System.currentTimeMillis();
+        long nowNanos = System.nanoTime();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        try
+        {
+            writer.write("# time\tstage\tclient\tcommand\n");
+            for (int record = 0; record < recordCount; record++)
+            {
+                int offset = record * RECORD_LENGTH;
+                long time = nowMillis * 1000 - (nowNanos - records[offset + 1]) / 1000;
+                int stage = (int) (records[offset + 2] >>> 16 & 0xFFFF);
+                int opcode = (int) (records[offset + 2] & 0xFFFF);
+
+                writer.write(format.format(new Date(time / 1000)));
+                writer.write(String.format("%03d", time % 1000));
+                writer.write('\t');
+                writer.write(stage < STAGE_NAMES.length && STAGE_NAMES[stage] != null ? STAGE_NAMES[stage] : Integer.toString(stage));
+                writer.write('\t');
+                writer.write(Integer.toString((int) (records[offset + 2] >> 32)));
+                writer.write('\t');
+                writer.write(opcode == 0 ? "" : Opcode.getName(opcode));
+                writer.write('(');
+                writer.write(Integer.toString((int) (records[offset + 3] >> 32)));
+                writer.write(',');
+                writer.write(Integer.toString((int) records[offset + 3]));
+                writer.write(")\n");
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        return (recordCount);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of records this <code>TraceBuffer</code> holds.
+     * </p>
+     * 
+     * @return The number of records this <code>TraceBuffer</code> holds.
+     */
+    public int getCapacity()
+    {
+        return (fMask + 1);
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of records recorded since this <code>TraceBuffer</code> was created, including those that have been overwritten.
+     * </p>
+     * 
+     * @return The number of records recorded since this <code>TraceBuffer</code> was created.
+     */
+    public long getRecordCount()
+    {
+        return (fNext.get());
+    }
+
+    /**
+     * <p>
+     * Records something the server did, overwriting the oldest record if the ring is full.
+     * </p>
+     * 
+     * @param clientId The identifier of the client it was done for, or 0 if it is not known.
+     * @param stage The stage.
+     * @param opcode The code of the command, or 0 if there is none.
+     * @param argument0 The first argument.
+     * @param argument1 The second argument.
+     */
+    public void record(final int clientId, final int stage, final int opcode, final int argument0, final int argument1)
+    {
+        long sequence = fNext.getAndIncrement();
+        int offset = ((int) sequence & fMask) * RECORD_LENGTH;
+
+        // Mark the slot as being written so that it is skipped by a dump that reads it before it is stamped.
+        fRecords.lazySet(offset, -1);
+        fRecords.lazySet(offset + 1, System.nanoTime());
+        fRecords.lazySet(offset + 2, (long) clientId << 32 | (long) (stage & 0xFFFF) << 16 | opcode & 0xFFFF);
+        fRecords.lazySet(offset + 3, (long) argument0 << 32 | argument1 & 0xFFFFFFFFL);
+        fRecords.lazySet(offset, sequence);
+    }
+
+    /**
+     * <p>
+     * Copies the records in this <code>TraceBuffer</code> that are not being written or overwritten, oldest first.
+     * </p>
+     * 
+     * @return The values of the records copied.
+     */
+    private long[] snapshot()
+    {
+        long next = fNext.get();
+        long first = Math.max(0, next - getCapacity());
+        long[] records = new long[(int) (next - first) * RECORD_LENGTH];
+
+        int recordCount = 0;
+        for (long sequence = first; sequence < next; sequence++)
+        {
+            int offset = ((int) sequence & fMask) * RECORD_LENGTH;
+            int copy = recordCount * RECORD_LENGTH;
+
+            if (fRecords.get(offset) != sequence)
+            {
+                continue;
+            }
+            for (int value = 1; value < RECORD_LENGTH; value++)
+            {
+                records[copy + value] = fRecords.get(offset + value);
+            }
+            if (fRecords.get(offset) != sequence)
+            {
+                continue;
+            }
+
+            records[copy] = sequence;
+            recordCount++;
+        }
+
+        long[] copied = new long[recordCount * RECORD_LENGTH];
+        System.arraycopy(records, 0, copied, 0, copied.length);
+
+        return (copied);
+    }
+}
@@ -11,11 +11,20 @@
  */
 package com.se.pcremote.server;
 
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
+import com.se.pcremote.InputSnapshot;
+
 /**
  * <p>
  * Handles commands received from a single PC Remote Client via UDP.
@@ -27,10 +36,60 @@ public class UdpClient extends com.se.pcremote.UdpClient
 {
     /**
      * <p>
-     * Executes the commands.
+     * The maximum number of clients sending snapshots of their input state that are remembered, the least recently heard from are forgotten first.
+     * </p>
+     */
+    private static final int MAX_SNAPSHOT_SENDERS = 64;
+
+    /**
+     * <p>
+     * The number of commands evicted from the command cache that have been recorded in the metrics.
+     * </p>
+     */
+    private long fCacheEvictionCount;
+
+    /**
+     * <p>
+     * The number of lookups in the command cache that found the command that have been recorded in the metrics.
+     * </p>
+     */
+    private long fCacheHitCount;
+
+    /**
+     * <p>
+     * The number of lookups in the command cache that did not find the command that have been recorded in the metrics.
+     * </p>
+     */
+    private long fCacheMissCount;
+
+    /**
+     * <p>
+     * Decodes the commands.
+     * </p>
+     */
+    private CommandDecoder fCommandDecoder;
+
+    /**
+     * <p>
+     * The commands decoded from the data received that are not stamped, consecutive mouse movements are merged together.
+     * </p>
+     */
+    private CommandBuffer fCommands;
+
+    /**
+     * <p>
+     * The bytes of a datagram received via a {@link java.nio.channels.DatagramChannel DatagramChannel}, copied out of its direct buffer to be
+     * decoded.
+     * </p>
+     */
+    private byte[] fData;
+
+    /**
+     * <p>
+     * The number of commands that failed to be decoded that have been recorded in the metrics.
      * </p>
      */
-    private CommandExecuter fCommandExecuter;
+    private long fErrorCount;
 
     /**
      * <p>
@@ -39,6 +98,55 @@ public class UdpClient extends com.se.pcremote.UdpClient
      */
     private Logger fLogger;
 
+    /**
+     * <p>
+     * The metrics the data received is recorded in.
+     * </p>
+     */
+    private ServerMetrics fMetrics;
+
+    /**
+     * <p>
+     * The commands decoded from a single datagram.
+     * </p>
+     */
+    private CommandBuffer fPacketCommands;
+
+    /**
+     * <p>
+     * The reconcilers of the snapshots of the clients' input states, indexed by the clients' addresses.
+     * </p>
+     */
+    private Map<SocketAddress, SnapshotReconciler> fReconcilers;
+
+    /**
+     * <p>
+     * A buffer used while dispatching the commands.
+     * </p>
+     */
+    private CommandBuffer fSegment;
+
+    /**
+     * <p>
+     * The session that executes the commands that are not stamped.
+     * </p>
+     */
+    private ClientSession fSession;
+
+    /**
+     * <p>
+     * The sessions of the clients that stamp their messages.
+     * </p>
+     */
+    private SessionTable fSessionTable;
+
+    /**
+     * <p>
+     * The acknowledgement sent in response to a snapshot of a client's input state. It is reused for every acknowledgement.
+     * </p>
+     */
+    private ByteBuffer fSnapshotAck;
+
     /**
      * <p>
      * Creates an instance of <code>UdpClient</code>.
@@ -48,28 +156,349 @@ public class UdpClient extends com.se.pcremote.UdpClient
      * @param commandExecuter Executes the commands.
      */
     public UdpClient(final DatagramSocket datagramSocket, final CommandExecuter commandExecuter)
+    {
+        this(datagramSocket, new SessionTable(commandExecuter));
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>UdpClient</code>.
+     * </p>
+     * 
+     * @param datagramSocket The socket over which the UDP data is sent and received.
+     * @param sessionTable The sessions of the clients that stamp their messages.
+     */
+    public UdpClient(final DatagramSocket datagramSocket, final SessionTable sessionTable)
     {
         super(datagramSocket);
 
-        fCommandExecuter = commandExecuter;
-        fLogger = Logger.getLogger(getClass());
+        fSessionTable = sessionTable;
+
+        init();
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>UdpClient</code> that receives every datagram pending on the channel at once, decodes them all and executes the
+     * merged result in one go. This means that a burst of mouse movements (e.g. those queued up while the network stalled) moves the mouse once
+     * instead of once per datagram.
+     * </p>
+     * 
+     * @param datagramChannel The channel over which the UDP data is sent and received.
+     * @param commandExecuter Executes the commands.
+     * 
+     * @throws IOException Thrown if the channel fails to be configured for non-blocking receipt.
+     */
+    public UdpClient(final DatagramChannel datagramChannel, final CommandExecuter commandExecuter) throws IOException
+    {
+        this(datagramChannel, new SessionTable(commandExecuter));
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>UdpClient</code> that receives every datagram pending on the channel at once.
+     * </p>
+     * 
+     * @param datagramChannel The channel over which the UDP data is sent and received.
+     * @param sessionTable The sessions of the clients that stamp their messages.
+     * 
+     * @throws IOException Thrown if the channel fails to be configured for non-blocking receipt.
+     * 
+     * @see #UdpClient(DatagramChannel, CommandExecuter)
+     */
+    public UdpClient(final DatagramChannel datagramChannel, final SessionTable sessionTable) throws IOException
+    {
+        super(datagramChannel);
+
+        fSessionTable = sessionTable;
+
+        init();
     }
 
     @Override
-    protected void onReceiveData(final DatagramPacket packet)
+    public void dispose() throws IOException
+    {
+        super.dispose();
+
+        // Release anything the client held down so that it is not left stuck down on the desktop.
+        fSession.dispose();
+    }
+
+    /**
+     * <p>
+     * Retrieves the cache of the commands received by this client, which records how often the commands received repeat.
+     * </p>
+     * 
+     * @return The cache of the commands received by this client.
+     */
+    public CommandCache getCommandCache()
     {
-        String commands = new String(packet.getData(), 0, packet.getLength());
+        return (fCommandDecoder.getCommandCache());
+    }
 
-        for (String command : commands.split(";"))
+    /**
+     * <p>
+     * Dispatches the given commands to the sessions that execute them.
+     * </p>
+     * 
+     * @param commands The commands to dispatch.
+     */
+    private void dispatch(final CommandBuffer commands)
+    {
+        if (commands.size() > 0)
         {
             try
             {
-                fCommandExecuter.executeCommand(command);
+                fSessionTable.dispatch(commands, fSession, fSegment);
             }
             catch (Exception e)
             {
-                fLogger.error("Failed to execute the command '" + command + "'", e);
+                fLogger.error("Failed to execute the commands '" + commands + "'", e);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Initialises the state shared by all of the constructors.
+     * </p>
+     */
+    private void init()
+    {
+        fCacheEvictionCount = 0;
+        fCacheHitCount = 0;
+        fCacheMissCount = 0;
+        fCommandDecoder = new CommandDecoder();
+        fCommands = new CommandBuffer(true);
+        fData = new byte[0];
+        fErrorCount = 0;
+        fLogger = Logger.getLogger(getClass());
+        fMetrics = fSessionTable.getMetrics();
+        fPacketCommands = new CommandBuffer();
+        fReconcilers = new LinkedHashMap<SocketAddress, SnapshotReconciler>(16, 0.75f, true)
+        {
+            /**
+             * Serialisation version.
+             */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<SocketAddress, SnapshotReconciler> eldest)
+            {
+                return (size() > MAX_SNAPSHOT_SENDERS);
+            }
+        };
+        fSegment = new CommandBuffer();
+        fSession = fSessionTable.createSession();
+        fSnapshotAck = ByteBuffer.allocate(InputSnapshot.ACK_LENGTH);
+    }
+
+    /**
+     * <p>
+     * Determines whether the given datagram is a snapshot of a client's input state.
+     * </p>
+     * 
+     * @param packet The datagram, between its position and limit.
+     * 
+     * @return True if the given datagram is a snapshot of a client's input state, false otherwise.
+     */
+    private boolean isSnapshot(final ByteBuffer packet)
+    {
+        return (packet.remaining() >= InputSnapshot.HEADER_LENGTH && packet.get(packet.position()) == InputSnapshot.SNAPSHOT_MARKER);
+    }
+
+    /**
+     * <p>
+     * Determines whether any of the given commands are stamped with a client's logical clock.
+     * </p>
+     * 
+     * @param commands The commands to check.
+     * 
+     * @return True if any of the given commands are stamped, false otherwise.
+     */
+    private boolean isStamped(final CommandBuffer commands)
+    {
+        for (int index = 0; index < commands.size(); index++)
+        {
+            if (commands.getOpcode(index) == Opcode.CLOCK)
+            {
+                return (true);
+            }
+        }
+
+        return (false);
+    }
+
+    @Override
+    protected void onReceiveData(final ByteBuffer[] packets, final SocketAddress[] senders, final int packetCount)
+    {
+        StageProfiler profiler = StageProfiler.getInstance();
+        Object receiveProfile = profiler.begin(StageProfiler.UDP_RECEIVE);
+        int byteCount = 0;
+        int commandCount = 0;
+
+        fCommands.clear();
+
+        for (int index = 0; index < packetCount; index++)
+        {
+            if (isSnapshot(packets[index]))
+            {
+                byteCount += packets[index].remaining();
+                record(packets[index].remaining(), 0);
+                dispatch(fCommands);
+                fCommands.clear();
+                reconcile(packets[index], senders[index]);
+                continue;
+            }
+
+            int dataLength = packets[index].remaining();
+            if (fData.length < dataLength)
+            {
+                fData = new byte[Math.max(dataLength, getMaxDataReceivable())];
+            }
+            packets[index].get(fData, 0, dataLength);
+
+            fPacketCommands.clear();
+            Object parseProfile = profiler.begin(StageProfiler.PARSE);
+            fCommandDecoder.decode(fData, 0, dataLength, fPacketCommands);
+            profiler.end(parseProfile, 0, dataLength, fPacketCommands.size());
+            record(dataLength, fPacketCommands.size());
+            byteCount += dataLength;
+            commandCount += fPacketCommands.size();
+
+            // Stamped messages are put back in order by their sessions, only merge those that are not stamped.
+            if (isStamped(fPacketCommands))
+            {
+                dispatch(fCommands);
+                fCommands.clear();
+                dispatch(fPacketCommands);
             }
+            else
+            {
+                fCommands.addAll(fPacketCommands);
+            }
+        }
+
+        dispatch(fCommands);
+
+        profiler.end(receiveProfile, 0, byteCount, commandCount);
+    }
+
+    @Override
+    protected void onReceiveData(final DatagramPacket packet)
+    {
+        StageProfiler profiler = StageProfiler.getInstance();
+        Object receiveProfile = profiler.begin(StageProfiler.UDP_RECEIVE);
+
+        // Only wrap the datagram for the snapshots, so that receiving commands does not allocate.
+        if (packet.getLength() >= InputSnapshot.HEADER_LENGTH && packet.getData()[packet.getOffset()] == InputSnapshot.SNAPSHOT_MARKER)
+        {
+            record(packet.getLength(), 0);
+            reconcile(ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength()), packet.getSocketAddress());
+            profiler.end(receiveProfile, 0, packet.getLength(), 0);
+            return;
+        }
+
+        fPacketCommands.clear();
+        Object parseProfile = profiler.begin(StageProfiler.PARSE);
+        fCommandDecoder.decode(packet.getData(), packet.getOffset(), packet.getLength(), fPacketCommands);
+        profiler.end(parseProfile, 0, packet.getLength(), fPacketCommands.size());
+        record(packet.getLength(), fPacketCommands.size());
+
+        dispatch(fPacketCommands);
+
+        profiler.end(receiveProfile, 0, packet.getLength(), fPacketCommands.size());
+    }
+
+    @Override
+    protected void onReceiveHeartbeat()
+    {
+        fMetrics.getUdpHeartbeatsReceived().increment();
+        TraceBuffer.getInstance().record(0, TraceBuffer.UDP_HEARTBEAT, 0, 0, 0);
+    }
+
+    /**
+     * <p>
+     * Reconciles a snapshot of a client's input state against the state already applied on its behalf, executes the commands needed to bring the
+     * two into line and acknowledges the snapshot.
+     * </p>
+     * 
+     * @param snapshot The snapshot, between its position and limit.
+     * @param sender The client that sent the snapshot.
+     */
+    private void reconcile(final ByteBuffer snapshot, final SocketAddress sender)
+    {
+        SnapshotReconciler reconciler = fReconcilers.get(sender);
+        if (reconciler == null)
+        {
+            reconciler = new SnapshotReconciler();
+            fReconcilers.put(sender, reconciler);
+        }
+
+        fPacketCommands.clear();
+        try
+        {
+            snapshot.get();
+            reconciler.reconcile(snapshot, fPacketCommands);
+        }
+        catch (BufferUnderflowException e)
+        {
+            fLogger.error("Failed to decode a truncated input snapshot.");
+            return;
+        }
+        dispatch(fPacketCommands);
+
+        // Acknowledge even an ignored snapshot, the acknowledgement of the latest snapshot applied may have been lost.
+        fSnapshotAck.clear();
+        fSnapshotAck.put(InputSnapshot.ACK_MARKER);
+        fSnapshotAck.putInt(reconciler.getLastApplied());
+        fSnapshotAck.flip();
+        try
+        {
+            sendData(fSnapshotAck, sender);
+        }
+        catch (IOException e)
+        {
+            fLogger.error("Failed to acknowledge an input snapshot.", e);
+        }
+    }
+
+    /**
+     * <p>
+     * Records a datagram received, the commands that failed to be decoded from it and the use of the command cache in the metrics and the trace.
+     * </p>
+     * 
+     * @param byteCount The number of bytes received.
+     * @param commandCount The number of commands decoded.
+     */
+    private void record(final int byteCount, final int commandCount)
+    {
+        fMetrics.getUdpBytes().add(byteCount);
+        fMetrics.getUdpCommands().add(commandCount);
+        TraceBuffer.getInstance().record(0, TraceBuffer.UDP_RECEIVE, 0, byteCount, commandCount);
+
+        long errorCount = fCommandDecoder.getErrorCount();
+        if (errorCount != fErrorCount)
+        {
+            fMetrics.getParseErrors().add(errorCount - fErrorCount);
+            fErrorCount = errorCount;
+        }
+
+        CommandCache commandCache = fCommandDecoder.getCommandCache();
+        if (commandCache.getHitCount() != fCacheHitCount)
+        {
+            fMetrics.getCommandCacheHits().add(commandCache.getHitCount() - fCacheHitCount);
+            fCacheHitCount = commandCache.getHitCount();
+        }
+        if (commandCache.getMissCount() != fCacheMissCount)
+        {
+            fMetrics.getCommandCacheMisses().add(commandCache.getMissCount() - fCacheMissCount);
+            fCacheMissCount = commandCache.getMissCount();
+        }
+        if (commandCache.getEvictionCount() != fCacheEvictionCount)
+        {
+            fMetrics.getCommandCacheEvictions().add(commandCache.getEvictionCount() - fCacheEvictionCount);
+            fCacheEvictionCount = commandCache.getEvictionCount();
         }
     }
 }
@@ -0,0 +1,470 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * Injects user input by writing Linux <code>input_event</code> records straight to an input device node e.g. <code>/dev/input/event7</code>.
+ * Unlike a {@link com.se.pcremote.server.RobotBackend RobotBackend} it does not need an X display and does not make a round trip to the X server
+ * for every call. The events are buffered and the whole batch is written with a single write when the {@link #flush()} method is called (or when
+ * the buffer fills up). Each key press, button press or mouse movement is followed by a <code>SYN_REPORT</code> event so that it is reported on its
+ * own.
+ * </p>
+ * 
+ * <p>
+ * Creating a new virtual device through <code>/dev/uinput</code> requires <code>ioctl</code> calls that cannot be made from Java, so the device
+ * node must already exist (e.g. a virtual keyboard and mouse created with <code>uinput</code> by a helper at boot) and be writable by the user
+ * running the server. Key codes are translated from the Java <code>VK_</code> constants to the Linux <code>KEY_</code> codes, keys that have no
+ * translation are ignored. Absolute mouse movements are written as <code>ABS_X</code> and <code>ABS_Y</code> events, which are only honoured by
+ * devices that have absolute axes.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class UinputBackend implements InputBackend
+{
+    /**
+     * <p>
+     * The size of an <code>input_event</code> record on platforms with a 32 bit <code>time_t</code> (in bytes).
+     * </p>
+     */
+    public static final int EVENT_LENGTH_32 = 16;
+
+    /**
+     * <p>
+     * The size of an <code>input_event</code> record on platforms with a 64 bit <code>time_t</code> (in bytes).
+     * </p>
+     */
+    public static final int EVENT_LENGTH_64 = 24;
+
+    /**
+     * <p>
+     * The absolute axis event type.
+     * </p>
+     */
+    public static final int EV_ABS = 3;
+
+    /**
+     * <p>
+     * The key (and button) event type.
+     * </p>
+     */
+    public static final int EV_KEY = 1;
+
+    /**
+     * <p>
+     * The relative axis event type.
+     * </p>
+     */
+    public static final int EV_REL = 2;
+
+    /**
+     * <p>
+     * The synchronisation event type.
+     * </p>
+     */
+    public static final int EV_SYN = 0;
+
+    /**
+     * <p>
+     * The horizontal absolute axis.
+     * </p>
+     */
+    private static final int ABS_X = 0;
+
+    /**
+     * <p>
+     * The vertical absolute axis.
+     * </p>
+     */
+    private static final int ABS_Y = 1;
+
+    /**
+     * <p>
+     * The number of events buffered before they are written, even if the buffer has not been flushed.
+     * </p>
+     */
+    private static final int BUFFER_EVENTS = 256;
+
+    /**
+     * <p>
+     * The Linux codes of the mouse buttons, indexed by mouse button (1 for the left button, 2 for the middle button and 3 for the right button).
+     * </p>
+     */
+    private static final int[] BUTTON_CODES = new int[] {0, 0x110, 0x112, 0x111};
+
+    /**
+     * <p>
+     * The Linux key codes, indexed by the Java <code>VK_</code> constants.
+     * </p>
+     */
+    private static final int[] KEY_CODES = createKeyCodes();
+
+    /**
+     * <p>
+     * The horizontal relative axis.
+     * </p>
+     */
+    private static final int REL_X = 0;
+
+    /**
+     * <p>
+     * The vertical relative axis.
+     * </p>
+     */
+    private static final int REL_Y = 1;
+
+    /**
+     * <p>
+     * The mouse wheel relative axis.
+     * </p>
+     */
+    private static final int REL_WHEEL = 8;
+
+    /**
+     * <p>
+     * The code of the synchronisation event that ends a report.
+     * </p>
+     */
+    private static final int SYN_REPORT = 0;
+
+    /**
+     * <p>
+     * Creates the table of Linux key codes, indexed by the Java <code>VK_</code> constants.
+     * </p>
+     * 
+     * @return The table of Linux key codes.
+     */
+    private static int[] createKeyCodes()
+    {
+        int[] keyCodes = new int[KeyEvent.VK_CONTEXT_MENU + 1];
+
+        // The rows of letters.
+        String rows = "QWERTYUIOP ASDFGHJKL ZXCVBNM";
+        int[] rowStarts = new int[] {16, 30, 44};
+        int row = 0;
+        int column = 0;
+        for (int index = 0; index < rows.length(); index++)
+        {
+            if (rows.charAt(index) == ' ')
+            {
+                row++;
+                column = 0;
+            }
+            else
+            {
+                keyCodes[rows.charAt(index)] = rowStarts[row] + column++;
+            }
+        }
+
+        for (int index = 1; index <= 9; index++)
+        {
+            keyCodes[KeyEvent.VK_0 + index] = 1 + index;
+            keyCodes[KeyEvent.VK_F1 + index - 1] = 58 + index;
+        }
+        keyCodes[KeyEvent.VK_0] = 11;
+        keyCodes[KeyEvent.VK_F10] = 68;
+        keyCodes[KeyEvent.VK_F11] = 87;
+        keyCodes[KeyEvent.VK_F12] = 88;
+
+        keyCodes[KeyEvent.VK_NUMPAD7] = 71;
+        keyCodes[KeyEvent.VK_NUMPAD8] = 72;
+        keyCodes[KeyEvent.VK_NUMPAD9] = 73;
+        keyCodes[KeyEvent.VK_NUMPAD4] = 75;
+        keyCodes[KeyEvent.VK_NUMPAD5] = 76;
+        keyCodes[KeyEvent.VK_NUMPAD6] = 77;
+        keyCodes[KeyEvent.VK_NUMPAD1] = 79;
+        keyCodes[KeyEvent.VK_NUMPAD2] = 80;
+        keyCodes[KeyEvent.VK_NUMPAD3] = 81;
+        keyCodes[KeyEvent.VK_NUMPAD0] = 82;
+        keyCodes[KeyEvent.VK_MULTIPLY] = 55;
+        keyCodes[KeyEvent.VK_SUBTRACT] = 74;
+        keyCodes[KeyEvent.VK_ADD] = 78;
+        keyCodes[KeyEvent.VK_DECIMAL] = 83;
+        keyCodes[KeyEvent.VK_DIVIDE] = 98;
+
+        keyCodes[KeyEvent.VK_ESCAPE] = 1;
+        keyCodes[KeyEvent.VK_MINUS] = 12;
+        keyCodes[KeyEvent.VK_EQUALS] = 13;
+        keyCodes[KeyEvent.VK_BACK_SPACE] = 14;
+        keyCodes[KeyEvent.VK_TAB] = 15;
+        keyCodes[KeyEvent.VK_OPEN_BRACKET] = 26;
+        keyCodes[KeyEvent.VK_CLOSE_BRACKET] = 27;
+        keyCodes[KeyEvent.VK_ENTER] = 28;
+        keyCodes[KeyEvent.VK_CONTROL] = 29;
+        keyCodes[KeyEvent.VK_SEMICOLON] = 39;
+        keyCodes[KeyEvent.VK_QUOTE] = 40;
+        keyCodes[KeyEvent.VK_BACK_QUOTE] = 41;
+        keyCodes[KeyEvent.VK_SHIFT] = 42;
+        keyCodes[KeyEvent.VK_BACK_SLASH] = 43;
+        keyCodes[KeyEvent.VK_COMMA] = 51;
+        keyCodes[KeyEvent.VK_PERIOD] = 52;
+        keyCodes[KeyEvent.VK_SLASH] = 53;
+        keyCodes[KeyEvent.VK_ALT] = 56;
+        keyCodes[KeyEvent.VK_SPACE] = 57;
+        keyCodes[KeyEvent.VK_CAPS_LOCK] = 58;
+        keyCodes[KeyEvent.VK_NUM_LOCK] = 69;
+        keyCodes[KeyEvent.VK_SCROLL_LOCK] = 70;
+        keyCodes[KeyEvent.VK_PRINTSCREEN] = 99;
+        keyCodes[KeyEvent.VK_HOME] = 102;
+        keyCodes[KeyEvent.VK_UP] = 103;
+        keyCodes[KeyEvent.VK_PAGE_UP] = 104;
+        keyCodes[KeyEvent.VK_LEFT] = 105;
+        keyCodes[KeyEvent.VK_RIGHT] = 106;
+        keyCodes[KeyEvent.VK_END] = 107;
+        keyCodes[KeyEvent.VK_DOWN] = 108;
+        keyCodes[KeyEvent.VK_PAGE_DOWN] = 109;
+        keyCodes[KeyEvent.VK_INSERT] = 110;
+        keyCodes[KeyEvent.VK_DELETE] = 111;
+        keyCodes[KeyEvent.VK_PAUSE] = 119;
+        keyCodes[KeyEvent.VK_WINDOWS] = 125;
+        keyCodes[KeyEvent.VK_CONTEXT_MENU] = 127;
+
+        return (keyCodes);
+    }
+
+    /**
+     * <p>
+     * Opens the input device node at the given path.
+     * </p>
+     * 
+     * @param path The path of the input device node.
+     * 
+     * @return An <code>UinputBackend</code> that writes to the input device node.
+     * 
+     * @throws IOException Thrown if the input device node does not exist or cannot be opened for writing.
+     */
+    public static UinputBackend open(final String path) throws IOException
+    {
+        if (!new File(path).exists())
+        {
+            throw new FileNotFoundException("The input device '" + path + "' does not exist.");
+        }
+
+        return (new UinputBackend(new RandomAccessFile(path, "rw").getChannel()));
+    }
+
+    /**
+     * <p>
+     * The events waiting to be written.
+     * </p>
+     */
+    private ByteBuffer fBuffer;
+
+    /**
+     * <p>
+     * The channel the events are written to.
+     * </p>
+     */
+    private FileChannel fChannel;
+
+    /**
+     * <p>
+     * The size of an <code>input_event</code> record (in bytes).
+     * </p>
+     */
+    private int fEventLength;
+
+    /**
+     * <p>
+     * Creates an instance of <code>UinputBackend</code> that writes <code>input_event</code> records of the size used by the running JVM's
+     * platform.
+     * </p>
+     * 
+     * @param channel The channel the events are written to.
+     */
+    public UinputBackend(final FileChannel channel)
+    {
+        this(channel, "64".equals(System.getProperty("sun.arch.data.model")) ? EVENT_LENGTH_64 : EVENT_LENGTH_32);
+    }
+
+    /**
+     * <p>
+     * Creates an instance of <code>UinputBackend</code>.
+     * </p>
+     * 
+     * @param channel The channel the events are written to.
+     * @param eventLength The size of an <code>input_event</code> record, either {@link #EVENT_LENGTH_32} or {@link #EVENT_LENGTH_64}.
+     */
+    public UinputBackend(final FileChannel channel, final int eventLength)
+    {
+        fChannel = channel;
+        fEventLength = eventLength;
+
+        fBuffer = ByteBuffer.allocateDirect(eventLength * BUFFER_EVENTS).order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public void dispose() throws IOException
+    {
+        try
+        {
+            flush();
+        }
+        finally
+        {
+            fChannel.close();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        fBuffer.flip();
+        try
+        {
+            while (fBuffer.hasRemaining())
+            {
+                fChannel.write(fBuffer);
+            }
+        }
+        finally
+        {
+            fBuffer.clear();
+        }
+    }
+
+    /**
+     * <p>
+     * Retrieves the size of an <code>input_event</code> record written by this <code>UinputBackend</code>.
+     * </p>
+     * 
+     * @return The size of an <code>input_event</code> record (in bytes).
+     */
+    public int getEventLength()
+    {
+        return (fEventLength);
+    }
+
+    /**
+     * <p>
+     * Writes a key event followed by a <code>SYN_REPORT</code> event, if the key has a Linux key code.
+     * </p>
+     * 
+     * @param keyCode The code of the key, as per the <code>VK_</code> constants of {@link java.awt.event.KeyEvent KeyEvent}.
+     * @param value 1 for a press, 0 for a release.
+     * 
+     * @throws IOException Thrown if the buffer fills up and fails to be flushed.
+     */
+    private void key(final int keyCode, final int value) throws IOException
+    {
+        if (keyCode > 0 && keyCode < KEY_CODES.length && KEY_CODES[keyCode] != 0)
+        {
+            write(EV_KEY, KEY_CODES[keyCode], value);
+            write(EV_SYN, SYN_REPORT, 0);
+        }
+    }
+
+    @Override
+    public void keyPress(final int keyCode) throws IOException
+    {
+        key(keyCode, 1);
+    }
+
+    @Override
+    public void keyRelease(final int keyCode) throws IOException
+    {
+        key(keyCode, 0);
+    }
+
+    /**
+     * <p>
+     * Writes a mouse button event followed by a <code>SYN_REPORT</code> event, if the mouse button is supported.
+     * </p>
+     * 
+     * @param mouseButton The mouse button.
+     * @param value 1 for a press, 0 for a release.
+     * 
+     * @throws IOException Thrown if the buffer fills up and fails to be flushed.
+     */
+    private void mouseButton(final int mouseButton, final int value) throws IOException
+    {
+        if (mouseButton > 0 && mouseButton < BUTTON_CODES.length)
+        {
+            write(EV_KEY, BUTTON_CODES[mouseButton], value);
+            write(EV_SYN, SYN_REPORT, 0);
+        }
+    }
+
+    @Override
+    public void mouseMove(final int x, final int y) throws IOException
+    {
+        write(EV_ABS, ABS_X, x);
+        write(EV_ABS, ABS_Y, y);
+        write(EV_SYN, SYN_REPORT, 0);
+    }
+
+    @Override
+    public void mouseMoveRelative(final int x, final int y) throws IOException
+    {
+        write(EV_REL, REL_X, x);
+        write(EV_REL, REL_Y, y);
+        write(EV_SYN, SYN_REPORT, 0);
+    }
+
+    @Override
+    public void mousePress(final int mouseButton) throws IOException
+    {
+        mouseButton(mouseButton, 1);
+    }
+
+    @Override
+    public void mouseRelease(final int mouseButton) throws IOException
+    {
+        mouseButton(mouseButton, 0);
+    }
+
+    @Override
+    public void mouseWheel(final int notches) throws IOException
+    {
+        // A positive REL_WHEEL value scrolls up, away from the user.
+        write(EV_REL, REL_WHEEL, -notches);
+        write(EV_SYN, SYN_REPORT, 0);
+    }
+
+    /**
+     * <p>
+     * Adds an <code>input_event</code> record to the buffer, flushing the buffer first if it is full. The time of the event is left as zero for the
+     * kernel to fill in.
+     * </p>
+     * 
+     * @param type The type of the event.
+     * @param code The code of the event.
+     * @param value The value of the event.
+     * 
+     * @throws IOException Thrown if the buffer is full and fails to be flushed.
+     */
+    private void write(final int type, final int code, final int value) throws IOException
+    {
+        if (fBuffer.remaining() < fEventLength)
+        {
+            flush();
+        }
+
+        for (int index = 0; index < fEventLength - 8; index += 4)
+        {
+            fBuffer.putInt(0);
+        }
+        fBuffer.putShort((short) type);
+        fBuffer.putShort((short) code);
+        fBuffer.putInt(value);
+    }
+}
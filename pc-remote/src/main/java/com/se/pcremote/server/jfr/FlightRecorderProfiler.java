@@ -0,0 +1,253 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server.jfr;
+
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+import com.se.pcremote.server.StageProfiler;
+
+/**
+ * <p>
+ * A {@link com.se.pcremote.server.StageProfiler StageProfiler} that emits Java Flight Recorder events, so that a recording of the server shows
+ * which stage the time went in next to the garbage collections, safepoints and thread states of the JVM.
+ * </p>
+ * 
+ * <p>
+ * Nothing is emitted while the Flight Recorder is not recording, so that the stages do not allocate. While it is recording, each stage is profiled
+ * one in every sample rate times it is passed through (approximately, as the count is not synchronised between threads) and the stages that take
+ * less time than the threshold of their event, 1 millisecond by default, are discarded by the Flight Recorder. The thresholds can be changed in the
+ * settings of the recording, except that of the {@link com.se.pcremote.server.jfr.QueueEvent QueueEvent}, which is set when this
+ * <code>FlightRecorderProfiler</code> is created.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class FlightRecorderProfiler extends StageProfiler implements FlightRecorderListener
+{
+    /**
+     * <p>
+     * The time commands must wait in the queue for before it is profiled (in nanoseconds).
+     * </p>
+     */
+    private long fQueueThreshold;
+
+    /**
+     * <p>
+     * Determines whether the Flight Recorder is recording.
+     * </p>
+     */
+    private volatile boolean fRecording;
+
+    /**
+     * <p>
+     * The number of times each stage has been passed through since it was last profiled.
+     * </p>
+     */
+    private int[] fSampleCounts;
+
+    /**
+     * <p>
+     * One in how many of the times each stage is passed through is profiled.
+     * </p>
+     */
+    private int fSampleRate;
+
+    /**
+     * <p>
+     * Creates an instance of <code>FlightRecorderProfiler</code>.
+     * </p>
+     * 
+     * @param sampleRate One in how many of the times each stage is passed through is profiled, 1 to profile them all.
+     * @param queueThreshold The time commands must wait in the queue for before it is profiled (in nanoseconds).
+     */
+    public FlightRecorderProfiler(final int sampleRate, final long queueThreshold)
+    {
+        if (sampleRate < 1)
+        {
+            throw new IllegalArgumentException("The sample rate must be at least 1.");
+        }
+
+        fSampleRate = sampleRate;
+        fQueueThreshold = queueThreshold;
+
+        fRecording = false;
+        fSampleCounts = new int[UDP_RECEIVE + 1];
+
+        FlightRecorder.addListener(this);
+        if (FlightRecorder.isInitialized())
+        {
+            fRecording = isAnyRecordingRunning();
+        }
+    }
+
+    @Override
+    public Object begin(final int stage)
+    {
+        if (!fRecording)
+        {
+            return (null);
+        }
+
+        if (fSampleRate > 1)
+        {
+            if (++fSampleCounts[stage] < fSampleRate)
+            {
+                return (null);
+            }
+            fSampleCounts[stage] = 0;
+        }
+
+        Event event;
+        if (stage == INJECT)
+        {
+            event = new InjectEvent();
+        }
+        else if (stage == PARSE)
+        {
+            event = new ParseEvent();
+        }
+        else
+        {
+            ReceiveEvent receiveEvent = new ReceiveEvent();
+            receiveEvent.transport = stage == TCP_RECEIVE ? "TCP" : "UDP";
+            event = receiveEvent;
+        }
+        event.begin();
+
+        return (event);
+    }
+
+    /**
+     * <p>
+     * Stops listening to the Flight Recorder. Nothing is emitted afterwards.
+     * </p>
+     */
+    public void dispose()
+    {
+        FlightRecorder.removeListener(this);
+        fRecording = false;
+    }
+
+    @Override
+    public void end(final Object profile, final int clientId, final int byteCount, final int commandCount)
+    {
+        if (profile == null)
+        {
+            return;
+        }
+
+        if (profile instanceof InjectEvent)
+        {
+            InjectEvent event = (InjectEvent) profile;
+            event.clientId = clientId;
+            event.commandCount = commandCount;
+        }
+        else if (profile instanceof ParseEvent)
+        {
+            ParseEvent event = (ParseEvent) profile;
+            event.byteCount = byteCount;
+            event.commandCount = commandCount;
+        }
+        else
+        {
+            ReceiveEvent event = (ReceiveEvent) profile;
+            event.byteCount = byteCount;
+            event.commandCount = commandCount;
+        }
+        ((Event) profile).commit();
+    }
+
+    /**
+     * <p>
+     * Retrieves the time commands must wait in the queue for before it is profiled.
+     * </p>
+     * 
+     * @return The time commands must wait in the queue for before it is profiled (in nanoseconds).
+     */
+    public long getQueueThreshold()
+    {
+        return (fQueueThreshold);
+    }
+
+    /**
+     * <p>
+     * Retrieves one in how many of the times each stage is passed through is profiled.
+     * </p>
+     * 
+     * @return One in how many of the times each stage is passed through is profiled.
+     */
+    public int getSampleRate()
+    {
+        return (fSampleRate);
+    }
+
+    /**
+     * <p>
+     * Determines whether any of the recordings of the Flight Recorder are running.
+     * </p>
+     * 
+     * @return True if any of the recordings of the Flight Recorder are running, false otherwise.
+     */
+    private boolean isAnyRecordingRunning()
+    {
+        for (Recording recording : FlightRecorder.getFlightRecorder().getRecordings())
+        {
+            if (recording.getState() == RecordingState.RUNNING)
+            {
+                return (true);
+            }
+        }
+
+        return (false);
+    }
+
+    /**
+     * <p>
+     * Determines whether the Flight Recorder is recording, in which case the stages are profiled.
+     * </p>
+     * 
+     * @return True if the Flight Recorder is recording, false otherwise.
+     */
+    public boolean isRecording()
+    {
+        return (fRecording);
+    }
+
+    @Override
+    public void queued(final int clientId, final int commandCount, final long waitTime)
+    {
+        if (!fRecording || waitTime < fQueueThreshold)
+        {
+            return;
+        }
+
+        QueueEvent event = new QueueEvent();
+        event.clientId = clientId;
+        event.commandCount = commandCount;
+        event.waitTime = waitTime;
+        event.commit();
+    }
+
+    @Override
+    public void recorderInitialized(final FlightRecorder recorder)
+    {}
+
+    @Override
+    public void recordingStateChanged(final Recording recording)
+    {
+        fRecording = isAnyRecordingRunning();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * <p>
+ * Emitted when a batch of commands has been injected by the {@link com.se.pcremote.server.InputBackend InputBackend}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+@Category("PC Remote")
+@Description("Injection of a batch of commands by the input backend")
+@Label("Inject")
+@Name("com.se.pcremote.Inject")
+@Threshold("1 ms")
+public class InjectEvent extends Event
+{
+    /**
+     * <p>
+     * The identifier of the client that sent the commands, or 0 if it is not known.
+     * </p>
+     */
+    @Label("Client")
+    int clientId;
+
+    /**
+     * <p>
+     * The number of commands injected.
+     * </p>
+     */
+    @Label("Commands")
+    int commandCount;
+}
@@ -0,0 +1,52 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * <p>
+ * Emitted when the commands have been decoded from the data received from a client.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+@Category("PC Remote")
+@Description("Decoding of the commands from the data received from a client")
+@Label("Parse")
+@Name("com.se.pcremote.Parse")
+@Threshold("1 ms")
+public class ParseEvent extends Event
+{
+    /**
+     * <p>
+     * The number of bytes decoded.
+     * </p>
+     */
+    @DataAmount
+    @Label("Bytes")
+    int byteCount;
+
+    /**
+     * <p>
+     * The number of commands decoded.
+     * </p>
+     */
+    @Label("Commands")
+    int commandCount;
+}
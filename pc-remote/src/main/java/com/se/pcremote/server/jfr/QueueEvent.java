@@ -0,0 +1,64 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * <p>
+ * Emitted when a batch of commands that waited in the queue of the {@link com.se.pcremote.server.InputScheduler InputScheduler} for longer than
+ * the queue threshold of the {@link com.se.pcremote.server.jfr.FlightRecorderProfiler FlightRecorderProfiler} is taken to be injected.
+ * </p>
+ * 
+ * <p>
+ * The wait began on another thread before the event could be begun, so it is emitted as an instant event that carries the time waited rather than
+ * as a duration, and its threshold cannot be set in the settings of a recording.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+@Category("PC Remote")
+@Description("A batch of commands that waited too long in the queue to be injected")
+@Label("Queue")
+@Name("com.se.pcremote.Queue")
+public class QueueEvent extends Event
+{
+    /**
+     * <p>
+     * The identifier of the client that sent the commands, or 0 if it is not known.
+     * </p>
+     */
+    @Label("Client")
+    int clientId;
+
+    /**
+     * <p>
+     * The number of commands taken.
+     * </p>
+     */
+    @Label("Commands")
+    int commandCount;
+
+    /**
+     * <p>
+     * The time the oldest of the commands waited in the queue.
+     * </p>
+     */
+    @Label("Wait Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long waitTime;
+}
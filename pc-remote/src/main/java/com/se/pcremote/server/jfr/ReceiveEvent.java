@@ -0,0 +1,61 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * <p>
+ * Emitted when the data received from a client has been handled, including decoding the commands and dispatching them to the sessions (which
+ * executes them when they are not queued for injection).
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+@Category("PC Remote")
+@Description("Handling of the data received from a client")
+@Label("Receive")
+@Name("com.se.pcremote.Receive")
+@Threshold("1 ms")
+public class ReceiveEvent extends Event
+{
+    /**
+     * <p>
+     * The number of bytes received.
+     * </p>
+     */
+    @DataAmount
+    @Label("Bytes")
+    int byteCount;
+
+    /**
+     * <p>
+     * The number of commands decoded.
+     * </p>
+     */
+    @Label("Commands")
+    int commandCount;
+
+    /**
+     * <p>
+     * The protocol the data was received with.
+     * </p>
+     */
+    @Label("Transport")
+    String transport;
+}
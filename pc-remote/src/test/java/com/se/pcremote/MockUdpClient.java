@@ -1,8 +1,12 @@
 package com.se.pcremote;
 
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.se.pcremote.UdpClient;
 
@@ -15,6 +19,13 @@ import com.se.pcremote.UdpClient;
  */
 public class MockUdpClient extends UdpClient
 {
+    /**
+     * <p>
+     * The data of the datagrams received.
+     * </p>
+     */
+    private List<String> fDataReceived = new ArrayList<String>();
+
     /**
      * <p>
      * Creates an instance of <code>MockUdpClient</code>.
@@ -41,7 +52,35 @@ public class MockUdpClient extends UdpClient
         super(datagramSocket, remoteHost, remotePort);
     }
 
+    /**
+     * <p>
+     * Creates an instance of <code>MockUdpClient</code>.
+     * </p>
+     * 
+     * @param datagramChannel The channel over which the UDP data is sent and received.
+     * 
+     * @throws IOException Thrown if the channel fails to be configured for non-blocking receipt.
+     */
+    public MockUdpClient(final DatagramChannel datagramChannel) throws IOException
+    {
+        super(datagramChannel);
+    }
+
+    /**
+     * <p>
+     * Retrieves the data of the datagrams received.
+     * </p>
+     * 
+     * @return The data of the datagrams received.
+     */
+    public List<String> getDataReceived()
+    {
+        return (fDataReceived);
+    }
+
     @Override
     protected void onReceiveData(final DatagramPacket packet)
-    {}
+    {
+        fDataReceived.add(new String(packet.getData(), packet.getOffset(), packet.getLength()));
+    }
 }
@@ -0,0 +1,205 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.ReceiveWindow ReceiveWindow}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ReceiveWindowTest
+{
+    /**
+     * <p>
+     * The epoch of the sender.
+     * </p>
+     */
+    private static final int EPOCH = 7;
+
+    /**
+     * An instance of the class being unit tested.
+     */
+    private ReceiveWindow fTestObject;
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        fTestObject = new ReceiveWindow(EPOCH);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.ReceiveWindow#receive(int, int) receive(int, int)}.
+     * </p>
+     */
+    @Test
+    public void receive()
+    {
+        // Perform test.
+        assertTrue(fTestObject.receive(EPOCH, 0));
+        assertTrue(fTestObject.receive(EPOCH, 1));
+
+        // Verify test results.
+        assertEquals(2, fTestObject.getNext());
+        assertEquals(0, fTestObject.getMask());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.ReceiveWindow#receive(int, int) receive(int, int)} with the special condition that datagrams are received
+     * more than once.
+     * </p>
+     */
+    @Test
+    public void receiveDuplicates()
+    {
+        // Perform test.
+        assertTrue(fTestObject.receive(EPOCH, 0));
+        assertTrue(fTestObject.receive(EPOCH, 2));
+        assertFalse(fTestObject.receive(EPOCH, 0));
+        assertFalse(fTestObject.receive(EPOCH, 2));
+
+        // Verify test results.
+        assertEquals(2, fTestObject.getDuplicateCount());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.ReceiveWindow#receive(int, int) receive(int, int)} with the special condition that a datagram is missing.
+     * </p>
+     */
+    @Test
+    public void receiveGap()
+    {
+        // Perform test.
+        fTestObject.receive(EPOCH, 0);
+        fTestObject.receive(EPOCH, 2);
+        fTestObject.receive(EPOCH, 4);
+
+        // Verify test results.
+        assertEquals(1, fTestObject.getNext());
+        assertEquals(0x5, fTestObject.getMask());
+
+        // Perform test.
+        fTestObject.receive(EPOCH, 1);
+
+        // Verify test results.
+        assertEquals(3, fTestObject.getNext());
+        assertEquals(0x1, fTestObject.getMask());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.ReceiveWindow#receive(int, int) receive(int, int)} with the special condition that the sender has
+     * restarted with a new epoch.
+     * </p>
+     */
+    @Test
+    public void receiveNewEpoch()
+    {
+        // Initialise test environment.
+        fTestObject.receive(EPOCH, 0);
+        fTestObject.receive(EPOCH, 1);
+        fTestObject.receive(EPOCH, 3);
+
+        // Perform test.
+        assertTrue(fTestObject.receive(EPOCH + 1, 0));
+
+        // Verify test results.
+        assertEquals(EPOCH + 1, fTestObject.getEpoch());
+        assertEquals(1, fTestObject.getNext());
+        assertEquals(0, fTestObject.getMask());
+        assertTrue(fTestObject.receive(EPOCH + 1, 1));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.ReceiveWindow#receive(int, int) receive(int, int)} with the special condition that a delayed
+     * datagram of the previous epoch arrives after the window has moved on to a new epoch.
+     * </p>
+     */
+    @Test
+    public void receiveOldEpoch()
+    {
+        // Initialise test environment.
+        fTestObject.receive(EPOCH, 0);
+        fTestObject.receive(EPOCH, 1);
+        fTestObject.receive(EPOCH + 1, 0);
+        fTestObject.receive(EPOCH + 1, 1);
+
+        // Perform test.
+        assertFalse(fTestObject.receive(EPOCH, 2));
+
+        // Verify test results.
+        assertEquals(EPOCH + 1, fTestObject.getEpoch());
+        assertEquals(2, fTestObject.getNext());
+        assertEquals(1, fTestObject.getStaleCount());
+        assertFalse(fTestObject.receive(EPOCH + 1, 0));
+        assertFalse(fTestObject.receive(EPOCH + 1, 1));
+        assertTrue(fTestObject.receive(EPOCH + 1, 2));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.ReceiveWindow#receive(int, int) receive(int, int)} with the special condition that a datagram of
+     * another epoch arrives that is too far into its sequence to be the start of a new epoch.
+     * </p>
+     */
+    @Test
+    public void receiveOtherEpochTooFarIn()
+    {
+        // Initialise test environment.
+        fTestObject.receive(EPOCH, 0);
+
+        // Perform test.
+        assertFalse(fTestObject.receive(EPOCH + 1, 100));
+
+        // Verify test results.
+        assertEquals(EPOCH, fTestObject.getEpoch());
+        assertEquals(1, fTestObject.getNext());
+        assertFalse(fTestObject.receive(EPOCH, 0));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.ReceiveWindow#receive(int, int) receive(int, int)} with the special condition that a datagram is too far
+     * ahead of the next datagram expected to be acknowledged selectively.
+     * </p>
+     */
+    @Test
+    public void receiveTooFarAhead()
+    {
+        // Perform test.
+        fTestObject.receive(EPOCH, 0);
+        fTestObject.receive(EPOCH, 2);
+        fTestObject.receive(EPOCH, 100);
+
+        // Verify test results.
+        assertEquals(36, fTestObject.getNext());
+        assertEquals(1L << 63, fTestObject.getMask());
+        assertFalse(fTestObject.receive(EPOCH, 2));
+    }
+}
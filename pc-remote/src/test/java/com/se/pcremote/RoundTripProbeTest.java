@@ -0,0 +1,156 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.RoundTripProbe RoundTripProbe}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class RoundTripProbeTest
+{
+    /**
+     * An instance of the class being unit tested.
+     */
+    private RoundTripProbe fTestObject;
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        fTestObject = new RoundTripProbe();
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.RoundTripProbe#getLossRate() getLossRate()}.
+     * </p>
+     */
+    @Test
+    public void getLossRate()
+    {
+        // Perform test.
+        for (int index = 0; index < 4; index++)
+        {
+            ByteBuffer request = request(index * 1000000000L);
+            if (index != 1)
+            {
+                fTestObject.receiveReply(reply(request), index * 1000000000L + 2000000L);
+            }
+        }
+
+        // Verify test results.
+        assertEquals(4, fTestObject.getSentCount());
+        assertEquals(3, fTestObject.getReplyCount());
+        assertEquals(1, fTestObject.getLostCount());
+        assertEquals(0.25, fTestObject.getLossRate(), 0.0001);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.RoundTripProbe#receiveReply(ByteBuffer, long) receiveReply(ByteBuffer, long)}.
+     * </p>
+     */
+    @Test
+    public void receiveReply()
+    {
+        // Perform test.
+        ByteBuffer request = request(0);
+        fTestObject.receiveReply(reply(request), 8000000L);
+        request = request(1000000000L);
+        fTestObject.receiveReply(reply(request), 1024000000L);
+
+        // Verify test results.
+        assertEquals(2, fTestObject.getReplyCount());
+        assertEquals(24000000L, fTestObject.getLastRoundTripTime());
+        assertEquals(10000000L, fTestObject.getRoundTripTime());
+        assertEquals(1000000L, fTestObject.getJitter());
+        assertEquals(0, fTestObject.getLossRate(), 0);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.RoundTripProbe#receiveReply(ByteBuffer, long) receiveReply(ByteBuffer, long)} with the special
+     * condition that the reply arrives after the next probe was sent.
+     * </p>
+     */
+    @Test
+    public void receiveReplyLate()
+    {
+        // Perform test.
+        ByteBuffer lateRequest = request(0);
+        request(1000000000L);
+        fTestObject.receiveReply(reply(lateRequest), 1001000000L);
+
+        // Verify test results.
+        assertEquals(0, fTestObject.getReplyCount());
+        assertEquals(1, fTestObject.getLostCount());
+        assertEquals(-1, fTestObject.getRoundTripTime());
+    }
+
+    /**
+     * <p>
+     * Creates the reply to a probe request.
+     * </p>
+     * 
+     * @param request The probe request.
+     * 
+     * @return The reply, after its marker.
+     */
+    private ByteBuffer reply(final ByteBuffer request)
+    {
+        ByteBuffer reply = ByteBuffer.allocate(RoundTripProbe.LENGTH);
+        RoundTripProbe.writeReply(request, reply);
+        reply.flip();
+
+        assertTrue(RoundTripProbe.isReply(reply));
+        assertFalse(RoundTripProbe.isRequest(reply));
+        reply.get();
+
+        return (reply);
+    }
+
+    /**
+     * <p>
+     * Writes the next probe request.
+     * </p>
+     * 
+     * @param now The time at which the request is sent (in nanoseconds).
+     * 
+     * @return The probe request.
+     */
+    private ByteBuffer request(final long now)
+    {
+        ByteBuffer request = ByteBuffer.allocate(RoundTripProbe.LENGTH);
+        fTestObject.writeRequest(request, now);
+        request.flip();
+
+        assertTrue(RoundTripProbe.isRequest(request));
+
+        return (request);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.SendWindow SendWindow}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class SendWindowTest
+{
+    /**
+     * An instance of the class being unit tested.
+     */
+    private SendWindow fTestObject;
+
+    /**
+     * <p>
+     * Creates an acknowledgement.
+     * </p>
+     * 
+     * @param epoch The epoch of the sender.
+     * @param next The sequence number of the next datagram expected.
+     * @param mask The bit mask of the datagrams after the next datagram expected that have arrived.
+     * 
+     * @return The acknowledgement, after its marker.
+     */
+    private ByteBuffer ack(final int epoch, final int next, final long mask)
+    {
+        ByteBuffer ack = ByteBuffer.allocate(ReceiveWindow.ACK_LENGTH);
+        ack.put(ReceiveWindow.ACK_MARKER).putInt(epoch).putInt(next).putLong(mask);
+        ack.flip();
+        ack.get();
+
+        return (ack);
+    }
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        fTestObject = new SendWindow();
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.SendWindow#acknowledge(ByteBuffer, long) acknowledge(ByteBuffer, long)}.
+     * </p>
+     */
+    @Test
+    public void acknowledge()
+    {
+        // Initialise test environment.
+        for (int index = 0; index < 4; index++)
+        {
+            fTestObject.add(new byte[] {1}, 0);
+        }
+
+        // Perform test.
+        fTestObject.acknowledge(ack(fTestObject.getEpoch(), 1, 0x2), 10000000L);
+
+        // Verify test results.
+        assertEquals(2, fTestObject.getUnacknowledgedCount());
+        assertEquals(10000000L, fTestObject.getRoundTripTime());
+        assertEquals(2, fTestObject.getExpired(1000000000L).size());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.SendWindow#acknowledge(ByteBuffer, long) acknowledge(ByteBuffer, long)} with the special
+     * condition that the acknowledgement was meant for a previous incarnation of the sender.
+     * </p>
+     */
+    @Test
+    public void acknowledgeOtherEpoch()
+    {
+        // Initialise test environment.
+        fTestObject.add(new byte[] {1}, 0);
+
+        // Perform test.
+        fTestObject.acknowledge(ack(fTestObject.getEpoch() + 1, 1, 0), 10000000L);
+
+        // Verify test results.
+        assertEquals(1, fTestObject.getUnacknowledgedCount());
+        assertEquals(-1, fTestObject.getRoundTripTime());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.SendWindow#add(byte[], long) add(byte[], long)}.
+     * </p>
+     */
+    @Test
+    public void add()
+    {
+        // Perform test.
+        fTestObject.add(new byte[] {1}, 0);
+        byte[] datagram = fTestObject.add(new byte[] {1, 2}, 0);
+
+        // Verify test results.
+        ByteBuffer buffer = ByteBuffer.wrap(datagram);
+        assertEquals(SendWindow.DATA_MARKER, buffer.get());
+        assertEquals(fTestObject.getEpoch(), buffer.getInt());
+        assertEquals(1, buffer.getInt());
+        assertEquals(2, buffer.remaining());
+        assertEquals(2, fTestObject.getUnacknowledgedCount());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.SendWindow#getExpired(long) getExpired(long)}.
+     * </p>
+     */
+    @Test
+    public void getExpired()
+    {
+        // Initialise test environment.
+        byte[] datagram = fTestObject.add(new byte[] {1}, 0);
+        long timeout = fTestObject.getRetransmissionTimeout();
+
+        // Perform test.
+        assertEquals(0, fTestObject.getExpired(timeout - 1).size());
+        assertEquals(datagram, fTestObject.getExpired(timeout).get(0));
+
+        // Verify test results.
+        assertEquals(1, fTestObject.getRetransmissionCount());
+
+        // The timeout doubles with each retransmission.
+        assertEquals(0, fTestObject.getExpired(timeout * 2).size());
+        assertEquals(1, fTestObject.getExpired(timeout * 3).size());
+    }
+}
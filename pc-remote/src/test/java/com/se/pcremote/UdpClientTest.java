@@ -18,12 +18,18 @@ import static org.easymock.classextension.EasyMock.createMock;
 import static org.easymock.classextension.EasyMock.makeThreadSafe;
 import static org.easymock.classextension.EasyMock.replay;
 import static org.easymock.classextension.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 
 import org.junit.Test;
 
@@ -104,6 +110,181 @@ public class UdpClientTest
         fTestObject.dispose();
     }
 
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.UdpClient#receiveData() receiveData()} with the special condition that the data is received via a
+     * {@link java.nio.channels.DatagramChannel DatagramChannel} and several datagrams are pending.
+     * </p>
+     * 
+     * @throws IOException Thrown if an I/O error occurs.
+     * @throws InterruptedException Thrown if this test is interrupted.
+     */
+    @Test
+    public void receiveDataBatch() throws IOException, InterruptedException
+    {
+        // Create dependencies.
+        DatagramChannel datagramChannel = DatagramChannel.open();
+        datagramChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("localhost"), 0));
+        DatagramSocket sender = new DatagramSocket();
+
+        // Initialise test environment.
+        fTestObject = new MockUdpClient(datagramChannel);
+        for (String data : new String[] {"one", "two", "three"})
+        {
+            sender.send(new DatagramPacket(data.getBytes(), data.length(), datagramChannel.socket().getLocalSocketAddress()));
+        }
+        sender.send(new DatagramPacket(fTestObject.getHeartbeatData(), fTestObject.getHeartbeatData().length, datagramChannel.socket()
+                .getLocalSocketAddress()));
+        Thread.sleep(100);
+
+        // Perform test.
+        fTestObject.receiveData();
+
+        // Verify test results.
+        assertEquals(3, fTestObject.getDataReceived().size());
+        assertEquals("one", fTestObject.getDataReceived().get(0));
+        assertEquals("three", fTestObject.getDataReceived().get(2));
+
+        // Cleanup
+        fTestObject.dispose();
+        sender.close();
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.UdpClient#receiveData() receiveData()} with the special condition that a round trip probe
+     * request is received.
+     * </p>
+     * 
+     * @throws IOException Thrown if an I/O error occurs.
+     * @throws InterruptedException Thrown if this test is interrupted.
+     */
+    @Test
+    public void receiveDataProbe() throws IOException, InterruptedException
+    {
+        // Create dependencies.
+        DatagramChannel datagramChannel = DatagramChannel.open();
+        datagramChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("localhost"), 0));
+        DatagramSocket sender = new DatagramSocket();
+        sender.setSoTimeout(1000);
+        RoundTripProbe probe = new RoundTripProbe();
+        ByteBuffer request = ByteBuffer.allocate(RoundTripProbe.LENGTH);
+        probe.writeRequest(request, System.nanoTime());
+
+        // Initialise test environment.
+        fTestObject = new MockUdpClient(datagramChannel);
+        sender.send(new DatagramPacket(request.array(), RoundTripProbe.LENGTH, datagramChannel.socket().getLocalSocketAddress()));
+        Thread.sleep(100);
+
+        // Perform test.
+        fTestObject.receiveData();
+
+        // Verify test results.
+        assertEquals(0, fTestObject.getDataReceived().size());
+
+        DatagramPacket reply = new DatagramPacket(new byte[RoundTripProbe.LENGTH], RoundTripProbe.LENGTH);
+        sender.receive(reply);
+        ByteBuffer replyBuffer = ByteBuffer.wrap(reply.getData());
+        assertTrue(RoundTripProbe.isReply(replyBuffer));
+        replyBuffer.get();
+        probe.receiveReply(replyBuffer, System.nanoTime());
+        assertEquals(1, probe.getReplyCount());
+        assertTrue(probe.getRoundTripTime() >= 0);
+
+        // Cleanup
+        fTestObject.dispose();
+        sender.close();
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.UdpClient#receiveData() receiveData()} with the special condition that reliable datagrams are
+     * received, one of them twice.
+     * </p>
+     * 
+     * @throws IOException Thrown if an I/O error occurs.
+     * @throws InterruptedException Thrown if this test is interrupted.
+     */
+    @Test
+    public void receiveDataReliable() throws IOException, InterruptedException
+    {
+        // Create dependencies.
+        DatagramChannel datagramChannel = DatagramChannel.open();
+        datagramChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("localhost"), 0));
+        DatagramSocket sender = new DatagramSocket();
+        sender.setSoTimeout(1000);
+        SendWindow sendWindow = new SendWindow();
+        byte[] reliableData = sendWindow.add("one".getBytes(), 0);
+
+        // Initialise test environment.
+        fTestObject = new MockUdpClient(datagramChannel);
+        sender.send(new DatagramPacket(reliableData, reliableData.length, datagramChannel.socket().getLocalSocketAddress()));
+        sender.send(new DatagramPacket(reliableData, reliableData.length, datagramChannel.socket().getLocalSocketAddress()));
+        sender.send(new DatagramPacket("two".getBytes(), 3, datagramChannel.socket().getLocalSocketAddress()));
+        Thread.sleep(100);
+
+        // Perform test.
+        fTestObject.receiveData();
+
+        // Verify test results.
+        assertEquals(2, fTestObject.getDataReceived().size());
+        assertEquals("one", fTestObject.getDataReceived().get(0));
+        assertEquals("two", fTestObject.getDataReceived().get(1));
+
+        DatagramPacket ack = new DatagramPacket(new byte[ReceiveWindow.ACK_LENGTH], ReceiveWindow.ACK_LENGTH);
+        sender.receive(ack);
+        ByteBuffer ackBuffer = ByteBuffer.wrap(ack.getData());
+        assertEquals(ReceiveWindow.ACK_MARKER, ackBuffer.get());
+        sendWindow.acknowledge(ackBuffer, 0);
+        assertEquals(0, sendWindow.getUnacknowledgedCount());
+
+        // Cleanup
+        fTestObject.dispose();
+        sender.close();
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.UdpClient#receiveData() receiveData()} with the special condition that a reliable datagram is
+     * received but its acknowledgement fails to be sent.
+     * </p>
+     * 
+     * @throws IOException Thrown if an I/O error occurs.
+     * @throws InterruptedException Thrown if this test is interrupted.
+     */
+    @Test
+    public void receiveDataReliableAckFails() throws IOException, InterruptedException
+    {
+        // Create dependencies.
+        DatagramChannel datagramChannel = DatagramChannel.open();
+        datagramChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("localhost"), 0));
+        DatagramSocket sender = new DatagramSocket();
+        byte[] reliableData = new SendWindow().add("one".getBytes(), 0);
+
+        // Initialise test environment.
+        fTestObject = new MockUdpClient(datagramChannel)
+        {
+            @Override
+            protected void sendData(final ByteBuffer data, final SocketAddress address) throws IOException
+            {
+                throw new IOException("Unreachable.");
+            }
+        };
+        sender.send(new DatagramPacket(reliableData, reliableData.length, datagramChannel.socket().getLocalSocketAddress()));
+        Thread.sleep(100);
+
+        // Perform test.
+        fTestObject.receiveData();
+
+        // Verify test results.
+        assertEquals(1, fTestObject.getDataReceived().size());
+        assertTrue(fTestObject.isConnected());
+
+        // Cleanup
+        fTestObject.dispose();
+        sender.close();
+    }
+
     /**
      * <p>
      * Unit test the method {@link com.se.devenvy.net.UdpClient#receiveData() receiveData()} with the special condition that the connection has been
@@ -0,0 +1,115 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.se.pcremote.RoundTripProbe;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.client.ConnectionQuality ConnectionQuality}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ConnectionQualityTest
+{
+    /**
+     * <p>
+     * Measures the quality of the connection.
+     * </p>
+     */
+    private RoundTripProbe fRoundTripProbe;
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        fRoundTripProbe = new RoundTripProbe();
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.client.ConnectionQuality#getLevel() getLevel()}.
+     * </p>
+     */
+    @Test
+    public void getLevel()
+    {
+        // Perform test & verify test results.
+        assertEquals(0, new ConnectionQuality(fRoundTripProbe).getLevel());
+
+        probe(0, 5000000L);
+        assertEquals(ConnectionQuality.MAX_LEVEL, new ConnectionQuality(fRoundTripProbe).getLevel());
+
+        for (int index = 1; index < 20; index++)
+        {
+            probe(index * 1000000000L, 80000000L);
+        }
+        assertEquals(2, new ConnectionQuality(fRoundTripProbe).getLevel());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.client.ConnectionQuality#getLevel() getLevel()} with the special condition that probes are
+     * lost.
+     * </p>
+     */
+    @Test
+    public void getLevelLossy()
+    {
+        // Initialise test environment.
+        for (int index = 0; index < 10; index++)
+        {
+            probe(index * 1000000000L, 1000000L);
+        }
+        ByteBuffer request = ByteBuffer.allocate(RoundTripProbe.LENGTH);
+        fRoundTripProbe.writeRequest(request, 10000000000L);
+
+        // Perform test.
+        probe(11000000000L, 1000000L);
+
+        // Verify test results.
+        assertEquals(2, new ConnectionQuality(fRoundTripProbe).getLevel());
+    }
+
+    /**
+     * <p>
+     * Sends a probe and receives its reply.
+     * </p>
+     * 
+     * @param sentTime The time at which the probe is sent (in nanoseconds).
+     * @param roundTripTime The time the reply takes to arrive (in nanoseconds).
+     */
+    private void probe(final long sentTime, final long roundTripTime)
+    {
+        ByteBuffer request = ByteBuffer.allocate(RoundTripProbe.LENGTH);
+        fRoundTripProbe.writeRequest(request, sentTime);
+        request.flip();
+
+        ByteBuffer reply = ByteBuffer.allocate(RoundTripProbe.LENGTH);
+        RoundTripProbe.writeReply(request, reply);
+        reply.flip();
+        reply.get();
+        fRoundTripProbe.receiveReply(reply, sentTime + roundTripTime);
+    }
+}
@@ -0,0 +1,496 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Allocation regression tests for the paths every command received takes through the server. Each path is warmed up and then run many times
+ * while the bytes allocated by the calling thread are measured (with the HotSpot extension of {@link java.lang.management.ThreadMXBean
+ * ThreadMXBean}), and the bytes allocated per command must be within the budget of the path. The budgets are zero: once they are warmed up the
+ * paths allocate nothing, so any allocation that creeps back in is caught. The tests are skipped on JVMs that cannot measure
+ * the bytes allocated by a thread.
+ * </p>
+ * 
+ * <p>
+ * The commands are executed by a backend that discards them, the limits on the rate at which clients can inject input are lifted and logging is
+ * at the level a production server logs at.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class AllocationTest
+{
+    /**
+     * <p>
+     * Discards the input.
+     * </p>
+     * 
+     * @author Gary Buyn
+     */
+    private static class NullInputBackend implements InputBackend
+    {
+        @Override
+        public void dispose()
+        {}
+
+        @Override
+        public void flush()
+        {}
+
+        @Override
+        public void keyPress(final int keyCode)
+        {}
+
+        @Override
+        public void keyRelease(final int keyCode)
+        {}
+
+        @Override
+        public void mouseMove(final int x, final int y)
+        {}
+
+        @Override
+        public void mouseMoveRelative(final int x, final int y)
+        {}
+
+        @Override
+        public void mousePress(final int mouseButton)
+        {}
+
+        @Override
+        public void mouseRelease(final int mouseButton)
+        {}
+
+        @Override
+        public void mouseWheel(final int notches)
+        {}
+    }
+
+    /**
+     * <p>
+     * The number of bytes {@link com.se.pcremote.server.CommandExecuter CommandExecuter} may allocate per command executed.
+     * </p>
+     */
+    private static final int EXECUTE_BUDGET = 0;
+
+    /**
+     * <p>
+     * The number of bytes allocated in total that are put down to the measurement itself rather than the path measured.
+     * </p>
+     */
+    private static final int MEASUREMENT_ALLOWANCE = 1024;
+
+    /**
+     * <p>
+     * The number of times each path is run while it is measured.
+     * </p>
+     */
+    private static final int MEASURED_RUNS = 20000;
+
+    /**
+     * <p>
+     * The messages sent by a client, in a realistic mix of mouse movements, clicks and typing.
+     * </p>
+     */
+    private static final String[] MESSAGES = new String[] {"mouseMoveRelative(3,-2);", "mouseMoveRelative(4,-1);", "mousePress(1);",
+            "mouseRelease(1);", "mouseMoveRelative(-1,3);", "mouseWheel(1);", "keyPress(72);keyRelease(72);", "typeText(ello);",
+            "mouseMove(100,200);", "mousePress(3);mouseRelease(3);"};
+
+    /**
+     * <p>
+     * The number of bytes allocated in total that are put down to the JVM's socket implementation, which allocates now and then regardless of the
+     * number of datagrams sent and received.
+     * </p>
+     */
+    private static final int SOCKET_ALLOWANCE = 8192;
+
+    /**
+     * <p>
+     * The number of bytes {@link com.se.pcremote.server.TcpClient TcpClient} may allocate per command received.
+     * </p>
+     */
+    private static final int TCP_RECEIVE_BUDGET = 0;
+
+    /**
+     * <p>
+     * The number of bytes {@link com.se.pcremote.server.UdpClient UdpClient} may allocate per command received.
+     * </p>
+     */
+    private static final int UDP_RECEIVE_BUDGET = 0;
+
+    /**
+     * <p>
+     * The number of times each path is run before it is measured, enough for it to be compiled and for the caches to fill.
+     * </p>
+     */
+    private static final int WARMUP_RUNS = 20000;
+
+    /**
+     * <p>
+     * The level of the root logger before the test.
+     * </p>
+     */
+    private Level fLevel;
+
+    /**
+     * <p>
+     * The encoded messages.
+     * </p>
+     */
+    private byte[][] fMessages;
+
+    /**
+     * <p>
+     * The sessions of the clients, with the limits on the rate at which they can inject input lifted.
+     * </p>
+     */
+    private SessionTable fSessionTable;
+
+    /**
+     * <p>
+     * Measures the bytes allocated by the current thread.
+     * </p>
+     */
+    private com.sun.management.ThreadMXBean fThreadMXBean;
+
+    /**
+     * <p>
+     * Teardown to perform after each unit test.
+     * </p>
+     */
+    @After
+    public void after()
+    {
+        Logger.getRootLogger().setLevel(fLevel);
+    }
+
+    /**
+     * <p>
+     * Asserts that the bytes allocated per command are within the given budget.
+     * </p>
+     * 
+     * @param path The name of the path measured.
+     * @param budget The number of bytes the path may allocate per command.
+     * @param allocated The number of bytes the path allocated.
+     * @param commandCount The number of commands the path processed.
+     */
+    private void assertWithinBudget(final String path, final long budget, final long allocated, final long commandCount)
+    {
+        assertWithinBudget(path, budget, allocated, commandCount, MEASUREMENT_ALLOWANCE);
+    }
+
+    /**
+     * <p>
+     * Asserts that the bytes allocated per command are within the given budget, allowing for the given number of bytes allocated in total.
+     * </p>
+     * 
+     * @param path The name of the path measured.
+     * @param budget The number of bytes the path may allocate per command.
+     * @param allocated The number of bytes the path allocated.
+     * @param commandCount The number of commands the path processed.
+     * @param allowance The number of bytes allocated in total that are not put down to the path measured.
+     */
+    private void assertWithinBudget(final String path, final long budget, final long allocated, final long commandCount, final long allowance)
+    {
+        assertTrue(path + " allocated " + (double) allocated / commandCount + " bytes per command, the budget is " + budget,
+                allocated <= budget * commandCount + allowance);
+    }
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        fThreadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(fThreadMXBean.isThreadAllocatedMemorySupported());
+        fThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        fLevel = Logger.getRootLogger().getLevel();
+        Logger.getRootLogger().setLevel(Level.INFO);
+
+        fMessages = new byte[MESSAGES.length][];
+        for (int index = 0; index < MESSAGES.length; index++)
+        {
+            fMessages[index] = MESSAGES[index].getBytes();
+        }
+
+        fSessionTable = new SessionTable(new CommandExecuter(new NullInputBackend()));
+        fSessionTable.setRates(0, 0, 0);
+    }
+
+    /**
+     * <p>
+     * Counts the commands in the messages.
+     * </p>
+     * 
+     * @return The number of commands in the messages.
+     */
+    private int countCommands()
+    {
+        CommandBuffer commands = new CommandBuffer();
+        CommandDecoder decoder = new CommandDecoder();
+        for (byte[] message : fMessages)
+        {
+            decoder.decode(message, 0, message.length, commands);
+        }
+
+        return (commands.size());
+    }
+
+    /**
+     * <p>
+     * Allocation test the method {@link com.se.pcremote.server.CommandExecuter#executeCommands(CommandBuffer)
+     * executeCommands(CommandBuffer)}.
+     * </p>
+     */
+    @Test
+    public void executeCommands()
+    {
+        // Initialise test environment.
+        CommandExecuter commandExecuter = new CommandExecuter(new NullInputBackend());
+        CommandDecoder decoder = new CommandDecoder();
+        CommandBuffer[] commands = new CommandBuffer[fMessages.length];
+        for (int index = 0; index < fMessages.length; index++)
+        {
+            commands[index] = new CommandBuffer();
+            decoder.decode(fMessages[index], 0, fMessages[index].length, commands[index]);
+        }
+
+        for (int run = 0; run < WARMUP_RUNS; run++)
+        {
+            commandExecuter.executeCommands(commands[run % commands.length]);
+        }
+
+        // Perform test.
+        long before = getAllocatedBytes();
+        for (int run = 0; run < MEASURED_RUNS; run++)
+        {
+            commandExecuter.executeCommands(commands[run % commands.length]);
+        }
+        long allocated = getAllocatedBytes() - before;
+
+        // Verify test results.
+        assertWithinBudget("CommandExecuter.executeCommands", EXECUTE_BUDGET, allocated, MEASURED_RUNS / fMessages.length * countCommands());
+    }
+
+    /**
+     * <p>
+     * Retrieves the number of bytes allocated by the current thread so far.
+     * </p>
+     * 
+     * @return The number of bytes allocated by the current thread so far.
+     */
+    private long getAllocatedBytes()
+    {
+        return (fThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()));
+    }
+
+    /**
+     * <p>
+     * Hands a batch of datagrams to a client as though they had just been received at once.
+     * </p>
+     * 
+     * @param client The client.
+     * @param packets The datagrams, they are rewound first.
+     * @param senders The sender of each of the datagrams.
+     */
+    private void receiveBatch(final UdpClient client, final ByteBuffer[] packets, final SocketAddress[] senders)
+    {
+        for (ByteBuffer packet : packets)
+        {
+            packet.rewind();
+        }
+        client.onReceiveData(packets, senders, packets.length);
+    }
+
+    /**
+     * <p>
+     * Allocation test the method {@link com.se.pcremote.server.TcpClient#onReceiveData(byte[], int) onReceiveData(byte[], int)}.
+     * </p>
+     * 
+     * @throws IOException Thrown if the client fails to be disposed of.
+     */
+    @Test
+    public void tcpClientOnReceiveData() throws IOException
+    {
+        // Initialise test environment.
+        TcpClient client = new TcpClient(new Socket(), fSessionTable);
+
+        for (int run = 0; run < WARMUP_RUNS; run++)
+        {
+            client.onReceiveData(fMessages[run % fMessages.length], fMessages[run % fMessages.length].length);
+        }
+
+        // Perform test.
+        long before = getAllocatedBytes();
+        for (int run = 0; run < MEASURED_RUNS; run++)
+        {
+            client.onReceiveData(fMessages[run % fMessages.length], fMessages[run % fMessages.length].length);
+        }
+        long allocated = getAllocatedBytes() - before;
+
+        // Verify test results.
+        assertWithinBudget("TcpClient.onReceiveData", TCP_RECEIVE_BUDGET, allocated, MEASURED_RUNS / fMessages.length * countCommands());
+
+        client.dispose();
+    }
+
+    /**
+     * <p>
+     * Allocation test the method {@link com.se.pcremote.server.UdpClient#onReceiveData(DatagramPacket) onReceiveData(DatagramPacket)}.
+     * </p>
+     * 
+     * @throws IOException Thrown if the client fails to be disposed of.
+     */
+    @Test
+    public void udpClientOnReceiveData() throws IOException
+    {
+        // Initialise test environment.
+        UdpClient client = new UdpClient(new DatagramSocket(null), fSessionTable);
+        SocketAddress sender = new InetSocketAddress("localhost", 10999);
+        DatagramPacket[] packets = new DatagramPacket[fMessages.length];
+        for (int index = 0; index < fMessages.length; index++)
+        {
+            packets[index] = new DatagramPacket(fMessages[index], fMessages[index].length, sender);
+        }
+
+        for (int run = 0; run < WARMUP_RUNS; run++)
+        {
+            client.onReceiveData(packets[run % packets.length]);
+        }
+
+        // Perform test.
+        long before = getAllocatedBytes();
+        for (int run = 0; run < MEASURED_RUNS; run++)
+        {
+            client.onReceiveData(packets[run % packets.length]);
+        }
+        long allocated = getAllocatedBytes() - before;
+
+        // Verify test results.
+        assertWithinBudget("UdpClient.onReceiveData", UDP_RECEIVE_BUDGET, allocated, MEASURED_RUNS / fMessages.length * countCommands());
+
+        client.dispose();
+    }
+
+    /**
+     * <p>
+     * Allocation test the method {@link com.se.pcremote.server.UdpClient#onReceiveData(ByteBuffer[], SocketAddress[], int)
+     * onReceiveData(ByteBuffer[], SocketAddress[], int)}.
+     * </p>
+     * 
+     * @throws IOException Thrown if the client fails to be disposed of.
+     */
+    @Test
+    public void udpClientOnReceiveDataBatch() throws IOException
+    {
+        // Initialise test environment.
+        UdpClient client = new UdpClient(new DatagramSocket(null), fSessionTable);
+        ByteBuffer[] packets = new ByteBuffer[fMessages.length];
+        SocketAddress[] senders = new SocketAddress[fMessages.length];
+        for (int index = 0; index < fMessages.length; index++)
+        {
+            packets[index] = ByteBuffer.wrap(fMessages[index]);
+            senders[index] = new InetSocketAddress("localhost", 10999);
+        }
+
+        for (int run = 0; run < WARMUP_RUNS / fMessages.length; run++)
+        {
+            receiveBatch(client, packets, senders);
+        }
+
+        // Perform test.
+        long before = getAllocatedBytes();
+        for (int run = 0; run < MEASURED_RUNS / fMessages.length; run++)
+        {
+            receiveBatch(client, packets, senders);
+        }
+        long allocated = getAllocatedBytes() - before;
+
+        // Verify test results.
+        assertWithinBudget("UdpClient.onReceiveData (batch)", UDP_RECEIVE_BUDGET, allocated, MEASURED_RUNS / fMessages.length * countCommands());
+
+        client.dispose();
+    }
+
+    /**
+     * <p>
+     * Allocation test the method {@link com.se.pcremote.UdpClient#receiveData() receiveData()} when receiving via a plain
+     * {@link java.net.DatagramSocket DatagramSocket}.
+     * </p>
+     * 
+     * @throws IOException Thrown if the datagrams fail to be sent or received.
+     */
+    @Test
+    public void udpClientReceiveData() throws IOException
+    {
+        // Initialise test environment.
+        DatagramSocket socket = new DatagramSocket(new InetSocketAddress("localhost", 0));
+        UdpClient client = new UdpClient(socket, fSessionTable);
+        DatagramChannel sender = DatagramChannel.open();
+        sender.connect(socket.getLocalSocketAddress());
+        ByteBuffer[] packets = new ByteBuffer[fMessages.length];
+        for (int index = 0; index < fMessages.length; index++)
+        {
+            packets[index] = ByteBuffer.allocateDirect(fMessages[index].length);
+            packets[index].put(fMessages[index]);
+        }
+
+        for (int run = 0; run < WARMUP_RUNS; run++)
+        {
+            packets[run % packets.length].rewind();
+            sender.write(packets[run % packets.length]);
+            client.receiveData();
+        }
+
+        // Perform test.
+        long before = getAllocatedBytes();
+        for (int run = 0; run < MEASURED_RUNS; run++)
+        {
+            packets[run % packets.length].rewind();
+            sender.write(packets[run % packets.length]);
+            client.receiveData();
+        }
+        long allocated = getAllocatedBytes() - before;
+
+        // Verify test results.
+        assertWithinBudget("UdpClient.receiveData", UDP_RECEIVE_BUDGET, allocated, MEASURED_RUNS / fMessages.length * countCommands(),
+                SOCKET_ALLOWANCE);
+
+        // Cleanup
+        sender.close();
+        client.dispose();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.easymock.classextension.EasyMock.createStrictMock;
+import static org.easymock.classextension.EasyMock.expect;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.easymock.classextension.EasyMock.verify;
+
+import java.awt.Robot;
+import java.awt.event.KeyEvent;
+
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.ClientSession ClientSession}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ClientSessionTest
+{
+    /**
+     * An instance of the class being unit tested.
+     */
+    private ClientSession fTestObject;
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.ClientSession#execute(CommandBuffer) execute(CommandBuffer)} with the special condition
+     * that the message pauses more than {@link com.se.pcremote.server.ClientSession#MAX_PAUSE_COUNT MAX_PAUSE_COUNT} times. The stages are
+     * executed separately up to the last pause allowed, the rest are executed together.
+     * </p>
+     */
+    @Test
+    public void executePauseCapped()
+    {
+        // Create dependencies.
+        CommandExecuter mockCommandExecuter = createStrictMock(CommandExecuter.class);
+        CommandBuffer commands = new CommandBuffer();
+        for (int gesture = 0; gesture <= ClientSession.MAX_PAUSE_COUNT; gesture++)
+        {
+            commands.add(Opcode.MOUSE_PRESS, 1, 0);
+            commands.add(Opcode.PAUSE, 0, 0);
+            commands.add(Opcode.MOUSE_RELEASE, 1, 0);
+        }
+
+        // Initialise test environment.
+        fTestObject = new ClientSession(1, mockCommandExecuter);
+
+        // Dictate expected results.
+        CommandBuffer expectedCommands = new CommandBuffer();
+        expectedCommands.add(Opcode.MOUSE_PRESS, 1, 0);
+        mockCommandExecuter.executeCommands(expectedCommands, 1);
+        expect(mockCommandExecuter.getGestureDelay()).andReturn(0);
+        for (int pause = 1; pause < ClientSession.MAX_PAUSE_COUNT; pause++)
+        {
+            expectedCommands = new CommandBuffer();
+            expectedCommands.add(Opcode.MOUSE_RELEASE, 1, 0);
+            expectedCommands.add(Opcode.MOUSE_PRESS, 1, 0);
+            mockCommandExecuter.executeCommands(expectedCommands, 1);
+            expect(mockCommandExecuter.getGestureDelay()).andReturn(0);
+        }
+        expectedCommands = new CommandBuffer();
+        expectedCommands.add(Opcode.MOUSE_RELEASE, 1, 0);
+        expectedCommands.add(Opcode.MOUSE_PRESS, 1, 0);
+        expectedCommands.add(Opcode.MOUSE_RELEASE, 1, 0);
+        mockCommandExecuter.executeCommands(expectedCommands, 1);
+        replay(mockCommandExecuter);
+
+        // Perform test.
+        fTestObject.execute(commands);
+
+        // Verify test results.
+        verify(mockCommandExecuter);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.ClientSession#execute(CommandBuffer) execute(CommandBuffer)} with the special condition
+     * that characters are typed while the client is holding the Shift key down.
+     * </p>
+     */
+    @Test
+    public void executeTypeCharacterShiftHeld()
+    {
+        // Create dependencies.
+        Robot mockRobot = createStrictMock(Robot.class);
+        CommandBuffer commands = new CommandBuffer();
+        commands.add(Opcode.KEY_PRESS, KeyEvent.VK_SHIFT, 0);
+        commands.add(Opcode.TYPE_CHARACTER, 'a', 0);
+        commands.add(Opcode.TYPE_CHARACTER, '!', 0);
+        commands.add(Opcode.KEY_RELEASE, KeyEvent.VK_SHIFT, 0);
+        commands.add(Opcode.TYPE_CHARACTER, 'A', 0);
+
+        // Initialise test environment.
+        fTestObject = new ClientSession(1, new CommandExecuter(mockRobot));
+
+        // Dictate expected results.
+        mockRobot.keyPress(KeyEvent.VK_SHIFT);
+        mockRobot.keyPress(KeyEvent.VK_A);
+        mockRobot.keyRelease(KeyEvent.VK_A);
+        mockRobot.keyPress(KeyEvent.VK_1);
+        mockRobot.keyRelease(KeyEvent.VK_1);
+        mockRobot.keyRelease(KeyEvent.VK_SHIFT);
+        mockRobot.keyPress(KeyEvent.VK_SHIFT);
+        mockRobot.keyPress(KeyEvent.VK_A);
+        mockRobot.keyRelease(KeyEvent.VK_A);
+        mockRobot.keyRelease(KeyEvent.VK_SHIFT);
+        replay(mockRobot);
+
+        // Perform test.
+        fTestObject.execute(commands);
+
+        // Verify test results.
+        verify(mockRobot);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.ClockOffsetEstimator ClockOffsetEstimator}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ClockOffsetEstimatorTest
+{
+    /**
+     * An instance of the class being unit tested.
+     */
+    private ClockOffsetEstimator fTestObject;
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        fTestObject = new ClockOffsetEstimator();
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.ClockOffsetEstimator#update(int, long) update(int, long)}.
+     * </p>
+     */
+    @Test
+    public void update()
+    {
+        // Perform test and verify test results.
+        // Sent at 1000ms, arrived 50ms later than it would have with no delay (the offset is 5000ms).
+        assertEquals(6050000000L, fTestObject.update(1000, 6050000000L));
+        // The fastest message so far, took no time at all.
+        assertEquals(6100000000L, fTestObject.update(1100, 6100000000L));
+        // Sent at 1200ms, arrived 300ms late.
+        assertEquals(6200000000L, fTestObject.update(1200, 6500000000L));
+        assertEquals(5000000000L, fTestObject.getOffset());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.ClockOffsetEstimator#update(int, long) update(int, long)} with the special condition that
+     * the client's clock wraps around.
+     * </p>
+     */
+    @Test
+    public void updateWrapped()
+    {
+        // Perform test and verify test results.
+        assertEquals(1000000000L, fTestObject.update(Integer.MAX_VALUE, 1000000000L));
+        assertEquals(1010000000L, fTestObject.update(Integer.MIN_VALUE + 9, 1010000000L));
+    }
+}
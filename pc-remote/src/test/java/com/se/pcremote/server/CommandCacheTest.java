@@ -0,0 +1,103 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.CommandCache CommandCache}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class CommandCacheTest
+{
+    /**
+     * An instance of the class being unit tested.
+     */
+    private CommandCache fTestObject;
+
+    /**
+     * <p>
+     * Creates a buffer containing a single command.
+     * </p>
+     * 
+     * @param opcode The code of the command.
+     * @param argument0 The first argument of the command.
+     * 
+     * @return The buffer containing the command.
+     */
+    private CommandBuffer command(final int opcode, final int argument0)
+    {
+        CommandBuffer buffer = new CommandBuffer();
+        buffer.add(opcode, argument0, 0);
+
+        return (buffer);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandCache#get(byte[], int, int) get(byte[], int, int)}.
+     * </p>
+     */
+    @Test
+    public void get()
+    {
+        // Create dependencies.
+        byte[] data = "xxkeyPress(16)keyPress(17)".getBytes();
+
+        // Initialise test environment.
+        fTestObject = new CommandCache(4);
+        fTestObject.put(data, 2, 12, command(Opcode.KEY_PRESS, 16));
+
+        // Perform test.
+        CommandBuffer hit = fTestObject.get("keyPress(16)".getBytes(), 0, 12);
+        CommandBuffer miss = fTestObject.get(data, 14, 12);
+
+        // Verify test results.
+        assertEquals(command(Opcode.KEY_PRESS, 16), hit);
+        assertNull(miss);
+        assertEquals(1, fTestObject.getHitCount());
+        assertEquals(1, fTestObject.getMissCount());
+        assertEquals(0.5, fTestObject.getHitRate(), 0);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandCache#put(byte[], int, int, CommandBuffer) put(byte[], int, int, CommandBuffer)}
+     * with the special condition that the cache is full.
+     * </p>
+     */
+    @Test
+    public void putFull()
+    {
+        // Initialise test environment.
+        fTestObject = new CommandCache(2);
+        fTestObject.put("keyPress(1)".getBytes(), 0, 11, command(Opcode.KEY_PRESS, 1));
+        fTestObject.put("keyPress(2)".getBytes(), 0, 11, command(Opcode.KEY_PRESS, 2));
+        fTestObject.get("keyPress(1)".getBytes(), 0, 11);
+
+        // Perform test.
+        fTestObject.put("keyPress(3)".getBytes(), 0, 11, command(Opcode.KEY_PRESS, 3));
+
+        // Verify test results.
+        assertEquals(2, fTestObject.size());
+        assertEquals(1, fTestObject.getEvictionCount());
+        assertEquals(command(Opcode.KEY_PRESS, 1), fTestObject.get("keyPress(1)".getBytes(), 0, 11));
+        assertNull(fTestObject.get("keyPress(2)".getBytes(), 0, 11));
+        assertEquals(command(Opcode.KEY_PRESS, 3), fTestObject.get("keyPress(3)".getBytes(), 0, 11));
+    }
+}
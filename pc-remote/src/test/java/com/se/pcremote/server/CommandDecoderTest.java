@@ -0,0 +1,350 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.CommandDecoder CommandDecoder}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class CommandDecoderTest
+{
+    /**
+     * An instance of the class being unit tested.
+     */
+    private CommandDecoder fTestObject;
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        fTestObject = new CommandDecoder();
+    }
+
+    /**
+     * <p>
+     * Decodes the given commands into a new buffer.
+     * </p>
+     * 
+     * @param commands The commands to decode.
+     * @param merging Determines whether the buffer merges consecutive mergeable commands.
+     * 
+     * @return The buffer containing the decoded commands.
+     */
+    private CommandBuffer decode(final String commands, final boolean merging)
+    {
+        CommandBuffer buffer = new CommandBuffer(merging);
+        byte[] data = commands.getBytes();
+        fTestObject.decode(data, 0, data.length, buffer);
+
+        return (buffer);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decode(byte[], int, int, CommandBuffer) decode(byte[], int, int,
+     * CommandBuffer)}.
+     * </p>
+     */
+    @Test
+    public void decode()
+    {
+        // Perform test.
+        CommandBuffer buffer = decode("keyPress(16);mouseMove(10.9,-20.9);mousePress(1);mouseWheel(-2.5);", false);
+
+        // Verify test results.
+        assertEquals(4, buffer.size());
+        assertEquals(Opcode.KEY_PRESS, buffer.getOpcode(0));
+        assertEquals(16, buffer.getArgument0(0));
+        assertEquals(Opcode.MOUSE_MOVE, buffer.getOpcode(1));
+        assertEquals(10, buffer.getArgument0(1));
+        assertEquals(-20, buffer.getArgument1(1));
+        assertEquals(Opcode.MOUSE_PRESS, buffer.getOpcode(2));
+        assertEquals(1, buffer.getArgument0(2));
+        assertEquals(Opcode.MOUSE_WHEEL, buffer.getOpcode(3));
+        assertEquals(-2, buffer.getArgument0(3));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decode(byte[], int, int, CommandBuffer) decode(byte[], int, int,
+     * CommandBuffer)} with the special condition that some of the commands repeat.
+     * </p>
+     */
+    @Test
+    public void decodeCached()
+    {
+        // Perform test.
+        CommandBuffer buffer = decode("click(1);mouseMove(1,1);click(1);mouseMove(1,1);click(1);", false);
+
+        // Verify test results.
+        assertEquals(8, buffer.size());
+        assertEquals(Opcode.MOUSE_RELEASE, buffer.getOpcode(7));
+        assertEquals(2, fTestObject.getCommandCache().getHitCount());
+        assertEquals(1, fTestObject.getCommandCache().getMissCount());
+        assertEquals(1, fTestObject.getCommandCache().size());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decode(byte[], int, int, CommandBuffer) decode(byte[], int, int,
+     * CommandBuffer)} with the special condition that a macro is defined.
+     * </p>
+     */
+    @Test
+    public void decodeDefineMacro()
+    {
+        // Perform test.
+        CommandBuffer buffer = decode("defineMacro(3,keyPress%2817%29%3Bmacro%282%29%3BdefineMacro%284%2C%29%3B);keyPress(1);", false);
+
+        // Verify test results.
+        assertEquals(5, buffer.size());
+        assertEquals(Opcode.DEFINE_MACRO, buffer.getOpcode(0));
+        assertEquals(3, buffer.getArgument0(0));
+        assertEquals(Opcode.KEY_PRESS, buffer.getOpcode(1));
+        assertEquals(17, buffer.getArgument0(1));
+        assertEquals(Opcode.MACRO, buffer.getOpcode(2));
+        assertEquals(2, buffer.getArgument0(2));
+        assertEquals(Opcode.END_MACRO, buffer.getOpcode(3));
+        assertEquals(Opcode.KEY_PRESS, buffer.getOpcode(4));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decode(byte[], int, int, CommandBuffer) decode(byte[], int, int,
+     * CommandBuffer)} with the special condition that the commands are gestures.
+     * </p>
+     */
+    @Test
+    public void decodeGestures()
+    {
+        // Perform test.
+        CommandBuffer buffer = decode("click(1,2);drag(3,10.5,-4);chord(17,18,84);click(1);", false);
+
+        // Verify test results.
+        assertEquals(17, buffer.size());
+        assertEquals(Opcode.MOUSE_PRESS, buffer.getOpcode(0));
+        assertEquals(Opcode.MOUSE_RELEASE, buffer.getOpcode(1));
+        assertEquals(Opcode.MOUSE_PRESS, buffer.getOpcode(2));
+        assertEquals(Opcode.MOUSE_RELEASE, buffer.getOpcode(3));
+        assertEquals(1, buffer.getArgument0(3));
+        assertEquals(Opcode.MOUSE_PRESS, buffer.getOpcode(4));
+        assertEquals(3, buffer.getArgument0(4));
+        assertEquals(Opcode.PAUSE, buffer.getOpcode(5));
+        assertEquals(Opcode.MOUSE_MOVE_RELATIVE, buffer.getOpcode(6));
+        assertEquals(10, buffer.getArgument0(6));
+        assertEquals(-4, buffer.getArgument1(6));
+        assertEquals(Opcode.PAUSE, buffer.getOpcode(7));
+        assertEquals(Opcode.MOUSE_RELEASE, buffer.getOpcode(8));
+        assertEquals(Opcode.KEY_PRESS, buffer.getOpcode(9));
+        assertEquals(17, buffer.getArgument0(9));
+        assertEquals(84, buffer.getArgument0(11));
+        assertEquals(Opcode.KEY_RELEASE, buffer.getOpcode(12));
+        assertEquals(84, buffer.getArgument0(12));
+        assertEquals(17, buffer.getArgument0(14));
+        assertEquals(Opcode.MOUSE_PRESS, buffer.getOpcode(15));
+        assertEquals(Opcode.MOUSE_RELEASE, buffer.getOpcode(16));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decode(byte[], int, int, CommandBuffer) decode(byte[], int, int,
+     * CommandBuffer)} with the special condition that some of the gestures are invalid.
+     * </p>
+     */
+    @Test
+    public void decodeGesturesInvalid()
+    {
+        // Perform test.
+        CommandBuffer buffer = decode("click(1,100);drag(1,2);chord(17,x);chord(17);", false);
+
+        // Verify test results.
+        assertEquals(2, buffer.size());
+        assertEquals(Opcode.KEY_PRESS, buffer.getOpcode(0));
+        assertEquals(Opcode.KEY_RELEASE, buffer.getOpcode(1));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decode(byte[], int, int, CommandBuffer) decode(byte[], int, int,
+     * CommandBuffer)} with the special condition that some of the commands are invalid.
+     * </p>
+     */
+    @Test
+    public void decodeInvalidCommands()
+    {
+        // Perform test.
+        CommandBuffer buffer = decode("keyPress(alphanumeric);unknownCommand(1);keyRelease(0);;keyPress", false);
+
+        // Verify test results.
+        assertEquals(1, buffer.size());
+        assertEquals(Opcode.KEY_RELEASE, buffer.getOpcode(0));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decode(byte[], int, int, CommandBuffer) decode(byte[], int, int,
+     * CommandBuffer)} with the special condition that the commands are ones that are only produced by decoding.
+     * </p>
+     */
+    @Test
+    public void decodeInternalCommands()
+    {
+        // Perform test.
+        CommandBuffer buffer = decode("typeCharacter(65);endMacro(1);pause(0);keyPress(1);", false);
+
+        // Verify test results.
+        assertEquals(1, buffer.size());
+        assertEquals(Opcode.KEY_PRESS, buffer.getOpcode(0));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decode(byte[], int, int, CommandBuffer) decode(byte[], int, int,
+     * CommandBuffer)} with the special condition that the buffer merges consecutive mouse movements.
+     * </p>
+     */
+    @Test
+    public void decodeMerging()
+    {
+        // Perform test.
+        CommandBuffer buffer = decode("mouseMoveRelative(1.5,2.5);mouseMoveRelative(3,-4);mousePress(1);mouseMoveRelative(1,1);", true);
+
+        // Verify test results.
+        assertEquals(3, buffer.size());
+        assertEquals(Opcode.MOUSE_MOVE_RELATIVE, buffer.getOpcode(0));
+        assertEquals(4, buffer.getArgument0(0));
+        assertEquals(-2, buffer.getArgument1(0));
+        assertEquals(Opcode.MOUSE_PRESS, buffer.getOpcode(1));
+        assertEquals(Opcode.MOUSE_MOVE_RELATIVE, buffer.getOpcode(2));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decodeCommand(byte[], int, int, CommandBuffer) decodeCommand(byte[], int,
+     * int, CommandBuffer)} with the special condition that the command is a <code>typeText(text);</code> command containing escaped and multi-byte
+     * characters.
+     * </p>
+     */
+    @Test
+    public void decodeCommandTypeText()
+    {
+        // Perform test.
+        CommandBuffer buffer = decode("keyPress(16);typeText(A b%3B%28%e2%82%ac);keyRelease(16);", false);
+
+        // Verify test results.
+        assertEquals(8, buffer.size());
+        assertEquals(Opcode.KEY_PRESS, buffer.getOpcode(0));
+        assertEquals(Opcode.TYPE_CHARACTER, buffer.getOpcode(1));
+        assertEquals('A', buffer.getArgument0(1));
+        assertEquals(' ', buffer.getArgument0(2));
+        assertEquals('b', buffer.getArgument0(3));
+        assertEquals(';', buffer.getArgument0(4));
+        assertEquals('(', buffer.getArgument0(5));
+        assertEquals(0x20AC, buffer.getArgument0(6));
+        assertEquals(Opcode.KEY_RELEASE, buffer.getOpcode(7));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decode(byte[], int, int, CommandBuffer) decode(byte[], int, int,
+     * CommandBuffer)} with the special condition that the text of a <code>typeText(text);</code> command is invalid.
+     * </p>
+     */
+    @Test
+    public void decodeTypeTextInvalid()
+    {
+        // Perform test.
+        CommandBuffer buffer = decode("typeText(ab%2);typeText(ab%C3);typeText(ab;keyPress(1);", false);
+
+        // Verify test results.
+        assertEquals(1, buffer.size());
+        assertEquals(Opcode.KEY_PRESS, buffer.getOpcode(0));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decode(byte[], int, int, CommandBuffer) decode(byte[], int, int,
+     * CommandBuffer)} with the special condition that the text of a <code>typeText(text);</code> command is malformed UTF-8: an overlong encoding, a
+     * surrogate and a code point beyond U+10FFFF.
+     * </p>
+     */
+    @Test
+    public void decodeTypeTextMalformed()
+    {
+        // Perform test.
+        CommandBuffer buffer = decode("typeText(%C0%AF);typeText(%ED%A0%80);typeText(%F4%90%80%80);typeText(%F0%9F%98%80);", false);
+
+        // Verify test results.
+        assertEquals(1, buffer.size());
+        assertEquals(0x1F600, buffer.getArgument0(0));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decodeCommand(byte[], int, int, CommandBuffer) decodeCommand(byte[], int,
+     * int, CommandBuffer)} with the special condition that the arguments are in formats that are not plain decimals.
+     * </p>
+     */
+    @Test
+    public void decodeCommandUnusualDecimals()
+    {
+        // Perform test.
+        CommandBuffer buffer = decode("mouseMove(1.0E-5,-3.9E1);mouseMove(+7.,-0.5);", false);
+
+        // Verify test results.
+        assertEquals(2, buffer.size());
+        assertEquals(0, buffer.getArgument0(0));
+        assertEquals(-39, buffer.getArgument1(0));
+        assertEquals(7, buffer.getArgument0(1));
+        assertEquals(0, buffer.getArgument1(1));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decodeCommand(byte[], int, int, CommandBuffer) decodeCommand(byte[], int,
+     * int, CommandBuffer)} with the special condition that an integer argument has a fraction.
+     * </p>
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeCommandFractionalInteger()
+    {
+        // Perform test.
+        byte[] data = "keyPress(1.5)".getBytes();
+        fTestObject.decodeCommand(data, 0, data.length, new CommandBuffer());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandDecoder#decodeCommand(byte[], int, int, CommandBuffer) decodeCommand(byte[], int,
+     * int, CommandBuffer)} with the special condition that a required argument is missing.
+     * </p>
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeCommandMissingArgument()
+    {
+        // Perform test.
+        byte[] data = "mouseMove(1)".getBytes();
+        fTestObject.decodeCommand(data, 0, data.length, new CommandBuffer());
+    }
+}
@@ -12,14 +12,18 @@
 package com.se.pcremote.server;
 
 import static org.easymock.classextension.EasyMock.createMock;
+import static org.easymock.classextension.EasyMock.createStrictMock;
 import static org.easymock.classextension.EasyMock.replay;
 import static org.easymock.classextension.EasyMock.verify;
+import static org.junit.Assert.assertTrue;
 
 import java.awt.AWTException;
 import java.awt.MouseInfo;
 import java.awt.Point;
 import java.awt.Robot;
 import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
 
 import org.junit.Test;
 
@@ -315,4 +319,78 @@ public class CommandExecuterTest
         // Perform test.
         fTestObject.executeCommand("unknownCommand(parameter)");
     }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandExecuter#executeCommand() executeCommand()} with the special condition that the
+     * 'drag' gesture is to be executed. Its stages are actuated separately but the gesture delay is not waited out while holding the lock.
+     * </p>
+     * 
+     * @throws IOException Thrown if the mock backend fails to be set up.
+     */
+    @Test
+    public void executeCommandDrag() throws IOException
+    {
+        // Create dependencies.
+        InputBackend mockInputBackend = createStrictMock(InputBackend.class);
+
+        // Initialise test environment.
+        fTestObject = new CommandExecuter(mockInputBackend);
+        fTestObject.setGestureDelay(1000);
+
+        // Dictate correct results.
+        mockInputBackend.mousePress(1);
+        mockInputBackend.flush();
+        mockInputBackend.mouseMoveRelative(-10, -5);
+        mockInputBackend.flush();
+        mockInputBackend.mouseRelease(1);
+        mockInputBackend.flush();
+        replay(mockInputBackend);
+
+        // Perform test.
+        long start = System.nanoTime();
+        fTestObject.executeCommand("drag(1,10,5)");
+        long elapsed = System.nanoTime() - start;
+
+        // Verify test results.
+        verify(mockInputBackend);
+        assertTrue(elapsed < 1000000000L);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.CommandExecuter#executeCommand() executeCommand()} with the special condition that the
+     * 'typeText' command is to be executed.
+     * </p>
+     */
+    @Test
+    public void executeCommandTypeText()
+    {
+        // Create dependencies.
+        Robot mockRobot = createStrictMock(Robot.class);
+
+        // Initialise test environment.
+        fTestObject = new CommandExecuter(mockRobot);
+
+        // Dictate correct results.
+        mockRobot.keyPress(KeyEvent.VK_SHIFT);
+        mockRobot.keyPress(KeyEvent.VK_H);
+        mockRobot.keyRelease(KeyEvent.VK_H);
+        mockRobot.keyPress(KeyEvent.VK_I);
+        mockRobot.keyRelease(KeyEvent.VK_I);
+        mockRobot.keyRelease(KeyEvent.VK_SHIFT);
+        mockRobot.keyPress(KeyEvent.VK_SPACE);
+        mockRobot.keyRelease(KeyEvent.VK_SPACE);
+        mockRobot.keyPress(KeyEvent.VK_SHIFT);
+        mockRobot.keyPress(KeyEvent.VK_1);
+        mockRobot.keyRelease(KeyEvent.VK_1);
+        mockRobot.keyRelease(KeyEvent.VK_SHIFT);
+        replay(mockRobot);
+
+        // Perform test.
+        fTestObject.executeCommand("typeText(HI %E2%82%AC!)");
+
+        // Verify test results.
+        verify(mockRobot);
+    }
 }
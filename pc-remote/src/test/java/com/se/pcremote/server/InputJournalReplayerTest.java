@@ -0,0 +1,175 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.InputJournalReplayer InputJournalReplayer}. The journals replayed are recorded by a
+ * {@link com.se.pcremote.server.CommandExecuter CommandExecuter} into a temporary file.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class InputJournalReplayerTest
+{
+    /**
+     * <p>
+     * The file the journal is kept in.
+     * </p>
+     */
+    private File fJournal;
+
+    /**
+     * An instance of the class being unit tested.
+     */
+    private InputJournalReplayer fTestObject;
+
+    /**
+     * <p>
+     * Teardown to perform after each unit test.
+     * </p>
+     */
+    @After
+    public void after()
+    {
+        fJournal.delete();
+    }
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     * 
+     * @throws IOException Thrown if the file the journal is kept in cannot be created.
+     */
+    @Before
+    public void before() throws IOException
+    {
+        fJournal = File.createTempFile("journal", ".bin");
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.InputJournalReplayer#replay(double) replay(double)} with the special condition that the commands are replayed as fast as possible.
+     * </p>
+     * 
+     * @throws Exception Thrown if the journal cannot be recorded or replayed.
+     */
+    @Test
+    public void replayAsFastAsPossible() throws Exception
+    {
+        // Create dependencies.
+        InputBackend mockInputBackend = createNiceMock(InputBackend.class);
+        replay(mockInputBackend);
+        CommandExecuter commandExecuter = new CommandExecuter(mockInputBackend);
+        InputJournal journal = new InputJournal(fJournal, 8);
+        commandExecuter.setInputJournal(journal);
+
+        CommandBuffer pressAndMove = new CommandBuffer();
+        pressAndMove.add(Opcode.MOUSE_PRESS, 1, 0);
+        pressAndMove.add(Opcode.MOUSE_MOVE_RELATIVE, 5, -3);
+        CommandBuffer typeAndRelease = new CommandBuffer();
+        typeAndRelease.add(Opcode.TYPE_CHARACTER, 'A', 0);
+        typeAndRelease.add(Opcode.MOUSE_RELEASE, 1, 0);
+        typeAndRelease.add(Opcode.MOUSE_WHEEL, 2, 0);
+
+        // Initialise test environment.
+        commandExecuter.executeCommands(pressAndMove, 7);
+        commandExecuter.executeCommands(typeAndRelease, 8);
+        journal.dispose();
+
+        CommandExecuter mockCommandExecuter = createMock(CommandExecuter.class);
+        fTestObject = new InputJournalReplayer(fJournal, mockCommandExecuter);
+
+        // Dictate expected results.
+        mockCommandExecuter.executeCommands(pressAndMove, 7);
+        mockCommandExecuter.executeCommands(typeAndRelease, 8);
+        replay(mockCommandExecuter);
+
+        // Perform test.
+        int replayed = fTestObject.replay(0);
+
+        // Verify test results.
+        assertEquals(5, replayed);
+        assertEquals(5, journal.getCount());
+        assertEquals(0, journal.getDroppedCount());
+        assertFalse(fTestObject.isWrapped());
+        verify(mockCommandExecuter);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.InputJournalReplayer#replay(double) replay(double)} with the special condition that the journal
+     * filled up and its ring wrapped around, overwriting the oldest record.
+     * </p>
+     * 
+     * @throws Exception Thrown if the journal cannot be recorded or replayed.
+     */
+    @Test
+    public void replayWrapped() throws Exception
+    {
+        // Create dependencies.
+        InputBackend mockInputBackend = createNiceMock(InputBackend.class);
+        replay(mockInputBackend);
+        CommandExecuter commandExecuter = new CommandExecuter(mockInputBackend);
+        InputJournal journal = new InputJournal(fJournal, 4);
+        commandExecuter.setInputJournal(journal);
+
+        CommandBuffer pressAndMove = new CommandBuffer();
+        pressAndMove.add(Opcode.MOUSE_PRESS, 1, 0);
+        pressAndMove.add(Opcode.MOUSE_MOVE_RELATIVE, 5, -3);
+        CommandBuffer typeAndRelease = new CommandBuffer();
+        typeAndRelease.add(Opcode.TYPE_CHARACTER, 'A', 0);
+        typeAndRelease.add(Opcode.MOUSE_RELEASE, 1, 0);
+        typeAndRelease.add(Opcode.MOUSE_WHEEL, 2, 0);
+
+        // Initialise test environment.
+        commandExecuter.executeCommands(pressAndMove, 7);
+        commandExecuter.executeCommands(typeAndRelease, 8);
+        journal.dispose();
+
+        CommandExecuter mockCommandExecuter = createMock(CommandExecuter.class);
+        fTestObject = new InputJournalReplayer(fJournal, mockCommandExecuter);
+
+        // Dictate expected results.
+        CommandBuffer expectedMove = new CommandBuffer();
+        expectedMove.add(Opcode.MOUSE_MOVE_RELATIVE, 5, -3);
+        mockCommandExecuter.executeCommands(expectedMove, 7);
+        mockCommandExecuter.executeCommands(typeAndRelease, 8);
+        replay(mockCommandExecuter);
+
+        // Perform test.
+        int replayed = fTestObject.replay(0);
+
+        // Verify test results.
+        assertEquals(4, replayed);
+        assertEquals(4, journal.getCount());
+        assertEquals(1, journal.getDroppedCount());
+        assertTrue(fTestObject.isWrapped());
+        verify(mockCommandExecuter);
+    }
+}
@@ -0,0 +1,224 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.easymock.EasyMock.createStrictMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.InputScheduler InputScheduler}. The injection thread is not started, the queued commands
+ * are injected when the scheduler is disposed of.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class InputSchedulerTest
+{
+    /**
+     * An instance of the class being unit tested.
+     */
+    private InputScheduler fTestObject;
+
+    /**
+     * <p>
+     * Creates a buffer holding a single command.
+     * </p>
+     * 
+     * @param opcode The {@link com.se.pcremote.server.Opcode Opcode} of the command.
+     * @param argument0 The first argument of the command.
+     * @param argument1 The second argument of the command.
+     * 
+     * @return The buffer.
+     */
+    private CommandBuffer command(final int opcode, final int argument0, final int argument1)
+    {
+        CommandBuffer commands = new CommandBuffer();
+        commands.add(opcode, argument0, argument1);
+
+        return (commands);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.InputScheduler#submit(CommandBuffer, int) submit(CommandBuffer, int)} with the special
+     * condition that the exclusive arbitration policy is in force.
+     * </p>
+     * 
+     * @throws InterruptedException Thrown if the test is interrupted.
+     */
+    @Test
+    public void submitExclusive() throws InterruptedException
+    {
+        // Create dependencies.
+        CommandExecuter mockCommandExecuter = createStrictMock(CommandExecuter.class);
+
+        // Initialise test environment.
+        fTestObject = new InputScheduler(mockCommandExecuter);
+        fTestObject.setPolicy(InputScheduler.POLICY_EXCLUSIVE);
+
+        // Dictate expected results.
+        mockCommandExecuter.executeCommands(command(Opcode.KEY_PRESS, 65, 0), 1);
+        mockCommandExecuter.executeCommands(command(Opcode.KEY_RELEASE, 66, 0), 2);
+        mockCommandExecuter.executeCommands(command(Opcode.KEY_PRESS, 67, 0), 2);
+        replay(mockCommandExecuter);
+
+        // Perform test.
+        fTestObject.submit(command(Opcode.KEY_PRESS, 65, 0), 1);
+        fTestObject.submit(command(Opcode.KEY_PRESS, 66, 0), 2);
+        fTestObject.submit(command(Opcode.KEY_RELEASE, 66, 0), 2);
+        fTestObject.submit(command(Opcode.MOUSE_MOVE_RELATIVE, 1, 1), 2);
+        fTestObject.dispose();
+
+        fTestObject.setController(2);
+        fTestObject.submit(command(Opcode.KEY_PRESS, 67, 0), 2);
+        fTestObject.submit(command(Opcode.KEY_PRESS, 68, 0), 1);
+        fTestObject.dispose();
+
+        // Verify test results.
+        verify(mockCommandExecuter);
+        assertEquals(2, fTestObject.getController());
+        assertEquals(3, fTestObject.getDeniedCount());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.InputScheduler#submit(CommandBuffer, int, long) submit(CommandBuffer, int, long)} with
+     * the special condition that some of the commands are older than the deadline.
+     * </p>
+     * 
+     * @throws InterruptedException Thrown if the test is interrupted.
+     */
+    @Test
+    public void submitExpired() throws InterruptedException
+    {
+        // Create dependencies.
+        CommandExecuter mockCommandExecuter = createStrictMock(CommandExecuter.class);
+
+        // Initialise test environment.
+        fTestObject = new InputScheduler(mockCommandExecuter);
+        fTestObject.setDeadline(100);
+        long now = System.nanoTime();
+
+        // Dictate expected results.
+        CommandBuffer expectedCommands1 = new CommandBuffer();
+        expectedCommands1.add(Opcode.MOUSE_MOVE_RELATIVE, 1, 1);
+        expectedCommands1.add(Opcode.MOUSE_PRESS, 1, 0);
+        mockCommandExecuter.executeCommands(expectedCommands1, 1);
+        mockCommandExecuter.executeCommands(command(Opcode.MOUSE_WHEEL, 3, 0), 3);
+        replay(mockCommandExecuter);
+
+        // Perform test.
+        fTestObject.submit(command(Opcode.MOUSE_MOVE_RELATIVE, 1, 1), 1, now - 1000000000L);
+        fTestObject.submit(command(Opcode.MOUSE_PRESS, 1, 0), 1, now);
+        fTestObject.submit(command(Opcode.MOUSE_MOVE_RELATIVE, 2, 2), 2, now - 1000000000L);
+        fTestObject.submit(command(Opcode.MOUSE_MOVE_RELATIVE, 3, 3), 2, now - 500000000L);
+        fTestObject.submit(command(Opcode.MOUSE_WHEEL, 3, 0), 3, now);
+        fTestObject.dispose();
+
+        // Verify test results.
+        verify(mockCommandExecuter);
+        assertEquals(2, fTestObject.getExpiredCount());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.InputScheduler#submit(CommandBuffer, int) submit(CommandBuffer, int)} with the special
+     * condition that a gesture pauses between its stages. The other client is served while the stages are held back.
+     * </p>
+     * 
+     * @throws InterruptedException Thrown if the test is interrupted.
+     */
+    @Test
+    public void submitPause() throws InterruptedException
+    {
+        // Create dependencies.
+        CommandExecuter mockCommandExecuter = createStrictMock(CommandExecuter.class);
+
+        // Initialise test environment.
+        fTestObject = new InputScheduler(mockCommandExecuter);
+        CommandBuffer drag = new CommandBuffer();
+        drag.add(Opcode.MOUSE_PRESS, 1, 0);
+        drag.add(Opcode.PAUSE, 0, 0);
+        drag.add(Opcode.MOUSE_MOVE_RELATIVE, 10, 5);
+        drag.add(Opcode.PAUSE, 0, 0);
+        drag.add(Opcode.MOUSE_RELEASE, 1, 0);
+
+        // Dictate expected results.
+        mockCommandExecuter.executeCommands(command(Opcode.MOUSE_PRESS, 1, 0), 1);
+        expect(mockCommandExecuter.getGestureDelay()).andReturn(50);
+        mockCommandExecuter.executeCommands(command(Opcode.KEY_PRESS, 65, 0), 2);
+        mockCommandExecuter.executeCommands(command(Opcode.MOUSE_MOVE_RELATIVE, 10, 5), 1);
+        expect(mockCommandExecuter.getGestureDelay()).andReturn(50);
+        mockCommandExecuter.executeCommands(command(Opcode.MOUSE_RELEASE, 1, 0), 1);
+        replay(mockCommandExecuter);
+
+        // Perform test.
+        fTestObject.submit(drag, 1);
+        fTestObject.submit(command(Opcode.KEY_PRESS, 65, 0), 2);
+        long start = System.nanoTime();
+        fTestObject.dispose();
+        long elapsed = System.nanoTime() - start;
+
+        // Verify test results.
+        verify(mockCommandExecuter);
+        assertTrue(elapsed >= 100000000L);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.InputScheduler#submit(CommandBuffer, int) submit(CommandBuffer, int)}.
+     * </p>
+     * 
+     * @throws InterruptedException Thrown if the test is interrupted.
+     */
+    @Test
+    public void submit() throws InterruptedException
+    {
+        // Create dependencies.
+        CommandExecuter mockCommandExecuter = createStrictMock(CommandExecuter.class);
+
+        // Initialise test environment.
+        fTestObject = new InputScheduler(mockCommandExecuter);
+
+        // Dictate expected results.
+        CommandBuffer expectedCommands2 = new CommandBuffer();
+        expectedCommands2.add(Opcode.MOUSE_MOVE_RELATIVE, 5, 5);
+        expectedCommands2.add(Opcode.KEY_PRESS, 65, 0);
+        mockCommandExecuter.executeCommands(expectedCommands2, 2);
+        mockCommandExecuter.executeCommands(command(Opcode.KEY_RELEASE, 66, 0), 3);
+        mockCommandExecuter.executeCommands(command(Opcode.MOUSE_MOVE_RELATIVE, 6, 6), 1);
+        replay(mockCommandExecuter);
+
+        // Perform test.
+        fTestObject.submit(command(Opcode.MOUSE_MOVE_RELATIVE, 1, 1), 1);
+        fTestObject.submit(command(Opcode.MOUSE_MOVE_RELATIVE, 2, 2), 1);
+        fTestObject.submit(command(Opcode.MOUSE_MOVE_RELATIVE, 5, 5), 2);
+        fTestObject.submit(command(Opcode.KEY_PRESS, 65, 0), 2);
+        fTestObject.submit(command(Opcode.MOUSE_MOVE_RELATIVE, 3, 3), 1);
+        fTestObject.submit(command(Opcode.KEY_RELEASE, 66, 0), 3);
+
+        // Verify test results.
+        assertEquals(3, fTestObject.getQueuedCount());
+        assertEquals(2, fTestObject.getMergedCount());
+
+        fTestObject.dispose();
+        verify(mockCommandExecuter);
+        assertEquals(0, fTestObject.getQueuedCount());
+    }
+}
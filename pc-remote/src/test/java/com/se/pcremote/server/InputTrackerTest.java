@@ -0,0 +1,90 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.InputTracker InputTracker}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class InputTrackerTest
+{
+    /**
+     * An instance of the class being unit tested.
+     */
+    private InputTracker fTestObject;
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.InputTracker#accept(int, int) accept(int, int)}.
+     * </p>
+     */
+    @Test
+    public void accept()
+    {
+        // Perform test and verify test results.
+        assertTrue(fTestObject.accept(Opcode.KEY_PRESS, 16));
+        assertFalse(fTestObject.accept(Opcode.KEY_PRESS, 16));
+        assertTrue(fTestObject.accept(Opcode.MOUSE_PRESS, 1));
+        assertFalse(fTestObject.accept(Opcode.MOUSE_PRESS, 1));
+        assertTrue(fTestObject.accept(Opcode.MOUSE_MOVE_RELATIVE, 1));
+        assertTrue(fTestObject.accept(Opcode.KEY_RELEASE, 16));
+        assertFalse(fTestObject.accept(Opcode.KEY_RELEASE, 16));
+        assertFalse(fTestObject.accept(Opcode.MOUSE_RELEASE, 3));
+
+        assertTrue(fTestObject.isButtonPressed(1));
+        assertFalse(fTestObject.isKeyPressed(16));
+        assertEquals(4, fTestObject.getRedundantCount());
+    }
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        fTestObject = new InputTracker();
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.InputTracker#releaseAll(CommandBuffer) releaseAll(CommandBuffer)}.
+     * </p>
+     */
+    @Test
+    public void releaseAll()
+    {
+        // Initialise test environment.
+        fTestObject.accept(Opcode.KEY_PRESS, 16);
+        fTestObject.accept(Opcode.KEY_PRESS, 65);
+        fTestObject.accept(Opcode.MOUSE_PRESS, 1);
+        CommandBuffer commands = new CommandBuffer();
+
+        // Perform test.
+        fTestObject.releaseAll(commands);
+
+        // Verify test results.
+        assertEquals("mouseRelease(1);keyRelease(16);keyRelease(65);", commands.toString());
+        assertFalse(fTestObject.isAnythingPressed());
+    }
+}
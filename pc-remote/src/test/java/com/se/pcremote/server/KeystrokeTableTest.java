@@ -0,0 +1,84 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.event.KeyEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.KeystrokeTable KeystrokeTable}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class KeystrokeTableTest
+{
+    /**
+     * An instance of the class being unit tested.
+     */
+    private KeystrokeTable fTestObject;
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        fTestObject = new KeystrokeTable();
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.KeystrokeTable#getKeyCode(int) getKeyCode(int)}.
+     * </p>
+     */
+    @Test
+    public void getKeyCode()
+    {
+        // Verify test results.
+        assertEquals(KeyEvent.VK_Q, fTestObject.getKeyCode('q'));
+        assertFalse(fTestObject.isShiftRequired('q'));
+        assertEquals(KeyEvent.VK_Q, fTestObject.getKeyCode('Q'));
+        assertTrue(fTestObject.isShiftRequired('Q'));
+        assertEquals(KeyEvent.VK_1, fTestObject.getKeyCode('!'));
+        assertTrue(fTestObject.isShiftRequired('!'));
+        assertEquals(KeyEvent.VK_SEMICOLON, fTestObject.getKeyCode(';'));
+        assertFalse(fTestObject.isShiftRequired(';'));
+        assertEquals(KeyEvent.VK_ENTER, fTestObject.getKeyCode('\n'));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.KeystrokeTable#getKeyCode(int) getKeyCode(int)} with the special condition that the
+     * characters cannot be typed.
+     * </p>
+     */
+    @Test
+    public void getKeyCodeNotTypeable()
+    {
+        // Verify test results.
+        assertEquals(KeyEvent.VK_UNDEFINED, fTestObject.getKeyCode(0x20AC));
+        assertEquals(KeyEvent.VK_UNDEFINED, fTestObject.getKeyCode(0));
+        assertEquals(KeyEvent.VK_UNDEFINED, fTestObject.getKeyCode(-1));
+        assertFalse(fTestObject.isTypeable(0x20AC));
+        assertFalse(fTestObject.isShiftRequired(0x20AC));
+    }
+}
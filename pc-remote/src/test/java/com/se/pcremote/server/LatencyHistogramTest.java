@@ -0,0 +1,132 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.LatencyHistogram LatencyHistogram}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class LatencyHistogramTest
+{
+    /**
+     * An instance of the class being unit tested.
+     */
+    private LatencyHistogram fTestObject;
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        fTestObject = new LatencyHistogram();
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.LatencyHistogram#add(LatencyHistogram) add(LatencyHistogram)}.
+     * </p>
+     */
+    @Test
+    public void add()
+    {
+        // Initialise test environment.
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(100);
+        other.record(5000000);
+        fTestObject.record(50);
+
+        // Perform test.
+        fTestObject.add(other);
+
+        // Verify test results.
+        assertEquals(3, fTestObject.getCount());
+        assertEquals(50, fTestObject.getMin());
+        assertEquals(5000000, fTestObject.getMax());
+        assertEquals(5000150, fTestObject.getSum());
+        assertEquals(100, fTestObject.getLatencyAtPercentile(50));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.LatencyHistogram#record(long) record(long)}.
+     * </p>
+     */
+    @Test
+    public void record()
+    {
+        // Perform test.
+        // 1 to 1000 microseconds.
+        for (long latency = 1; latency <= 1000; latency++)
+        {
+            fTestObject.record(latency * 1000);
+        }
+
+        // Verify test results.
+        assertEquals(1000, fTestObject.getCount());
+        assertEquals(1000, fTestObject.getMin());
+        assertEquals(1000000, fTestObject.getMax());
+        assertEquals(500500.0, fTestObject.getMean(), 0.0);
+        assertWithin(500000, fTestObject.getLatencyAtPercentile(50));
+        assertWithin(990000, fTestObject.getLatencyAtPercentile(99));
+        assertEquals(1000000, fTestObject.getLatencyAtPercentile(100));
+        assertEquals(0, fTestObject.getCountAtOrBelow(999));
+        assertEquals(1000, fTestObject.getCountAtOrBelow(1000000));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.LatencyHistogram#record(long) record(long)} with the special condition that the latency is
+     * out of the range tracked.
+     * </p>
+     */
+    @Test
+    public void recordOutOfRange()
+    {
+        // Initialise test environment.
+        fTestObject = new LatencyHistogram(1000000);
+
+        // Perform test.
+        fTestObject.record(-5);
+        fTestObject.record(7000000);
+
+        // Verify test results.
+        assertEquals(2, fTestObject.getCount());
+        assertEquals(0, fTestObject.getMin());
+        assertEquals(1000000, fTestObject.getMax());
+        assertEquals(1000000, fTestObject.getLatencyAtPercentile(100));
+    }
+
+    /**
+     * <p>
+     * Asserts that the given latency is no shorter than the expected latency and no more than 1/64th longer.
+     * </p>
+     * 
+     * @param expected The expected latency.
+     * @param actual The actual latency.
+     */
+    private void assertWithin(final long expected, final long actual)
+    {
+        assertTrue("Expected " + expected + " but was " + actual, actual >= expected && actual <= expected + expected / 64);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.MetricsEndpoint MetricsEndpoint}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class MetricsEndpointTest
+{
+    /**
+     * <p>
+     * Queues the commands for injection.
+     * </p>
+     */
+    private InputScheduler fInputScheduler;
+
+    /**
+     * <p>
+     * The sessions of the clients that stamp their messages.
+     * </p>
+     */
+    private SessionTable fSessionTable;
+
+    /**
+     * An instance of the class being unit tested.
+     */
+    private MetricsEndpoint fTestObject;
+
+    /**
+     * <p>
+     * Tears down the test environment after each test.
+     * </p>
+     */
+    @After
+    public void after()
+    {
+        fTestObject.stop();
+    }
+
+    /**
+     * <p>
+     * Sets up the test environment for each test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        CommandExecuter mockCommandExecuter = createNiceMock(CommandExecuter.class);
+        replay(mockCommandExecuter);
+
+        fInputScheduler = new InputScheduler(mockCommandExecuter);
+        fSessionTable = new SessionTable(mockCommandExecuter, fInputScheduler);
+        fTestObject = new MetricsEndpoint(new InetSocketAddress("127.0.0.1", 0), new ServerMonitor(fSessionTable, fInputScheduler, mockCommandExecuter),
+                fInputScheduler.getInjectionLatencies());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.MetricsEndpoint#getRendering() getRendering()}.
+     * </p>
+     */
+    @Test
+    public void getRendering()
+    {
+        // Initialise test environment.
+        fTestObject.setCacheTime(60000);
+
+        // Perform test.
+        byte[] first = fTestObject.getRendering();
+        fSessionTable.getMetrics().getTcpCommands().add(5);
+        byte[] second = fTestObject.getRendering();
+        fTestObject.setCacheTime(0);
+        byte[] third = fTestObject.getRendering();
+
+        // Verify test results.
+        assertSame(first, second);
+        assertTrue(new String(third).contains("pcremote_received_commands_total{transport=\"tcp\"} 5\n"));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.MetricsEndpoint#render() render()}.
+     * </p>
+     */
+    @Test
+    public void render()
+    {
+        // Initialise test environment.
+        fSessionTable.getMetrics().getCommandCacheHits().add(9);
+        fSessionTable.getMetrics().getConnectionsAccepted().add(2);
+        fSessionTable.getMetrics().getUdpBytes().add(1234);
+        fSessionTable.getSession(7).execute(new CommandBuffer());
+        fInputScheduler.getInjectionLatencies().record(2000000);
+
+        // Perform test.
+        String metrics = fTestObject.render();
+
+        // Verify test results.
+        assertTrue(metrics.contains("# TYPE pcremote_connections_accepted_total counter\npcremote_connections_accepted_total 2\n"));
+        assertTrue(metrics.contains("pcremote_received_bytes_total{transport=\"udp\"} 1234\n"));
+        assertTrue(metrics.contains("pcremote_command_cache_lookups_total{result=\"hit\"} 9\n"));
+        assertTrue(metrics.contains("# TYPE pcremote_expired_events_total counter\npcremote_expired_events_total 0\n"));
+        assertTrue(metrics.contains("pcremote_journal_records_dropped_total 0\n"));
+        assertTrue(metrics.contains("# TYPE pcremote_injection_latency_seconds summary\n"));
+        assertTrue(metrics.contains("pcremote_injection_latency_seconds_sum 0.002\n"));
+        assertTrue(metrics.contains("pcremote_injection_latency_seconds_count 1\n"));
+        assertTrue(metrics.contains("pcremote_client_commands_total{client=\"7\"} 0\n"));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.MetricsEndpoint#start() start()}.
+     * </p>
+     * 
+     * @throws Exception Thrown if the metrics cannot be fetched.
+     */
+    @Test
+    public void start() throws Exception
+    {
+        // Perform test.
+        fTestObject.start();
+
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + fTestObject.getAddress().getPort()
+                + MetricsEndpoint.PATH).openConnection();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        InputStream input = connection.getInputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = input.read(buffer)) != -1)
+        {
+            body.write(buffer, 0, length);
+        }
+        input.close();
+
+        // Verify test results.
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+        assertEquals(fTestObject.render(), body.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.RateLimiter RateLimiter}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class RateLimiterTest
+{
+    /**
+     * An instance of the class being unit tested.
+     */
+    private RateLimiter fTestObject;
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.RateLimiter#admit(int, int, int, long, CommandBuffer) admit(int, int, int, long,
+     * CommandBuffer)}.
+     * </p>
+     */
+    @Test
+    public void admit()
+    {
+        // Initialise test environment.
+        fTestObject.setRates(2, 1, 0);
+        long now = System.nanoTime();
+        CommandBuffer admitted = new CommandBuffer();
+
+        // Perform test.
+        fTestObject.admit(Opcode.MOUSE_MOVE_RELATIVE, 1, 1, now, admitted);
+        fTestObject.admit(Opcode.MOUSE_MOVE_RELATIVE, 2, 2, now, admitted);
+        fTestObject.admit(Opcode.MOUSE_MOVE_RELATIVE, 3, 3, now, admitted);
+        fTestObject.admit(Opcode.MOUSE_WHEEL, 1, 0, now, admitted);
+        fTestObject.admit(Opcode.KEY_PRESS, 65, 0, now, admitted);
+        fTestObject.admit(Opcode.KEY_PRESS, 66, 0, now, admitted);
+        fTestObject.admit(Opcode.KEY_RELEASE, 65, 0, now, admitted);
+        fTestObject.admit(Opcode.MOUSE_PRESS, 1, 0, now, admitted);
+        fTestObject.admit(Opcode.MOUSE_RELEASE, 1, 0, now, admitted);
+
+        // Verify test results.
+        assertEquals("mouseMoveRelative(1,1);mouseMoveRelative(2,2);keyPress(65);keyRelease(65);mouseMoveRelative(3,3);mouseWheel(1);"
+                + "mouseRelease(1);", admitted.toString());
+        assertFalse(fTestObject.isPending());
+        assertEquals(2, fTestObject.getCoalescedCount());
+        assertEquals(2, fTestObject.getDroppedCount());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.RateLimiter#admit(int, int, int, long, CommandBuffer) admit(int, int, int, long,
+     * CommandBuffer)} with the special condition that gestures are admitted. The stages of the first drag (pauses included) are charged to the
+     * buckets so the key press after it is dropped, the second drag is dropped as a unit apart from its release.
+     * </p>
+     */
+    @Test
+    public void admitGesture()
+    {
+        // Initialise test environment.
+        fTestObject.setRates(1, 1, 0);
+        long now = System.nanoTime();
+        CommandBuffer admitted = new CommandBuffer();
+
+        // Perform test.
+        admitDrag(now, admitted);
+        fTestObject.admit(Opcode.KEY_PRESS, 65, 0, now, admitted);
+        admitDrag(now + 500000000L, admitted);
+
+        // Verify test results.
+        assertEquals("mousePress(1);pause(0);mouseMoveRelative(10,5);pause(0);mouseRelease(1);mouseRelease(1);", admitted.toString());
+        assertFalse(fTestObject.isPending());
+        assertEquals(0, fTestObject.getCoalescedCount());
+        assertEquals(2, fTestObject.getDroppedCount());
+    }
+
+    /**
+     * <p>
+     * Applies the limits to the commands of a <code>drag(1,10,5);</code> gesture.
+     * </p>
+     * 
+     * @param now The current time (in nanoseconds).
+     * @param admitted The buffer to add the commands that can be executed now to.
+     */
+    private void admitDrag(final long now, final CommandBuffer admitted)
+    {
+        fTestObject.admit(Opcode.MOUSE_PRESS, 1, 0, now, admitted);
+        fTestObject.admit(Opcode.PAUSE, 0, 0, now, admitted);
+        fTestObject.admit(Opcode.MOUSE_MOVE_RELATIVE, 10, 5, now, admitted);
+        fTestObject.admit(Opcode.PAUSE, 0, 0, now, admitted);
+        fTestObject.admit(Opcode.MOUSE_RELEASE, 1, 0, now, admitted);
+    }
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        fTestObject = new RateLimiter();
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.RateLimiter#release(long, boolean, CommandBuffer) release(long, boolean,
+     * CommandBuffer)}.
+     * </p>
+     */
+    @Test
+    public void release()
+    {
+        // Initialise test environment.
+        fTestObject.setRates(1, 0, 0);
+        long now = System.nanoTime();
+        CommandBuffer admitted = new CommandBuffer();
+        fTestObject.admit(Opcode.MOUSE_MOVE_RELATIVE, 1, 1, now, admitted);
+        fTestObject.admit(Opcode.MOUSE_MOVE, 100, 100, now, admitted);
+        fTestObject.admit(Opcode.MOUSE_MOVE_RELATIVE, 2, 2, now, admitted);
+        fTestObject.admit(Opcode.MOUSE_MOVE_RELATIVE, 3, 3, now, admitted);
+        admitted.clear();
+
+        // Perform test.
+        fTestObject.release(now, false, admitted);
+
+        // Verify test results.
+        assertEquals(0, admitted.size());
+        assertTrue(fTestObject.isPending());
+
+        // Perform test.
+        fTestObject.release(now + 1000000000L, false, admitted);
+
+        // Verify test results.
+        assertEquals("mouseMove(100,100);mouseMoveRelative(5,5);", admitted.toString());
+        assertFalse(fTestObject.isPending());
+    }
+}
@@ -0,0 +1,263 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.ReorderBuffer ReorderBuffer}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ReorderBufferTest
+{
+    /**
+     * The commands released by the instance of the class being unit tested, one <code>String</code> per release.
+     */
+    private List<String> fReleased;
+
+    /**
+     * An instance of the class being unit tested.
+     */
+    private ReorderBuffer fTestObject;
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        fReleased = new ArrayList<String>();
+        fTestObject = new ReorderBuffer()
+        {
+            @Override
+            protected void onRelease(final CommandBuffer commands)
+            {
+                fReleased.add(commands.toString());
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * Creates a buffer containing a single key press.
+     * </p>
+     * 
+     * @param key The key pressed.
+     * 
+     * @return The buffer.
+     */
+    private CommandBuffer keyPress(final int key)
+    {
+        CommandBuffer commands = new CommandBuffer();
+        commands.add(Opcode.KEY_PRESS, key, 0);
+
+        return (commands);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.ReorderBuffer#offer(int, CommandBuffer) offer(int, CommandBuffer)}.
+     * </p>
+     */
+    @Test
+    public void offer()
+    {
+        // Perform test.
+        fTestObject.offer(10, keyPress(1));
+        fTestObject.offer(11, keyPress(2));
+
+        // Verify test results.
+        assertEquals(2, fReleased.size());
+        assertEquals(keyPress(1).toString(), fReleased.get(0));
+        assertEquals(keyPress(2).toString(), fReleased.get(1));
+        assertEquals(0, fTestObject.getHeldCount());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.ReorderBuffer#offer(int, CommandBuffer) offer(int, CommandBuffer)} with the special
+     * condition that the same stamped messages arrive twice.
+     * </p>
+     */
+    @Test
+    public void offerDuplicate()
+    {
+        // Perform test.
+        fTestObject.offer(0, keyPress(1));
+        fTestObject.offer(0, keyPress(1));
+        fTestObject.offer(2, keyPress(3));
+        fTestObject.offer(2, keyPress(3));
+        fTestObject.offer(1, keyPress(2));
+        fTestObject.offer(1, keyPress(2));
+        fTestObject.offer(2, keyPress(3));
+
+        // Verify test results.
+        assertEquals(2, fReleased.size());
+        assertEquals(keyPress(1).toString(), fReleased.get(0));
+        assertEquals("keyPress(2);keyPress(3);", fReleased.get(1));
+        assertEquals(4, fTestObject.getDuplicateCount());
+        assertEquals(0, fTestObject.getLateCount());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.ReorderBuffer#offer(int, CommandBuffer) offer(int, CommandBuffer)} with the special
+     * condition that a message arrives twice after it has been skipped.
+     * </p>
+     */
+    @Test
+    public void offerDuplicateLate()
+    {
+        // Initialise test environment.
+        fTestObject.offer(0, keyPress(1));
+        fTestObject.offer(2, keyPress(3));
+        fTestObject.setMaxWait(0);
+        sleep();
+        fTestObject.flushExpired();
+
+        // Perform test.
+        fTestObject.offer(1, keyPress(2));
+        fTestObject.offer(1, keyPress(2));
+
+        // Verify test results.
+        assertEquals(3, fReleased.size());
+        assertEquals(1, fTestObject.getLateCount());
+        assertEquals(1, fTestObject.getDuplicateCount());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.ReorderBuffer#offer(int, CommandBuffer) offer(int, CommandBuffer)} with the special
+     * condition that a message arrives after it has been skipped.
+     * </p>
+     */
+    @Test
+    public void offerLate()
+    {
+        // Initialise test environment.
+        fTestObject.offer(0, keyPress(1));
+        fTestObject.offer(2, keyPress(3));
+        fTestObject.setMaxWait(0);
+        sleep();
+        fTestObject.flushExpired();
+
+        // Perform test.
+        fTestObject.offer(1, keyPress(2));
+
+        // Verify test results.
+        assertEquals(3, fReleased.size());
+        assertEquals(keyPress(2).toString(), fReleased.get(2));
+        assertEquals(1, fTestObject.getSkippedCount());
+        assertEquals(1, fTestObject.getLateCount());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.ReorderBuffer#offer(int, CommandBuffer) offer(int, CommandBuffer)} with the special
+     * condition that messages arrive out of order.
+     * </p>
+     */
+    @Test
+    public void offerOutOfOrder()
+    {
+        // Perform test.
+        fTestObject.offer(0, keyPress(1));
+        fTestObject.offer(2, keyPress(3));
+        fTestObject.offer(3, keyPress(4));
+
+        // Verify test results.
+        assertEquals(1, fReleased.size());
+        assertEquals(2, fTestObject.getHeldCount());
+
+        // Perform test.
+        fTestObject.offer(1, keyPress(2));
+
+        // Verify test results.
+        assertEquals(2, fReleased.size());
+        assertEquals("keyPress(2);keyPress(3);keyPress(4);", fReleased.get(1));
+        assertEquals(0, fTestObject.getHeldCount());
+        assertEquals(0, fTestObject.getSkippedCount());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.ReorderBuffer#offer(int, CommandBuffer) offer(int, CommandBuffer)} with the special
+     * condition that a message arrives too far ahead of the next message in order to be held back.
+     * </p>
+     */
+    @Test
+    public void offerTooFarAhead()
+    {
+        // Perform test.
+        fTestObject.offer(0, keyPress(1));
+        fTestObject.offer(5, keyPress(2));
+        fTestObject.offer(1000, keyPress(3));
+
+        // Verify test results.
+        assertEquals(2, fReleased.size());
+        assertEquals(keyPress(2).toString(), fReleased.get(1));
+        assertEquals(1, fTestObject.getHeldCount());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.ReorderBuffer#flushExpired() flushExpired()}.
+     * </p>
+     */
+    @Test
+    public void flushExpired()
+    {
+        // Initialise test environment.
+        fTestObject.offer(0, keyPress(1));
+        fTestObject.offer(2, keyPress(3));
+        fTestObject.offer(4, keyPress(5));
+        fTestObject.setMaxWait(0);
+        sleep();
+
+        // Perform test.
+        fTestObject.flushExpired();
+
+        // Verify test results.
+        assertEquals(2, fReleased.size());
+        assertEquals("keyPress(3);keyPress(5);", fReleased.get(1));
+        assertEquals(0, fTestObject.getHeldCount());
+        assertEquals(2, fTestObject.getSkippedCount());
+    }
+
+    /**
+     * <p>
+     * Waits long enough for the messages being held back to expire when the maximum wait is 0.
+     * </p>
+     */
+    private void sleep()
+    {
+        try
+        {
+            Thread.sleep(2);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
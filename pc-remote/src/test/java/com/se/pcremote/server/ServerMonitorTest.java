@@ -0,0 +1,167 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.ServerMonitor ServerMonitor}. The injection thread is not started, the queued commands
+ * are injected when the scheduler is disposed of.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class ServerMonitorTest
+{
+    /**
+     * <p>
+     * The port the monitor is registered for, one that no other test registers a monitor for.
+     * </p>
+     */
+    private static final int PORT = 54321;
+
+    /**
+     * <p>
+     * Queues the commands for injection.
+     * </p>
+     */
+    private InputScheduler fInputScheduler;
+
+    /**
+     * <p>
+     * The sessions of the clients that stamp their messages.
+     * </p>
+     */
+    private SessionTable fSessionTable;
+
+    /**
+     * An instance of the class being unit tested.
+     */
+    private ServerMonitor fTestObject;
+
+    /**
+     * <p>
+     * Tears down the test environment after each test.
+     * </p>
+     */
+    @After
+    public void after()
+    {
+        fTestObject.unregister();
+    }
+
+    /**
+     * <p>
+     * Sets up the test environment for each test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        CommandExecuter mockCommandExecuter = createNiceMock(CommandExecuter.class);
+        replay(mockCommandExecuter);
+
+        fInputScheduler = new InputScheduler(mockCommandExecuter);
+        fSessionTable = new SessionTable(mockCommandExecuter, fInputScheduler);
+        fTestObject = new ServerMonitor(fSessionTable, fInputScheduler, mockCommandExecuter);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.ServerMonitor#getClients() getClients()}.
+     * </p>
+     * 
+     * @throws InterruptedException Thrown if the test is interrupted.
+     */
+    @Test
+    public void getClients() throws InterruptedException
+    {
+        // Initialise test environment.
+        CommandBuffer commands = new CommandBuffer();
+        commands.add(Opcode.KEY_PRESS, 65, 0);
+        commands.add(Opcode.KEY_RELEASE, 65, 0);
+
+        // Perform test.
+        fSessionTable.getSession(7).execute(commands);
+        fInputScheduler.dispose();
+
+        // Verify test results.
+        assertEquals(1, fTestObject.getClients().size());
+        ClientStatistics client = fTestObject.getClients().get(0);
+        assertEquals(7, client.getId());
+        assertEquals(2, client.getCommandCount());
+        assertEquals(1.0, client.getInjectionShare(), 0.0);
+        assertEquals(1, fTestObject.getInjectedBatches());
+        assertEquals(0, fTestObject.getQueueDepth());
+        assertEquals(1, fTestObject.getSessionsActive());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.ServerMonitor#register(int) register(int)}.
+     * </p>
+     * 
+     * @throws Exception Thrown if the monitor cannot be read via JMX.
+     */
+    @Test
+    public void register() throws Exception
+    {
+        // Initialise test environment.
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = ServerMonitor.getObjectName(PORT);
+        fSessionTable.getMetrics().getCommandCacheHits().add(3);
+        fSessionTable.getMetrics().getCommandCacheMisses().add(1);
+        fSessionTable.getMetrics().getConnectionsAccepted().add(3);
+        fSessionTable.getMetrics().getConnectionsClosed().add(1);
+        fSessionTable.getMetrics().getTcpCommands().add(10);
+        fSessionTable.getMetrics().getUdpCommands().add(20);
+        fSessionTable.getSession(7);
+
+        // Perform test.
+        fTestObject.register(PORT);
+
+        // Verify test results.
+        assertTrue(mBeanServer.isRegistered(objectName));
+        assertEquals(0.75, mBeanServer.getAttribute(objectName, "CommandCacheHitRate"));
+        assertEquals(3L, mBeanServer.getAttribute(objectName, "ConnectionsAccepted"));
+        assertEquals(2L, mBeanServer.getAttribute(objectName, "ConnectionsActive"));
+        assertEquals(0L, mBeanServer.getAttribute(objectName, "ExpiredEvents"));
+        assertEquals(0L, mBeanServer.getAttribute(objectName, "JournalRecordsDropped"));
+        assertEquals(10L, mBeanServer.getAttribute(objectName, "TcpCommandsReceived"));
+        assertEquals(20L, mBeanServer.getAttribute(objectName, "UdpCommandsReceived"));
+
+        CompositeData[] clients = (CompositeData[]) mBeanServer.getAttribute(objectName, "Clients");
+        assertEquals(1, clients.length);
+        assertEquals(7, clients[0].get("id"));
+
+        // Perform test.
+        fTestObject.unregister();
+
+        // Verify test results.
+        assertFalse(mBeanServer.isRegistered(objectName));
+    }
+}
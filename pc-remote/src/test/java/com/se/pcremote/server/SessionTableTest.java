@@ -0,0 +1,159 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.classextension.EasyMock.createMock;
+import static org.easymock.classextension.EasyMock.createStrictMock;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.easymock.classextension.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Robot;
+import java.awt.event.KeyEvent;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.SessionTable SessionTable}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class SessionTableTest
+{
+    /**
+     * An instance of the class being unit tested.
+     */
+    private SessionTable fTestObject;
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.SessionTable#createSession() createSession()}.
+     * </p>
+     */
+    @Test
+    public void createSession()
+    {
+        // Create dependencies.
+        CommandExecuter mockCommandExecuter = createMock(CommandExecuter.class);
+        replay(mockCommandExecuter);
+
+        // Initialise test environment.
+        fTestObject = new SessionTable(mockCommandExecuter);
+
+        // Perform test.
+        ClientSession first = fTestObject.createSession();
+        ClientSession second = fTestObject.createSession();
+
+        // Verify test results.
+        assertEquals(-1, first.getId());
+        assertEquals(-2, second.getId());
+        assertTrue(fTestObject.getSessions().isEmpty());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.SessionTable#getSession(int) getSession(int)} with the special condition that the
+     * client invokes a macro after its session timed out.
+     * </p>
+     * 
+     * @throws InterruptedException Thrown if the test is interrupted while it waits for the session to time out.
+     */
+    @Test
+    public void getSessionTimedOut() throws InterruptedException
+    {
+        // Create dependencies.
+        Robot mockRobot = createStrictMock(Robot.class);
+        CommandBuffer define = new CommandBuffer();
+        define.add(Opcode.DEFINE_MACRO, 1, 0);
+        define.add(Opcode.KEY_PRESS, KeyEvent.VK_A, 0);
+        define.add(Opcode.KEY_RELEASE, KeyEvent.VK_A, 0);
+        define.add(Opcode.END_MACRO, 1, 0);
+        CommandBuffer invoke = new CommandBuffer();
+        invoke.add(Opcode.MACRO, 1, 0);
+
+        // Initialise test environment.
+        fTestObject = new SessionTable(new CommandExecuter(mockRobot));
+        fTestObject.setSessionTimeout(50);
+        fTestObject.start();
+
+        // Dictate expected results.
+        mockRobot.keyPress(KeyEvent.VK_A);
+        mockRobot.keyRelease(KeyEvent.VK_A);
+        replay(mockRobot);
+
+        // Perform test.
+        fTestObject.getSession(1).execute(define);
+        Thread.sleep(200);
+        assertTrue(fTestObject.getSessions().isEmpty());
+        fTestObject.getSession(1).execute(invoke);
+
+        // Verify test results.
+        verify(mockRobot);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.SessionTable.Maintenance#run() run()} with the special condition that maintaining a
+     * session fails.
+     * </p>
+     * 
+     * @throws InterruptedException Thrown if the test is interrupted while it waits for the session to time out.
+     */
+    @Test
+    public void maintenanceRunFailure() throws InterruptedException
+    {
+        // Create dependencies.
+        Robot mockRobot = createMock(Robot.class);
+        CommandBuffer first = new CommandBuffer();
+        CommandBuffer third = new CommandBuffer();
+        third.add(Opcode.KEY_PRESS, KeyEvent.VK_A, 0);
+
+        // Initialise test environment.
+        fTestObject = new SessionTable(new CommandExecuter(mockRobot));
+        fTestObject.setSessionTimeout(200);
+        fTestObject.start();
+
+        // Dictate correct behaviour.
+        mockRobot.keyPress(KeyEvent.VK_A);
+        expectLastCall().andThrow(new IllegalStateException()).anyTimes();
+        mockRobot.keyRelease(KeyEvent.VK_A);
+        expectLastCall().anyTimes();
+        replay(mockRobot);
+
+        // Perform test.
+        fTestObject.getSession(1).offer(0, first);
+        fTestObject.getSession(1).offer(2, third);
+        Thread.sleep(500);
+
+        // Verify test results.
+        assertTrue(fTestObject.getSessions().isEmpty());
+    }
+
+    /**
+     * <p>
+     * Cleans up the test environment after each test.
+     * </p>
+     */
+    @After
+    public void tearDown()
+    {
+        if (fTestObject != null)
+        {
+            fTestObject.dispose();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.se.pcremote.InputSnapshot;
+import com.se.pcremote.client.InputState;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.SnapshotReconciler SnapshotReconciler}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class SnapshotReconcilerTest
+{
+    /**
+     * <p>
+     * The input state of the client sending the snapshots.
+     * </p>
+     */
+    private InputState fInputState;
+
+    /**
+     * An instance of the class being unit tested.
+     */
+    private SnapshotReconciler fTestObject;
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        fInputState = new InputState();
+        fTestObject = new SnapshotReconciler();
+    }
+
+    /**
+     * <p>
+     * Reconciles the given snapshot.
+     * </p>
+     * 
+     * @param snapshot The snapshot.
+     * 
+     * @return The commands produced.
+     */
+    private String reconcile(final ByteBuffer snapshot)
+    {
+        CommandBuffer commands = new CommandBuffer();
+        snapshot.get();
+        fTestObject.reconcile(snapshot, commands);
+
+        return (commands.toString());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.SnapshotReconciler#reconcile(ByteBuffer, CommandBuffer) reconcile(ByteBuffer,
+     * CommandBuffer)}.
+     * </p>
+     */
+    @Test
+    public void reconcile()
+    {
+        // Perform test.
+        fInputState.moveMouse(1, 2);
+        fInputState.pressMouseButton(1);
+        String commands0 = reconcile(snapshot());
+        fInputState.moveMouse(3, 4);
+        String commands1 = reconcile(snapshot());
+        fInputState.releaseMouseButton(1);
+        String commands2 = reconcile(snapshot());
+
+        // Verify test results.
+        assertEquals("mouseMoveRelative(1,2);mousePress(1);", commands0);
+        assertEquals("mouseMoveRelative(3,4);", commands1);
+        assertEquals("mouseRelease(1);", commands2);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.SnapshotReconciler#reconcile(ByteBuffer, CommandBuffer) reconcile(ByteBuffer,
+     * CommandBuffer)} with the special condition that snapshots are lost.
+     * </p>
+     */
+    @Test
+    public void reconcileLostSnapshots()
+    {
+        // Initialise test environment.
+        reconcile(snapshot());
+
+        // Perform test.
+        fInputState.moveMouse(1, 1);
+        fInputState.pressMouseButton(1);
+        snapshot();
+        fInputState.releaseMouseButton(1);
+        fInputState.moveMouse(2, 2);
+        fInputState.pressKey(65);
+        snapshot();
+        fInputState.releaseKey(65);
+        fInputState.pressKey(65);
+        String commands = reconcile(snapshot());
+
+        // Verify test results.
+        assertEquals("mouseMoveRelative(1,1);mouseMoveRelative(2,2);mousePress(1);mouseRelease(1);keyPress(65);keyRelease(65);keyPress(65);",
+                commands);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.SnapshotReconciler#reconcile(ByteBuffer, CommandBuffer) reconcile(ByteBuffer,
+     * CommandBuffer)} with the special condition that the snapshots arrive out of order.
+     * </p>
+     */
+    @Test
+    public void reconcileOutOfOrder()
+    {
+        // Initialise test environment.
+        fInputState.moveMouse(1, 1);
+        ByteBuffer snapshot0 = snapshot();
+        fInputState.moveMouse(2, 2);
+        ByteBuffer snapshot1 = snapshot();
+
+        // Perform test.
+        String commands1 = reconcile(snapshot1);
+        CommandBuffer commands0 = new CommandBuffer();
+        snapshot0.get();
+
+        // Verify test results.
+        assertEquals("mouseMoveRelative(2,2);", commands1);
+        assertFalse(fTestObject.reconcile(snapshot0, commands0));
+        assertEquals(0, commands0.size());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.SnapshotReconciler#reconcile(ByteBuffer, CommandBuffer) reconcile(ByteBuffer,
+     * CommandBuffer)} with the special condition that an input released on the server is no longer in the snapshots once its release has been
+     * acknowledged.
+     * </p>
+     */
+    @Test
+    public void reconcileAcknowledged()
+    {
+        // Initialise test environment.
+        fInputState.pressKey(65);
+        reconcile(snapshot());
+        fInputState.releaseKey(65);
+        reconcile(snapshot());
+        ByteBuffer ack = ByteBuffer.allocate(InputSnapshot.ACK_LENGTH - 1);
+        ack.putInt(fTestObject.getLastApplied());
+        ack.flip();
+        fInputState.acknowledge(ack);
+
+        // Perform test.
+        fInputState.pressKey(65);
+        String commands = reconcile(snapshot());
+
+        // Verify test results.
+        assertEquals("keyPress(65);", commands);
+    }
+
+    /**
+     * <p>
+     * Writes a snapshot of the client's input state.
+     * </p>
+     * 
+     * @return The snapshot.
+     */
+    private ByteBuffer snapshot()
+    {
+        ByteBuffer snapshot = ByteBuffer.allocate(InputSnapshot.MAX_LENGTH);
+        fInputState.writeSnapshot(snapshot);
+        snapshot.flip();
+
+        return (snapshot);
+    }
+}
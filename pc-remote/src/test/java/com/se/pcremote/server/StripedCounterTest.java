@@ -0,0 +1,102 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.StripedCounter StripedCounter}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class StripedCounterTest
+{
+    /**
+     * An instance of the class being unit tested.
+     */
+    private StripedCounter fTestObject;
+
+    /**
+     * <p>
+     * Sets up the test environment for each test.
+     * </p>
+     */
+    @Before
+    public void before()
+    {
+        fTestObject = new StripedCounter(4);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.StripedCounter#add(long) add(long)}.
+     * </p>
+     */
+    @Test
+    public void add()
+    {
+        // Perform test.
+        fTestObject.add(5);
+        fTestObject.increment();
+        fTestObject.add(-2);
+
+        // Verify test results.
+        assertEquals(4, fTestObject.get());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.StripedCounter#add(long) add(long)} with the special condition that several threads add
+     * to the counter at once.
+     * </p>
+     * 
+     * @throws InterruptedException Thrown if the test is interrupted.
+     */
+    @Test
+    public void addConcurrently() throws InterruptedException
+    {
+        // Initialise test environment.
+        Thread[] threads = new Thread[8];
+        for (int index = 0; index < threads.length; index++)
+        {
+            threads[index] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int count = 0; count < 100000; count++)
+                    {
+                        fTestObject.increment();
+                    }
+                }
+            };
+        }
+
+        // Perform test.
+        for (Thread thread : threads)
+        {
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        // Verify test results.
+        assertEquals(800000, fTestObject.get());
+    }
+}
@@ -15,10 +15,12 @@ import static org.easymock.EasyMock.expect;
 import static org.easymock.classextension.EasyMock.createMock;
 import static org.easymock.classextension.EasyMock.replay;
 import static org.easymock.classextension.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.Socket;
 
 import org.junit.Test;
@@ -40,6 +42,48 @@ public class TcpClientTest
      */
     private TcpClient fTestObject;
 
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.TcpClient#dispose() dispose()} with the special condition that the client is holding a key
+     * down.
+     * </p>
+     * 
+     * @throws IOException Thrown is an I/O error occurs.
+     */
+    @Test
+    public void disposeKeyHeld() throws IOException
+    {
+        // Create dependencies.
+        Socket mockSocket = createMock(Socket.class);
+        byte[] receiveBytes = "keyPress(16);keyPress(16);".getBytes();
+        InputStream inputStream = new ByteArrayInputStream(receiveBytes);
+        CommandExecuter mockCommandExecuter = createMock(CommandExecuter.class);
+
+        // Initialise test environment.
+        fTestObject = new TcpClient(mockSocket, mockCommandExecuter);
+
+        // Dictate correct behaviour.
+        expect(mockSocket.getInputStream()).andReturn(inputStream).anyTimes();
+        mockSocket.close();
+        replay(mockSocket);
+
+        // Dictate expected results.
+        CommandBuffer expectedPress = new CommandBuffer();
+        expectedPress.add(Opcode.KEY_PRESS, 16, 0);
+        mockCommandExecuter.executeCommands(expectedPress, -1);
+        CommandBuffer expectedRelease = new CommandBuffer();
+        expectedRelease.add(Opcode.KEY_RELEASE, 16, 0);
+        mockCommandExecuter.executeCommands(expectedRelease, -1);
+        replay(mockCommandExecuter);
+
+        // Perform test.
+        fTestObject.receiveData();
+        fTestObject.dispose();
+
+        // Verify test results.
+        verify(mockCommandExecuter);
+    }
+
     /**
      * <p>
      * Unit test the method {@link com.se.pcremote.server.TcpClient#receiveData() receiveData()}.
@@ -64,7 +108,9 @@ public class TcpClientTest
         replay(mockSocket);
 
         // Dictate expected results.
-        mockCommandExecuter.executeCommand("keyPress(0)");
+        CommandBuffer expectedCommands = new CommandBuffer();
+        expectedCommands.add(Opcode.KEY_PRESS, 0, 0);
+        mockCommandExecuter.executeCommands(expectedCommands, -1);
         replay(mockCommandExecuter);
 
         // Perform test.
@@ -99,8 +145,215 @@ public class TcpClientTest
         replay(mockSocket);
 
         // Dictate expected results.
-        mockCommandExecuter.executeCommand("keyPress(0)");
-        mockCommandExecuter.executeCommand("keyRelease(0)");
+        CommandBuffer expectedCommands = new CommandBuffer();
+        expectedCommands.add(Opcode.KEY_PRESS, 0, 0);
+        expectedCommands.add(Opcode.KEY_RELEASE, 0, 0);
+        mockCommandExecuter.executeCommands(expectedCommands, -1);
+        replay(mockCommandExecuter);
+
+        // Perform test.
+        fTestObject.receiveData();
+
+        // Verify test results.
+        verify(mockCommandExecuter);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.TcpClient#receiveData() receiveData()} with the special condition that the same commands
+     * are received twice, so that the second time they are found in the command cache.
+     * </p>
+     * 
+     * @throws IOException Thrown is an I/O error occurs.
+     */
+    @Test
+    public void receiveDataRepeatedCommands() throws IOException
+    {
+        // Create dependencies.
+        Socket mockSocket = createMock(Socket.class);
+        byte[] receiveBytes = "keyPress(0);keyRelease(0);keyPress(0);keyRelease(0);".getBytes();
+        InputStream inputStream = new ByteArrayInputStream(receiveBytes);
+        CommandExecuter mockCommandExecuter = createMock(CommandExecuter.class);
+        SessionTable sessionTable = new SessionTable(mockCommandExecuter);
+
+        // Initialise test environment.
+        fTestObject = new TcpClient(mockSocket, sessionTable);
+
+        // Dictate correct behaviour.
+        expect(mockSocket.getInputStream()).andReturn(inputStream).anyTimes();
+        replay(mockSocket);
+
+        // Dictate expected results.
+        CommandBuffer expectedCommands = new CommandBuffer();
+        expectedCommands.add(Opcode.KEY_PRESS, 0, 0);
+        expectedCommands.add(Opcode.KEY_RELEASE, 0, 0);
+        expectedCommands.add(Opcode.KEY_PRESS, 0, 0);
+        expectedCommands.add(Opcode.KEY_RELEASE, 0, 0);
+        mockCommandExecuter.executeCommands(expectedCommands, -1);
+        replay(mockCommandExecuter);
+
+        // Perform test.
+        fTestObject.receiveData();
+
+        // Verify test results.
+        verify(mockCommandExecuter);
+        assertEquals(2, sessionTable.getMetrics().getCommandCacheHits().get());
+        assertEquals(2, sessionTable.getMetrics().getCommandCacheMisses().get());
+        assertEquals(0, sessionTable.getMetrics().getCommandCacheEvictions().get());
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.TcpClient#receiveData() receiveData()} with the special condition that a command is cut
+     * in two because the data received fills the buffer.
+     * </p>
+     * 
+     * @throws IOException Thrown is an I/O error occurs.
+     */
+    @Test
+    public void receiveDataSplitCommand() throws IOException
+    {
+        // Create dependencies.
+        Socket mockSocket = createMock(Socket.class);
+        byte[] receiveBytes = "keyPress(0);keyRelease(0);".getBytes();
+        InputStream inputStream = new ByteArrayInputStream(receiveBytes);
+        CommandExecuter mockCommandExecuter = createMock(CommandExecuter.class);
+
+        // Initialise test environment.
+        fTestObject = new TcpClient(mockSocket, mockCommandExecuter);
+        fTestObject.setMaxDataReceivable(16);
+
+        // Dictate correct behaviour.
+        expect(mockSocket.getInputStream()).andReturn(inputStream).anyTimes();
+        replay(mockSocket);
+
+        // Dictate expected results.
+        CommandBuffer expectedPress = new CommandBuffer();
+        expectedPress.add(Opcode.KEY_PRESS, 0, 0);
+        mockCommandExecuter.executeCommands(expectedPress, -1);
+        CommandBuffer expectedRelease = new CommandBuffer();
+        expectedRelease.add(Opcode.KEY_RELEASE, 0, 0);
+        mockCommandExecuter.executeCommands(expectedRelease, -1);
+        replay(mockCommandExecuter);
+
+        // Perform test.
+        fTestObject.receiveData();
+        fTestObject.receiveData();
+
+        // Verify test results.
+        verify(mockCommandExecuter);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.TcpClient#receiveData() receiveData()} with the special condition that a command is cut
+     * in two by a read that does not fill the buffer.
+     * </p>
+     * 
+     * @throws IOException Thrown is an I/O error occurs.
+     */
+    @Test
+    public void receiveDataSplitCommandShortRead() throws IOException
+    {
+        // Create dependencies.
+        Socket mockSocket = createMock(Socket.class);
+        InputStream inputStream = new SequenceInputStream(new ByteArrayInputStream("keyPr".getBytes()), new ByteArrayInputStream(
+                "ess(16);".getBytes()));
+        CommandExecuter mockCommandExecuter = createMock(CommandExecuter.class);
+
+        // Initialise test environment.
+        fTestObject = new TcpClient(mockSocket, mockCommandExecuter);
+
+        // Dictate correct behaviour.
+        expect(mockSocket.getInputStream()).andReturn(inputStream).anyTimes();
+        replay(mockSocket);
+
+        // Dictate expected results.
+        CommandBuffer expectedCommands = new CommandBuffer();
+        expectedCommands.add(Opcode.KEY_PRESS, 16, 0);
+        mockCommandExecuter.executeCommands(expectedCommands, -1);
+        replay(mockCommandExecuter);
+
+        // Perform test.
+        fTestObject.receiveData();
+        fTestObject.receiveData();
+
+        // Verify test results.
+        verify(mockCommandExecuter);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.TcpClient#receiveData() receiveData()} with the special condition that the commands are
+     * stamped with the client's logical clock and arrive out of order.
+     * </p>
+     * 
+     * @throws IOException Thrown is an I/O error occurs.
+     */
+    @Test
+    public void receiveDataStamped() throws IOException
+    {
+        // Create dependencies.
+        Socket mockSocket = createMock(Socket.class);
+        byte[] receiveBytes = "clock(7,0);keyPress(0);clock(7,2);mousePress(1);clock(7,1);keyRelease(0);".getBytes();
+        InputStream inputStream = new ByteArrayInputStream(receiveBytes);
+        CommandExecuter mockCommandExecuter = createMock(CommandExecuter.class);
+
+        // Initialise test environment.
+        fTestObject = new TcpClient(mockSocket, mockCommandExecuter);
+
+        // Dictate correct behaviour.
+        expect(mockSocket.getInputStream()).andReturn(inputStream).anyTimes();
+        replay(mockSocket);
+
+        // Dictate expected results.
+        CommandBuffer expectedCommands0 = new CommandBuffer();
+        expectedCommands0.add(Opcode.KEY_PRESS, 0, 0);
+        mockCommandExecuter.executeCommands(expectedCommands0, 7);
+        CommandBuffer expectedCommands1 = new CommandBuffer();
+        expectedCommands1.add(Opcode.KEY_RELEASE, 0, 0);
+        expectedCommands1.add(Opcode.MOUSE_PRESS, 1, 0);
+        mockCommandExecuter.executeCommands(expectedCommands1, 7);
+        replay(mockCommandExecuter);
+
+        // Perform test.
+        fTestObject.receiveData();
+
+        // Verify test results.
+        verify(mockCommandExecuter);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.TcpClient#receiveData() receiveData()} with the special condition that a macro is
+     * registered and then invoked.
+     * </p>
+     * 
+     * @throws IOException Thrown is an I/O error occurs.
+     */
+    @Test
+    public void receiveDataMacro() throws IOException
+    {
+        // Create dependencies.
+        Socket mockSocket = createMock(Socket.class);
+        byte[] receiveBytes = "defineMacro(7,click%281%2C2%29%3B);macro(7);macro(8);".getBytes();
+        InputStream inputStream = new ByteArrayInputStream(receiveBytes);
+        CommandExecuter mockCommandExecuter = createMock(CommandExecuter.class);
+
+        // Initialise test environment.
+        fTestObject = new TcpClient(mockSocket, mockCommandExecuter);
+
+        // Dictate correct behaviour.
+        expect(mockSocket.getInputStream()).andReturn(inputStream).anyTimes();
+        replay(mockSocket);
+
+        // Dictate expected results.
+        CommandBuffer expected = new CommandBuffer();
+        expected.add(Opcode.MOUSE_PRESS, 1, 0);
+        expected.add(Opcode.MOUSE_RELEASE, 1, 0);
+        expected.add(Opcode.MOUSE_PRESS, 1, 0);
+        expected.add(Opcode.MOUSE_RELEASE, 1, 0);
+        mockCommandExecuter.executeCommands(expected, -1);
         replay(mockCommandExecuter);
 
         // Perform test.
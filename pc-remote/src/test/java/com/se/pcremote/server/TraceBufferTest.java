@@ -0,0 +1,213 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.TraceBuffer TraceBuffer}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class TraceBufferTest
+{
+    /**
+     * <p>
+     * The file the trace is dumped to.
+     * </p>
+     */
+    private File fFile;
+
+    /**
+     * An instance of the class being unit tested.
+     */
+    private TraceBuffer fTestObject;
+
+    /**
+     * <p>
+     * Cleans up the test environment after each test.
+     * </p>
+     */
+    @After
+    public void after()
+    {
+        fFile.delete();
+    }
+
+    /**
+     * <p>
+     * Sets up the test environment for each test.
+     * </p>
+     * 
+     * @throws IOException Thrown if the file the trace is dumped to cannot be created.
+     */
+    @Before
+    public void before() throws IOException
+    {
+        fFile = File.createTempFile("trace", ".txt");
+        fTestObject = new TraceBuffer(3);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.TraceBuffer#dump(File) dump(File)}.
+     * </p>
+     * 
+     * @throws IOException Thrown if the trace cannot be dumped or read.
+     */
+    @Test
+    public void dump() throws IOException
+    {
+        // Initialise test environment.
+        fTestObject.record(7, TraceBuffer.TCP_RECEIVE, 0, 24, 2);
+        fTestObject.record(7, TraceBuffer.INJECT, Opcode.MOUSE_MOVE_RELATIVE, -5, 10);
+
+        // Perform test.
+        int recordCount = fTestObject.dump(fFile);
+
+        // Verify test results.
+        assertEquals(2, recordCount);
+
+        List<String> lines = read();
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("#"));
+        assertTrue(lines.get(1).endsWith("\ttcpReceive\t7\t(24,2)"));
+        assertTrue(lines.get(2).endsWith("\tinject\t7\tmouseMoveRelative(-5,10)"));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.TraceBuffer#dump(File) dump(File)} with the special condition that the ring has wrapped
+     * around so the oldest records were overwritten.
+     * </p>
+     * 
+     * @throws IOException Thrown if the trace cannot be dumped or read.
+     */
+    @Test
+    public void dumpWrapped() throws IOException
+    {
+        // Initialise test environment.
+        for (int index = 0; index < 6; index++)
+        {
+            fTestObject.record(index, TraceBuffer.QUEUE, 0, index, 0);
+        }
+
+        // Perform test.
+        int recordCount = fTestObject.dump(fFile);
+
+        // Verify test results.
+        assertEquals(4, fTestObject.getCapacity());
+        assertEquals(6, fTestObject.getRecordCount());
+        assertEquals(4, recordCount);
+
+        List<String> lines = read();
+        for (int index = 2; index < 6; index++)
+        {
+            assertTrue(lines.get(index - 1).endsWith("\tqueue\t" + index + "\t(" + index + ",0)"));
+        }
+    }
+
+    /**
+     * <p>
+     * Reads the lines of the file the trace is dumped to.
+     * </p>
+     * 
+     * @return The lines of the file the trace is dumped to.
+     * 
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    private List<String> read() throws IOException
+    {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(fFile));
+        try
+        {
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                lines.add(line);
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        return (lines);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.TraceBuffer#record(int, int, int, int, int) record(int, int, int, int, int)} with the
+     * special condition that several threads record at once.
+     * </p>
+     * 
+     * @throws InterruptedException Thrown if the test is interrupted.
+     * @throws IOException Thrown if the trace cannot be dumped or read.
+     */
+    @Test
+    public void recordConcurrently() throws InterruptedException, IOException
+    {
+        // Initialise test environment.
+        fTestObject = new TraceBuffer(1024);
+        Thread[] threads = new Thread[4];
+        for (int index = 0; index < threads.length; index++)
+        {
+            final int clientId = index + 1;
+            threads[index] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int count = 0; count < 10000; count++)
+                    {
+                        fTestObject.record(clientId, TraceBuffer.INJECT, Opcode.MOUSE_WHEEL, clientId, -clientId);
+                    }
+                }
+            };
+        }
+
+        // Perform test.
+        for (Thread thread : threads)
+        {
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        // Verify test results.
+        assertEquals(40000, fTestObject.getRecordCount());
+        assertEquals(1024, fTestObject.dump(fFile));
+
+        // Each record must be whole, not pieced together from the records of different threads.
+        for (String line : read().subList(1, 1025))
+        {
+            String[] fields = line.split("\t");
+            assertEquals("mouseWheel(" + fields[2] + ",-" + fields[2] + ")", fields[3]);
+        }
+    }
+}
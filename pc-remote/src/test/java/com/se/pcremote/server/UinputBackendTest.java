@@ -0,0 +1,156 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.UinputBackend UinputBackend}. A regular file stands in for the input device.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class UinputBackendTest
+{
+    /**
+     * <p>
+     * The file that stands in for the input device.
+     * </p>
+     */
+    private File fDevice;
+
+    /**
+     * An instance of the class being unit tested.
+     */
+    private UinputBackend fTestObject;
+
+    /**
+     * <p>
+     * Teardown to perform after each unit test.
+     * </p>
+     */
+    @After
+    public void after()
+    {
+        fDevice.delete();
+    }
+
+    /**
+     * <p>
+     * Verifies the next event written to the input device.
+     * </p>
+     * 
+     * @param events The events written to the input device.
+     * @param type The expected type of the event.
+     * @param code The expected code of the event.
+     * @param value The expected value of the event.
+     */
+    private void assertEvent(final ByteBuffer events, final int type, final int code, final int value)
+    {
+        events.position(events.position() + fTestObject.getEventLength() - 8);
+        assertEquals(type, events.getShort());
+        assertEquals(code, events.getShort());
+        assertEquals(value, events.getInt());
+    }
+
+    /**
+     * <p>
+     * Setup to perform before each unit test.
+     * </p>
+     * 
+     * @throws IOException Thrown if the file that stands in for the input device cannot be created.
+     */
+    @Before
+    public void before() throws IOException
+    {
+        fDevice = File.createTempFile("uinput", ".bin");
+        fTestObject = UinputBackend.open(fDevice.getPath());
+    }
+
+    /**
+     * <p>
+     * Reads the events written to the input device.
+     * </p>
+     * 
+     * @return The events written to the input device.
+     * 
+     * @throws IOException Thrown if the events cannot be read.
+     */
+    private ByteBuffer readEvents() throws IOException
+    {
+        FileChannel channel = new RandomAccessFile(fDevice, "r").getChannel();
+        try
+        {
+            ByteBuffer events = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.nativeOrder());
+            channel.read(events);
+            events.flip();
+
+            return (events);
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.UinputBackend#flush() flush()}.
+     * </p>
+     * 
+     * @throws IOException Thrown if the events cannot be written or read.
+     */
+    @Test
+    public void flush() throws IOException
+    {
+        // Perform test.
+        fTestObject.keyPress(KeyEvent.VK_A);
+        fTestObject.keyRelease(KeyEvent.VK_A);
+        fTestObject.mouseMoveRelative(5, -3);
+        fTestObject.mousePress(3);
+        fTestObject.mouseWheel(2);
+        fTestObject.keyPress(KeyEvent.VK_UNDEFINED);
+
+        // Verify test results.
+        assertEquals(0, readEvents().remaining());
+
+        fTestObject.flush();
+        ByteBuffer events = readEvents();
+        assertEquals(11 * fTestObject.getEventLength(), events.remaining());
+        assertEvent(events, UinputBackend.EV_KEY, 30, 1);
+        assertEvent(events, UinputBackend.EV_SYN, 0, 0);
+        assertEvent(events, UinputBackend.EV_KEY, 30, 0);
+        assertEvent(events, UinputBackend.EV_SYN, 0, 0);
+        assertEvent(events, UinputBackend.EV_REL, 0, 5);
+        assertEvent(events, UinputBackend.EV_REL, 1, -3);
+        assertEvent(events, UinputBackend.EV_SYN, 0, 0);
+        assertEvent(events, UinputBackend.EV_KEY, 0x111, 1);
+        assertEvent(events, UinputBackend.EV_SYN, 0, 0);
+        assertEvent(events, UinputBackend.EV_REL, 8, -2);
+        assertEvent(events, UinputBackend.EV_SYN, 0, 0);
+
+        fTestObject.dispose();
+    }
+}
@@ -0,0 +1,257 @@
+/*
+    This file is part of PC Remote.
+
+    PC Remote is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+
+    PC Remote is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along with PC Remote. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.se.pcremote.server.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.se.pcremote.server.StageProfiler;
+
+/**
+ * <p>
+ * Unit tests for the class {@link com.se.pcremote.server.jfr.FlightRecorderProfiler FlightRecorderProfiler}.
+ * </p>
+ * 
+ * @author Gary Buyn
+ */
+public class FlightRecorderProfilerTest
+{
+    /**
+     * <p>
+     * The file the recording is dumped to.
+     * </p>
+     */
+    private File fFile;
+
+    /**
+     * <p>
+     * The recording the events are emitted to.
+     * </p>
+     */
+    private Recording fRecording;
+
+    /**
+     * An instance of the class being unit tested.
+     */
+    private FlightRecorderProfiler fTestObject;
+
+    /**
+     * <p>
+     * Cleans up the test environment after each test.
+     * </p>
+     */
+    @After
+    public void after()
+    {
+        fTestObject.dispose();
+        fRecording.close();
+        fFile.delete();
+    }
+
+    /**
+     * <p>
+     * Sets up the test environment for each test.
+     * </p>
+     * 
+     * @throws IOException Thrown if the file the recording is dumped to cannot be created.
+     */
+    @Before
+    public void before() throws IOException
+    {
+        fFile = File.createTempFile("pcremote", ".jfr");
+        fRecording = new Recording();
+        fRecording.enable("com.se.pcremote.Inject").withThreshold(Duration.ZERO);
+        fRecording.enable("com.se.pcremote.Parse").withThreshold(Duration.ofMillis(1));
+        fRecording.enable("com.se.pcremote.Queue");
+        fRecording.enable("com.se.pcremote.Receive").withThreshold(Duration.ZERO);
+        fTestObject = new FlightRecorderProfiler(1, 1000000L);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.jfr.FlightRecorderProfiler#begin(int) begin(int)}.
+     * </p>
+     */
+    @Test
+    public void begin()
+    {
+        // Perform test & verify test results.
+        assertFalse(fTestObject.isRecording());
+        assertNull(fTestObject.begin(StageProfiler.PARSE));
+
+        fRecording.start();
+        assertTrue(fTestObject.isRecording());
+        assertNotNull(fTestObject.begin(StageProfiler.PARSE));
+
+        fRecording.stop();
+        assertFalse(fTestObject.isRecording());
+        assertNull(fTestObject.begin(StageProfiler.PARSE));
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.jfr.FlightRecorderProfiler#begin(int) begin(int)} with the special condition that only
+     * one in every few of the times each stage is passed through is profiled.
+     * </p>
+     */
+    @Test
+    public void beginSampled()
+    {
+        // Initialise test environment.
+        fTestObject.dispose();
+        fTestObject = new FlightRecorderProfiler(3, 1000000L);
+        fRecording.start();
+
+        // Perform test.
+        int profileCount = 0;
+        for (int index = 0; index < 9; index++)
+        {
+            if (fTestObject.begin(StageProfiler.INJECT) != null)
+            {
+                profileCount++;
+            }
+        }
+
+        // Verify test results.
+        assertEquals(3, profileCount);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.jfr.FlightRecorderProfiler#end(Object, int, int, int) end(Object, int, int, int)}.
+     * </p>
+     * 
+     * @throws InterruptedException Thrown if the test is interrupted.
+     * @throws IOException Thrown if the recording cannot be dumped or read.
+     */
+    @Test
+    public void end() throws InterruptedException, IOException
+    {
+        // Initialise test environment.
+        fRecording.start();
+
+        // Perform test.
+        Object receiveProfile = fTestObject.begin(StageProfiler.TCP_RECEIVE);
+        Object parseProfile = fTestObject.begin(StageProfiler.PARSE);
+        fTestObject.end(parseProfile, 0, 12, 1);
+        fTestObject.end(receiveProfile, 0, 12, 1);
+
+        Object injectProfile = fTestObject.begin(StageProfiler.INJECT);
+        Thread.sleep(5);
+        fTestObject.end(injectProfile, 7, 0, 2);
+        fTestObject.end(null, 7, 0, 2);
+
+        // Verify test results.
+        List<RecordedEvent> events = dump();
+        assertEquals(2, events.size());
+
+        RecordedEvent receiveEvent = find(events, "com.se.pcremote.Receive");
+        assertEquals("TCP", receiveEvent.getString("transport"));
+        assertEquals(12, receiveEvent.getInt("byteCount"));
+        assertEquals(1, receiveEvent.getInt("commandCount"));
+
+        RecordedEvent injectEvent = find(events, "com.se.pcremote.Inject");
+        assertEquals(7, injectEvent.getInt("clientId"));
+        assertEquals(2, injectEvent.getInt("commandCount"));
+        assertTrue(injectEvent.getDuration().toMillis() >= 5);
+    }
+
+    /**
+     * <p>
+     * Stops the recording and reads the events of this profiler from it.
+     * </p>
+     * 
+     * @return The events of this profiler.
+     * 
+     * @throws IOException Thrown if the recording cannot be dumped or read.
+     */
+    private List<RecordedEvent> dump() throws IOException
+    {
+        fRecording.stop();
+        fRecording.dump(fFile.toPath());
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(fFile.toPath());
+        for (int index = events.size() - 1; index >= 0; index--)
+        {
+            if (!events.get(index).getEventType().getName().startsWith("com.se.pcremote."))
+            {
+                events.remove(index);
+            }
+        }
+
+        return (events);
+    }
+
+    /**
+     * <p>
+     * Finds the event of the given type.
+     * </p>
+     * 
+     * @param events The events to search.
+     * @param name The name of the type of the event.
+     * 
+     * @return The event of the given type, or null if there is none.
+     */
+    private RecordedEvent find(final List<RecordedEvent> events, final String name)
+    {
+        for (RecordedEvent event : events)
+        {
+            if (event.getEventType().getName().equals(name))
+            {
+                return (event);
+            }
+        }
+
+        return (null);
+    }
+
+    /**
+     * <p>
+     * Unit test the method {@link com.se.pcremote.server.jfr.FlightRecorderProfiler#queued(int, int, long) queued(int, int, long)}.
+     * </p>
+     * 
+     * @throws IOException Thrown if the recording cannot be dumped or read.
+     */
+    @Test
+    public void queued() throws IOException
+    {
+        // Initialise test environment.
+        fRecording.start();
+
+        // Perform test.
+        fTestObject.queued(3, 1, 500000L);
+        fTestObject.queued(4, 2, 2000000L);
+
+        // Verify test results.
+        List<RecordedEvent> events = dump();
+        assertEquals(1, events.size());
+        assertEquals(4, events.get(0).getInt("clientId"));
+        assertEquals(2, events.get(0).getInt("commandCount"));
+        assertEquals(2000000L, events.get(0).getLong("waitTime"));
+    }
+}